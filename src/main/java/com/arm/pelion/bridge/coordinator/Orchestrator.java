@@ -40,7 +40,13 @@ import com.arm.pelion.bridge.json.JSONGeneratorFactory;
 import com.arm.pelion.bridge.preferences.PreferenceManager;
 import com.arm.pelion.bridge.transport.HttpTransport;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -48,7 +54,18 @@ import com.arm.pelion.bridge.data.DatabaseConnector;
 import com.arm.pelion.bridge.coordinator.processors.interfaces.PeerProcessorInterface;
 import com.arm.pelion.bridge.servlet.Manager;
 import com.arm.pelion.bridge.coordinator.processors.interfaces.PelionProcessorInterface;
+import com.arm.pelion.bridge.coordinator.processors.core.AsyncResponseEvent;
+import com.arm.pelion.bridge.coordinator.processors.core.AsyncResponseManager;
+import com.arm.pelion.bridge.coordinator.processors.core.CredentialRefreshScheduler;
+import com.arm.pelion.bridge.coordinator.processors.core.EndpointEvent;
+import com.arm.pelion.bridge.coordinator.processors.core.EndpointLaneExecutor;
 import com.arm.pelion.bridge.coordinator.processors.core.EndpointTypeManager;
+import com.arm.pelion.bridge.coordinator.processors.core.HTTPDevicePoller;
+import com.arm.pelion.bridge.coordinator.processors.core.NotificationEvent;
+import com.arm.pelion.bridge.coordinator.processors.core.PeerFanOutDispatcher;
+import com.arm.pelion.bridge.coordinator.processors.core.PelionEvent;
+import com.arm.pelion.bridge.coordinator.processors.core.ShadowStateSnapshot;
+import com.arm.pelion.bridge.coordinator.processors.factories.BasePeerProcessorFactory;
 import com.arm.pelion.bridge.coordinator.processors.core.PeerProcessor;
 import com.arm.pelion.bridge.coordinator.processors.factories.SAMPLEPeerProcessorFactory;
 import com.arm.pelion.bridge.coordinator.processors.factories.TreasureDataPeerProcessorFactory;
@@ -90,6 +107,15 @@ public class Orchestrator implements PelionProcessorInterface, PeerProcessorInte
     // Peer processor list (n-way...default is 1 though...)
     private ArrayList<PeerProcessorInterface> m_peer_processor_list = null;
     
+    // Peer fan-out dispatchers (1 per peer processor)
+    private ArrayList<PeerFanOutDispatcher> m_peer_fanout_list = null;
+    
+    // async response managers (to find the endpoint of a pending async request)
+    private final CopyOnWriteArrayList<AsyncResponseManager> m_async_response_managers = new CopyOnWriteArrayList<>();
+    
+    // pending waits on a specific device record's registration completion (shadow bootstrap... keyed by identity)
+    private final Map<Map,CountDownLatch> m_registration_waiters = Collections.synchronizedMap(new IdentityHashMap<Map,CountDownLatch>());
+    
     // Health Check Services Provider/Manager
     private boolean m_enable_health_checks = true;                 // true: enabled, false: disabled
     private HealthCheckServiceProvider m_health_check_service_provider = null;
@@ -123,6 +149,18 @@ public class Orchestrator implements PelionProcessorInterface, PeerProcessorInte
     // primary endpoint type manager for the bridge
     private EndpointTypeManager m_endpoint_type_manager = null;
     
+    // per-endpoint ordered event lanes
+    private EndpointLaneExecutor m_lanes = null;
+    
+    // local shadow state snapshot (warm restart)
+    private ShadowStateSnapshot m_shadow_snapshot = null;
+    
+    // shared device credential refresh scheduler
+    private CredentialRefreshScheduler m_credential_refresh_scheduler = null;
+    
+    // shared HTTP device poller (HTTP-based peer processors)
+    private HTTPDevicePoller m_http_device_poller = null;
+    
     // Tenant ID
     private String m_tenant_id = null;
     private String m_tenant_name = null;
@@ -145,12 +183,19 @@ public class Orchestrator implements PelionProcessorInterface, PeerProcessorInte
         this.m_is_master_node = this.m_preference_manager.booleanValueOf("is_master_node");
 
         // initialize the database connector
+        boolean enable_local_db = this.preferences().booleanValueOf("local_db_enabled");
         boolean enable_distributed_db_cache = this.preferences().booleanValueOf("enable_distributed_db_cache");
-        if (enable_distributed_db_cache == true) {
+        if (enable_local_db == true || enable_distributed_db_cache == true) {
             this.m_tablename_delimiter = this.preferences().valueOf("distributed_db_tablename_delimiter");
             if (this.m_tablename_delimiter == null || this.m_tablename_delimiter.length() == 0) {
                 this.m_tablename_delimiter = DEF_TABLENAME_DELIMITER;
             }
+        }
+        if (enable_local_db == true) {
+            // embedded local store
+            this.m_db = new DatabaseConnector(this,this.preferences().valueOf("local_db_directory"));
+        }
+        else if (enable_distributed_db_cache == true) {
             String db_ip_address = this.preferences().valueOf("distributed_db_ip_address");
             int db_port = this.preferences().intValueOf("distributed_db_port");
             String db_username = this.preferences().valueOf("distributed_db_username");
@@ -170,12 +215,27 @@ public class Orchestrator implements PelionProcessorInterface, PeerProcessorInte
         // create the JSON Parser
         this.m_json_parser = this.m_json_factory.newJsonParser();
 
+        // create our per-endpoint event lanes
+        this.m_lanes = new EndpointLaneExecutor(this.m_error_logger, this.m_preference_manager);
+
+        // load our shadow state snapshot (before the processors so that their device managers can contribute)
+        this.m_shadow_snapshot = new ShadowStateSnapshot(this.m_error_logger, this.m_preference_manager);
+
+        // create our shared credential refresh scheduler (used by the peer processors)
+        this.m_credential_refresh_scheduler = new CredentialRefreshScheduler(this.m_error_logger, this.m_preference_manager);
+        
+        // create our shared HTTP device poller (started on first use)
+        this.m_http_device_poller = new HTTPDevicePoller(this.m_error_logger, this.m_preference_manager);
+
         // We always create the Pelion processor (1 only)
-        this.m_pelion_processor = new PelionProcessor(this, new HttpTransport(this.m_error_logger, this.m_preference_manager));
+        this.m_pelion_processor = new PelionProcessor(this, new HttpTransport(this.m_error_logger, this.m_preference_manager, "pelion"));
       
         // initialize our peer processors... (n-way... but default is just 1...)
         this.initPeerProcessorList();
         
+        // initialize our peer fan-out dispatchers
+        this.initPeerFanOutList();
+        
         // Get the health check service provider sleep time
         if (this.m_enable_health_checks == true) {
             this.m_health_check_service_provider_sleep_time_ms = preferences().intValueOf("heath_check_sleep_time_ms");
@@ -277,6 +337,21 @@ public class Orchestrator implements PelionProcessorInterface, PeerProcessorInte
     public DatabaseConnector getDatabaseConnector() {
         return this.m_db;
     }
+    
+    // get the shadow state snapshot
+    public ShadowStateSnapshot getShadowStateSnapshot() {
+        return this.m_shadow_snapshot;
+    }
+    
+    // get the credential refresh scheduler
+    public CredentialRefreshScheduler getCredentialRefreshScheduler() {
+        return this.m_credential_refresh_scheduler;
+    }
+    
+    // get the HTTP device poller
+    public HTTPDevicePoller getHTTPDevicePoller() {
+        return this.m_http_device_poller;
+    }
 
     // initialize our peer processor
     private void initPeerProcessorList() {
@@ -287,27 +362,27 @@ public class Orchestrator implements PelionProcessorInterface, PeerProcessorInte
         if (this.ibmPeerEnabled()) {
             // IBM WatsonIoT/MQTT
             this.errorLogger().info("Orchestrator: Adding IBM WatsonIoT MQTT Processor");
-            this.m_peer_processor_list.add(WatsonIoTPeerProcessorFactory.createPeerProcessor(this, new HttpTransport(this.m_error_logger, this.m_preference_manager)));
+            this.m_peer_processor_list.add(WatsonIoTPeerProcessorFactory.createPeerProcessor(this, new HttpTransport(this.m_error_logger, this.m_preference_manager, "watson")));
         }
         if (this.msPeerEnabled()) {
             // MS IoTHub/MQTT
             this.errorLogger().info("Orchestrator: Adding MS IoTHub MQTT Processor");
-            this.m_peer_processor_list.add(MSIoTHubPeerProcessorFactory.createPeerProcessor(this, new HttpTransport(this.m_error_logger, this.m_preference_manager)));
+            this.m_peer_processor_list.add(MSIoTHubPeerProcessorFactory.createPeerProcessor(this, new HttpTransport(this.m_error_logger, this.m_preference_manager, "iothub")));
         }
         if (this.awsPeerEnabled()) {
             // Amazon AWSIoT/MQTT
             this.errorLogger().info("Orchestrator: Adding AWSIoT MQTT Processor");
-            this.m_peer_processor_list.add(AWSIoTPeerProcessorFactory.createPeerProcessor(this, new HttpTransport(this.m_error_logger, this.m_preference_manager)));
+            this.m_peer_processor_list.add(AWSIoTPeerProcessorFactory.createPeerProcessor(this, new HttpTransport(this.m_error_logger, this.m_preference_manager, "aws")));
         }
         if (this.googleCloudPeerEnabled()) {
             // Google CloudIoT/MQTT
             this.errorLogger().info("Orchestrator: Adding Google CloudIoT MQTT Processor");
-            this.m_peer_processor_list.add(GoogleCloudPeerProcessorFactory.createPeerProcessor(this, new HttpTransport(this.m_error_logger, this.m_preference_manager)));
+            this.m_peer_processor_list.add(GoogleCloudPeerProcessorFactory.createPeerProcessor(this, new HttpTransport(this.m_error_logger, this.m_preference_manager, "google")));
         }
         if (this.genericMQTTPeerEnabled()) {
             // Generic MQTT
             this.errorLogger().info("Orchestrator: Adding Generic MQTT Processor");
-            this.m_peer_processor_list.add(GenericMQTTPeerProcessorFactory.createPeerProcessor(this, new HttpTransport(this.m_error_logger, this.m_preference_manager)));
+            this.m_peer_processor_list.add(GenericMQTTPeerProcessorFactory.createPeerProcessor(this, new HttpTransport(this.m_error_logger, this.m_preference_manager, "generic_mqtt")));
         }
         if (this.treasureDataPeerEnabled()) {
             // TreasureData 
@@ -319,10 +394,30 @@ public class Orchestrator implements PelionProcessorInterface, PeerProcessorInte
         if (this.SAMPLEPeerEnabled()) {
             // SAMPLE
             this.errorLogger().info("Orchestrator: Adding SAMPLE Processor");
-            this.m_peer_processor_list.add(SAMPLEPeerProcessorFactory.createPeerProcessor(this, new HttpTransport(this.m_error_logger, this.m_preference_manager)));
+            this.m_peer_processor_list.add(SAMPLEPeerProcessorFactory.createPeerProcessor(this, new HttpTransport(this.m_error_logger, this.m_preference_manager, "sample")));
         }
     }
     
+    // initialize our peer fan-out dispatchers
+    private void initPeerFanOutList() {
+        this.m_peer_fanout_list = new ArrayList<>();
+        for (int i = 0; this.m_peer_processor_list != null && i < this.m_peer_processor_list.size(); ++i) {
+            PeerProcessorInterface peer = this.peerProcessor(i);
+            this.m_peer_fanout_list.add(new PeerFanOutDispatcher(this.m_error_logger, this.m_preference_manager, peer, this.peerName(peer, i)));
+        }
+    }
+    
+    // get a displayable name for a peer processor
+    private String peerName(PeerProcessorInterface peer, int index) {
+        if (peer instanceof BasePeerProcessorFactory && ((BasePeerProcessorFactory)peer).genericPeerProcessor() != null) {
+            String qualifier = ((BasePeerProcessorFactory)peer).genericPeerProcessor().hsQualifier();
+            if (qualifier != null && qualifier.length() > 0) {
+                return qualifier;
+            }
+        }
+        return peer.getClass().getSimpleName() + "_" + index;
+    }
+    
     // use SAMPLE peer processor?
     private Boolean SAMPLEPeerEnabled() {
         return (this.preferences().booleanValueOf("SAMPLE_enable_addon"));
@@ -376,6 +471,22 @@ public class Orchestrator implements PelionProcessorInterface, PeerProcessorInte
 
     // stop the peer listener
     public void stopPeerListener() {
+        // drain any queued Pelion messages to our peers first
+        this.haltNotificationIngestion();
+        
+        // stop the peer fan-out lanes (already queued deliveries still run)
+        for (int i = 0; this.m_peer_fanout_list != null && i < this.m_peer_fanout_list.size(); ++i) {
+            this.m_peer_fanout_list.get(i).shutdown();
+        }
+        
+        // stop the shared device poller and credential refresher before their peers go
+        if (this.m_http_device_poller != null) {
+            this.m_http_device_poller.shutdown();
+        }
+        if (this.m_credential_refresh_scheduler != null) {
+            this.m_credential_refresh_scheduler.shutdown();
+        }
+        
         if (this.m_listeners_initialized) {
             // MQTT Listener
             for (int i = 0; i < this.m_peer_processor_list.size(); ++i) {
@@ -383,6 +494,16 @@ public class Orchestrator implements PelionProcessorInterface, PeerProcessorInte
             }
             this.m_listeners_initialized = false;
         }
+        
+        // write out any remaining shadow state
+        if (this.m_shadow_snapshot != null) {
+            this.m_shadow_snapshot.halt();
+        }
+        
+        // write out any remaining queued database changes
+        if (this.m_db != null) {
+            this.m_db.close();
+        }
     }
 
     // initialize the Pelion notification channel
@@ -488,9 +609,19 @@ public class Orchestrator implements PelionProcessorInterface, PeerProcessorInte
     }
 
     @Override
-    public synchronized void pullDeviceMetadata(Map endpoint, AsyncResponseProcessor processor) {
+    public void pullDeviceMetadata(final Map endpoint, final AsyncResponseProcessor processor) {
         if (this.m_pelion_processor != null) {
-            this.pelion_processor().pullDeviceMetadata(endpoint, processor);
+            // never dropped: this pull is what completes the device's registration
+            Runnable task = new Runnable() {
+                @Override
+                public void run() {
+                    Orchestrator.this.pelion_processor().pullDeviceMetadata(endpoint, processor);
+                }
+            };
+            if (this.m_lanes.executeBlocking(this.endpointName(endpoint), task) == false) {
+                // lanes are stopping... pull it ourselves
+                task.run();
+            }
         }
     }
 
@@ -504,101 +635,225 @@ public class Orchestrator implements PelionProcessorInterface, PeerProcessorInte
         return buf.toString();
     }
 
+    // record synchronously: the response may be routed as soon as the request has been issued
     @Override
-    public synchronized void recordAsyncResponse(String response, String uri, Map ep, AsyncResponseProcessor processor) {
+    public void recordAsyncResponse(String response, String uri, Map ep, AsyncResponseProcessor processor) {
         for (int i = 0; this.m_peer_processor_list != null && i < this.m_peer_processor_list.size(); ++i) {
             this.peerProcessor(i).recordAsyncResponse(response, uri, ep, processor);
         }
     }
+    
+    // register an async response manager (so async-responses can be laned by the endpoint of their request)
+    public void registerAsyncResponseManager(AsyncResponseManager manager) {
+        this.m_async_response_managers.add(manager);
+    }
+    
+    // endpoint of a pending async request (null if unknown)
+    private String asyncResponseEndpoint(String id) {
+        for (int i = 0; id != null && i < this.m_async_response_managers.size(); ++i) {
+            String ep_name = this.m_async_response_managers.get(i).endpointNameFor(id);
+            if (ep_name != null) {
+                return ep_name;
+            }
+        }
+        return null;
+    }
 
     // Message: registration
     @Override
-    public synchronized void processNewRegistration(Map message) {
-        for (int i = 0; this.m_peer_processor_list != null && i < this.m_peer_processor_list.size(); ++i) {
-            this.peerProcessor(i).processNewRegistration(message);
-        }
+    public void processNewRegistration(Map message) {
+        this.dispatchByEndpoint("registrations", message);
         this.refreshHealthStats();
     }
 
     // Message: reg-updates
     @Override
-    public synchronized void processReRegistration(Map message) {
-        for (int i = 0; this.m_peer_processor_list != null && i < this.m_peer_processor_list.size(); ++i) {
-            this.peerProcessor(i).processReRegistration(message);
-        }
+    public void processReRegistration(Map message) {
+        this.dispatchByEndpoint("reg-updates", message);
         this.refreshHealthStats();
     }
     
     // Message: device-deletions (mbed Cloud)
     @Override
-    public synchronized String[] processDeviceDeletions(Map message) {
-        ArrayList<String> deletions = new ArrayList<>();
-        
-        for (int i = 0; this.m_peer_processor_list != null && i < this.m_peer_processor_list.size(); ++i) {
-            String[] ith_deletions = this.peerProcessor(i).processDeviceDeletions(message);
-            for (int j = 0; ith_deletions != null && j < ith_deletions.length; ++j) {
-                boolean add = deletions.add(ith_deletions[j]);
-            }
-        }
-        
-        String[] deletion_str_array = new String[deletions.size()];
-        return deletions.toArray(deletion_str_array);
+    public String[] processDeviceDeletions(Map message) {
+        return this.forgetShadowState(this.dispatchByEndpoint("device-deletions", message));
     }
 
     // Message: de-registrations
     @Override
-    public synchronized String[] processDeregistrations(Map message) {
-        ArrayList<String> deregistrations = new ArrayList<>();
-            
-        // loop through the list and process the de-registrations
-        for (int i = 0; this.m_peer_processor_list != null && i < this.m_peer_processor_list.size(); ++i) {
-            String[] ith_deregistrations = this.peerProcessor(i).processDeregistrations(message);
-            for (int j = 0; ith_deregistrations != null && j < ith_deregistrations.length; ++j) {
-                boolean add = deregistrations.add(ith_deregistrations[j]);
-            }
-        }
-        
-        String[] dereg_str_array = new String[deregistrations.size()];
-        return deregistrations.toArray(dereg_str_array);
+    public String[] processDeregistrations(Map message) {
+        return this.forgetShadowState(this.dispatchByEndpoint("de-registrations", message));
     }
 
     // Message: registrations-expired
     @Override
-    public synchronized String[] processRegistrationsExpired(Map message) {
-        ArrayList<String> registrations_expired = new ArrayList<>();
+    public String[] processRegistrationsExpired(Map message) {
+        return this.forgetShadowState(this.dispatchByEndpoint("registrations-expired", message));
+    }
+    
+    // complete new device registration
+    @Override
+    public void completeNewDeviceRegistration(Map message) {
+        // snapshot the device (before the peers decorate the record)
+        if (this.m_shadow_snapshot != null) {
+            this.m_shadow_snapshot.record(message);
+        }
+        EndpointEvent event = new EndpointEvent(PeerFanOutDispatcher.COMPLETE_REGISTRATION, message);
         
-        // only if devices are removed on de-regsistration 
-        for (int i = 0; this.m_peer_processor_list != null && i < this.m_peer_processor_list.size(); ++i) {
-            String[] ith_reg_expired = this.peerProcessor(i).processRegistrationsExpired(message);
-            for (int j = 0; ith_reg_expired != null && j < ith_reg_expired.length; ++j) {
-                boolean add = registrations_expired.add(ith_reg_expired[j]);
+        // let anyone waiting on this device record know once every peer has created its shadow
+        final CountDownLatch waiter = (message != null) ? this.m_registration_waiters.remove(message) : null;
+        if (waiter != null) {
+            event.onDelivered(this.m_peer_fanout_list != null ? this.m_peer_fanout_list.size() : 0, new Runnable() {
+                @Override
+                public void run() {
+                    waiter.countDown();
+                }
+            });
+        }
+        this.fanOut(event);
+    }
+    
+    // count down the waiter once the registration completion of this device record has been processed by all peers
+    public boolean expectRegistrationCompletion(Map record, CountDownLatch waiter) {
+        synchronized (this.m_registration_waiters) {
+            if (this.m_registration_waiters.containsKey(record) == true) {
+                return false;
             }
+            this.m_registration_waiters.put(record, waiter);
+            return true;
         }
-        
-        String[] regexpired_str_array = new String[registrations_expired.size()];
-        return registrations_expired.toArray(regexpired_str_array);
     }
     
-    // complete new device registration
-    @Override
-    public synchronized void completeNewDeviceRegistration(Map message) {
-        for (int i = 0; this.m_peer_processor_list != null && i < this.m_peer_processor_list.size(); ++i) {
-            this.peerProcessor(i).completeNewDeviceRegistration(message);
+    // stop waiting on a registration completion
+    public void abandonRegistrationCompletion(CountDownLatch waiter) {
+        synchronized (this.m_registration_waiters) {
+            this.m_registration_waiters.values().remove(waiter);
         }
     }
+    
+    // remove departed endpoints from the shadow state snapshot
+    private String[] forgetShadowState(String[] ep_names) {
+        for (int i = 0; this.m_shadow_snapshot != null && ep_names != null && i < ep_names.length; ++i) {
+            this.m_shadow_snapshot.forget(ep_names[i]);
+        }
+        return ep_names;
+    }
 
     @Override
-    public synchronized void processAsyncResponses(Map message) {
-        for (int i = 0; this.m_peer_processor_list != null && i < this.m_peer_processor_list.size(); ++i) {
-            this.peerProcessor(i).processAsyncResponses(message);
+    public void processAsyncResponses(Map message) {
+        this.dispatchByEndpoint("async-responses", message);
+    }
+    
+    @Override
+    public void processAsyncResponse(AsyncResponseEvent response) {
+        this.fanOut(response);
+    }
+    
+    // split a Pelion message into per-endpoint events and fan each out to our peers (returns the endpoint names)
+    private String[] dispatchByEndpoint(String key, Map message) {
+        ArrayList<String> ep_names = new ArrayList<>();
+        List entries = (List)message.get(key);
+        for (int i = 0; entries != null && i < entries.size(); ++i) {
+            PelionEvent event = PelionEvent.fromEntry(key, entries.get(i));
+            ep_names.add(event.endpointName());
+            
+            // fan out to our peers
+            this.fanOut(event);
+        }
+        
+        String[] ep_name_array = new String[ep_names.size()];
+        return ep_names.toArray(ep_name_array);
+    }
+    
+    // route typed Pelion events (read directly from the Pelion message) to our peers
+    public void processEvents(List<PelionEvent> events) {
+        boolean registrations = false;
+        for (int i = 0; events != null && i < events.size(); ++i) {
+            PelionEvent event = events.get(i);
+            this.fanOut(event);
+            switch (event.key()) {
+                case PelionEvent.REGISTRATIONS:
+                case PelionEvent.REG_UPDATES:
+                    registrations = true;
+                    break;
+                case PelionEvent.DE_REGISTRATIONS:
+                case PelionEvent.REGISTRATIONS_EXPIRED:
+                case PelionEvent.DEVICE_DELETIONS:
+                    if (this.m_shadow_snapshot != null) {
+                        this.m_shadow_snapshot.forget(event.endpointName());
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (registrations == true) {
+            this.refreshHealthStats();
         }
     }
+    
+    // deliver an endpoint event to each peer on its own (ordered per endpoint) lanes
+    private void fanOut(PelionEvent event) {
+        if (event instanceof AsyncResponseEvent) {
+            // lane async-responses by the endpoint of their request
+            AsyncResponseEvent response = (AsyncResponseEvent) event;
+            response.setEndpointName(this.asyncResponseEndpoint(response.id()));
+        }
+        for (int i = 0; this.m_peer_fanout_list != null && i < this.m_peer_fanout_list.size(); ++i) {
+            this.m_peer_fanout_list.get(i).dispatch(event);
+        }
+    }
+    
+    // get the endpoint name from a device record
+    private String endpointName(Map endpoint) {
+        if (endpoint != null) {
+            return (String) endpoint.get("ep");
+        }
+        return null;
+    }
+    
+    // per-lane queue depths (Health Stats)
+    public Map<String,Object> endpointLaneDepths() {
+        return this.m_lanes.laneDepths();
+    }
+    
+    // deepest per-peer fan-out backlog (used to pace bulk dispatching)
+    public int peerFanOutBacklog() {
+        int backlog = 0;
+        for (int i = 0; this.m_peer_fanout_list != null && i < this.m_peer_fanout_list.size(); ++i) {
+            backlog = Math.max(backlog, this.m_peer_fanout_list.get(i).queueDepth());
+        }
+        return backlog;
+    }
+    
+    // per-peer fan-out queue depth and lag (Health Stats)
+    public Map<String,Object> peerFanOutStatistics() {
+        HashMap<String,Object> stats = new HashMap<>();
+        for (int i = 0; this.m_peer_fanout_list != null && i < this.m_peer_fanout_list.size(); ++i) {
+            PeerFanOutDispatcher fanout = this.m_peer_fanout_list.get(i);
+            stats.put(fanout.peerName(), fanout.statistics());
+        }
+        return stats;
+    }
+
+    // upcoming credential refresh backlog (Health Stats)
+    public Map<String,Object> credentialRefreshStatistics() {
+        return this.m_credential_refresh_scheduler.statistics();
+    }
+
+    // HTTP device polling rate and hit ratio (Health Stats)
+    public Map<String,Object> httpDevicePollerStatistics() {
+        return this.m_http_device_poller.statistics();
+    }
 
     @Override
     public void processNotification(Map message) {
-        for (int i = 0; this.m_peer_processor_list != null && i < this.m_peer_processor_list.size(); ++i) {
-            this.peerProcessor(i).processNotification(message);
-        }
+        this.dispatchByEndpoint("notifications", message);
+    }
+    
+    @Override
+    public void processNotification(NotificationEvent notification) {
+        this.fanOut(notification);
     }
     
     @Override
@@ -694,4 +949,12 @@ public class Orchestrator implements PelionProcessorInterface, PeerProcessorInte
             this.pelion_processor().resetNotificationChannel();
         }
     }
+    
+    // drain and stop any asynchronous notification ingestion
+    @Override
+    public void haltNotificationIngestion() {
+        if (this.m_pelion_processor != null) {
+            this.pelion_processor().haltNotificationIngestion();
+        }
+    }
 }
\ No newline at end of file
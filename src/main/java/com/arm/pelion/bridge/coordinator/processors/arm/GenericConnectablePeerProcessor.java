@@ -30,7 +30,7 @@ import com.arm.pelion.bridge.transport.HttpTransport;
 import com.arm.pelion.bridge.transport.MQTTTransport;
 import com.arm.pelion.bridge.transport.Transport;
 import com.arm.pelion.bridge.transport.TransportReceiveThread;
-import com.arm.pelion.bridge.data.SerializableHashMap;
+import com.arm.pelion.bridge.data.ConcurrentSerializableHashMap;
 import java.util.HashMap;
 import java.util.Map;
 import com.arm.pelion.bridge.coordinator.processors.interfaces.ConnectionCreator;
@@ -87,7 +87,7 @@ public class GenericConnectablePeerProcessor extends PeerProcessor implements De
     protected int m_max_shadows = MAX_DEVICE_SHADOWS;
     
     private HashMap<String, MQTTTransport> m_mqtt = null;
-    protected SerializableHashMap m_endpoints = null;
+    protected ConcurrentSerializableHashMap m_endpoints = null;
     protected HashMap<String, TransportReceiveThread> m_mqtt_thread_list = null;
     
     // Auth Token and qualifier
@@ -129,7 +129,7 @@ public class GenericConnectablePeerProcessor extends PeerProcessor implements De
         this.m_api_request_topic = this.createApiRequestTopic();
         
         // initialize the endpoint map
-        this.m_endpoints = new SerializableHashMap(orchestrator,"ENDPOINT_MAP");
+        this.m_endpoints = new ConcurrentSerializableHashMap(orchestrator,"ENDPOINT_MAP");
         
         // initialize the listener thread map
         this.m_mqtt_thread_list = new HashMap<>();
@@ -488,7 +488,6 @@ public class GenericConnectablePeerProcessor extends PeerProcessor implements De
             try {
                 if (topic_data != null) {
                     // get,put,post,delete enablement
-                    this.m_endpoints.remove(ep_name);
                     this.m_endpoints.put(ep_name, topic_data);
                     this.setEndpointTypeFromEndpointName(ep_name, ep_type);
                     cc.subscribeToTopics(ep_name, (Topic[]) topic_data.get("topic_list"));
@@ -877,6 +876,25 @@ public class GenericConnectablePeerProcessor extends PeerProcessor implements De
         return ok;
     }
 
+    // Health Stats: device-to-cloud telemetry batching statistics (null - batching not in use)
+    public Map<String,Object> telemetryBatchStatistics() {
+        return null;
+    }
+
+    // Health Stats: Get the number of MQTT messages received for each MQTT connection
+    public synchronized Map<String,Long> mqttMessagesReceived() {
+        HashMap<String,Long> counts = new HashMap<>();
+        if (this.m_mqtt_utilized == true) {
+            for (Map.Entry<String, MQTTTransport> entry : m_mqtt.entrySet()) {
+                MQTTTransport t = entry.getValue();
+                if (t != null) {
+                    counts.put(entry.getKey(),t.numMessagesReceived());
+                }
+            }
+        }
+        return counts;
+    }
+
     // stop the defaulted listener thread
     protected void stopListenerThread() {
         this.stopListenerThread(this.m_default_tr_key);
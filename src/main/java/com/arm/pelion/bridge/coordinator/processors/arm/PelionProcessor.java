@@ -26,13 +26,21 @@ import com.arm.pelion.bridge.coordinator.processors.core.LongPollProcessor;
 import com.arm.pelion.bridge.coordinator.Orchestrator;
 import com.arm.pelion.bridge.coordinator.processors.core.DeviceAttributeRetrievalDispatchManager;
 import com.arm.pelion.bridge.coordinator.processors.core.HttpProcessor;
+import com.arm.pelion.bridge.coordinator.processors.core.NotificationEvent;
+import com.arm.pelion.bridge.coordinator.processors.core.NotificationIngestionPipeline;
+import com.arm.pelion.bridge.coordinator.processors.core.PelionEvent;
+import com.arm.pelion.bridge.coordinator.processors.core.PelionEventReader;
 import com.arm.pelion.bridge.coordinator.processors.core.ShadowDeviceThreadDispatcher;
+import com.arm.pelion.bridge.coordinator.processors.core.ShadowStateSnapshot;
 import com.arm.pelion.bridge.coordinator.processors.core.WebSocketProcessor;
 import com.arm.pelion.bridge.coordinator.processors.core.WebhookValidator;
 import com.arm.pelion.bridge.core.ApiResponse;
 import com.arm.pelion.bridge.coordinator.processors.interfaces.AsyncResponseProcessor;
+import com.arm.pelion.bridge.coordinator.processors.interfaces.DeviceDiscoveryListenerInterface;
 import com.arm.pelion.bridge.core.Utils;
 import com.arm.pelion.bridge.transport.HttpTransport;
+import com.arm.pelion.bridge.transport.HttpTransportResponse;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.uuid.Generators;
 import java.util.HashMap;
 import java.util.List;
@@ -43,6 +51,7 @@ import com.arm.pelion.bridge.coordinator.processors.interfaces.PelionProcessorIn
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * Pelion Peer Processor - this HTTP based processor integrates with the REST API of Pelion for the device shadow bridge functionality
@@ -135,6 +144,7 @@ public class PelionProcessor extends HttpProcessor implements Runnable, PelionPr
     
     // maximum number of grouped device shadow create threads
     private int m_mds_max_shadow_create_threads = DEFAULT_MAX_SHADOW_CREATE_THREADS;
+    private volatile ShadowDeviceThreadDispatcher m_shadow_dispatcher = null;
     
     // Webhook establishment retries
     private int m_webook_num_retries = PELION_WEBHOOK_RETRIES;
@@ -160,6 +170,9 @@ public class PelionProcessor extends HttpProcessor implements Runnable, PelionPr
     // Maximum # of devices to query per GET
     private int m_max_devices_per_query = PELION_MAX_DEVICES_PER_QUERY;
     
+    // asynchronous notification ingestion (default is OFF - process on the receiving thread)
+    private NotificationIngestionPipeline m_ingestion_pipeline = null;
+    
     // constructor
     public PelionProcessor(Orchestrator orchestrator, HttpTransport http) {
         super(orchestrator, http);
@@ -225,7 +238,7 @@ public class PelionProcessor extends HttpProcessor implements Runnable, PelionPr
         if (this.m_mds_max_shadow_create_threads <= 0) {
             this.m_mds_max_shadow_create_threads = DEFAULT_MAX_SHADOW_CREATE_THREADS;
         }
-        this.errorLogger().warning("PelionProcessor: Maximum group shadow create threads per dispatch: " + this.m_mds_max_shadow_create_threads);
+        this.errorLogger().warning("PelionProcessor: Maximum concurrent shadow creations during bootstrap: " + this.m_mds_max_shadow_create_threads);
         
         // configure webhook setup retries
         this.m_webook_num_retries = orchestrator.preferences().intValueOf("mds_webhook_num_retries");
@@ -255,6 +268,16 @@ public class PelionProcessor extends HttpProcessor implements Runnable, PelionPr
         // initialize the default type of URI for contacting Pelion
         this.setupPelionCloudURI();
         
+        // configure asynchronous notification ingestion (must precede notification channel startup)
+        if (this.prefBoolValue("mds_async_ingestion") == true) {
+            this.m_ingestion_pipeline = new NotificationIngestionPipeline(this);
+            this.m_ingestion_pipeline.start();
+            this.errorLogger().warning("PelionProcessor: Asynchronous notification ingestion ENABLED");
+        }
+        else {
+            this.errorLogger().warning("PelionProcessor: Asynchronous notification ingestion DISABLED");
+        }
+        
         // initialize the notification mechanism
         this.initializeNotificationChannelType();
        
@@ -545,11 +568,17 @@ public class PelionProcessor extends HttpProcessor implements Runnable, PelionPr
 
                 // Check for message duplication... 
                 if (this.isDuplicateMessage(json) == false) {
-                    // record the "last" message
-                    this.m_last_message = json;
-
                     // process and route the Pelion message
-                    this.processDeviceServerMessage(json, request);
+                    if (this.processDeviceServerMessage(json, request) == true) {
+                        // record the "last" message
+                        this.m_last_message = json;
+                    }
+                    else {
+                        // not accepted... ask Pelion to redeliver it
+                        this.errorLogger().warning("PelionProcessor: processNotificationMessage: ingestion queue full. Asking Pelion to retry (503)...");
+                        this.sendResponseToPelion("application/json;charset=utf-8", request, response, "", "{}", 503);
+                        return;
+                    }
                 }
                 else {
                     // DUPLICATE!  So ignore it
@@ -686,19 +715,16 @@ public class PelionProcessor extends HttpProcessor implements Runnable, PelionPr
     public ApiResponse processApiRequestOperation(String uri,String data,String options,String verb,int request_id,String api_key,String caller_id,String content_type) {
         ApiResponse response = new ApiResponse(this.orchestrator(),this.m_suffix,uri,data,options,verb,caller_id,content_type,request_id);
         
-        // execute the API Request
-        response.setReplyData(this.executeApiRequest(uri,data,options,verb,api_key,content_type));
-        
-        // set the http result code
-        response.setHttpCode(this.getLastResponseCode());
+        // execute the API Request (sets the reply data and http result code)
+        this.executeApiRequest(response,uri,data,options,verb,api_key,content_type);
         
         // return the response
         return response;
     }
     
-    // execute an API request and return the response
-    private String executeApiRequest(String uri,String data,String options,String verb,String api_key,String content_type) {
-        String response = "";
+    // execute an API request and record its reply and http result code
+    private void executeApiRequest(ApiResponse api_response,String uri,String data,String options,String verb,String api_key,String content_type) {
+        HttpTransportResponse response = null;
         
         // execute if we have valid parameters
         if (uri != null && verb != null) {
@@ -710,40 +736,43 @@ public class PelionProcessor extends HttpProcessor implements Runnable, PelionPr
 
             // GET
             if (verb.equalsIgnoreCase("get")) {
-                response = this.httpsGet(url, content_type, api_key);
+                response = this.httpsRequest("GET", url, null, content_type, api_key);
             }   
             // PUT
             else if (verb.equalsIgnoreCase("put")) {
-                response = this.httpsPut(url, data, content_type, api_key);
+                response = this.httpsRequest("PUT", url, data, content_type, api_key);
             }   
             // POST
             else if (verb.equalsIgnoreCase("post")) {
-                response = this.httpsPost(url,data, content_type, api_key);
+                response = this.httpsRequest("POST", url, data, content_type, api_key);
             }   
             // DELETE
             else if (verb.equalsIgnoreCase("delete")) {
-                response = this.httpsDelete(url, data, api_key);
+                response = this.httpsRequest("DELETE", url, null, data, api_key);
             } 
             else {
                 // verb is unknown - should never get called as verb is already sanitized...
                 this.errorLogger().warning("PelionProcessor: ERROR: HTTP verb[" + verb + "] ContentType: [" + content_type + "] is UNKNOWN. Unable to execute request...");
-                return this.createJSONMessage("api_execute_status","invalid coap verb");
+                api_response.setReplyData(this.createJSONMessage("api_execute_status","invalid coap verb"));
+                return;
             }
         }
         else {
             // invalid parameters
             this.errorLogger().warning("PelionProcessor: ERROR: invalid parameters in API request. Unable to execute request...");
-            return this.createJSONMessage("api_execute_status","iinvalid api parameters");
+            api_response.setReplyData(this.createJSONMessage("api_execute_status","iinvalid api parameters"));
+            return;
         }
         
-        // return a sanitized response
-        String sanitized = this.sanitizeApiResponse(response);
+        // sanitize the response
+        String sanitized = this.sanitizeApiResponse(this.resultOf(response));
         
         // DEBUG
         this.errorLogger().info("PelionProcessor:Sanitized API Response: " + sanitized);
         
-        // return the sanitized response
-        return sanitized;
+        // record the sanitized response and its http result code
+        api_response.setReplyData(sanitized);
+        api_response.setHttpCode(response.code());
     }
     
     // sanitize the API response
@@ -1058,61 +1087,99 @@ public class PelionProcessor extends HttpProcessor implements Runnable, PelionPr
         return false;
     }
 
-    // process and route the Pelion message to the appropriate peer method
-    public void processDeviceServerMessage(String json, HttpServletRequest request) {
+    // process the Pelion message: either enqueue it for asynchronous ingestion or route it directly (false - not accepted, retry)
+    public boolean processDeviceServerMessage(String json, HttpServletRequest request) {
+        // validate on the receiving thread (the request is not valid once we return)
+        boolean validated = this.validateNotification(request);
+        
+        if (this.m_ingestion_pipeline != null) {
+            // enqueue and return immediately (only webhook deliveries (with a request) are redelivered by Pelion)
+            return this.m_ingestion_pipeline.enqueue(json, validated, request != null);
+        }
+        
+        // route on this thread
+        this.routeDeviceServerMessage(json, validated);
+        return true;
+    }
+    
+    // drain and stop asynchronous notification ingestion
+    @Override
+    public void haltNotificationIngestion() {
+        if (this.m_ingestion_pipeline != null) {
+            this.m_ingestion_pipeline.halt();
+        }
+    }
+    
+    // asynchronous notification ingestion in use?
+    public boolean asyncIngestionEnabled() {
+        return (this.m_ingestion_pipeline != null);
+    }
+    
+    // asynchronous notification ingestion statistics (Health Stats)
+    public Map<String,Object> ingestionStatistics() {
+        if (this.m_ingestion_pipeline != null) {
+            return this.m_ingestion_pipeline.statistics();
+        }
+        return new HashMap<>();
+    }
+
+    // route the Pelion message to the appropriate peer method
+    public void routeDeviceServerMessage(String json, boolean validated) {
+        List<PelionEvent> events = this.parseDeviceServerMessage(json, validated);
+        if (events != null) {
+            this.routeEvents(events);
+        }
+    }
+    
+    // route parsed Pelion events to our peers
+    public void routeEvents(List<PelionEvent> events) {
+        this.orchestrator().processEvents(events);
+    }
+
+    // parse the Pelion message into its (validated) typed events (null - nothing to route)
+    public List<PelionEvent> parseDeviceServerMessage(String json, boolean validated) {
         // DEBUG
         this.orchestrator().errorLogger().info("PelionProcessor: Received message from Pelion: " + json);
 
-        // tell the orchestrator to call its peer processors with this Pelion message
         try {
             if (json != null && json.length() > 0 && json.equalsIgnoreCase("{}") == false) {
-                Map parsed = (Map) this.parseJson(json);
-                if (parsed != null) {
+                // read the typed events directly from the message
+                List<PelionEvent> events = null;
+                try (JsonParser parser = this.jsonParser().createStreamingParser(json)) {
+                    events = PelionEventReader.read(parser);
+                }
+                if (events != null) {
                     // DEBUG
-                    this.errorLogger().info("PelionProcessor: Parsed: " + parsed);
-
-                    // notifications processing
-                    if (parsed.containsKey("notifications")) {
-                        if (this.validateNotification(request)) {
-                            // DEBUG
-                            this.errorLogger().info("PelionProcessor: Notification VALIDATED");
-
-                            // validated notification... process it...
-                            this.orchestrator().processNotification(parsed);
+                    this.errorLogger().info("PelionProcessor: Parsed: " + events.size() + " events");
+
+                    // notifications are only processed if validated
+                    if (validated == false) {
+                        int num_dropped = 0;
+                        ArrayList<PelionEvent> accepted = new ArrayList<>(events.size());
+                        for (int i = 0; i < events.size(); ++i) {
+                            if (events.get(i) instanceof NotificationEvent) {
+                                ++num_dropped;
+                            }
+                            else {
+                                accepted.add(events.get(i));
+                            }
                         }
-                        else {
+                        if (num_dropped > 0) {
                             // validation FAILED. Note but do not process...
                             this.errorLogger().warning("PelionProcessor: Notification validation FAILED. Not processed (OK)");
                         }
-                    }  
-                    
-                    // registrations processing
-                    if (parsed.containsKey("registrations")) {
-                        this.orchestrator().processNewRegistration(parsed);
-                    }
-                    
-                    // registration updates processing
-                    if (parsed.containsKey("reg-updates")) {
-                        this.orchestrator().processReRegistration(parsed);
-                    }
-                    
-                    // de-registrations processing
-                    if (parsed.containsKey("de-registrations")) {
-                        this.orchestrator().processDeregistrations(parsed);
-                    }
-                    
-                    // registrations expired processing
-                    if (parsed.containsKey("registrations-expired")) {
-                        this.orchestrator().processRegistrationsExpired(parsed);
+                        events = accepted;
                     }
-                    
-                    // async-response processing
-                    if (parsed.containsKey("async-responses")) {
-                        this.orchestrator().processAsyncResponses(parsed);
+                    else {
+                        // DEBUG
+                        this.errorLogger().info("PelionProcessor: Notification VALIDATED");
                     }
+
+                    // the events to route to our peers
+                    return events;
                 }
                 else {
-                    // parseJson() failed...
+                    // not a JSON object...
                     this.errorLogger().warning("PelionProcessor: Unable to parse JSON: " + json);
                 }
             }
@@ -1125,6 +1192,7 @@ public class PelionProcessor extends HttpProcessor implements Runnable, PelionPr
             // exception during JSON parsing
             this.errorLogger().info("PelionProcessor: Exception during JSON parse of message: " + json + "... ignoring.", ex);
         }
+        return null;
     }
     
     // create the DeviceRequest AsyncID
@@ -1175,8 +1243,9 @@ public class PelionProcessor extends HttpProcessor implements Runnable, PelionPr
             String device_request_body_json = this.createDeviceRequestBody(verb.toUpperCase(),uri,value,options);
             
             // dispatch the DeviceRequest as a POST with the appropriate content_type nailed...
-            json = this.httpsPost(url, device_request_body_json, "application/json", this.apiToken());  // nail content_type to "application/json"
-            int http_code = this.getLastResponseCode();
+            HttpTransportResponse response = this.httpsRequest("POST", url, device_request_body_json, "application/json", this.apiToken());  // nail content_type to "application/json"
+            json = this.resultOf(response);
+            int http_code = response.code();
             this.errorLogger().warning("PelionProcessor: Invoked (DeviceRequest) POST: " + url + " DATA: " + device_request_body_json + " CODE: " + http_code);
             if (Utils.httpResponseCodeOK(http_code)) {
                 // construct the AsyncID Response
@@ -1211,32 +1280,37 @@ public class PelionProcessor extends HttpProcessor implements Runnable, PelionPr
             if (verb != null && verb.length() > 0) {
                 // dispatch the Pelion REST based on CoAP verb received
                 if (verb.equalsIgnoreCase(("get"))) {
-                    json = this.httpsGet(url);
-                    int http_code = this.getLastResponseCode();
+                    HttpTransportResponse response = this.httpsRequest("GET", url, null, this.contentType(), this.apiToken());
+                    json = this.resultOf(response);
+                    int http_code = response.code();
                     this.errorLogger().info("PelionProcessor: Invoked GET: " + url + " CODE: " + http_code + " RESPONSE: " + json);
                     if (json == null) json = "";
                 }
                 if (verb.equalsIgnoreCase(("put"))) {
-                    json = this.httpsPut(url, value, "plain/text", this.apiToken());  // nail content_type to "plain/text"
-                    int http_code = this.getLastResponseCode();
+                    HttpTransportResponse response = this.httpsRequest("PUT", url, value, "plain/text", this.apiToken());  // nail content_type to "plain/text"
+                    json = this.resultOf(response);
+                    int http_code = response.code();
                     this.errorLogger().info("PelionProcessor: Invoked PUT: " + url + " DATA: " + value + " CODE: " + http_code);
                     if (json == null) json = "";
                 }
                 if (verb.equalsIgnoreCase(("post"))) {
-                    json = this.httpsPost(url, value, "plain/text", this.apiToken());  // nail content_type to "plain/text"
-                    int http_code = this.getLastResponseCode();
+                    HttpTransportResponse response = this.httpsRequest("POST", url, value, "plain/text", this.apiToken());  // nail content_type to "plain/text"
+                    json = this.resultOf(response);
+                    int http_code = response.code();
                     this.errorLogger().info("PelionProcessor: Invoked POST: " + url + " DATA: " + value + " CODE: " + http_code);
                     if (json == null) json = "";
                 }
                 if (verb.equalsIgnoreCase(("delete"))) {
-                    json = this.httpsDelete(url, "plain/text", this.apiToken());      // nail content_type to "plain/text"
-                    int http_code = this.getLastResponseCode();
+                    HttpTransportResponse response = this.httpsRequest("DELETE", url, null, "plain/text", this.apiToken());      // nail content_type to "plain/text"
+                    json = this.resultOf(response);
+                    int http_code = response.code();
                     this.errorLogger().info("PelionProcessor: Invoked DELETE: " + url + " CODE: " + http_code);
                     if (json == null) json = "";
                 }
                 if (verb.equalsIgnoreCase(("del"))) {
-                    json = this.httpsDelete(url, "plain/text", this.apiToken());      // nail content_type to "plain/text"
-                    int http_code = this.getLastResponseCode();
+                    HttpTransportResponse response = this.httpsRequest("DELETE", url, null, "plain/text", this.apiToken());      // nail content_type to "plain/text"
+                    json = this.resultOf(response);
+                    int http_code = response.code();
                     this.errorLogger().info("PelionProcessor: Invoked  DELETE: " + url + " CODE: " + http_code);
                     if (json == null) json = "";
                 }
@@ -1326,8 +1400,8 @@ public class PelionProcessor extends HttpProcessor implements Runnable, PelionPr
         return this.m_enable_attribute_gets;
     }
 
-    // check and dispatch the appropriate GETs to retrieve the actual device attributes
-    private void getActualDeviceAttributes(Map endpoint) {
+    // check and dispatch the appropriate GETs to retrieve the actual device attributes (true - registration completion will follow)
+    private boolean getActualDeviceAttributes(Map endpoint) {
         String device_type = this.sanitizeEndpointType(Utils.valueFromValidKey(endpoint, "endpoint_type", "ept"));
         String device_id = Utils.valueFromValidKey(endpoint, "id", "ep");
         
@@ -1335,17 +1409,18 @@ public class PelionProcessor extends HttpProcessor implements Runnable, PelionPr
         if (this.deviceAttributeRetrievalEnabled() == true && this.hasDeviceAttributes(endpoint) == true) {
             // dispatch GETs to to retrieve and parse those attributes
             this.errorLogger().warning("PelionProcessor(dispatchDeviceSetup): Fetching Attributes for DeviceID: " + device_id + " Type: " + device_type);
-            this.retrieveDeviceAttributes(endpoint);
+            return this.retrieveDeviceAttributes(endpoint);
         }
         else {
            // call the orchestrator to complete any new device registration
            this.errorLogger().info("PelionProcessor(dispatchDeviceSetup): Calling Peer completeNewDeviceRegistration() with DeviceID: " + device_id + " Type: " + device_type);
            this.orchestrator().completeNewDeviceRegistration(endpoint);
+           return true;
         }
     }
     
-    // retrieve the actual device attributes
-    private void retrieveDeviceAttributes(Map endpoint) {
+    // retrieve the actual device attributes (true - the retrieval will complete the registration)
+    private boolean retrieveDeviceAttributes(Map endpoint) {
         String device_type = this.sanitizeEndpointType(Utils.valueFromValidKey(endpoint, "endpoint_type", "ept"));
         String device_id = Utils.valueFromValidKey(endpoint, "id", "ep");
         
@@ -1364,6 +1439,7 @@ public class PelionProcessor extends HttpProcessor implements Runnable, PelionPr
                 t.start();
                 this.m_dardm_map.put(device_id,manager);
                 this.m_dardm_thread_map.put(device_id,t);
+                return true;
             }
             catch (Exception ex) {
                 this.errorLogger().warning("PelionProcessor: Exception during launch of dispatch manager: " + device_id + " MSG: " + ex.getMessage(),ex);
@@ -1373,6 +1449,7 @@ public class PelionProcessor extends HttpProcessor implements Runnable, PelionPr
             // already allocated... so ignore
             this.errorLogger().warning("PelionProcessor: DispatchManager already allocated for device: " + device_id);
         }
+        return false;
     }
 
     // update our device attributes
@@ -1441,6 +1518,11 @@ public class PelionProcessor extends HttpProcessor implements Runnable, PelionPr
     // pull the initial device metadata from Pelion.. add it to the device endpoint map
     @Override
     public void pullDeviceMetadata(Map endpoint, AsyncResponseProcessor processor) {
+        this.setupDeviceMetadata(endpoint, processor);
+    }
+    
+    // pull the initial device metadata (true - the registration completion will follow)
+    private boolean setupDeviceMetadata(Map endpoint, AsyncResponseProcessor processor) {
         // Get the DeviceID and DeviceType
         String device_type = Utils.valueFromValidKey(endpoint, "endpoint_type", "ept");
         String device_id = Utils.valueFromValidKey(endpoint, "id", "ep");
@@ -1461,7 +1543,7 @@ public class PelionProcessor extends HttpProcessor implements Runnable, PelionPr
         endpoint.put("peer_processor", processor);
         
         // invoke GETs to retrieve the actual attributes (we are the processor for the callbacks...)
-        this.getActualDeviceAttributes(endpoint);
+        return this.getActualDeviceAttributes(endpoint);
     }
 
     //
@@ -1541,12 +1623,89 @@ public class PelionProcessor extends HttpProcessor implements Runnable, PelionPr
         this.errorLogger().warning("PelionProcessor: Starting the device discovery thread dispatcher...");
         
         // Create the ShadowDeviceThread Dispatcher
-        Thread sdtp = new Thread(new ShadowDeviceThreadDispatcher(this,this.m_mds_max_shadow_create_threads));
+        this.m_shadow_dispatcher = new ShadowDeviceThreadDispatcher(this,this.m_mds_max_shadow_create_threads);
+        Thread sdtp = new Thread(this.m_shadow_dispatcher);
         sdtp.start();
     }
     
+    // device shadow bootstrap progress statistics (Health Stats)
+    public Map<String,Object> shadowBootstrapStatistics() {
+        ShadowDeviceThreadDispatcher dispatcher = this.m_shadow_dispatcher;
+        Map<String,Object> stats = null;
+        if (dispatcher != null) {
+            stats = dispatcher.statistics();
+        }
+        else {
+            stats = new HashMap<>();
+            stats.put("state",ShadowDeviceThreadDispatcher.STATE_IDLE);
+        }
+        ShadowStateSnapshot snapshot = this.orchestrator().getShadowStateSnapshot();
+        if (snapshot != null) {
+            stats.put("snapshot",snapshot.statistics());
+        }
+        return stats;
+    }
+    
+    // warm restart a device's shadow from the shadow state snapshot (true - restored, false - device is new or changed)
+    public boolean restoreDeviceShadow(Map device) {
+        ShadowStateSnapshot snapshot = this.orchestrator().getShadowStateSnapshot();
+        if (snapshot != null && snapshot.enabled() == true) {
+            // get the device ID and device Type
+            String device_type = this.sanitizeEndpointType(Utils.valueFromValidKey(device, "endpoint_type", "ept"));
+            String device_id = Utils.valueFromValidKey(device, "id", "ep");
+            
+            // unchanged in Pelion since our snapshot?
+            if (snapshot.unchanged(device_id, device_type, ShadowStateSnapshot.versionOf(device)) == true) {
+                HashMap<String,Object> endpoint = snapshot.restore(device_id);
+                if (endpoint != null) {
+                    // DEBUG
+                    this.errorLogger().info("PelionProcessor(restoreDeviceShadow): Restoring DeviceID: " + device_id + " Type: " + device_type + " from snapshot");
+                    
+                    // Save ept for ep in the peers...
+                    this.orchestrator().getEndpointTypeManager().setEndpointTypeFromEndpointName(device_id, device_type);
+                    
+                    // no resource discovery or attribute retrieval needed... complete the registration directly
+                    this.orchestrator().completeNewDeviceRegistration(endpoint);
+                    return true;
+                }
+            }
+            
+            // new or changed... must be set up in full
+            snapshot.superseded(device_id);
+        }
+        return false;
+    }
+    
+    // device shadows listed in our snapshot but no longer registered in Pelion: de-register them with our peers
+    public void retireStaleDeviceShadows() {
+        ShadowStateSnapshot snapshot = this.orchestrator().getShadowStateSnapshot();
+        if (snapshot != null && snapshot.enabled() == true) {
+            List<String> stale = snapshot.unrestoredEndpoints();
+            if (stale.isEmpty() == false) {
+                // DEBUG
+                this.errorLogger().warning("PelionProcessor: " + stale.size() + " device shadows in snapshot are no longer registered. De-registering...");
+                
+                // process as de-registrations
+                HashMap<String,Object> message = new HashMap<>();
+                message.put("de-registrations", new ArrayList<>(stale));
+                this.orchestrator().processDeregistrations(message);
+            }
+            snapshot.clearRestored();
+        }
+    }
+    
     // worker to setup a specific device's shadow
     public void dispatchDeviceSetup(Map device) {
+        this.dispatchDeviceSetup(device, null);
+    }
+    
+    /**
+     * set up a device shadow
+     * @param device device record from discovery
+     * @param completed (optional) counted down once all peers have processed the device's registration completion
+     * @return true - the registration completion is pending (or done), false - it will not follow
+     */
+    public boolean dispatchDeviceSetup(Map device, CountDownLatch completed) {
         // endpoint to create the shadow with...
         HashMap<String,Object> endpoint = new HashMap<>();
         
@@ -1587,9 +1746,18 @@ public class PelionProcessor extends HttpProcessor implements Runnable, PelionPr
         // Save ept for ep in the peers...
         this.orchestrator().getEndpointTypeManager().setEndpointTypeFromEndpointName(device_id, device_type);
 
+        // wait on the completion of this very record
+        if (completed != null) {
+            this.orchestrator().expectRegistrationCompletion(endpoint, completed);
+        }
+
         // get the device metadata
         this.errorLogger().info("PelionProcessor(dispatchDeviceSetup): calling pullDeviceMetaData() for DeviceID: " + device_id + " Type: " + device_type);
-        this.pullDeviceMetadata(endpoint, null);
+        boolean pending = this.setupDeviceMetadata(endpoint, null);
+        if (pending == false && completed != null) {
+            this.orchestrator().abandonRegistrationCompletion(completed);
+        }
+        return pending;
     }
     
     // create the registered devices retrieval URL
@@ -1620,6 +1788,11 @@ public class PelionProcessor extends HttpProcessor implements Runnable, PelionPr
     public List discoverRegisteredDevices() {
         return this.performDiscovery(this.createGetRegisteredDevicesURL(),"data");
     }
+    
+    // perform streamed device discovery: each page is handed to the listener as soon as it arrives
+    public int discoverRegisteredDevices(DeviceDiscoveryListenerInterface listener) {
+        return this.performPagenatedDiscovery(this.createGetRegisteredDevicesURL(),"data",listener);
+    }
 
     // discover the device resources
     private List discoverDeviceResources(String device) {
@@ -1648,40 +1821,6 @@ public class PelionProcessor extends HttpProcessor implements Runnable, PelionPr
         return null;
     }
     
-    // combine pages into a single List result
-    private List combinePages(ArrayList<List> pages) {
-        ArrayList<Map> combined_list = new ArrayList<>();
-        
-        // loop through and combine if needed
-        if (pages != null) {
-            // handle singleton case
-            if (pages.size() == 1) {
-                // just bail and return the first list
-                return pages.get(0);
-            }
-            else {
-                // we have to loop and combine...
-                for(int i=0;i<pages.size();++i) {
-                    // Grab the ith page 
-                    List page = (List)pages.get(i);
-                    
-                    // we are combining device discovery data... so we need to combine the "data" values...
-                    for(int j=0;page != null && j<page.size();++j) {
-                        combined_list.add((Map)page.get(j));
-                    }                    
-                }
-            }
-        }
-        
-        // if we have nothing to report... nullify for consistency
-        if (combined_list.isEmpty()) {
-            combined_list = null;
-        }
-        
-        // return the combined list
-        return (List)combined_list;
-    }
-    
     // create the "after" filter
     private String createAfterFilter(String device_id) {
         if (device_id == null || device_id.length() == 0) {
@@ -1690,15 +1829,22 @@ public class PelionProcessor extends HttpProcessor implements Runnable, PelionPr
         return "&after=" + device_id;
     }
     
-    // perform a pagenated discovery (of devices...)
-    private Map performPagenatedDiscovery(String base_url,String key) {
+    // get the total count (if reported) from a page
+    private int getTotalCount(Map page) {
+        if (page != null && page.get("total_count") instanceof Number) {
+            return ((Number)page.get("total_count")).intValue();
+        }
+        return -1;
+    }
+    
+    // perform a pagenated discovery (of devices...) handing each page to the listener as it arrives
+    private int performPagenatedDiscovery(String base_url,String key,DeviceDiscoveryListenerInterface listener) {
         boolean more_pages = true;
-        HashMap<String,Object> response = new HashMap<>();
-        ArrayList<List> pages = new ArrayList<>();
+        int num_discovered = 0;
         String last_device_id = null;
         
-        // limit filter - also set the ordering... 
-        String filter = "&limit=" + this.m_max_devices_per_query + "&order=ASC";
+        // limit filter - also set the ordering and ask for the total count (for progress)... 
+        String filter = "&limit=" + this.m_max_devices_per_query + "&order=ASC&include=total_count";
         
         // loop and pull all of the pages... 
         while(more_pages == true) {
@@ -1707,22 +1853,29 @@ public class PelionProcessor extends HttpProcessor implements Runnable, PelionPr
             String json = this.httpsGet(url);
             if (json != null && json.length() > 0) {
                 try {
-                    if (key != null) {
-                        Map base = this.jsonParser().parseJson(json);
-                        if (base != null) {
-                            // Add the page
-                            List page = (List)base.get(key);
-                            pages.add(page);
-                            
-                            // Query the page and see if we need to repeat...
-                            more_pages = this.hasMorePages(base);
-                            if (more_pages) {
-                                last_device_id = this.getLastDeviceID((List)base.get(key));
+                    Map base = this.jsonParser().parseJson(json);
+                    if (base != null) {
+                        // Query the page and see if we need to repeat...
+                        List page = (List)base.get(key);
+                        more_pages = this.hasMorePages(base);
+                        if (more_pages) {
+                            last_device_id = this.getLastDeviceID(page);
+                        }
+                        
+                        // hand off the page
+                        if (page != null && page.size() > 0) {
+                            num_discovered += page.size();
+                            if (listener.devicePageDiscovered(page,this.getTotalCount(base)) == false) {
+                                // listener has asked us to stop
+                                more_pages = false;
                             }
-                            
-                            // DEBUG
-                            this.errorLogger().info("PelionProcessor: Added: " + page.size() + " Total: " + pages.size());
                         }
+                        
+                        // DEBUG
+                        this.errorLogger().info("PelionProcessor: Added: " + (page != null ? page.size() : 0) + " Total: " + num_discovered);
+                    }
+                    else {
+                        more_pages = false;
                     }
                 }
                 catch (Exception ex) {
@@ -1736,20 +1889,7 @@ public class PelionProcessor extends HttpProcessor implements Runnable, PelionPr
             }
         }
         
-        // combine the data pages into one list
-        List combined_list = this.combinePages(pages);
-        
-        // if not null, create the new response with the combined data list
-        if (combined_list != null) {
-            // has data 
-            response.put(key,combined_list);
-        }
-        else {
-            // empty list
-            response.put(key,new ArrayList());
-        }
-        
-        return response;
+        return num_discovered;
     }
    
     // perform a discovery (JSON)
@@ -1758,9 +1898,15 @@ public class PelionProcessor extends HttpProcessor implements Runnable, PelionPr
             // DEBUG
             this.errorLogger().info("PelionProcessor: URL: " + url + " pagenation key: " + key);
             
-            // Device Discovery - handle possible pagenation
-            Map response = this.performPagenatedDiscovery(url,key);
-            List list = (List)response.get(key);
+            // Device Discovery - handle possible pagenation (collect all of the pages)
+            final ArrayList<Map> list = new ArrayList<>();
+            this.performPagenatedDiscovery(url,key,new DeviceDiscoveryListenerInterface() {
+                @Override
+                public boolean devicePageDiscovered(List devices, int total_count) {
+                    list.addAll(devices);
+                    return true;
+                }
+            });
             
             // DEBUG
             this.errorLogger().info("PelionProcessor: Number of devices found (paginated discovery): " + list.size());
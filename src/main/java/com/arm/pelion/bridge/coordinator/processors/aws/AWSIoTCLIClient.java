@@ -0,0 +1,147 @@
+/**
+ * @file AWSIoTCLIClient.java
+ * @brief AWS IoT API client invoking the AWS CLI
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.coordinator.processors.aws;
+
+import com.arm.pelion.bridge.coordinator.processors.interfaces.AWSIoTClientInterface;
+import com.arm.pelion.bridge.core.BaseClass;
+import com.arm.pelion.bridge.core.ErrorLogger;
+import com.arm.pelion.bridge.core.Utils;
+import com.arm.pelion.bridge.preferences.PreferenceManager;
+
+/**
+ * AWS IoT API client that invokes the AWS CLI ("./aws") for each call
+ *
+ * @author Doug Anson
+ */
+public class AWSIoTCLIClient extends BaseClass implements AWSIoTClientInterface {
+    // default constructor
+    public AWSIoTCLIClient(ErrorLogger error_logger, PreferenceManager preference_manager) {
+        super(error_logger, preference_manager);
+    }
+
+    // invoke the AWS CLI
+    private String aws(String args) {
+        return Utils.awsCLI(this.errorLogger(), args);
+    }
+
+    // client name
+    @Override
+    public String name() {
+        return "cli";
+    }
+
+    @Override
+    public String createThing(String thing_name, String thing_type_name) {
+        return this.aws("iot create-thing --thing-name=" + thing_name + " --thing-type-name=" + thing_type_name);
+    }
+
+    @Override
+    public String describeThing(String thing_name) {
+        return this.aws("iot describe-thing --thing-name=" + thing_name);
+    }
+
+    @Override
+    public String deleteThing(String thing_name) {
+        return this.aws("iot delete-thing --thing-name=" + thing_name);
+    }
+
+    @Override
+    public String createThingType(String thing_type_name) {
+        return this.aws("iot create-thing-type --thing-type-name=" + thing_type_name);
+    }
+
+    @Override
+    public String describeThingType(String thing_type_name) {
+        return this.aws("iot describe-thing-type --thing-type-name=" + thing_type_name);
+    }
+
+    @Override
+    public String createKeysAndCertificate(boolean set_as_active) {
+        return this.aws("iot create-keys-and-certificate" + (set_as_active ? " --set-as-active" : ""));
+    }
+
+    @Override
+    public String updateCertificate(String certificate_id, String new_status) {
+        return this.aws("iot update-certificate --certificate-id=" + certificate_id + " --new-status=" + new_status);
+    }
+
+    @Override
+    public String deleteCertificate(String certificate_id) {
+        return this.aws("iot delete-certificate --certificate-id=" + certificate_id);
+    }
+
+    @Override
+    public String listCertificates() {
+        return this.aws("iot list-certificates");
+    }
+
+    @Override
+    public String getPolicy(String policy_name) {
+        return this.aws("iot get-policy --policy-name=" + policy_name);
+    }
+
+    @Override
+    public String createPolicy(String policy_name, String policy_document) {
+        return this.aws("iot create-policy --policy-name=" + policy_name + " --policy-document=" + policy_document);
+    }
+
+    @Override
+    public String attachPrincipalPolicy(String policy_name, String principal) {
+        return this.aws("iot attach-principal-policy --policy-name=" + policy_name + " --principal=" + principal);
+    }
+
+    @Override
+    public String detachPrincipalPolicy(String policy_name, String principal) {
+        return this.aws("iot detach-principal-policy --policy-name=" + policy_name + " --principal=" + principal);
+    }
+
+    @Override
+    public String attachThingPrincipal(String thing_name, String principal) {
+        return this.aws("iot attach-thing-principal --thing-name=" + thing_name + " --principal=" + principal);
+    }
+
+    @Override
+    public String detachThingPrincipal(String thing_name, String principal) {
+        return this.aws("iot detach-thing-principal --thing-name=" + thing_name + " --principal=" + principal);
+    }
+
+    @Override
+    public String listThingPrincipals(String thing_name) {
+        return this.aws("iot list-thing-principals --thing-name=" + thing_name);
+    }
+
+    @Override
+    public String describeEndpoint() {
+        return this.aws("iot describe-endpoint");
+    }
+
+    @Override
+    public String publish(String topic, String payload) {
+        return this.aws("iot-data publish --topic " + topic + " --payload " + payload);
+    }
+
+    @Override
+    public String getThingShadow(String thing_name) {
+        return this.aws("iot-data get-thing-shadow --thing-name " + thing_name);
+    }
+}
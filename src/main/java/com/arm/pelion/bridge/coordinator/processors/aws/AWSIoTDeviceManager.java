@@ -24,6 +24,7 @@ package com.arm.pelion.bridge.coordinator.processors.aws;
 
 import com.arm.pelion.bridge.coordinator.Orchestrator;
 import com.arm.pelion.bridge.coordinator.processors.core.DeviceManager;
+import com.arm.pelion.bridge.coordinator.processors.interfaces.AWSIoTClientInterface;
 import com.arm.pelion.bridge.coordinator.processors.interfaces.DeviceManagerToPeerProcessorInterface;
 import com.arm.pelion.bridge.core.Utils;
 import com.arm.pelion.bridge.data.SerializableHashMap;
@@ -48,6 +49,9 @@ public class AWSIoTDeviceManager extends DeviceManager {
     
     private DeviceManagerToPeerProcessorInterface m_processor = null;
     
+    // AWS IoT API client (AWS CLI or in-process REST)
+    private AWSIoTClientInterface m_aws_client = null;
+    
     // lock to reconnection serial
     private boolean m_in_progress = false;
     
@@ -71,6 +75,21 @@ public class AWSIoTDeviceManager extends DeviceManager {
         this.m_policy_name = this.orchestrator().preferences().valueOf("aws_iot_policy_name", this.m_suffix);
         this.m_policy_document = this.orchestrator().preferences().valueOf("aws_iot_policy_document", this.m_suffix);
         
+        // AWS IoT API client: "cli" (default) invokes the AWS CLI, "rest" calls the AWS IoT REST APIs in-process
+        String client = this.prefValueWithDefault("aws_iot_api_client", this.m_suffix, "cli");
+        if (client.equalsIgnoreCase("rest") == true) {
+            HttpTransport aws_http = (http != null) ? http : new HttpTransport(this.errorLogger(), this.preferences(), "aws");
+            this.m_aws_client = new AWSIoTRestClient(this.errorLogger(), this.preferences(), this.m_suffix, aws_http, this.orchestrator().getJSONGenerator(), this.orchestrator().getJSONParser());
+        }
+        else {
+            this.m_aws_client = new AWSIoTCLIClient(this.errorLogger(), this.preferences());
+        }
+        this.errorLogger().warning("AWSIoT: API client: " + this.m_aws_client.name());
+    }
+    
+    // get our AWS IoT API client
+    public AWSIoTClientInterface awsClient() {
+        return this.m_aws_client;
     }
 
     // get the orchestrator
@@ -152,9 +171,8 @@ public class AWSIoTDeviceManager extends DeviceManager {
         // create the thing type first
         this.createThingType(message);
 
-        // invoke AWS CLI to create a new device
-        String args = "iot create-thing --thing-name=" + device + " --thing-type-name=" + device_type;
-        String result = Utils.awsCLI(this.errorLogger(), args);
+        // create a new device
+        String result = this.m_aws_client.createThing(device, device_type);
 
         // DEBUG
         this.errorLogger().info("AWSIoT: registerNewDevice: New EP: " + device + " EPT: " + device_type);
@@ -184,9 +202,7 @@ public class AWSIoTDeviceManager extends DeviceManager {
     // unlink the certificate from the Thing Record
     private void unlinkCertificateFromThing(String ep_name, String arn) {
         if (ep_name != null && ep_name.length() > 0) {
-            String ep_qual = "--thing-name=" + ep_name;
-            String args = "iot detach-thing-principal " + ep_qual + " --principal=" + arn;
-            Utils.awsCLI(this.errorLogger(), args);
+            this.m_aws_client.detachThingPrincipal(ep_name, arn);
         }
         else {
             // until we get a persistent store that can permanently map ep:ARN, we will have leakage on restart of the bridge...
@@ -202,8 +218,7 @@ public class AWSIoTDeviceManager extends DeviceManager {
 
     // unlink the certificate from the Policy
     private void unlinkCertificateFromPolicy(String arn) {
-        String args = "iot detach-principal-policy --policy-name=" + this.m_policy_name + " --principal=" + arn;
-        Utils.awsCLI(this.errorLogger(), args);
+        this.m_aws_client.detachPrincipalPolicy(this.m_policy_name, arn);
     }
 
     // inactivate the Certificate
@@ -213,8 +228,7 @@ public class AWSIoTDeviceManager extends DeviceManager {
 
     // inactivate the Certificate
     private void inactivateCertificate(String id) {
-        String args = "iot update-certificate --certificate-id=" + id + " --new-status=INACTIVE";
-        Utils.awsCLI(this.errorLogger(), args);
+        this.m_aws_client.updateCertificate(id, "INACTIVE");
     }
 
     // delete the Certificate
@@ -224,8 +238,7 @@ public class AWSIoTDeviceManager extends DeviceManager {
 
     // delete the Certificate
     private void deleteCertificate(String id) {
-        String args = "iot delete-certificate --certificate-id=" + id;
-        Utils.awsCLI(this.errorLogger(), args);
+        this.m_aws_client.deleteCertificate(id);
     }
 
     // get the key and cert index 
@@ -283,9 +296,8 @@ public class AWSIoTDeviceManager extends DeviceManager {
             // first, unlink the certificate and deactivate it/remove it
             this.removeCertificate(device);
 
-            // invoke AWS CLI to delete the current device shadow thing
-            String args = "iot delete-thing --thing-name=" + device;
-            String result = Utils.awsCLI(this.errorLogger(), args);
+            // delete the current device shadow thing
+            String result = this.m_aws_client.deleteThing(device);
 
             // remove the endpoint details
             this.m_endpoint_details.remove(device);
@@ -341,9 +353,8 @@ public class AWSIoTDeviceManager extends DeviceManager {
 
         // if we dont already have it, go get it... 
         if (ep == null) {
-            // invoke AWS CLI to create a new device
-            String args = "iot describe-thing --thing-name=" + device;
-            String result = Utils.awsCLI(this.errorLogger(), args);
+            // look up the device
+            String result = this.m_aws_client.describeThing(device);
 
             // DEBUG
             //this.errorLogger().info("getDeviceDetails: RESULT: " + result);
@@ -437,9 +448,8 @@ public class AWSIoTDeviceManager extends DeviceManager {
         // DEBUG
         //this.errorLogger().ping("createKeysAndCerts(AWS)");
         
-        // AWS IOT CLI to create the keys and certificates
-        String args = "iot create-keys-and-certificate --set-as-active";
-        String result = Utils.awsCLI(this.errorLogger(), args);
+        // create the keys and certificates
+        String result = this.m_aws_client.createKeysAndCertificate(true);
 
         // DEBUG
         //this.errorLogger().info("createKeysAndCerts: RESULT: " + result);
@@ -485,9 +495,8 @@ public class AWSIoTDeviceManager extends DeviceManager {
 
     // get our current defaulted policy
     private String getDefaultPolicy() {
-        // AWS CLI invocation...
-        String args = "iot get-policy --policy-name=" + this.m_policy_name;
-        return Utils.awsCLI(this.errorLogger(), args);
+        // get the policy
+        return this.m_aws_client.getPolicy(this.m_policy_name);
     }
 
     // save off the default policy
@@ -506,9 +515,8 @@ public class AWSIoTDeviceManager extends DeviceManager {
 
         // if we dont have it, create it...
         if (policy_json == null || policy_json.length() == 0) {
-            // AWS CLI invocation...
-            String args = "iot create-policy --policy-name=" + this.m_policy_name + " --policy-document=" + this.m_policy_document;
-            Utils.awsCLI(this.errorLogger(), args);
+            // create the policy
+            this.m_aws_client.createPolicy(this.m_policy_name, this.m_policy_document);
             policy_json = this.getDefaultPolicy();
         }
 
@@ -518,20 +526,17 @@ public class AWSIoTDeviceManager extends DeviceManager {
 
     // link the certificate to the thing record and the default policy
     private void linkCertificateToThingAndPolicy(HashMap<String, Serializable> ep) {
-        // AWS CLI invocation - link policy to certficate ARN
-        String args = "iot attach-principal-policy --policy-name=" + this.m_policy_name + " --principal=" + (String) ep.get("certificateArn");
-        Utils.awsCLI(this.errorLogger(), args);
+        // link policy to certficate ARN
+        this.m_aws_client.attachPrincipalPolicy(this.m_policy_name, (String) ep.get("certificateArn"));
 
-        // AWS CLI invocation - link thing record to certificate
-        args = "iot attach-thing-principal --thing-name=" + (String) ep.get("thingName") + " --principal=" + (String) ep.get("certificateArn");
-        Utils.awsCLI(this.errorLogger(), args);
+        // link thing record to certificate
+        this.m_aws_client.attachThingPrincipal((String) ep.get("thingName"), (String) ep.get("certificateArn"));
     }
     
     // check ifa thing type already exists
     private boolean thingTypeExists(Map ep) {
         if (ep != null) {
-            String args = "iot describe-thing-type --thing-type-name=" + (String) ep.get("ept");
-            String result = Utils.awsCLI(this.errorLogger(), args);
+            String result = this.m_aws_client.describeThingType((String) ep.get("ept"));
             if (result != null && result.length() > 2) {
                 // parse it
                 Map parsed = this.m_orchestrator.getJSONParser().parseJson(result);
@@ -549,8 +554,7 @@ public class AWSIoTDeviceManager extends DeviceManager {
         ep.put("ept", this.sanitizeEndpointType((String)ep.get("ept")));
         if (ep != null && this.thingTypeExists(ep) == false) {
             // create the Thing Type...
-            String args = "iot create-thing-type --thing-type-name=" + (String) ep.get("ept");
-            String result = Utils.awsCLI(this.errorLogger(), args);
+            String result = this.m_aws_client.createThingType((String) ep.get("ept"));
             if (result != null && result.length() > 2) {
                 // parse it
                 Map parsed = this.m_orchestrator.getJSONParser().parseJson(result);
@@ -563,9 +567,8 @@ public class AWSIoTDeviceManager extends DeviceManager {
 
     // capture the endpoint address
     private void captureEndpointAddress(HashMap<String, Serializable> ep) {
-        // AWS CLI invocation - get endpoint details
-        String args = "iot describe-endpoint";
-        String json = Utils.awsCLI(this.errorLogger(), args);
+        // get endpoint details
+        String json = this.m_aws_client.describeEndpoint();
         if (json != null && json.length() > 0) {
             Map parsed = this.m_orchestrator.getJSONParser().parseJson(json);
             ep.put("endpointAddress", (String) parsed.get("endpointAddress"));
@@ -574,9 +577,8 @@ public class AWSIoTDeviceManager extends DeviceManager {
     
     // capture the thing details
     private void captureThingDetails(HashMap<String, Serializable> ep) {
-        // AWS CLI invocation - get thing details
-        String args = "iot describe-thing --thing-name=" + (String)ep.get("thingName");
-        String json = Utils.awsCLI(this.errorLogger(), args);
+        // get thing details
+        String json = this.m_aws_client.describeThing((String)ep.get("thingName"));
         if (json != null && json.length() > 0) {
             Map parsed = this.m_orchestrator.getJSONParser().parseJson(json);
             ep.put("defaultClientId", (String) parsed.get("defaultClientId"));
@@ -587,9 +589,8 @@ public class AWSIoTDeviceManager extends DeviceManager {
     private void captureCertificateDetails(HashMap<String, Serializable> ep) {
         ArrayList<String> doomed_arn_list = new ArrayList<>();
         
-        // AWS CLI invocation - get thing's certificate details... we are going to delete EVERYTHING...
-        String args = "iot list-thing-principals --thing-name=" + (String)ep.get("thingName");
-        String json = Utils.awsCLI(this.errorLogger(), args);
+        // get thing's certificate details... we are going to delete EVERYTHING...
+        String json = this.m_aws_client.listThingPrincipals((String)ep.get("thingName"));
         if (json != null && json.length() > 0) {
             Map parsed = this.m_orchestrator.getJSONParser().parseJson(json);
             List arns = (List)parsed.get("principals");
@@ -680,11 +681,8 @@ public class AWSIoTDeviceManager extends DeviceManager {
 
     // save device details
     private void saveDeviceDetails(String device, HashMap<String, Serializable> entry) {
-        // don't overwrite an existing entry..
-        if (this.getEndpointDetails(device) == null) {
-            // save off the endpoint details
-            this.m_endpoint_details.put(device, entry);
-        }
+        // save off the endpoint details (don't overwrite an existing entry..)
+        this.m_endpoint_details.putIfAbsent(device, entry);
     }
 
     // is this cert_id used by one of the existing devices?
@@ -714,9 +712,8 @@ public class AWSIoTDeviceManager extends DeviceManager {
     private ArrayList<HashMap<String, Serializable>> getRegisteredCertificates() {
         ArrayList<HashMap<String, Serializable>> list = new ArrayList<>();
 
-        // AWS IoT CLI
-        String args = "iot list-certificates";
-        String json = Utils.awsCLI(this.errorLogger(), args);
+        // list the certificates
+        String json = this.m_aws_client.listCertificates();
 
         // parse and process the result
         if (this.certificatesFound(json) == true) {
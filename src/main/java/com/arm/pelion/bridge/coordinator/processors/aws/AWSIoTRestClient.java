@@ -0,0 +1,299 @@
+/**
+ * @file AWSIoTRestClient.java
+ * @brief In-process AWS IoT control-plane and iot-data REST client (SigV4 signed)
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.coordinator.processors.aws;
+
+import com.arm.pelion.bridge.coordinator.processors.interfaces.AWSIoTClientInterface;
+import com.arm.pelion.bridge.core.BaseClass;
+import com.arm.pelion.bridge.core.ErrorLogger;
+import com.arm.pelion.bridge.core.KeyValuePair;
+import com.arm.pelion.bridge.json.JSONGenerator;
+import com.arm.pelion.bridge.json.JSONParser;
+import com.arm.pelion.bridge.preferences.PreferenceManager;
+import com.arm.pelion.bridge.transport.HttpTransport;
+import com.arm.pelion.bridge.transport.HttpTransportResponse;
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * AWS IoT API client that calls the AWS IoT control-plane and iot-data REST APIs directly. Requests are SigV4 signed
+ * and sent via HttpTransport, so connections are pooled/reused and calls may be made concurrently.
+ *
+ * @author Doug Anson
+ */
+public class AWSIoTRestClient extends BaseClass implements AWSIoTClientInterface {
+    // SigV4 service names
+    private static final String CONTROL_SERVICE = "execute-api";
+    private static final String DATA_SERVICE = "iotdata";
+
+    // data endpoint type to discover
+    private static final String DATA_ENDPOINT_TYPE = "iot:Data-ATS";
+
+    // JSON content
+    private static final String JSON_CONTENT_TYPE = "application/json";
+
+    // response for successful calls with no response body (as Utils.awsCLI() reports)
+    private static final String EMPTY_RESPONSE = "{\"status\":0}";
+
+    private HttpTransport m_http = null;
+    private JSONGenerator m_json_generator = null;
+    private JSONParser m_json_parser = null;
+    private AWSSigV4Signer m_control_signer = null;
+    private AWSSigV4Signer m_data_signer = null;
+    private String m_control_endpoint = null;
+    private volatile String m_data_endpoint = null;
+
+    // default constructor
+    public AWSIoTRestClient(ErrorLogger error_logger, PreferenceManager preference_manager, String suffix, HttpTransport http, JSONGenerator json_generator, JSONParser json_parser) {
+        super(error_logger, preference_manager);
+        this.m_http = http;
+        this.m_json_generator = json_generator;
+        this.m_json_parser = json_parser;
+
+        // credentials
+        String region = this.prefValue("aws_iot_region", suffix);
+        String access_key_id = this.prefValue("aws_iot_access_key_id", suffix);
+        String secret_access_key = this.prefValue("aws_iot_secret_access_key", suffix);
+        this.m_control_signer = new AWSSigV4Signer(access_key_id, secret_access_key, region, CONTROL_SERVICE);
+        this.m_data_signer = new AWSSigV4Signer(access_key_id, secret_access_key, region, DATA_SERVICE);
+
+        // control-plane endpoint (override for VPC endpoints and local stubs)
+        this.m_control_endpoint = this.trimEndpoint(this.prefValueWithDefault("aws_iot_control_endpoint", suffix, "https://iot." + region + ".amazonaws.com"));
+
+        // iot-data endpoint (discovered via describe-endpoint if not configured)
+        String data_endpoint = this.prefValue("aws_iot_data_endpoint", suffix);
+        if (data_endpoint != null && data_endpoint.length() > 0) {
+            this.m_data_endpoint = this.trimEndpoint(data_endpoint);
+        }
+
+        // DEBUG
+        this.errorLogger().info("AWSIoT(REST): Control endpoint: " + this.m_control_endpoint + " Data endpoint: " + (this.m_data_endpoint != null ? this.m_data_endpoint : "(discover)"));
+    }
+
+    // remove any trailing "/" from an endpoint URL
+    private String trimEndpoint(String endpoint) {
+        while (endpoint.endsWith("/")) {
+            endpoint = endpoint.substring(0, endpoint.length() - 1);
+        }
+        return endpoint;
+    }
+
+    // client name
+    @Override
+    public String name() {
+        return "rest";
+    }
+
+    @Override
+    public String createThing(String thing_name, String thing_type_name) {
+        HashMap<String,Object> body = new HashMap<>();
+        if (thing_type_name != null && thing_type_name.length() > 0) {
+            body.put("thingTypeName", thing_type_name);
+        }
+        return this.control("POST", "/things/" + this.encode(thing_name), null, this.m_json_generator.generateJson(body), null);
+    }
+
+    @Override
+    public String describeThing(String thing_name) {
+        return this.control("GET", "/things/" + this.encode(thing_name), null, null, null);
+    }
+
+    @Override
+    public String deleteThing(String thing_name) {
+        return this.control("DELETE", "/things/" + this.encode(thing_name), null, null, null);
+    }
+
+    @Override
+    public String createThingType(String thing_type_name) {
+        return this.control("POST", "/thing-types/" + this.encode(thing_type_name), null, "{}", null);
+    }
+
+    @Override
+    public String describeThingType(String thing_type_name) {
+        return this.control("GET", "/thing-types/" + this.encode(thing_type_name), null, null, null);
+    }
+
+    @Override
+    public String createKeysAndCertificate(boolean set_as_active) {
+        return this.control("POST", "/keys-and-certificate", this.params("setAsActive", String.valueOf(set_as_active)), "{}", null);
+    }
+
+    @Override
+    public String updateCertificate(String certificate_id, String new_status) {
+        return this.control("PUT", "/certificates/" + this.encode(certificate_id), this.params("newStatus", new_status), "{}", null);
+    }
+
+    @Override
+    public String deleteCertificate(String certificate_id) {
+        return this.control("DELETE", "/certificates/" + this.encode(certificate_id), null, null, null);
+    }
+
+    @Override
+    public String listCertificates() {
+        return this.control("GET", "/certificates", null, null, null);
+    }
+
+    @Override
+    public String getPolicy(String policy_name) {
+        return this.control("GET", "/policies/" + this.encode(policy_name), null, null, null);
+    }
+
+    @Override
+    public String createPolicy(String policy_name, String policy_document) {
+        HashMap<String,Object> body = new HashMap<>();
+        body.put("policyDocument", policy_document);
+        return this.control("POST", "/policies/" + this.encode(policy_name), null, this.m_json_generator.generateJson(body), null);
+    }
+
+    @Override
+    public String attachPrincipalPolicy(String policy_name, String principal) {
+        return this.control("PUT", "/principal-policies/" + this.encode(policy_name), null, "{}", this.header("x-amzn-iot-principal", principal));
+    }
+
+    @Override
+    public String detachPrincipalPolicy(String policy_name, String principal) {
+        return this.control("DELETE", "/principal-policies/" + this.encode(policy_name), null, null, this.header("x-amzn-iot-principal", principal));
+    }
+
+    @Override
+    public String attachThingPrincipal(String thing_name, String principal) {
+        return this.control("PUT", "/things/" + this.encode(thing_name) + "/principals", null, "{}", this.header("x-amzn-principal", principal));
+    }
+
+    @Override
+    public String detachThingPrincipal(String thing_name, String principal) {
+        return this.control("DELETE", "/things/" + this.encode(thing_name) + "/principals", null, null, this.header("x-amzn-principal", principal));
+    }
+
+    @Override
+    public String listThingPrincipals(String thing_name) {
+        return this.control("GET", "/things/" + this.encode(thing_name) + "/principals", null, null, null);
+    }
+
+    @Override
+    public String describeEndpoint() {
+        return this.control("GET", "/endpoint", null, null, null);
+    }
+
+    @Override
+    public String publish(String topic, String payload) {
+        String endpoint = this.dataEndpoint();
+        if (endpoint != null) {
+            return this.request(this.m_data_signer, endpoint, "POST", "/topics/" + this.encode(topic), this.params("qos", "0"), payload, null, null);
+        }
+        return null;
+    }
+
+    @Override
+    public String getThingShadow(String thing_name) {
+        String endpoint = this.dataEndpoint();
+        if (endpoint != null) {
+            return this.request(this.m_data_signer, endpoint, "GET", "/things/" + this.encode(thing_name) + "/shadow", null, null, null, null);
+        }
+        return null;
+    }
+
+    // get (or discover) the iot-data endpoint
+    private String dataEndpoint() {
+        String endpoint = this.m_data_endpoint;
+        if (endpoint == null) {
+            String json = this.control("GET", "/endpoint", this.params("endpointType", DATA_ENDPOINT_TYPE), null, null);
+            Map parsed = (json != null) ? this.m_json_parser.parseJson(json) : null;
+            if (parsed != null && parsed.get("endpointAddress") != null) {
+                endpoint = "https://" + (String) parsed.get("endpointAddress");
+                this.m_data_endpoint = endpoint;
+                this.errorLogger().info("AWSIoT(REST): Data endpoint: " + endpoint);
+            }
+            else {
+                this.errorLogger().warning("AWSIoT(REST): Unable to discover the iot-data endpoint");
+            }
+        }
+        return endpoint;
+    }
+
+    // control-plane request
+    private String control(String verb, String path, Map<String,String> params, String body, List<KeyValuePair> headers) {
+        return this.request(this.m_control_signer, this.m_control_endpoint, verb, path, params, body, (body != null) ? JSON_CONTENT_TYPE : null, headers);
+    }
+
+    // sign and send a request... returns the response body, EMPTY_RESPONSE or null on failure
+    private String request(AWSSigV4Signer signer, String endpoint, String verb, String path, Map<String,String> params, String body, String content_type, List<KeyValuePair> headers) {
+        String query = AWSSigV4Signer.canonicalQuery(params);
+        String url = endpoint + path + (query.length() > 0 ? "?" + query : "");
+        try {
+            // sign
+            ArrayList<KeyValuePair> call_headers = new ArrayList<>();
+            if (headers != null) {
+                call_headers.addAll(headers);
+            }
+            call_headers.addAll(signer.sign(verb, this.hostOf(endpoint), path, query, body, System.currentTimeMillis()));
+
+            // send
+            HttpTransportResponse response = this.m_http.httpsRequest(verb, url, null, body, content_type, call_headers);
+            if (response.ok() == true) {
+                String result = (response.body() != null) ? response.body().trim() : "";
+                return (result.length() > 0) ? result : EMPTY_RESPONSE;
+            }
+
+            // DEBUG
+            this.errorLogger().info("AWSIoT(REST): " + verb + " " + url + " CODE: " + response.code() + " RESPONSE: " + response.body());
+        }
+        catch (GeneralSecurityException | IllegalArgumentException ex) {
+            this.errorLogger().warning("AWSIoT(REST): Unable to sign request: " + verb + " " + url + ": " + ex.getMessage(), ex);
+        }
+        return null;
+    }
+
+    // host header value for an endpoint URL (port included if not the default)
+    private String hostOf(String endpoint) {
+        URI uri = URI.create(endpoint);
+        int port = uri.getPort();
+        if (port < 0 || (port == 443 && "https".equalsIgnoreCase(uri.getScheme())) || (port == 80 && "http".equalsIgnoreCase(uri.getScheme()))) {
+            return uri.getHost();
+        }
+        return uri.getHost() + ":" + port;
+    }
+
+    // URI encode a path label ("/" is encoded)
+    private String encode(String label) {
+        return AWSSigV4Signer.uriEncode(label != null ? label : "", true);
+    }
+
+    // single query parameter
+    private Map<String,String> params(String key, String value) {
+        TreeMap<String,String> params = new TreeMap<>();
+        params.put(key, value);
+        return params;
+    }
+
+    // single header
+    private List<KeyValuePair> header(String key, String value) {
+        ArrayList<KeyValuePair> headers = new ArrayList<>();
+        headers.add(new KeyValuePair(key, value));
+        return headers;
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * @file AWSSigV4Signer.java
+ * @brief AWS Signature Version 4 request signer
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.coordinator.processors.aws;
+
+import com.arm.pelion.bridge.core.KeyValuePair;
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * AWS Signature Version 4 signer (host and x-amz-date are signed). The derived signing key is cached per day so
+ * that each request costs two SHA-256 digests and one HMAC. Safe for concurrent use.
+ *
+ * @author Doug Anson
+ */
+public class AWSSigV4Signer {
+    private static final String ALGORITHM = "AWS4-HMAC-SHA256";
+    private static final String SIGNED_HEADERS = "host;x-amz-date";
+    private static final String TERMINATOR = "aws4_request";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private String m_access_key_id = null;
+    private String m_secret_access_key = null;
+    private String m_region = null;
+    private String m_service = null;
+
+    // cached signing key: {date, key}
+    private volatile Object[] m_signing_key = null;
+
+    // default constructor
+    public AWSSigV4Signer(String access_key_id, String secret_access_key, String region, String service) {
+        this.m_access_key_id = access_key_id;
+        this.m_secret_access_key = secret_access_key;
+        this.m_region = region;
+        this.m_service = service;
+    }
+
+    /**
+     * sign a request
+     * @param verb HTTP verb
+     * @param host host header value (including any non-default port)
+     * @param path request path (already URI encoded)
+     * @param query canonical query string (sorted, URI encoded... may be empty)
+     * @param payload request body (may be null)
+     * @param now_ms signing time
+     * @return the x-amz-date and Authorization headers to send
+     * @throws GeneralSecurityException
+     */
+    public List<KeyValuePair> sign(String verb, String host, String path, String query, String payload, long now_ms) throws GeneralSecurityException {
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd'T'HHmmss'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        String amz_date = format.format(new Date(now_ms));
+        String date = amz_date.substring(0, 8);
+        String scope = date + "/" + this.m_region + "/" + this.m_service + "/" + TERMINATOR;
+
+        // canonical request (non-S3 services encode the path segments again)
+        StringBuilder canonical = new StringBuilder(256);
+        canonical.append(verb.toUpperCase()).append('\n')
+                 .append(AWSSigV4Signer.uriEncode(path, false)).append('\n')
+                 .append(query != null ? query : "").append('\n')
+                 .append("host:").append(host).append('\n')
+                 .append("x-amz-date:").append(amz_date).append('\n')
+                 .append('\n')
+                 .append(SIGNED_HEADERS).append('\n')
+                 .append(AWSSigV4Signer.hex(AWSSigV4Signer.sha256(payload != null ? payload : "")));
+
+        // string to sign
+        String string_to_sign = ALGORITHM + "\n" + amz_date + "\n" + scope + "\n" + AWSSigV4Signer.hex(AWSSigV4Signer.sha256(canonical.toString()));
+        String signature = AWSSigV4Signer.hex(AWSSigV4Signer.hmac(this.signingKey(date), string_to_sign));
+
+        // headers
+        ArrayList<KeyValuePair> headers = new ArrayList<>();
+        headers.add(new KeyValuePair("X-Amz-Date", amz_date));
+        headers.add(new KeyValuePair("Authorization", ALGORITHM + " Credential=" + this.m_access_key_id + "/" + scope + ", SignedHeaders=" + SIGNED_HEADERS + ", Signature=" + signature));
+        return headers;
+    }
+
+    // get (or derive) the signing key for the given date
+    private byte[] signingKey(String date) throws GeneralSecurityException {
+        Object[] cached = this.m_signing_key;
+        if (cached != null && date.equals(cached[0])) {
+            return (byte[]) cached[1];
+        }
+        byte[] key = AWSSigV4Signer.hmac(AWSSigV4Signer.utf8("AWS4" + this.m_secret_access_key), date);
+        key = AWSSigV4Signer.hmac(key, this.m_region);
+        key = AWSSigV4Signer.hmac(key, this.m_service);
+        key = AWSSigV4Signer.hmac(key, TERMINATOR);
+        this.m_signing_key = new Object[] { date, key };
+        return key;
+    }
+
+    // create a canonical (sorted, encoded) query string
+    public static String canonicalQuery(Map<String,String> params) {
+        StringBuilder query = new StringBuilder();
+        if (params != null) {
+            for (Map.Entry<String,String> param : params.entrySet()) {
+                if (query.length() > 0) {
+                    query.append('&');
+                }
+                query.append(AWSSigV4Signer.uriEncode(param.getKey(), true)).append('=').append(AWSSigV4Signer.uriEncode(param.getValue(), true));
+            }
+        }
+        return query.toString();
+    }
+
+    // RFC 3986 URI encoding (unreserved characters are left as-is)
+    public static String uriEncode(String value, boolean encode_slash) {
+        StringBuilder encoded = new StringBuilder(value.length() + 16);
+        byte[] bytes = AWSSigV4Signer.utf8(value);
+        for (int i = 0; i < bytes.length; ++i) {
+            int c = bytes[i] & 0xff;
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '_' || c == '.' || c == '~' || (c == '/' && encode_slash == false)) {
+                encoded.append((char) c);
+            }
+            else {
+                encoded.append('%').append(Character.toUpperCase(HEX[c >> 4])).append(Character.toUpperCase(HEX[c & 0x0f]));
+            }
+        }
+        return encoded.toString();
+    }
+
+    // SHA-256 digest
+    private static byte[] sha256(String data) throws GeneralSecurityException {
+        return MessageDigest.getInstance("SHA-256").digest(AWSSigV4Signer.utf8(data));
+    }
+
+    // HMAC-SHA256
+    private static byte[] hmac(byte[] key, String data) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key, "HmacSHA256"));
+        return mac.doFinal(AWSSigV4Signer.utf8(data));
+    }
+
+    // lower case hex
+    private static String hex(byte[] data) {
+        char[] hex = new char[data.length * 2];
+        for (int i = 0; i < data.length; ++i) {
+            hex[i * 2] = HEX[(data[i] >> 4) & 0x0f];
+            hex[(i * 2) + 1] = HEX[data[i] & 0x0f];
+        }
+        return new String(hex);
+    }
+
+    // UTF-8 bytes
+    private static byte[] utf8(String data) {
+        try {
+            return data.getBytes("UTF-8");
+        }
+        catch (UnsupportedEncodingException ex) {
+            // UTF-8 is always supported
+            return data.getBytes();
+        }
+    }
+}
@@ -25,6 +25,7 @@ package com.arm.pelion.bridge.coordinator.processors.aws.http;
 
 import com.arm.pelion.bridge.coordinator.processors.aws.AWSIoTDeviceManager;
 import com.arm.pelion.bridge.coordinator.processors.arm.GenericConnectablePeerProcessor;
+import com.arm.pelion.bridge.coordinator.processors.core.NotificationEvent;
 import com.arm.pelion.bridge.coordinator.Orchestrator;
 import com.arm.pelion.bridge.coordinator.processors.arm.PelionProcessor;
 import com.arm.pelion.bridge.coordinator.processors.core.HTTPDeviceListener;
@@ -226,19 +227,19 @@ public class AWSIoTProcessor extends GenericConnectablePeerProcessor implements
     
     // OVERRIDE: process a notification/observation in AWSIoT
     @Override
-    public void processNotification(Map data) {
+    public void processNotification(NotificationEvent notification) {
         // DEBUG
         //this.errorLogger().info("processIncomingDeviceServerMessage(AWSIoT)...");
 
-        // get the list of parsed notifications
-        List notifications = (List) data.get("notifications");
-        for (int i = 0; notifications != null && i < notifications.size(); ++i) {
-            // we have to process the payload... this may be dependent on being a string core type... 
-            Map notification = (Map) notifications.get(i);
+        // get the path
+        String path = notification.path();
 
-            // decode the Payload...
-            String b64_coap_payload = (String) notification.get("payload");
-            String decoded_coap_payload = Utils.decodeCoAPPayload(b64_coap_payload);
+        // single-pass transform (if enabled for this peer)
+        String message = this.transformNotification(notification);
+        if (message == null) {
+            // legacy path: work on a Map copy of the notification
+            Map notification_map = notification.toMap();
+            String decoded_coap_payload = notification.decodedPayload();
 
             // DEBUG
             //this.errorLogger().info("AWSIoT(HTTP): Decoded Payload: " + decoded_coap_payload);
@@ -246,37 +247,34 @@ public class AWSIoTProcessor extends GenericConnectablePeerProcessor implements
             Map json_parsed = this.tryJSONParse(decoded_coap_payload);
             if (json_parsed != null && json_parsed.isEmpty() == false) {
                 // add in a JSON object payload value directly... 
-                notification.put("value", Utils.retypeMap(json_parsed, this.fundamentalTypeDecoder()));             // its JSON (flat...)                                                   // its JSON 
+                notification_map.put("value", Utils.retypeMap(json_parsed, this.fundamentalTypeDecoder()));             // its JSON (flat...)                                                   // its JSON 
             }
             else {
                 // add in a decoded payload value as a fundamental type...
-                notification.put("value", this.fundamentalTypeDecoder().getFundamentalValue(decoded_coap_payload)); // its a Float, Integer, or String
+                notification_map.put("value", this.fundamentalTypeDecoder().getFundamentalValue(decoded_coap_payload)); // its a Float, Integer, or String
             }
 
-            // get the path
-            String path = Utils.valueFromValidKey(notification, "path", "uri");
-
             // we will send the raw CoAP JSON... AWSIoT can parse that... 
-            String coap_raw_json = this.jsonGenerator().generateJson(notification);
+            String coap_raw_json = this.jsonGenerator().generateJson(notification_map);
 
             // strip off []...
-            String message = this.stripArrayChars(coap_raw_json);
-            
+            message = this.stripArrayChars(coap_raw_json);
+        
             // unified format option
             message = this.convertToUnifiedFormat(message);
+        }
 
-            // get our endpoint name
-            String ep_name = Utils.valueFromValidKey(notification, "id", "ep");
+        // get our endpoint name
+        String ep_name = notification.endpointName();
 
-            // DEBUG
-            this.errorLogger().info("AWSIoT(HTTP): CoAP notification (STR): " + message);
+        // DEBUG
+        this.errorLogger().info("AWSIoT(HTTP): CoAP notification (STR): " + message);
 
-            // create a fudged topic
-            String fudged_topic = this.createFudgedTopic(ep_name);
-            
-            // publish
-            this.sendMessage(fudged_topic,message);
-        }
+        // create a fudged topic
+        String fudged_topic = this.createFudgedTopic(ep_name);
+        
+        // publish
+        this.sendMessage(fudged_topic,message);
     }
     
     // send the API Response back through the topic
@@ -556,7 +554,7 @@ public class AWSIoTProcessor extends GenericConnectablePeerProcessor implements
     }
     
     @Override
-    public void pollAndProcessDeviceMessages(HttpTransport http, String ep_name) {
+    public boolean pollAndProcessDeviceMessages(HttpTransport http, String ep_name) {
         // Get the next message
         String message = this.getNextMessage(http, ep_name);
         if (message != null && message.length() > 0) {
@@ -565,18 +563,20 @@ public class AWSIoTProcessor extends GenericConnectablePeerProcessor implements
             
             // parse and process the configuration change request message
             this.onMessageReceive(ep_name, message);
+            return true;
         }
         else {
             // No message to process... OK
             this.errorLogger().info("AWSIoT(HTTP): EP: " + ep_name + " No command request to process. (OK)");
         }
+        return false;
     }
     
     // create our HTTP-based device listener
     private void createDeviceListener(String ep_name) {
         if (ep_name != null && ep_name.length() > 0) {
             if (this.m_device_listeners.get(ep_name) == null) {
-                // create a listner (since AWSIoT uses CLI, we dont have to supply a HttpTranport...)
+                // create a listner (since AWSIoT uses its API client, we dont have to supply a HttpTranport...)
                 this.m_device_listeners.put(ep_name, new HTTPDeviceListener(this,null,ep_name));
             }
         }
@@ -607,38 +607,24 @@ public class AWSIoTProcessor extends GenericConnectablePeerProcessor implements
         return cust_topic;
     }
     
-    // publish via AWS CLI
+    // publish via the AWS IoT API client
     private boolean publish(String ep_name,String payload) {
         String topic = this.createNotificationTopicForEndpoint(ep_name);
-        String args = "iot-data publish --topic " + topic + " --payload " + payload;
-        String result = Utils.awsCLI(this.errorLogger(), args);
+        String result = this.m_device_manager.awsClient().publish(topic, payload);
         
         // DEBUG
-        this.errorLogger().info("AWSIoT(publish): ARGS: " + args + " RESULT: " + result);
+        this.errorLogger().info("AWSIoT(publish): TOPIC: " + topic + " RESULT: " + result);
         
-        // look at the result - we should have an error code to check...
-        if (result != null && result.length() > 0 && result.contains("status") == true) {
-            Map parsed = this.tryJSONParse(result);
-            if (parsed != null) {
-                int status = (Integer)parsed.get("status");
-                if (status == 0) {
-                    // success!
-                    return true;
-                }
-            }
-        }
-        
-        // return failure
-        return false;
+        // any result is a success (failures are null)
+        return (result != null && result.length() > 0);
     }
     
-    // query via AWS CLI
+    // query via the AWS IoT API client
     private String query(String ep_name) {
-        String args = "iot-data get-thing-shadow --thing-name " + ep_name;
-        String result = Utils.awsCLI(this.errorLogger(), args);
+        String result = this.m_device_manager.awsClient().getThingShadow(ep_name);
         
         // DEBUG
-        this.errorLogger().warning("AWSIoT(query): ARGS: " + args + " RESULT: " + result);
+        this.errorLogger().warning("AWSIoT(query): EP: " + ep_name + " RESULT: " + result);
         
         // look at the result - we should have an error code to check...
         if (result != null && result.length() > 0) {
@@ -24,6 +24,7 @@ package com.arm.pelion.bridge.coordinator.processors.aws.mqtt;
 
 import com.arm.pelion.bridge.coordinator.processors.aws.AWSIoTDeviceManager;
 import com.arm.pelion.bridge.coordinator.processors.arm.GenericConnectablePeerProcessor;
+import com.arm.pelion.bridge.coordinator.processors.core.NotificationEvent;
 import com.arm.pelion.bridge.coordinator.Orchestrator;
 import com.arm.pelion.bridge.coordinator.processors.arm.PelionProcessor;
 import com.arm.pelion.bridge.core.ApiResponse;
@@ -254,20 +255,26 @@ public class AWSIoTProcessor extends GenericConnectablePeerProcessor implements
     
     // OVERRIDE: process a notification/observation in AWSIoT
     @Override
-    public void processNotification(Map data) {
+    public void processNotification(NotificationEvent notification) {
         if (this.m_configured == true) {
             // DEBUG
             //this.errorLogger().info("processIncomingDeviceServerMessage(AWSIoT)...");
 
-            // get the list of parsed notifications
-            List notifications = (List) data.get("notifications");
-            for (int i = 0; notifications != null && i < notifications.size(); ++i) {
-                // we have to process the payload... this may be dependent on being a string core type... 
-                Map notification = (Map) notifications.get(i);
+            // get the path
+            String path = notification.path();
 
-                // decode the Payload...
-                String b64_coap_payload = (String) notification.get("payload");
-                String decoded_coap_payload = Utils.decodeCoAPPayload(b64_coap_payload);
+            // get our endpoint name
+            String ep_name = notification.endpointName();
+
+            // get our endpoint type
+            String ep_type = this.getEndpointTypeFromEndpointName(ep_name);
+
+            // single-pass transform into a coap/device packet (if enabled for this peer)
+            String aws_iot_gw_coap_json = this.transformNotification(notification);
+            if (aws_iot_gw_coap_json == null) {
+                // legacy path: work on a Map copy of the notification
+                Map notification_map = notification.toMap();
+                String decoded_coap_payload = notification.decodedPayload();
 
                 // DEBUG
                 //this.errorLogger().info("AWSIoT(MQTT): Decoded Payload: " + decoded_coap_payload);
@@ -275,52 +282,43 @@ public class AWSIoTProcessor extends GenericConnectablePeerProcessor implements
                 Map json_parsed = this.tryJSONParse(decoded_coap_payload);
                 if (json_parsed != null && json_parsed.isEmpty() == false) {
                     // add in a JSON object payload value directly... 
-                    notification.put("value", Utils.retypeMap(json_parsed, this.fundamentalTypeDecoder()));             // its JSON (flat...)                                                   // its JSON 
+                    notification_map.put("value", Utils.retypeMap(json_parsed, this.fundamentalTypeDecoder()));             // its JSON (flat...)                                                   // its JSON 
                 }
                 else {
                     // add in a decoded payload value as a fundamental type...
-                    notification.put("value", this.fundamentalTypeDecoder().getFundamentalValue(decoded_coap_payload)); // its a Float, Integer, or String
+                    notification_map.put("value", this.fundamentalTypeDecoder().getFundamentalValue(decoded_coap_payload)); // its a Float, Integer, or String
                 }
 
-                // get the path
-                String path = Utils.valueFromValidKey(notification, "path", "uri");
-
                 // we will send the raw CoAP JSON... AWSIoT can parse that... 
-                String coap_raw_json = this.jsonGenerator().generateJson(notification);
+                String coap_raw_json = this.jsonGenerator().generateJson(notification_map);
 
                 // strip off []...
                 String coap_json_stripped = this.stripArrayChars(coap_raw_json);
 
-                // get our endpoint name
-                String ep_name = Utils.valueFromValidKey(notification, "id", "ep");
-
-                // get our endpoint type
-                String ep_type = this.getEndpointTypeFromEndpointName(ep_name);
-
                 // encapsulate into a coap/device packet...
-                String aws_iot_gw_coap_json = this.convertToUnifiedFormat(coap_json_stripped);
+                aws_iot_gw_coap_json = this.convertToUnifiedFormat(coap_json_stripped);
+            }
 
-                // DEBUG
-                this.errorLogger().info("AWSIoT(MQTT): CoAP notification (STR): " + aws_iot_gw_coap_json);
+            // DEBUG
+            this.errorLogger().info("AWSIoT(MQTT): CoAP notification (STR): " + aws_iot_gw_coap_json);
 
-                // send to AWSIoT...
-                if (this.mqtt(ep_name) != null) {
-                    String topic = this.customizeTopic(this.m_aws_iot_observe_notification_topic, ep_name, ep_type) + path;
-                    boolean status = this.mqtt(ep_name).sendMessage(topic, aws_iot_gw_coap_json, QoS.AT_MOST_ONCE);
-                    if (status == true) {
-                        // not connected
-                        this.errorLogger().info("AWSIoT(MQTT): CoAP notification sent. SUCCESS");
-                    }
-                    else {
-                        // send failed
-                        this.errorLogger().warning("AWSIoT(MQTT): CoAP notification not sent. SEND FAILED");
-                    }
+            // send to AWSIoT...
+            if (this.mqtt(ep_name) != null) {
+                String topic = this.customizeTopic(this.m_aws_iot_observe_notification_topic, ep_name, ep_type) + path;
+                boolean status = this.mqtt(ep_name).sendMessage(topic, aws_iot_gw_coap_json, QoS.AT_MOST_ONCE);
+                if (status == true) {
+                    // not connected
+                    this.errorLogger().info("AWSIoT(MQTT): CoAP notification sent. SUCCESS");
                 }
                 else {
-                    // not connected
-                    this.errorLogger().info("AWSIoT(MQTT): CoAP notification not sent. NOT CONNECTED");
+                    // send failed
+                    this.errorLogger().warning("AWSIoT(MQTT): CoAP notification not sent. SEND FAILED");
                 }
             }
+            else {
+                // not connected
+                this.errorLogger().info("AWSIoT(MQTT): CoAP notification not sent. NOT CONNECTED");
+            }
         }
         else {
             // unconfigured
@@ -0,0 +1,145 @@
+/**
+ * @file AsyncResponseEvent.java
+ * @brief Typed Pelion async-response event
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.coordinator.processors.core;
+
+import com.arm.pelion.bridge.core.Utils;
+import com.fasterxml.jackson.core.JsonParser;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Pelion async-response event. Only the peer holding the matching request record needs the legacy Map form.
+ *
+ * @author Doug Anson
+ */
+public class AsyncResponseEvent extends PelionEvent {
+    private String m_id = null;
+    private Object m_status = null;
+    private String m_payload = null;
+    private volatile String m_decoded_payload = null;
+    private volatile String m_ep_name = null;
+
+    // read from a streaming parser positioned on START_OBJECT
+    AsyncResponseEvent(JsonParser parser) throws IOException {
+        super(ASYNC_RESPONSES);
+        this.read(parser);
+    }
+
+    // create from a legacy (parsed) async-response entry
+    public AsyncResponseEvent(Map response) {
+        super(ASYNC_RESPONSES);
+        this.load(response);
+    }
+
+    // async-responses are routed by the endpoint of their request (by their ID if the request is not ours)
+    @Override
+    public String endpointName() {
+        String ep_name = this.m_ep_name;
+        if (ep_name == null) {
+            ep_name = (String) this.get("ep");
+        }
+        return (ep_name != null) ? ep_name : this.m_id;
+    }
+    
+    // set the endpoint of the matching request
+    public void setEndpointName(String ep_name) {
+        this.m_ep_name = ep_name;
+    }
+
+    // async-response ID
+    public String id() {
+        return this.m_id;
+    }
+
+    // status (as received)
+    public Object status() {
+        return this.m_status;
+    }
+
+    // Base64 encoded CoAP payload
+    public String payload() {
+        return this.m_payload;
+    }
+
+    // decoded CoAP payload (decoded on first use)
+    public String decodedPayload() {
+        String decoded = this.m_decoded_payload;
+        if (decoded == null && this.m_payload != null) {
+            decoded = Utils.decodeCoAPPayload(this.m_payload);
+            this.m_decoded_payload = decoded;
+        }
+        return decoded;
+    }
+
+    @Override
+    protected Object field(String key) {
+        switch (key) {
+            case "id":
+                return this.m_id;
+            case "status":
+                return this.m_status;
+            case "payload":
+                return this.m_payload;
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    protected boolean setField(String key, Object value) {
+        if (value == null) {
+            // kept as an extra (preserves explicit nulls)
+            return false;
+        }
+        if ("status".equals(key)) {
+            this.m_status = value;
+            return true;
+        }
+        if ((value instanceof String) == false) {
+            return false;
+        }
+        switch (key) {
+            case "id":
+                this.m_id = (String) value;
+                return true;
+            case "payload":
+                this.m_payload = (String) value;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    protected void putFields(Map<String,Object> map) {
+        if (this.m_id != null) {
+            map.put("id", this.m_id);
+        }
+        if (this.m_status != null) {
+            map.put("status", this.m_status);
+        }
+        if (this.m_payload != null) {
+            map.put("payload", this.m_payload);
+        }
+    }
+}
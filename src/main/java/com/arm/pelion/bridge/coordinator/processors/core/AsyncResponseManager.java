@@ -28,21 +28,103 @@ import com.arm.pelion.bridge.coordinator.processors.interfaces.GenericSender;
 import com.arm.pelion.bridge.core.ErrorLogger;
 import com.arm.pelion.bridge.json.JSONParser;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * async response manager handling async responses from Pelion
+ * async response manager handling async responses from Pelion. Pending requests are kept in a concurrent
+ * correlation table (indexed by endpoint too) and expire after a TTL... the requesting peer is notified of the timeout.
+ * A response can arrive before its request has been recorded (the async ID is only known once the request returns),
+ * so unmatched responses are held briefly and completed when their record arrives.
  *
  * @author Doug Anson
  */
-public class AsyncResponseManager {
+public class AsyncResponseManager implements Runnable {
+    // defaults
+    private static final int DEFAULT_TTL_MS = 300000;                   // 5 minutes
+    private static final int DEFAULT_MAX_PENDING = 10000;
+    private static final int DEFAULT_SWEEP_INTERVAL_MS = 5000;
+    private static final int DEFAULT_UNMATCHED_HOLD_MS = 10000;
+    private static final int MAX_UNMATCHED = 1000;
+    
+    // timeout reasons
+    public static final String REASON_EXPIRED = "timeout";
+    public static final String REASON_EVICTED = "evicted";
+    public static final String REASON_DEREGISTERED = "deregistered";
 
-    private final HashMap<String, HashMap<String, Object>> m_responses;
+    private final ConcurrentHashMap<String, AsyncResponseRecord> m_responses;
+    private final ConcurrentHashMap<String, Set<String>> m_responses_by_endpoint;
+    private final ConcurrentLinkedQueue<Expiry> m_expiration_queue;                  // insertion (== expiration) order
+    private final ConcurrentHashMap<String, UnmatchedResponse> m_unmatched;            // responses that beat their record
     private final Orchestrator m_manager;
+    private int m_ttl_ms = DEFAULT_TTL_MS;
+    private int m_max_pending = DEFAULT_MAX_PENDING;
+    private int m_sweep_interval_ms = DEFAULT_SWEEP_INTERVAL_MS;
+    private int m_unmatched_hold_ms = DEFAULT_UNMATCHED_HOLD_MS;
+    private Thread m_sweeper = null;
+    
+    // statistics
+    private final AtomicLong m_num_recorded = new AtomicLong(0);
+    private final AtomicLong m_num_completed = new AtomicLong(0);
+    private final AtomicLong m_num_expired = new AtomicLong(0);
+    private final AtomicLong m_num_evicted = new AtomicLong(0);
+    private final AtomicLong m_num_purged = new AtomicLong(0);
+    private final AtomicLong m_num_late_matched = new AtomicLong(0);
+    private final AtomicLong m_num_unmatched = new AtomicLong(0);
+
+    // expiration queue entry (just the ID and deadline... completed records are not retained by the queue)
+    private static class Expiry {
+        private final String m_id;
+        private final long m_deadline_ms;
+
+        Expiry(AsyncResponseRecord record) {
+            this.m_id = record.id();
+            this.m_deadline_ms = record.expiresAt();
+        }
+    }
+    
+    // a response held until its record arrives
+    private static class UnmatchedResponse {
+        private final AsyncResponseEvent m_response;
+        private final long m_deadline_ms;
+
+        UnmatchedResponse(AsyncResponseEvent response, long deadline_ms) {
+            this.m_response = response;
+            this.m_deadline_ms = deadline_ms;
+        }
+    }
 
     public AsyncResponseManager(Orchestrator manager) {
         this.m_manager = manager;
-        this.m_responses = new HashMap<>();
+        this.m_responses = new ConcurrentHashMap<>();
+        this.m_responses_by_endpoint = new ConcurrentHashMap<>();
+        this.m_expiration_queue = new ConcurrentLinkedQueue<>();
+        this.m_unmatched = new ConcurrentHashMap<>();
+        
+        // TTL, max pending and sweep interval
+        this.m_ttl_ms = this.manager().preferences().intValueOf("async_response_ttl_ms");
+        if (this.m_ttl_ms <= 0) {
+            this.m_ttl_ms = DEFAULT_TTL_MS;
+        }
+        this.m_max_pending = this.manager().preferences().intValueOf("async_response_max_pending");
+        if (this.m_max_pending <= 0) {
+            this.m_max_pending = DEFAULT_MAX_PENDING;
+        }
+        this.m_sweep_interval_ms = this.manager().preferences().intValueOf("async_response_sweep_ms");
+        if (this.m_sweep_interval_ms <= 0) {
+            this.m_sweep_interval_ms = DEFAULT_SWEEP_INTERVAL_MS;
+        }
+        this.m_unmatched_hold_ms = this.manager().preferences().intValueOf("async_response_unmatched_hold_ms");
+        if (this.m_unmatched_hold_ms <= 0) {
+            this.m_unmatched_hold_ms = DEFAULT_UNMATCHED_HOLD_MS;
+        }
+        
+        // let the orchestrator find the endpoint of our pending requests
+        manager.registerAsyncResponseManager(this);
     }
 
     // get the error logger
@@ -59,27 +141,18 @@ public class AsyncResponseManager {
     private String id(Map response) {
         return (String) response.get("id");
     }
-
-    // do we have a recording for a given AsyncResponse?
-    private boolean haveRecordForAsyncResponse(String id) {
-        return (this.m_responses.containsKey(id) == true);
-    }
     
     // get the async-response for a given ID
-    private Map<String,Object> getRecordForAsyncResponse(String id) {
-        Map<String,Object> record = null;
-        if (this.haveRecordForAsyncResponse(id)) {
-            record = this.m_responses.get(id);
-        }
-        return record;
+    private AsyncResponseRecord getRecordForAsyncResponse(String id) {
+        return (id != null) ? this.m_responses.get(id) : null;
     }
     
     // extract the URI from the async-id
     public String getURIFromAsyncID(String id) {
         String uri = null;
-        Map<String,Object> record = this.getRecordForAsyncResponse(id);
+        AsyncResponseRecord record = this.getRecordForAsyncResponse(id);
         if (record != null) {
-            uri = (String)record.get("uri");
+            uri = record.uri();
         }
         
         // DEBUG
@@ -89,12 +162,18 @@ public class AsyncResponseManager {
         return uri;
     }
     
+    // endpoint of a pending request (null if not ours)
+    public String endpointNameFor(String id) {
+        AsyncResponseRecord record = this.getRecordForAsyncResponse(id);
+        return (record != null) ? record.endpointName() : null;
+    }
+    
     // get the CoAP Endpoint Name from the async record
     public String getEndpointNameFromAsyncID(String id) {
         String name = null;
-        Map<String,Object> record = this.getRecordForAsyncResponse(id);
+        AsyncResponseRecord record = this.getRecordForAsyncResponse(id);
         if (record != null) {
-            name = (String)record.get("ep_name");
+            name = record.endpointName();
         }
         
         // DEBUG
@@ -119,56 +198,32 @@ public class AsyncResponseManager {
         // we have to catch exceptions from the JSON parser... 
         try {
             if (response != null) {
-                // create a new AsyncResponse record
-                HashMap<String, Object> record = new HashMap<>();
-                
                 // parse the response
                 JSONParser parser = this.manager().getJSONParser();
                 Map parsed = parser.parseJson(response);               
                 if (parsed != null && (String) parsed.get("async-response-id") != null) {
-                    // add it to the record too
-                    record.put("response_map", parsed);
-                    
-                    // fill in the record with other good convenient things too... 
-                    if (coap_verb != null) {
-                        record.put("verb", coap_verb);
-                    }
-                    if (response != null) {
-                        record.put("response", response);
-                    }
-                    if (sender != null) {
-                        record.put("sender", sender);
-                    }
-                    if (proc != null) {
-                        record.put("proc", proc);
-                    }
-                    if (response_topic != null) {
-                        record.put("response_topic", response_topic);
-                    }
-                    if (reply_topic != null) {
-                        record.put("reply_topic", reply_topic);
-                    }
-                    if (message != null) {
-                        record.put("message", message);
-                    }
-                    if (ep_name != null) {
-                        record.put("ep_name", ep_name);
-                    }
-                    if (uri != null) {
-                        record.put("uri", uri);
-                    }
-                    if (processor != null) {
-                        record.put("processor", processor);
-                    }
-                    if (orig_endpoint != null) {
-                        record.put("orig_endpoint", orig_endpoint);
-                    }
+                    // create a new AsyncResponse record
+                    String id = (String) parsed.get("async-response-id");
+                    AsyncResponseRecord record = new AsyncResponseRecord(id, coap_verb, response, parsed, sender, proc, response_topic, reply_topic, message, ep_name, uri, processor, orig_endpoint, System.currentTimeMillis() + this.m_ttl_ms);
                                         
-                    // add the record to our list
-                    this.m_responses.put((String) parsed.get("async-response-id"), record);
+                    // add the record to our table (and index it by endpoint)
+                    AsyncResponseRecord replaced = this.m_responses.put(id, record);
+                    if (replaced != null && replaced.claim() == true) {
+                        this.unindex(replaced);
+                    }
+                    this.index(record);
+                    this.m_expiration_queue.add(new Expiry(record));
+                    this.m_num_recorded.incrementAndGet();
 
                     // DEBUG
-                    this.errorLogger().info("recordAsyncResponse: Adding Record: ID:" + (String) parsed.get("async-response-id") + " RECORD: " + record);
+                    this.errorLogger().info("recordAsyncResponse: Adding Record: ID:" + id + " RECORD: " + record);
+                    
+                    // enforce our size limit and make sure we are sweeping
+                    this.evictOverflow();
+                    this.startSweeper();
+                    
+                    // the response may already have arrived
+                    this.completeUnmatched(id);
                 }
                 else {
                     // WARNING: no async-response-id found in this message... so ignore it.
@@ -191,103 +246,350 @@ public class AsyncResponseManager {
         // get our AsyncResponse ID
         String id = this.id(response);
 
-        // do we have a record for this AsyncResponse?
-        if (this.haveRecordForAsyncResponse(id) == true) {
-            // Get the record
-            HashMap<String, Object> record = this.m_responses.get(id);
-
-            // call GenericSender if registered...
-            GenericSender sender = (GenericSender) record.get("sender");
-            if (sender != null) {
-                // GenericSender responder registered for this.. to pull the other values.. 
-                String response_topic = (String) record.get("response_topic");
-                PeerProcessor proc = (PeerProcessor) record.get("proc");
-                String verb = (String) record.get("verb");
+        // do we have a (still pending) record for this AsyncResponse?
+        AsyncResponseRecord record = this.getRecordForAsyncResponse(id);
+        if (record != null && record.claim() == true) {
+            this.completeAsyncResponse(record, id, response);
+        }
+        else if (record == null) {
+            // no record (yet)... hold it briefly in case its request is still being recorded
+            this.holdUnmatched(id, new AsyncResponseEvent(response));
+        }
+    }
+    
+    // process AsyncResponse (typed... the Map form is only created if we hold the matching record)
+    public void processAsyncResponse(AsyncResponseEvent response) {
+        // get our AsyncResponse ID
+        String id = response.id();
 
-                // construct the reply message value
-                String reply = proc.formatAsyncResponseAsReply(response, verb);
-                if (reply != null) {
-                    // Get the reply GenericSender "to"...default is the response topic
-                    String target_topic = response_topic;
+        // do we have a (still pending) record for this AsyncResponse?
+        AsyncResponseRecord record = this.getRecordForAsyncResponse(id);
+        if (record != null && record.claim() == true) {
+            this.completeAsyncResponse(record, id, response.toMap());
+        }
+        else if (record == null) {
+            // no record (yet)... hold it briefly in case its request is still being recorded
+            this.holdUnmatched(id, response);
+        }
+    }
+    
+    // hold a response whose record has not arrived (yet)
+    private void holdUnmatched(String id, AsyncResponseEvent response) {
+        if (id == null || this.m_unmatched.size() >= MAX_UNMATCHED) {
+            // no record of this response... so just ignore it.. 
+            this.errorLogger().info("processAsyncResponse: No AsyncResponse record for ID: " + id + " Ignoring.");
+            return;
+        }
+        this.m_unmatched.put(id, new UnmatchedResponse(response, System.currentTimeMillis() + this.m_unmatched_hold_ms));
+        this.startSweeper();
+        
+        // DEBUG
+        this.errorLogger().info("processAsyncResponse: No AsyncResponse record (yet) for ID: " + id + ". Holding for " + this.m_unmatched_hold_ms + "ms");
+        
+        // the record may have been added meanwhile
+        this.completeUnmatched(id);
+    }
+    
+    // complete a held response now that its record exists
+    private void completeUnmatched(String id) {
+        if (this.m_unmatched.isEmpty() == false) {
+            AsyncResponseRecord record = this.getRecordForAsyncResponse(id);
+            if (record != null) {
+                UnmatchedResponse held = this.m_unmatched.remove(id);
+                if (held != null && record.claim() == true) {
+                    this.m_num_late_matched.incrementAndGet();
+                    this.completeAsyncResponse(record, id, held.m_response.toMap());
+                }
+            }
+        }
+    }
+    
+    // drop held responses whose record never arrived
+    private int expireUnmatched(long now) {
+        int expired = 0;
+        for (Map.Entry<String,UnmatchedResponse> entry : this.m_unmatched.entrySet()) {
+            if (entry.getValue().m_deadline_ms <= now && this.m_unmatched.remove(entry.getKey(), entry.getValue()) == true) {
+                this.m_num_unmatched.incrementAndGet();
+                ++expired;
+            }
+        }
+        return expired;
+    }
+    
+    // complete a claimed AsyncResponse: reply to the requester and/or invoke its processor
+    private void completeAsyncResponse(AsyncResponseRecord record, String id, Map response) {
+        // call GenericSender if registered...
+        GenericSender sender = record.sender();
+        if (sender != null) {
+            // GenericSender responder registered for this.. to pull the other values.. 
+            PeerProcessor proc = record.proc();
+            String verb = record.verb();
 
-                    // If the reply topic is different that the response topic... it takes preference...
-                    if (record.get("reply_topic") != null) {
-                        target_topic = (String) record.get("reply_topic");
-                    }
+            // construct the reply message value
+            String reply = proc.formatAsyncResponseAsReply(response, verb);
+            if (reply != null) {
+                // Get the reply GenericSender "to"...the reply topic takes preference over the response topic
+                String target_topic = record.targetTopic();
 
-                    // DEBUG
-                    this.errorLogger().info("processAsyncResponse: sending reply(" + verb + ") to AsyncResponse: ID: " + id + " Topic: " + target_topic + " Message: " + reply);
+                // DEBUG
+                this.errorLogger().info("processAsyncResponse: sending reply(" + verb + ") to AsyncResponse: ID: " + id + " Topic: " + target_topic + " Message: " + reply);
 
-                    // send the reply...
-                    boolean sent = sender.sendMessage(target_topic, reply);
-                    if (sent) {
-                        // ok
-                        this.errorLogger().info("processAsyncResponse: sendMessage(): SUCCESS");
-                    }
-                    else {
-                        // failure
-                        this.errorLogger().warning("processAsyncResponse: sendMessage(): FAILURE");
-                    }
-                    
-                    // now optionally deal with the draft mqtt formatting if enabled...
-                    try {
-                        // also publish per draft MQTT formatting, if enabled
-                        if (proc.draftMQTTFormatsEnabled() == true) {
-                            // convert the reply topic to match the draft MQTT formatting
-                            String draft_reply_topic = proc.createDraftFormatReplyTopic(record);
-                            if (draft_reply_topic != null) {
-                                // convert the reply to the draft MQTT format
-                                byte[] draft_reply_payload = proc.createDraftFormatReplyPayload(record,reply);
-                                if (draft_reply_payload != null) {
-                                    // DEBUG
-                                    this.errorLogger().info("processAsyncResponse(DRAFT FORMAT): sending reply(" + verb + ") to AsyncResponse: ID: " + id + " Topic: " + draft_reply_topic + " Message: " + proc.cborToJson(draft_reply_payload));
+                // send the reply...
+                boolean sent = sender.sendMessage(target_topic, reply);
+                if (sent) {
+                    // ok
+                    this.errorLogger().info("processAsyncResponse: sendMessage(): SUCCESS");
+                }
+                else {
+                    // failure
+                    this.errorLogger().warning("processAsyncResponse: sendMessage(): FAILURE");
+                }
+                
+                // now optionally deal with the draft mqtt formatting if enabled...
+                try {
+                    // also publish per draft MQTT formatting, if enabled
+                    if (proc.draftMQTTFormatsEnabled() == true) {
+                        // convert the reply topic to match the draft MQTT formatting
+                        Map<String,Object> record_map = record.toMap();
+                        String draft_reply_topic = proc.createDraftFormatReplyTopic(record_map);
+                        if (draft_reply_topic != null) {
+                            // convert the reply to the draft MQTT format
+                            byte[] draft_reply_payload = proc.createDraftFormatReplyPayload(record_map,reply);
+                            if (draft_reply_payload != null) {
+                                // DEBUG
+                                this.errorLogger().info("processAsyncResponse(DRAFT FORMAT): sending reply(" + verb + ") to AsyncResponse: ID: " + id + " Topic: " + draft_reply_topic + " Message: " + proc.cborToJson(draft_reply_payload));
 
-                                    // send the reply...
-                                    sent = sender.sendMessage(draft_reply_topic, draft_reply_payload);
-                                    if (sent) {
-                                        // ok
-                                        this.errorLogger().info("processAsyncResponse: sendMessage(DRAFT FORMAT): SUCCESS");
-                                    }
-                                    else {
-                                        // failure
-                                        this.errorLogger().warning("processAsyncResponse: sendMessage(DRAFT FORMAT): FAILURE");
-                                    }
+                                // send the reply...
+                                sent = sender.sendMessage(draft_reply_topic, draft_reply_payload);
+                                if (sent) {
+                                    // ok
+                                    this.errorLogger().info("processAsyncResponse: sendMessage(DRAFT FORMAT): SUCCESS");
+                                }
+                                else {
+                                    // failure
+                                    this.errorLogger().warning("processAsyncResponse: sendMessage(DRAFT FORMAT): FAILURE");
                                 }
                             }
                         }
                     }
-                    catch (Exception ex) {
-                        this.errorLogger().warning("processAsyncResponse: Exception: " + ex.getMessage(),ex);
-                    }
                 }
-                else {
-                    // DEBUG
-                    this.errorLogger().info("processAsyncResponse: not sending reply(" + verb + ") to AsyncResponse: ID: " + id + " (OK).");
+                catch (Exception ex) {
+                    this.errorLogger().warning("processAsyncResponse: Exception: " + ex.getMessage(),ex);
                 }
             }
-            
-            // call AsyncResponseProcessor if registered....
-            AsyncResponseProcessor processor = (AsyncResponseProcessor) record.get("processor");
-            if (processor != null) {
-                // create the augmented record
-                response.put("orig_record", record);
-
+            else {
                 // DEBUG
-                this.errorLogger().info("processAsyncResponse: Calling registered AsyncResponseProcessor for ID: " + id);
-
-                // invoke the processor
-                processor.processAsyncResponse(response);
+                this.errorLogger().info("processAsyncResponse: not sending reply(" + verb + ") to AsyncResponse: ID: " + id + " (OK).");
             }
+        }
+        
+        // call AsyncResponseProcessor if registered....
+        AsyncResponseProcessor processor = record.processor();
+        if (processor != null) {
+            // create the augmented record
+            response.put("orig_record", record.toMap());
 
             // DEBUG
-            this.errorLogger().info("processAsyncResponse: Removing record for AsyncResponse: ID: " + id);
+            this.errorLogger().info("processAsyncResponse: Calling registered AsyncResponseProcessor for ID: " + id);
 
-            // finally delete the record
-            this.m_responses.remove(id);
+            // invoke the processor
+            processor.processAsyncResponse(response);
+        }
+
+        // DEBUG
+        this.errorLogger().info("processAsyncResponse: Removing record for AsyncResponse: ID: " + id);
+
+        // finally delete the record
+        this.removeRecord(record);
+        this.m_num_completed.incrementAndGet();
+    }
+    
+    // purge all pending requests for an endpoint (de-registered/deleted)... the requesting peers are notified
+    public int purgeEndpoint(String ep_name) {
+        int purged = 0;
+        Set<String> ids = null;
+        if (ep_name != null) {
+            synchronized (this.m_responses_by_endpoint) {
+                ids = this.m_responses_by_endpoint.remove(ep_name);
+            }
+        }
+        if (ids != null) {
+            for (String id : ids) {
+                AsyncResponseRecord record = this.m_responses.get(id);
+                if (record != null && record.claim() == true) {
+                    this.removeRecord(record);
+                    this.notifyTimeout(record, REASON_DEREGISTERED);
+                    this.m_num_purged.incrementAndGet();
+                    ++purged;
+                }
+            }
+        }
+        if (purged > 0) {
+            // DEBUG
+            this.errorLogger().info("AsyncResponseManager: Purged " + purged + " pending requests for endpoint: " + ep_name);
+        }
+        return purged;
+    }
+    
+    // number of pending requests
+    public int size() {
+        return this.m_responses.size();
+    }
+    
+    // async response statistics (Health Stats)
+    public Map<String,Object> statistics() {
+        HashMap<String,Object> stats = new HashMap<>();
+        stats.put("pending",this.m_responses.size());
+        stats.put("endpoints",this.m_responses_by_endpoint.size());
+        stats.put("recorded",this.m_num_recorded.get());
+        stats.put("completed",this.m_num_completed.get());
+        stats.put("expired",this.m_num_expired.get());
+        stats.put("evicted",this.m_num_evicted.get());
+        stats.put("purged",this.m_num_purged.get());
+        stats.put("held",this.m_unmatched.size());
+        stats.put("late_matched",this.m_num_late_matched.get());
+        stats.put("unmatched",this.m_num_unmatched.get());
+        return stats;
+    }
+    
+    // sweep out the expired records
+    public int expire() {
+        int expired = 0;
+        long now = System.currentTimeMillis();
+        Expiry head = this.m_expiration_queue.peek();
+        while (head != null && head.m_deadline_ms <= now) {
+            this.m_expiration_queue.remove(head);
+            AsyncResponseRecord record = this.pendingRecord(head);
+            if (record != null && record.claim() == true) {
+                this.removeRecord(record);
+                this.notifyTimeout(record, REASON_EXPIRED);
+                this.m_num_expired.incrementAndGet();
+                ++expired;
+            }
+            head = this.m_expiration_queue.peek();
+        }
+        this.expireUnmatched(now);
+        if (expired > 0) {
+            // DEBUG
+            this.errorLogger().info("AsyncResponseManager: Expired " + expired + " pending requests. Pending: " + this.m_responses.size());
+        }
+        return expired;
+    }
+    
+    // evict the oldest records beyond our size limit
+    private void evictOverflow() {
+        while (this.m_responses.size() > this.m_max_pending) {
+            Expiry expiry = this.m_expiration_queue.poll();
+            if (expiry == null) {
+                break;
+            }
+            AsyncResponseRecord oldest = this.pendingRecord(expiry);
+            if (oldest != null && oldest.claim() == true) {
+                this.removeRecord(oldest);
+                this.notifyTimeout(oldest, REASON_EVICTED);
+                this.m_num_evicted.incrementAndGet();
+                
+                // DEBUG
+                this.errorLogger().warning("AsyncResponseManager: Pending limit (" + this.m_max_pending + ") reached. Evicted: " + oldest);
+            }
+        }
+    }
+    
+    // the still pending record an expiration queue entry refers to (null if already completed/purged)
+    private AsyncResponseRecord pendingRecord(Expiry expiry) {
+        AsyncResponseRecord record = this.m_responses.get(expiry.m_id);
+        return (record != null && record.expiresAt() == expiry.m_deadline_ms) ? record : null;
+    }
+    
+    // notify the requesting peer that its request will not be answered
+    private void notifyTimeout(AsyncResponseRecord record, String reason) {
+        GenericSender sender = record.sender();
+        PeerProcessor proc = record.proc();
+        if (sender != null && proc != null) {
+            try {
+                String reply = proc.createAsyncResponseTimeoutReply(record, reason);
+                if (reply != null) {
+                    // DEBUG
+                    this.errorLogger().info("AsyncResponseManager: sending " + reason + " reply(" + record.verb() + ") for AsyncResponse: ID: " + record.id() + " Topic: " + record.targetTopic() + " Message: " + reply);
+                    
+                    // send the reply...
+                    if (sender.sendMessage(record.targetTopic(), reply) == false) {
+                        this.errorLogger().warning("AsyncResponseManager: sendMessage(" + reason + "): FAILURE");
+                    }
+                }
+            }
+            catch (Exception ex) {
+                this.errorLogger().warning("AsyncResponseManager: Exception sending " + reason + " reply: " + ex.getMessage(), ex);
+            }
         }
         else {
-            // no record of this resposne... so just ignore it.. 
-            this.errorLogger().info("processAsyncResponse: No AsyncResponse record for ID: " + id + " Ignoring: " + response.toString());
+            // DEBUG
+            this.errorLogger().info("AsyncResponseManager: " + record + " dropped (" + reason + ")");
+        }
+    }
+    
+    // index a record by endpoint (under the same lock as unindex() so that an emptied set cannot swallow a new ID)
+    private void index(AsyncResponseRecord record) {
+        String ep_name = record.endpointName();
+        if (ep_name != null) {
+            synchronized (this.m_responses_by_endpoint) {
+                Set<String> ids = this.m_responses_by_endpoint.get(ep_name);
+                if (ids == null) {
+                    ids = new HashSet<>();
+                    this.m_responses_by_endpoint.put(ep_name, ids);
+                }
+                ids.add(record.id());
+            }
+        }
+    }
+    
+    // remove a record's index entry
+    private void unindex(AsyncResponseRecord record) {
+        String ep_name = record.endpointName();
+        if (ep_name != null) {
+            synchronized (this.m_responses_by_endpoint) {
+                Set<String> ids = this.m_responses_by_endpoint.get(ep_name);
+                if (ids != null) {
+                    ids.remove(record.id());
+                    if (ids.isEmpty() == true) {
+                        this.m_responses_by_endpoint.remove(ep_name);
+                    }
+                }
+            }
+        }
+    }
+    
+    // remove a (claimed) record and its index entry
+    private void removeRecord(AsyncResponseRecord record) {
+        this.m_responses.remove(record.id(), record);
+        this.unindex(record);
+    }
+    
+    // start our sweeper (once)
+    private synchronized void startSweeper() {
+        if (this.m_sweeper == null) {
+            this.m_sweeper = new Thread(this, "async-response-sweeper");
+            this.m_sweeper.setDaemon(true);
+            this.m_sweeper.start();
+        }
+    }
+    
+    // sweeper loop
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                Thread.sleep(this.m_sweep_interval_ms);
+                this.expire();
+            }
+            catch (InterruptedException ex) {
+                // done
+                return;
+            }
+            catch (Exception ex) {
+                // note but keep going...
+                this.errorLogger().warning("AsyncResponseManager: Exception while expiring: " + ex.getMessage(), ex);
+            }
         }
     }
 }
@@ -0,0 +1,161 @@
+/**
+ * @file  AsyncResponseRecord.java
+ * @brief typed pending async-response record for the AsyncResponseManager
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.coordinator.processors.core;
+
+import com.arm.pelion.bridge.coordinator.processors.interfaces.AsyncResponseProcessor;
+import com.arm.pelion.bridge.coordinator.processors.interfaces.GenericSender;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * pending async-response record (immutable apart from its one-time claim)
+ *
+ * @author Doug Anson
+ */
+public class AsyncResponseRecord {
+    private final String m_id;
+    private final String m_verb;
+    private final String m_response;
+    private final Map m_response_map;
+    private final GenericSender m_sender;
+    private final PeerProcessor m_proc;
+    private final String m_response_topic;
+    private final String m_reply_topic;
+    private final String m_message;
+    private final String m_ep_name;
+    private final String m_uri;
+    private final AsyncResponseProcessor m_processor;
+    private final Map m_orig_endpoint;
+    private final long m_expires_at_ms;
+    private final AtomicBoolean m_claimed = new AtomicBoolean(false);
+
+    // default constructor
+    public AsyncResponseRecord(String id, String verb, String response, Map response_map, GenericSender sender, PeerProcessor proc, String response_topic, String reply_topic, String message, String ep_name, String uri, AsyncResponseProcessor processor, Map orig_endpoint, long expires_at_ms) {
+        this.m_id = id;
+        this.m_verb = verb;
+        this.m_response = response;
+        this.m_response_map = response_map;
+        this.m_sender = sender;
+        this.m_proc = proc;
+        this.m_response_topic = response_topic;
+        this.m_reply_topic = reply_topic;
+        this.m_message = message;
+        this.m_ep_name = ep_name;
+        this.m_uri = uri;
+        this.m_processor = processor;
+        this.m_orig_endpoint = orig_endpoint;
+        this.m_expires_at_ms = expires_at_ms;
+    }
+
+    // async-response ID
+    public String id() {
+        return this.m_id;
+    }
+
+    // CoAP verb
+    public String verb() {
+        return this.m_verb;
+    }
+
+    // GenericSender to reply with (null if none)
+    public GenericSender sender() {
+        return this.m_sender;
+    }
+
+    // PeerProcessor that made the request (null if none)
+    public PeerProcessor proc() {
+        return this.m_proc;
+    }
+
+    // topic to reply to (the reply topic takes preference over the response topic)
+    public String targetTopic() {
+        return (this.m_reply_topic != null) ? this.m_reply_topic : this.m_response_topic;
+    }
+
+    // original request message
+    public String message() {
+        return this.m_message;
+    }
+
+    // endpoint name
+    public String endpointName() {
+        return this.m_ep_name;
+    }
+
+    // resource URI
+    public String uri() {
+        return this.m_uri;
+    }
+
+    // AsyncResponseProcessor to invoke (null if none)
+    public AsyncResponseProcessor processor() {
+        return this.m_processor;
+    }
+
+    // expiration time
+    public long expiresAt() {
+        return this.m_expires_at_ms;
+    }
+
+    // expired?
+    public boolean expired(long now_ms) {
+        return now_ms >= this.m_expires_at_ms;
+    }
+
+    // claim the record for processing (only one of response/expiration/purge wins)
+    public boolean claim() {
+        return this.m_claimed.compareAndSet(false, true);
+    }
+
+    // map form of the record (draft-format reply helpers and the "orig_record" given to AsyncResponseProcessors)
+    public Map<String,Object> toMap() {
+        HashMap<String,Object> record = new HashMap<>();
+        record.put("response_map", this.m_response_map);
+        this.putIfNotNull(record, "verb", this.m_verb);
+        this.putIfNotNull(record, "response", this.m_response);
+        this.putIfNotNull(record, "sender", this.m_sender);
+        this.putIfNotNull(record, "proc", this.m_proc);
+        this.putIfNotNull(record, "response_topic", this.m_response_topic);
+        this.putIfNotNull(record, "reply_topic", this.m_reply_topic);
+        this.putIfNotNull(record, "message", this.m_message);
+        this.putIfNotNull(record, "ep_name", this.m_ep_name);
+        this.putIfNotNull(record, "uri", this.m_uri);
+        this.putIfNotNull(record, "processor", this.m_processor);
+        this.putIfNotNull(record, "orig_endpoint", this.m_orig_endpoint);
+        return record;
+    }
+
+    // add a value if not null
+    private void putIfNotNull(HashMap<String,Object> record, String key, Object value) {
+        if (value != null) {
+            record.put(key, value);
+        }
+    }
+
+    // DEBUG
+    @Override
+    public String toString() {
+        return "AsyncResponseRecord(id: " + this.m_id + " verb: " + this.m_verb + " ep: " + this.m_ep_name + " uri: " + this.m_uri + ")";
+    }
+}
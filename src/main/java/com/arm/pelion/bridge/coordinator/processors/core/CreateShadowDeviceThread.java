@@ -26,6 +26,7 @@ import com.arm.pelion.bridge.coordinator.processors.arm.PelionProcessor;
 import com.arm.pelion.bridge.core.BaseClass;
 import com.arm.pelion.bridge.core.Utils;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * Threaded dispatching of creating a device's shadow
@@ -34,20 +35,32 @@ import java.util.Map;
 public class CreateShadowDeviceThread extends BaseClass implements Runnable {
     private PelionProcessor m_pelion_processor = null;
     private Map m_device = null;
+    private CountDownLatch m_completed = null;
+    private boolean m_completion_pending = false;
     private String ep_name = "";
     private String ep_type = "";
     
     // constructor
     public CreateShadowDeviceThread(PelionProcessor pelion_processor,Map device) {
+        this(pelion_processor,device,null);
+    }
+    
+    // constructor (completed is counted down once all peers have processed the device's registration completion)
+    public CreateShadowDeviceThread(PelionProcessor pelion_processor,Map device,CountDownLatch completed) {
         super(pelion_processor.errorLogger(),pelion_processor.preferences());
         this.m_pelion_processor = pelion_processor;
         this.m_device = device;
+        this.m_completed = completed;
         
         // get the device ID and device Type
         this.ep_type = Utils.valueFromValidKey(device, "endpoint_type", "ept");
         this.ep_name = Utils.valueFromValidKey(device, "id", "ep");
     }
     
+    // will the device's registration completion follow the setup?
+    public boolean completionPending() {
+        return this.m_completion_pending;
+    }
 
     // run the thread to create the shadow...
     @Override
@@ -57,7 +70,7 @@ public class CreateShadowDeviceThread extends BaseClass implements Runnable {
             this.errorLogger().warning("PelionProcessor(ShadowCreateThread-Run): Setting up device shadow for DeviceID: " + this.ep_name + " Type: " + this.ep_type);
             
             // create the device shadow
-            this.m_pelion_processor.dispatchDeviceSetup(this.m_device);
+            this.m_completion_pending = this.m_pelion_processor.dispatchDeviceSetup(this.m_device, this.m_completed);
         }
         else {
             // ERROR - invalid params to constructor
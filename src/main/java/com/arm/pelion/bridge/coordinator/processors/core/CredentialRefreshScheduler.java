@@ -0,0 +1,346 @@
+/**
+ * @file CredentialRefreshScheduler.java
+ * @brief Hashed timer wheel scheduler for device credential refreshes
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.coordinator.processors.core;
+
+import com.arm.pelion.bridge.core.BaseClass;
+import com.arm.pelion.bridge.core.ErrorLogger;
+import com.arm.pelion.bridge.preferences.PreferenceManager;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Credential refresh scheduler. A single ticker thread walks a hashed timer wheel holding the refresh deadlines of
+ * all device credentials (JwTs, SAS Tokens...) and hands due refreshes to a bounded worker pool. Refreshes are pulled
+ * forward by a random jitter so that credentials created together do not all refresh in the same instant.
+ *
+ * @author Doug Anson
+ */
+public class CredentialRefreshScheduler extends BaseClass implements Runnable {
+    // defaults
+    private static final int DEFAULT_TICK_MS = 1000;                // 1 second
+    private static final int DEFAULT_WHEEL_SIZE = 512;              // slots
+    private static final int DEFAULT_NUM_WORKERS = 8;
+    private static final int DEFAULT_WORKER_QUEUE_SIZE = 1000;
+    private static final int DEFAULT_JITTER_PCT = 10;               // refresh up to 10% of the interval early
+
+    // backlog reporting windows
+    private static final long ONE_MINUTE_MS = 60 * 1000L;
+    private static final long ONE_HOUR_MS = 60 * ONE_MINUTE_MS;
+
+    // a scheduled refresh
+    private static class RefreshTimer {
+        private final String m_key;
+        private final Runnable m_task;
+        private final long m_interval_ms;
+        private volatile long m_deadline_ms = 0;
+        private long m_rounds = 0;
+        private volatile boolean m_cancelled = false;
+
+        RefreshTimer(String key, Runnable task, long interval_ms) {
+            this.m_key = key;
+            this.m_task = task;
+            this.m_interval_ms = interval_ms;
+        }
+    }
+
+    private int m_tick_ms = DEFAULT_TICK_MS;
+    private int m_jitter_pct = DEFAULT_JITTER_PCT;
+    private ArrayList<LinkedList<RefreshTimer>> m_wheel = null;
+    private long m_tick = 0;
+    private long m_start_ms = 0;
+    private final ConcurrentHashMap<String,RefreshTimer> m_timers = new ConcurrentHashMap<>();
+    private final Random m_random = new Random();
+    private ThreadPoolExecutor m_workers = null;
+    private Thread m_ticker = null;
+    private volatile boolean m_running = false;
+
+    // statistics
+    private final AtomicInteger m_num_running = new AtomicInteger(0);
+    private final AtomicLong m_num_refreshed = new AtomicLong(0);
+    private final AtomicLong m_num_failed = new AtomicLong(0);
+    private final AtomicLong m_num_deferred = new AtomicLong(0);
+    private final AtomicLong m_max_lateness_ms = new AtomicLong(0);
+
+    // default constructor
+    public CredentialRefreshScheduler(ErrorLogger error_logger, PreferenceManager preference_manager) {
+        super(error_logger, preference_manager);
+
+        // tick and wheel size
+        int wheel_size = this.prefIntValue("credential_refresh_wheel_size");
+        if (wheel_size <= 0) {
+            wheel_size = DEFAULT_WHEEL_SIZE;
+        }
+        this.m_tick_ms = this.prefIntValue("credential_refresh_tick_ms");
+        if (this.m_tick_ms <= 0) {
+            this.m_tick_ms = DEFAULT_TICK_MS;
+        }
+        this.m_wheel = new ArrayList<>(wheel_size);
+        for (int i = 0; i < wheel_size; ++i) {
+            this.m_wheel.add(new LinkedList<RefreshTimer>());
+        }
+
+        // jitter (percent of the refresh interval)
+        this.m_jitter_pct = this.prefIntValue("credential_refresh_jitter_pct");
+        if (this.m_jitter_pct < 0) {
+            this.m_jitter_pct = DEFAULT_JITTER_PCT;
+        }
+        this.m_jitter_pct = Math.min(50, this.m_jitter_pct);
+
+        // bounded worker pool
+        int num_workers = this.prefIntValue("credential_refresh_workers");
+        if (num_workers <= 0) {
+            num_workers = DEFAULT_NUM_WORKERS;
+        }
+        int queue_size = this.prefIntValue("credential_refresh_queue_size");
+        if (queue_size <= 0) {
+            queue_size = DEFAULT_WORKER_QUEUE_SIZE;
+        }
+        this.m_workers = new ThreadPoolExecutor(num_workers, num_workers, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(queue_size), this.createWorkerThreadFactory());
+
+        // start the ticker
+        this.m_running = true;
+        this.m_start_ms = System.currentTimeMillis();
+        this.m_ticker = new Thread(this, "credential-refresh-ticker");
+        this.m_ticker.setDaemon(true);
+        this.m_ticker.start();
+
+        // DEBUG
+        this.errorLogger().warning("CredentialRefreshScheduler: Tick (ms): " + this.m_tick_ms + " Wheel size: " + wheel_size + " Workers: " + num_workers + " Queue size: " + queue_size + " Jitter: " + this.m_jitter_pct + "%");
+    }
+
+    // worker thread factory
+    private ThreadFactory createWorkerThreadFactory() {
+        return new ThreadFactory() {
+            private final AtomicInteger m_count = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "credential-refresh-" + this.m_count.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    /**
+     * schedule a repeating credential refresh (replaces any refresh already scheduled under the same key)
+     * @param key unique refresh key (i.e. peer and endpoint name)
+     * @param interval_ms refresh interval
+     * @param task the refresh
+     */
+    public void schedule(String key, long interval_ms, Runnable task) {
+        if (key != null && task != null && interval_ms > 0) {
+            RefreshTimer timer = new RefreshTimer(key, task, interval_ms);
+            RefreshTimer previous = this.m_timers.put(key, timer);
+            if (previous != null) {
+                previous.m_cancelled = true;
+            }
+            timer.m_deadline_ms = System.currentTimeMillis() + this.jitteredDelay(interval_ms);
+            this.add(timer, timer.m_deadline_ms);
+        }
+    }
+
+    // cancel a scheduled refresh
+    public void cancel(String key) {
+        RefreshTimer timer = (key != null) ? this.m_timers.remove(key) : null;
+        if (timer != null) {
+            // removed lazily from its wheel slot
+            timer.m_cancelled = true;
+        }
+    }
+
+    // is a refresh scheduled for this key?
+    public boolean isScheduled(String key) {
+        return key != null && this.m_timers.containsKey(key);
+    }
+
+    // refresh delay pulled forward by up to m_jitter_pct of the interval (never later than the interval)
+    private long jitteredDelay(long interval_ms) {
+        long max_jitter_ms = (interval_ms * this.m_jitter_pct) / 100;
+        if (max_jitter_ms <= 0) {
+            return interval_ms;
+        }
+        synchronized (this.m_random) {
+            return interval_ms - (long) (this.m_random.nextDouble() * max_jitter_ms);
+        }
+    }
+
+    // place a timer on the wheel (slot of the tick containing fire_ms... but never a tick already processed)
+    private synchronized void add(RefreshTimer timer, long fire_ms) {
+        long target_tick = Math.max(this.m_tick, (fire_ms - this.m_start_ms) / this.m_tick_ms);
+        timer.m_rounds = (target_tick - this.m_tick) / this.m_wheel.size();
+        this.m_wheel.get((int) (target_tick % this.m_wheel.size())).add(timer);
+    }
+
+    // collect the timers that are due in the current slot and advance the wheel
+    private synchronized ArrayList<RefreshTimer> advance() {
+        ArrayList<RefreshTimer> due = new ArrayList<>();
+        Iterator<RefreshTimer> it = this.m_wheel.get((int) (this.m_tick % this.m_wheel.size())).iterator();
+        while (it.hasNext()) {
+            RefreshTimer timer = it.next();
+            if (timer.m_cancelled == true) {
+                it.remove();
+            }
+            else if (timer.m_rounds > 0) {
+                --timer.m_rounds;
+            }
+            else {
+                it.remove();
+                due.add(timer);
+            }
+        }
+        ++this.m_tick;
+        return due;
+    }
+
+    // ticker thread
+    @Override
+    public void run() {
+        while (this.m_running == true) {
+            try {
+                // wait for the next tick
+                long next_tick_ms = this.m_start_ms + (this.m_tick * this.m_tick_ms);
+                long wait_ms = next_tick_ms - System.currentTimeMillis();
+                if (wait_ms > 0) {
+                    Thread.sleep(wait_ms);
+                }
+
+                // dispatch the due refreshes
+                ArrayList<RefreshTimer> due = this.advance();
+                for (int i = 0; i < due.size(); ++i) {
+                    this.dispatch(due.get(i));
+                }
+            }
+            catch (InterruptedException ex) {
+                // halted
+                break;
+            }
+            catch (RuntimeException ex) {
+                // note but keep ticking
+                this.errorLogger().warning("CredentialRefreshScheduler: Exception caught in ticker: " + ex.getMessage(), ex);
+            }
+        }
+    }
+
+    // hand a due refresh to the worker pool (deferred by a tick if the pool is saturated)
+    private void dispatch(final RefreshTimer timer) {
+        try {
+            this.m_workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    CredentialRefreshScheduler.this.refresh(timer);
+                }
+            });
+        }
+        catch (RejectedExecutionException ex) {
+            if (this.m_running == true) {
+                this.m_num_deferred.incrementAndGet();
+                this.add(timer, System.currentTimeMillis() + this.m_tick_ms);
+            }
+        }
+    }
+
+    // perform a refresh then reschedule it
+    private void refresh(RefreshTimer timer) {
+        if (timer.m_cancelled == true) {
+            return;
+        }
+        this.recordLateness(System.currentTimeMillis() - timer.m_deadline_ms);
+        this.m_num_running.incrementAndGet();
+        try {
+            timer.m_task.run();
+            this.m_num_refreshed.incrementAndGet();
+        }
+        catch (Exception ex) {
+            // note but keep the refresh scheduled
+            this.m_num_failed.incrementAndGet();
+            this.errorLogger().warning("CredentialRefreshScheduler: Exception caught while refreshing: " + timer.m_key + ": " + ex.getMessage(), ex);
+        }
+        finally {
+            this.m_num_running.decrementAndGet();
+        }
+
+        // reschedule (unless cancelled or replaced while we ran)
+        if (timer.m_cancelled == false && this.m_timers.get(timer.m_key) == timer) {
+            timer.m_deadline_ms = System.currentTimeMillis() + this.jitteredDelay(timer.m_interval_ms);
+            this.add(timer, timer.m_deadline_ms);
+        }
+    }
+
+    // record how late a refresh started
+    private void recordLateness(long lateness_ms) {
+        long max = this.m_max_lateness_ms.get();
+        while (lateness_ms > max && this.m_max_lateness_ms.compareAndSet(max, lateness_ms) == false) {
+            max = this.m_max_lateness_ms.get();
+        }
+    }
+
+    // upcoming refresh backlog and refresh counts (Health Stats)
+    public Map<String,Object> statistics() {
+        HashMap<String,Object> stats = new HashMap<>();
+        long now = System.currentTimeMillis();
+        int next_minute = 0;
+        int next_hour = 0;
+        Iterator<RefreshTimer> it = this.m_timers.values().iterator();
+        while (it.hasNext()) {
+            long remaining_ms = it.next().m_deadline_ms - now;
+            if (remaining_ms < ONE_HOUR_MS) {
+                ++next_hour;
+                if (remaining_ms < ONE_MINUTE_MS) {
+                    ++next_minute;
+                }
+            }
+        }
+        stats.put("scheduled", this.m_timers.size());
+        stats.put("due_next_minute", next_minute);
+        stats.put("due_next_hour", next_hour);
+        stats.put("queued", this.m_workers.getQueue().size());
+        stats.put("running", this.m_num_running.get());
+        stats.put("refreshed", this.m_num_refreshed.get());
+        stats.put("failed", this.m_num_failed.get());
+        stats.put("deferred", this.m_num_deferred.get());
+        stats.put("max_lateness_ms", this.m_max_lateness_ms.get());
+        return stats;
+    }
+
+    // shutdown
+    public void shutdown() {
+        this.m_running = false;
+        if (this.m_ticker != null) {
+            this.m_ticker.interrupt();
+        }
+        this.m_workers.shutdownNow();
+    }
+}
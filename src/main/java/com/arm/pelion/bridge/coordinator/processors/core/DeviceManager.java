@@ -24,24 +24,29 @@ package com.arm.pelion.bridge.coordinator.processors.core;
 
 import com.arm.pelion.bridge.coordinator.Orchestrator;
 import static com.arm.pelion.bridge.coordinator.processors.arm.PelionProcessor.DEFAULT_ENDPOINT_TYPE;
+import com.arm.pelion.bridge.coordinator.processors.interfaces.ShadowStateContributorInterface;
 import com.arm.pelion.bridge.core.BaseClass;
 import com.arm.pelion.bridge.core.ErrorLogger;
-import com.arm.pelion.bridge.data.SerializableHashMapOfHashMaps;
+import com.arm.pelion.bridge.data.SerializableHashMap;
+import com.arm.pelion.bridge.data.ConcurrentSerializableHashMapOfHashMaps;
 import com.arm.pelion.bridge.preferences.PreferenceManager;
 import com.arm.pelion.bridge.transport.HttpTransport;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * DeviceManager - base class for device managers
  * @author Doug Anson
  */
-public class DeviceManager extends BaseClass {
+public class DeviceManager extends BaseClass implements ShadowStateContributorInterface {
     private static final int DEFAULT_NUM_RETRIES = 10;                              // 10 httpsGet() attempts before giving up... typically 10 is fine...
     private static final int DEFAULT_RETRY_WAIT_MS = 1000;                          // typically wait about 1 second, then retry the https "get" call...
     protected HttpTransport m_http = null;
     protected Orchestrator m_orchestrator = null;
     protected String m_suffix = null;
     
-    protected SerializableHashMapOfHashMaps m_endpoint_details = null;
+    protected ConcurrentSerializableHashMapOfHashMaps m_endpoint_details = null;
     protected int m_num_retries = DEFAULT_NUM_RETRIES;
     protected int m_get_retry_wait_ms = DEFAULT_RETRY_WAIT_MS;  
     
@@ -63,7 +68,7 @@ public class DeviceManager extends BaseClass {
         this.m_orchestrator = orchestrator;
         
         // initialize the endpoint keys map
-        this.m_endpoint_details = new SerializableHashMapOfHashMaps(orchestrator,"ENDPOINT_DETAILS");
+        this.m_endpoint_details = new ConcurrentSerializableHashMapOfHashMaps(orchestrator,"ENDPOINT_DETAILS");
         
         // Number of https "get" retries
         this.m_num_retries = this.preferences().intValueOf("http_get_num_retries",this.m_suffix);
@@ -76,6 +81,61 @@ public class DeviceManager extends BaseClass {
         if (this.m_get_retry_wait_ms <= 0) {
             this.m_get_retry_wait_ms = DEFAULT_RETRY_WAIT_MS;
         }
+        
+        // contribute our endpoint details to the shadow state snapshot
+        if (orchestrator.getShadowStateSnapshot() != null) {
+            orchestrator.getShadowStateSnapshot().addContributor(this);
+        }
+    }
+    
+    // key for the endpoint details of a given endpoint (override if the peer decorates the endpoint name)
+    protected String endpointDetailsKey(String ep_name) {
+        return ep_name;
+    }
+    
+    // is this a warm restart of a device whose endpoint details we already hold?
+    protected boolean warmRestored(Map message, String ep_name) {
+        Object warm = (message != null) ? message.get(ShadowStateSnapshot.WARM_RESTART_KEY) : null;
+        if (warm instanceof Boolean && (Boolean)warm == true && ep_name != null) {
+            HashMap<String,Serializable> details = this.m_endpoint_details.get(this.endpointDetailsKey(ep_name));
+            if (details != null && details.isEmpty() == false) {
+                // DEBUG
+                this.errorLogger().info("DeviceManager(" + this.shadowStateName() + "): Warm restart of " + ep_name + " from snapshot (OK)");
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // ShadowStateContributorInterface: our name in the snapshot
+    @Override
+    public String shadowStateName() {
+        return this.getClass().getSimpleName() + (this.m_suffix != null ? this.m_suffix : "");
+    }
+    
+    // ShadowStateContributorInterface: export our endpoint details
+    @Override
+    public HashMap<String,Serializable> exportShadowState(String ep_name) {
+        HashMap<String,Serializable> details = this.m_endpoint_details.get(this.endpointDetailsKey(ep_name));
+        if (details != null && details.isEmpty() == false) {
+            // plain copy (our maps are decorated)
+            return new HashMap<>(details);
+        }
+        return null;
+    }
+    
+    // ShadowStateContributorInterface: import endpoint details from the snapshot
+    @Override
+    public void importShadowState(String ep_name, HashMap<String,Serializable> details) {
+        String key = this.endpointDetailsKey(ep_name);
+        if (details != null && this.m_endpoint_details.get(key) == null) {
+            String d = this.m_orchestrator.getTablenameDelimiter();
+            SerializableHashMap entry = new SerializableHashMap(this.m_orchestrator,"SHADOW_SNAPSHOT" + d + key);
+            for (Map.Entry<String,Serializable> e : details.entrySet()) {
+                entry.put(e.getKey(), e.getValue());
+            }
+            this.m_endpoint_details.putIfAbsent(key, entry.map());
+        }
     }
     
     // sanitize the endpoint type
@@ -0,0 +1,136 @@
+/**
+ * @file EndpointEvent.java
+ * @brief Typed Pelion endpoint lifecycle event
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.coordinator.processors.core;
+
+import com.arm.pelion.bridge.core.Utils;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pelion endpoint lifecycle event (registrations, reg-updates, de-registrations, registrations-expired,
+ * device-deletions and internal registration completion). The entry is the parsed device record (or the
+ * endpoint name for de-registrations) and is handed to the peers as-is.
+ *
+ * @author Doug Anson
+ */
+public class EndpointEvent extends PelionEvent {
+    private final Object m_entry;
+    private final String m_ep_name;
+    
+    // optional notification once every peer has processed this event
+    private volatile AtomicInteger m_pending_deliveries = null;
+    private volatile Runnable m_on_delivered = null;
+
+    // default constructor
+    public EndpointEvent(String key, Object entry) {
+        super(key);
+        this.m_entry = entry;
+        if (entry instanceof Map) {
+            this.m_ep_name = Utils.valueFromValidKey((Map) entry, "id", "ep");
+        }
+        else {
+            this.m_ep_name = (String) entry;
+        }
+    }
+
+    // endpoint name
+    @Override
+    public String endpointName() {
+        return this.m_ep_name;
+    }
+
+    // the parsed device record (null for de-registrations)
+    public Map record() {
+        return (this.m_entry instanceof Map) ? (Map) this.m_entry : null;
+    }
+
+    // run a listener once this event has been processed (or refused) by the given number of peers
+    public void onDelivered(int num_peers, Runnable listener) {
+        if (num_peers <= 0) {
+            listener.run();
+            return;
+        }
+        this.m_on_delivered = listener;
+        this.m_pending_deliveries = new AtomicInteger(num_peers);
+    }
+    
+    // note that a peer is done with this event
+    public void delivered() {
+        AtomicInteger pending = this.m_pending_deliveries;
+        if (pending != null && pending.decrementAndGet() == 0) {
+            this.m_on_delivered.run();
+        }
+    }
+
+    // registration completion is delivered as the device record itself
+    @Override
+    public Map toMessage() {
+        if (PeerFanOutDispatcher.COMPLETE_REGISTRATION.equals(this.key())) {
+            return this.record();
+        }
+        return super.toMessage();
+    }
+
+    // a peer's own copy of the legacy message: peers run concurrently and decorate the device record as they go
+    public Map copyMessage() {
+        Map record = this.record();
+        Object entry = (record != null) ? new HashMap<>(record) : this.m_entry;
+        if (PeerFanOutDispatcher.COMPLETE_REGISTRATION.equals(this.key())) {
+            return (Map) entry;
+        }
+        HashMap<String,Object> message = new HashMap<>();
+        ArrayList<Object> entries = new ArrayList<>();
+        entries.add(entry);
+        message.put(this.key(), entries);
+        return message;
+    }
+
+    // the legacy entry is a copy of the device record (never the record itself)
+    @Override
+    protected Object legacyEntry() {
+        Map record = this.record();
+        return (record != null) ? new HashMap<>(record) : this.m_entry;
+    }
+
+    @Override
+    protected Object field(String key) {
+        Map record = this.record();
+        return (record != null) ? record.get(key) : null;
+    }
+
+    @Override
+    protected boolean setField(String key, Object value) {
+        // not read field-by-field
+        return false;
+    }
+
+    @Override
+    protected void putFields(Map<String,Object> map) {
+        Map record = this.record();
+        if (record != null) {
+            map.putAll(record);
+        }
+    }
+}
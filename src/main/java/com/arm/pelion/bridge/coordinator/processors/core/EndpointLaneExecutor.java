@@ -0,0 +1,193 @@
+/**
+ * @file EndpointLaneExecutor.java
+ * @brief Per-endpoint ordered, striped event executor for the Pelion bridge
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.coordinator.processors.core;
+
+import com.arm.pelion.bridge.core.BaseClass;
+import com.arm.pelion.bridge.core.ErrorLogger;
+import com.arm.pelion.bridge.preferences.PreferenceManager;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Endpoint lane executor. Each endpoint name is hashed onto one of N single-threaded lanes so that all lifecycle
+ * events for a given device stay ordered, while events for different devices proceed in parallel.
+ *
+ * @author Doug Anson
+ */
+public class EndpointLaneExecutor extends BaseClass {
+    // our lanes
+    private ThreadPoolExecutor[] m_lanes = null;
+
+    // the lane (if any) that the current thread services
+    private final ThreadLocal<Integer> m_current_lane = new ThreadLocal<>();
+
+    // lane thread name prefix
+    private String m_name = null;
+
+    // default constructor
+    public EndpointLaneExecutor(ErrorLogger error_logger, PreferenceManager preference_manager) {
+        this(error_logger, preference_manager, "endpoint-lane", preference_manager.intValueOf("endpoint_event_lanes"), 0);
+    }
+
+    // constructor with name, lane count and per-lane queue capacity (<= 0: unbounded)
+    public EndpointLaneExecutor(ErrorLogger error_logger, PreferenceManager preference_manager, String name, int num_lanes, int lane_queue_size) {
+        super(error_logger, preference_manager);
+        this.m_name = name;
+
+        // number of lanes (default is the number of available processors)
+        if (num_lanes <= 0) {
+            num_lanes = Runtime.getRuntime().availableProcessors();
+        }
+
+        // create the lanes
+        this.m_lanes = new ThreadPoolExecutor[num_lanes];
+        for(int i=0;i<num_lanes;++i) {
+            BlockingQueue<Runnable> queue = (lane_queue_size > 0) ? new LinkedBlockingQueue<Runnable>(lane_queue_size) : new LinkedBlockingQueue<Runnable>();
+            this.m_lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, queue, this.createLaneThreadFactory(i));
+            
+            // start the lane thread now (tasks may be queued directly by executeBlocking())
+            this.m_lanes[i].prestartAllCoreThreads();
+        }
+
+        // DEBUG
+        this.errorLogger().warning("EndpointLaneExecutor(" + name + "): Number of lanes: " + num_lanes + " Lane queue size: " + (lane_queue_size > 0 ? lane_queue_size : "unbounded"));
+    }
+
+    // create the thread factory for a given lane
+    private ThreadFactory createLaneThreadFactory(final int lane) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread t = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        EndpointLaneExecutor.this.m_current_lane.set(lane);
+                        r.run();
+                    }
+                }, EndpointLaneExecutor.this.m_name + "-" + lane);
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    // map an endpoint name to its lane
+    private int laneFor(String ep_name) {
+        if (ep_name == null) {
+            return 0;
+        }
+        return (ep_name.hashCode() & 0x7fffffff) % this.m_lanes.length;
+    }
+
+    /**
+     * execute a task on the lane for the given endpoint. If we are already running on that lane, the task is run
+     * inline (preserving order and avoiding self-deadlock)
+     * @param ep_name
+     * @param task
+     * @return true - executed or queued, false - rejected (lane queue full)
+     */
+    public boolean execute(String ep_name, Runnable task) {
+        int lane = this.laneFor(ep_name);
+        Integer current = this.m_current_lane.get();
+        if (current != null && current == lane) {
+            // already on this lane... run inline
+            task.run();
+            return true;
+        }
+        try {
+            this.m_lanes[lane].execute(task);
+            return true;
+        }
+        catch (RejectedExecutionException ex) {
+            this.errorLogger().warning("EndpointLaneExecutor(" + this.m_name + "): Task rejected for endpoint: " + ep_name + " Lane: " + lane);
+        }
+        return false;
+    }
+    
+    /**
+     * execute a task on the lane for the given endpoint, waiting for room if the lane queue is full (backpressure)
+     * @param ep_name
+     * @param task
+     * @return true - executed or queued, false - lanes shutdown (or interrupted while waiting)
+     */
+    public boolean executeBlocking(String ep_name, Runnable task) {
+        int lane = this.laneFor(ep_name);
+        Integer current = this.m_current_lane.get();
+        if (current != null && current == lane) {
+            // already on this lane... run inline
+            task.run();
+            return true;
+        }
+        ThreadPoolExecutor executor = this.m_lanes[lane];
+        try {
+            while (executor.isShutdown() == false) {
+                if (executor.getQueue().offer(task, 1, TimeUnit.SECONDS) == true) {
+                    return true;
+                }
+                
+                // DEBUG
+                this.errorLogger().info("EndpointLaneExecutor(" + this.m_name + "): Lane: " + lane + " full. Waiting to queue task for endpoint: " + ep_name);
+            }
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        this.errorLogger().warning("EndpointLaneExecutor(" + this.m_name + "): Task rejected for endpoint: " + ep_name + " Lane: " + lane + " (shutdown)");
+        return false;
+    }
+
+    // total queue depth across all lanes
+    public int queueDepth() {
+        int total = 0;
+        for(int i=0;i<this.m_lanes.length;++i) {
+            total += this.m_lanes[i].getQueue().size();
+        }
+        return total;
+    }
+
+    // per-lane queue depths (Health Stats)
+    public Map<String,Object> laneDepths() {
+        HashMap<String,Object> depths = new HashMap<>();
+        int total = 0;
+        for(int i=0;i<this.m_lanes.length;++i) {
+            int depth = this.m_lanes[i].getQueue().size();
+            depths.put("lane_" + i,depth);
+            total += depth;
+        }
+        depths.put("total",total);
+        return depths;
+    }
+
+    // shutdown the lanes
+    public void shutdown() {
+        for(int i=0;i<this.m_lanes.length;++i) {
+            this.m_lanes[i].shutdown();
+        }
+    }
+}
@@ -24,8 +24,11 @@ package com.arm.pelion.bridge.coordinator.processors.core;
 
 import com.arm.pelion.bridge.coordinator.Orchestrator;
 import com.arm.pelion.bridge.core.BaseClass;
-import com.arm.pelion.bridge.data.SerializableHashMap;
-import java.util.ArrayList;
+import com.arm.pelion.bridge.core.Utils;
+import com.arm.pelion.bridge.data.ConcurrentSerializableHashMap;
+import com.arm.pelion.bridge.data.interfaces.ValueComputer;
+import java.io.Serializable;
+import java.util.Set;
 
 /**
  * Endpoint Type Management for pelion-bridge
@@ -35,21 +38,21 @@ public class EndpointTypeManager extends BaseClass {
     private Orchestrator m_orchestrator = null;
     
     // endpoint type hashmap
-    private SerializableHashMap m_endpoint_type_list = null;
+    private ConcurrentSerializableHashMap m_endpoint_type_list = null;
     
-    // banned list
-    private ArrayList<String> m_banned_devices = null;
+    // banned set (case-normalized device IDs)
+    private Set<String> m_banned_devices = null;
     
     // constructor
     public EndpointTypeManager(Orchestrator orchestrator) {
         super(orchestrator.errorLogger(), orchestrator.preferences());
         this.m_orchestrator = orchestrator;
         
-        // allocate the banned devices list
-        this.m_banned_devices = new ArrayList<>();
+        // allocate the banned devices set
+        this.m_banned_devices = Utils.newDeviceIDSet();
         
         // create endpoint name/endpoint type map
-        this.m_endpoint_type_list = new SerializableHashMap(orchestrator,"ENDPOINT_TYPE_LIST");
+        this.m_endpoint_type_list = new ConcurrentSerializableHashMap(orchestrator,"ENDPOINT_TYPE_LIST");
     }
 
     // get the endpoint type from the endpoint name (if cached...)
@@ -64,27 +67,31 @@ public class EndpointTypeManager extends BaseClass {
     }    
 
     // set the endpoint type from a given endpoint name
-    public synchronized void setEndpointTypeFromEndpointName(String endpoint, String type) {
+    public void setEndpointTypeFromEndpointName(String endpoint, final String type) {
         if (type != null && type.length() > 0) {
-            if (this.isBannedDevice(endpoint) == false) {
-                // DEBUG
-                this.errorLogger().info("EndpointTypeManager: Setting EPT: " + type + " for EP: " + endpoint);
-                
-                // set the endpoint type 
-                this.m_endpoint_type_list.put(endpoint,type);
+            // set the endpoint type (atomic with respect to banDevice() for the same endpoint)
+            this.m_endpoint_type_list.compute(endpoint, new ValueComputer() {
+                @Override
+                public Serializable compute(String key, Serializable current) {
+                    if (EndpointTypeManager.this.isBannedDevice(key) == false) {
+                        // DEBUG
+                        EndpointTypeManager.this.errorLogger().info("EndpointTypeManager: Setting EPT: " + type + " for EP: " + key);
+                        return type;
+                    }
+                    
+                    // device is banned... so dont add it
+                    EndpointTypeManager.this.errorLogger().info("EndpointTypeManager: EP: " + key + " is banned. Ignoring (OK)");
+                    return current;
+                }
+            });
 
-                // DEBUG
-                this.errorLogger().info("EndpointTypeManager: Count(Set): " + this.size());
-            }
-            else {
-                // device is banned... so dont add it
-                this.errorLogger().info("EndpointTypeManager: EP: " + endpoint + " is banned. Ignoring (OK)");
-            }
+            // DEBUG
+            this.errorLogger().info("EndpointTypeManager: Count(Set): " + this.size());
         }
     }
     
     // remove the endpoint type from the endpoint name
-    public synchronized void removeEndpointTypeFromEndpointName(String endpoint) {
+    public void removeEndpointTypeFromEndpointName(String endpoint) {
         if (endpoint != null && endpoint.length() > 0) {
             // DEBUG
             this.errorLogger().info("EndpointTypeManager: Removing Type for EP: " + endpoint);
@@ -97,27 +104,22 @@ public class EndpointTypeManager extends BaseClass {
     }
     
     // get the count of the map
-    public synchronized int size() {
-        // DEBUG
-        this.errorLogger().info("EndpointTypeManager: Map(" + this.m_endpoint_type_list.map().size() + "): " + this.m_endpoint_type_list.map());
-        return this.m_endpoint_type_list.map().size();
+    public int size() {
+        return this.m_endpoint_type_list.size();
     }
     
     // is the given device banned?
-    private synchronized boolean isBannedDevice(String endpoint) {
-        for(int i=0;endpoint != null && i<this.m_banned_devices.size();++i) {
-            if (endpoint.equalsIgnoreCase(this.m_banned_devices.get(i))) {
-                return true;
-            }
-        }
-        return false;
+    private boolean isBannedDevice(String endpoint) {
+        return (endpoint != null && this.m_banned_devices.contains(Utils.normalizeDeviceID(endpoint)));
     }
     
     // permanently ban device (optional)
-    public synchronized void banDevice(String endpoint) {
-        if (this.isBannedDevice(endpoint) == false) {
-            this.m_banned_devices.add(endpoint);
+    public void banDevice(String endpoint) {
+        if (endpoint != null) {
+            this.m_banned_devices.add(Utils.normalizeDeviceID(endpoint));
         }
+        
+        // banned before removal (setEndpointTypeFromEndpointName() checks the ban under the key's stripe)
         this.m_endpoint_type_list.remove(endpoint);
     }
 }
\ No newline at end of file
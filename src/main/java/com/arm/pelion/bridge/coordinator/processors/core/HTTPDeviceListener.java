@@ -24,21 +24,22 @@ package com.arm.pelion.bridge.coordinator.processors.core;
 
 import com.arm.pelion.bridge.coordinator.processors.interfaces.HTTPDeviceListenerInterface;
 import com.arm.pelion.bridge.core.BaseClass;
-import com.arm.pelion.bridge.core.Utils;
 import com.arm.pelion.bridge.transport.HttpTransport;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
 
 /**
- * HTTP-based device listener for HTTP-based peer processors
+ * HTTP-based device listener for HTTP-based peer processors (polled by the shared HTTPDevicePoller)
  * @author Doug Anson
  */
-public class HTTPDeviceListener extends BaseClass implements Runnable {
-    private static final int DEFAULT_LISTENER_WAIT_TIME_MS = 1000;              // 1 second
+public class HTTPDeviceListener extends BaseClass implements Delayed {
     private HTTPDeviceListenerInterface m_processor = null;
+    private HTTPDevicePoller m_poller = null;
     private HttpTransport m_http = null;
-    private boolean m_running = true;
+    private volatile boolean m_halted = false;
     private String m_ep_name = null;
-    private Thread m_thread = null;
-    private int m_listener_wait_time_ms = DEFAULT_LISTENER_WAIT_TIME_MS;
+    private volatile long m_interval_ms = 0;
+    private volatile long m_next_poll_ms = 0;
     
     // constructor
     public HTTPDeviceListener(HTTPDeviceListenerInterface processor,HttpTransport http,String ep_name) {
@@ -46,13 +47,11 @@ public class HTTPDeviceListener extends BaseClass implements Runnable {
         this.m_ep_name = ep_name;
         this.m_processor = processor;
         this.m_http = http;
-        this.m_thread = new Thread(this);
-        try {
-            this.m_thread.start();
-        }
-        catch(Exception ex) {
-            this.errorLogger().warning("HTTPDeviceListener: Unable to start device listner for: " + this.m_ep_name);
-        }
+        this.m_poller = processor.orchestrator().getHTTPDevicePoller();
+        this.m_poller.register(this);
+        
+        // DEBUG
+        this.errorLogger().warning("HTTPDeviceListener: Device Listener for " + this.m_ep_name + " has started.");
     }
     
     // get the HTTP instance for this listener
@@ -62,22 +61,49 @@ public class HTTPDeviceListener extends BaseClass implements Runnable {
     
     // halt this process
     public void halt() {
-        this.m_running = false;
+        if (this.m_halted == false) {
+            this.m_halted = true;
+            this.m_poller.unregister(this);
+            
+            // DEBUG
+            this.errorLogger().warning("HTTPDeviceListener: Device Listener for " + this.m_ep_name + " has halted (OK)");
+        }
     }
-
+    
+    // halted?
+    public boolean isHalted() {
+        return this.m_halted;
+    }
+    
+    // poll for and process any device messages (true - a message was processed)
+    public boolean poll() {
+        return this.m_processor.pollAndProcessDeviceMessages(this.m_http,this.m_ep_name);
+    }
+    
+    // current poll interval
+    public long intervalMs() {
+        return this.m_interval_ms;
+    }
+    
+    // set the poll interval and the delay until our next poll
+    public void schedule(long interval_ms, long delay_ms) {
+        this.m_interval_ms = interval_ms;
+        this.m_next_poll_ms = System.currentTimeMillis() + delay_ms;
+    }
+    
+    // time until our next poll
     @Override
-    public void run() {
-        this.errorLogger().warning("HTTPDeviceListener: Device Listener for " + this.m_ep_name + " has started.");
-        Utils.waitForABit(this.errorLogger(), 4*this.m_listener_wait_time_ms);
-        while(this.m_running) {
-            try {
-                Utils.waitForABit(this.errorLogger(), this.m_listener_wait_time_ms);
-                this.m_processor.pollAndProcessDeviceMessages(this.m_http,this.m_ep_name);
-            }
-            catch(Exception ex) {
-                this.errorLogger().warning("HTTPDeviceListener: Exception in Device Listener: " + ex.getMessage());
-            }
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(this.m_next_poll_ms - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+    
+    // order by next poll time
+    @Override
+    public int compareTo(Delayed other) {
+        if (other instanceof HTTPDeviceListener) {
+            long next_poll_ms = ((HTTPDeviceListener)other).m_next_poll_ms;
+            return (this.m_next_poll_ms < next_poll_ms) ? -1 : ((this.m_next_poll_ms > next_poll_ms) ? 1 : 0);
         }
-        this.errorLogger().warning("HTTPDeviceListener: Device Listener for " + this.m_ep_name + " has halted (OK)");
+        return Long.compare(this.getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
     }
 }
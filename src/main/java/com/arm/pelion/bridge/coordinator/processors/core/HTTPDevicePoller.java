@@ -0,0 +1,258 @@
+/**
+ * @file HTTPDevicePoller.java
+ * @brief Shared adaptive poller for HTTP-based peer device listeners
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.coordinator.processors.core;
+
+import com.arm.pelion.bridge.core.BaseClass;
+import com.arm.pelion.bridge.core.ErrorLogger;
+import com.arm.pelion.bridge.preferences.PreferenceManager;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared HTTP device poller. All HTTPDeviceListeners (AWS/IoTHub/Google HTTP processors) are kept in a single delay
+ * queue ordered by their next poll time; one dispatcher thread hands due polls to a bounded worker pool, optionally
+ * capped at a global polls/sec rate. Each device's poll interval adapts: it backs off while the device is idle and
+ * drops back to the minimum as soon as a command arrives.
+ *
+ * @author Doug Anson
+ */
+public class HTTPDevicePoller extends BaseClass implements Runnable {
+    // defaults
+    private static final int DEFAULT_MIN_INTERVAL_MS = 1000;        // 1 second (the legacy fixed interval)
+    private static final int DEFAULT_MAX_INTERVAL_MS = 10000;       // 10 seconds
+    private static final int DEFAULT_NUM_WORKERS = 32;
+    private static final int DEFAULT_INITIAL_DELAY_FACTOR = 4;      // first poll after 4 x the minimum interval
+
+    private int m_min_interval_ms = DEFAULT_MIN_INTERVAL_MS;
+    private int m_max_interval_ms = DEFAULT_MAX_INTERVAL_MS;
+    private int m_max_polls_per_sec = 0;                            // 0 - no cap (the per-host HTTP rate limits still apply)
+    private int m_num_workers = DEFAULT_NUM_WORKERS;
+
+    private final DelayQueue<HTTPDeviceListener> m_queue = new DelayQueue<>();
+    private Semaphore m_worker_permits = null;
+    private ThreadPoolExecutor m_workers = null;
+    private Thread m_dispatcher = null;
+    private volatile boolean m_running = false;
+    private long m_next_dispatch_ns = 0;
+
+    // statistics
+    private final AtomicInteger m_num_registered = new AtomicInteger(0);
+    private final AtomicLong m_num_polls = new AtomicLong(0);
+    private final AtomicLong m_num_hits = new AtomicLong(0);
+    private final AtomicLong m_num_errors = new AtomicLong(0);
+    private final AtomicLong m_num_throttled = new AtomicLong(0);
+    private long m_last_stats_ms = 0;
+    private long m_last_stats_polls = 0;
+
+    // default constructor
+    public HTTPDevicePoller(ErrorLogger error_logger, PreferenceManager preference_manager) {
+        super(error_logger, preference_manager);
+
+        // adaptive interval bounds
+        int min_interval_ms = this.prefIntValue("http_device_poll_min_interval_ms");
+        if (min_interval_ms > 0) {
+            this.m_min_interval_ms = min_interval_ms;
+        }
+        int max_interval_ms = this.prefIntValue("http_device_poll_max_interval_ms");
+        this.m_max_interval_ms = Math.max(this.m_min_interval_ms, (max_interval_ms > 0) ? max_interval_ms : DEFAULT_MAX_INTERVAL_MS);
+
+        // global polls/sec cap
+        this.m_max_polls_per_sec = Math.max(0, this.prefIntValue("http_device_poll_max_per_sec"));
+
+        // bounded worker pool
+        int num_workers = this.prefIntValue("http_device_poll_workers");
+        if (num_workers > 0) {
+            this.m_num_workers = num_workers;
+        }
+
+        // DEBUG
+        this.errorLogger().warning("HTTPDevicePoller: Poll interval (ms): " + this.m_min_interval_ms + "-" + this.m_max_interval_ms + " Workers: " + this.m_num_workers + " Max polls/sec: " + (this.m_max_polls_per_sec > 0 ? this.m_max_polls_per_sec : "uncapped"));
+    }
+
+    // start the dispatcher and workers on first use
+    private synchronized void start() {
+        if (this.m_running == false) {
+            this.m_worker_permits = new Semaphore(this.m_num_workers);
+            this.m_workers = new ThreadPoolExecutor(this.m_num_workers, this.m_num_workers, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), this.createWorkerThreadFactory());
+            this.m_workers.allowCoreThreadTimeOut(true);
+            this.m_last_stats_ms = System.currentTimeMillis();
+            this.m_running = true;
+            this.m_dispatcher = new Thread(this, "http-device-poll-dispatcher");
+            this.m_dispatcher.setDaemon(true);
+            this.m_dispatcher.start();
+        }
+    }
+
+    // worker thread factory
+    private ThreadFactory createWorkerThreadFactory() {
+        return new ThreadFactory() {
+            private final AtomicInteger m_count = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "http-device-poll-" + this.m_count.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    // register a device listener (first poll after the initial delay, spread over one minimum interval)
+    public void register(HTTPDeviceListener listener) {
+        this.start();
+        long initial_delay_ms = (DEFAULT_INITIAL_DELAY_FACTOR * this.m_min_interval_ms) + (long) (Math.random() * this.m_min_interval_ms);
+        listener.schedule(this.m_min_interval_ms, initial_delay_ms);
+        this.m_queue.add(listener);
+        this.m_num_registered.incrementAndGet();
+    }
+
+    // unregister a (halted) device listener... if it is being polled right now, it is not requeued
+    public void unregister(HTTPDeviceListener listener) {
+        this.m_queue.remove(listener);
+        this.m_num_registered.decrementAndGet();
+    }
+
+    // dispatcher thread
+    @Override
+    public void run() {
+        while (this.m_running == true) {
+            try {
+                // next due listener (halted listeners are simply dropped)
+                HTTPDeviceListener listener = this.m_queue.take();
+                if (listener.isHalted() == true) {
+                    continue;
+                }
+
+                // global polls/sec cap
+                this.pace();
+
+                // wait for a free worker then poll
+                this.m_worker_permits.acquire();
+                this.m_workers.execute(this.createPollTask(listener));
+            }
+            catch (InterruptedException ex) {
+                // halted
+                break;
+            }
+            catch (RuntimeException ex) {
+                // note but keep dispatching
+                this.errorLogger().warning("HTTPDevicePoller: Exception caught in dispatcher: " + ex.getMessage(), ex);
+            }
+        }
+    }
+
+    // pace dispatching to the global polls/sec cap
+    private void pace() throws InterruptedException {
+        if (this.m_max_polls_per_sec > 0) {
+            // track the dispatch interval in nanoseconds (caps above 1000 polls/sec would round to 0ms)
+            long now = System.nanoTime();
+            if (this.m_next_dispatch_ns - now > 0) {
+                this.m_num_throttled.incrementAndGet();
+                TimeUnit.NANOSECONDS.sleep(this.m_next_dispatch_ns - now);
+                now = this.m_next_dispatch_ns;
+            }
+            else {
+                // behind schedule... start the next interval from now
+                this.m_next_dispatch_ns = now;
+            }
+            this.m_next_dispatch_ns += 1000000000L / this.m_max_polls_per_sec;
+        }
+    }
+
+    // create the poll task for a listener
+    private Runnable createPollTask(final HTTPDeviceListener listener) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    HTTPDevicePoller.this.poll(listener);
+                }
+                finally {
+                    HTTPDevicePoller.this.m_worker_permits.release();
+                }
+            }
+        };
+    }
+
+    // poll a device then requeue it with its adapted interval
+    private void poll(HTTPDeviceListener listener) {
+        boolean hit = false;
+        try {
+            hit = listener.poll();
+            if (hit == true) {
+                this.m_num_hits.incrementAndGet();
+            }
+        }
+        catch (Exception ex) {
+            this.m_num_errors.incrementAndGet();
+            this.errorLogger().warning("HTTPDevicePoller: Exception in Device Listener: " + ex.getMessage());
+        }
+        this.m_num_polls.incrementAndGet();
+
+        // adapt: back to the minimum after a command... otherwise double the interval (up to the maximum)
+        if (listener.isHalted() == false) {
+            long interval_ms = (hit == true) ? this.m_min_interval_ms : Math.min(this.m_max_interval_ms, listener.intervalMs() * 2);
+            listener.schedule(interval_ms, interval_ms);
+            this.m_queue.add(listener);
+        }
+    }
+
+    // polling statistics (Health Stats)
+    public synchronized Map<String,Object> statistics() {
+        HashMap<String,Object> stats = new HashMap<>();
+        long now = System.currentTimeMillis();
+        long polls = this.m_num_polls.get();
+        long hits = this.m_num_hits.get();
+        long elapsed_ms = now - this.m_last_stats_ms;
+        stats.put("devices", this.m_num_registered.get());
+        stats.put("polls_per_sec", elapsed_ms > 0 ? (float) ((polls - this.m_last_stats_polls) * 1000.0 / elapsed_ms) : 0.0f);
+        stats.put("hit_ratio", polls > 0 ? (float) hits / polls : 0.0f);
+        stats.put("polls", polls);
+        stats.put("hits", hits);
+        stats.put("errors", this.m_num_errors.get());
+        stats.put("throttled", this.m_num_throttled.get());
+        stats.put("busy_workers", this.m_worker_permits != null ? this.m_num_workers - this.m_worker_permits.availablePermits() : 0);
+        this.m_last_stats_ms = now;
+        this.m_last_stats_polls = polls;
+        return stats;
+    }
+
+    // shutdown
+    public synchronized void shutdown() {
+        this.m_running = false;
+        if (this.m_dispatcher != null) {
+            this.m_dispatcher.interrupt();
+        }
+        if (this.m_workers != null) {
+            this.m_workers.shutdownNow();
+        }
+    }
+}
@@ -25,6 +25,7 @@ package com.arm.pelion.bridge.coordinator.processors.core;
 import com.arm.pelion.bridge.coordinator.Orchestrator;
 import com.arm.pelion.bridge.core.Processor;
 import com.arm.pelion.bridge.transport.HttpTransport;
+import com.arm.pelion.bridge.transport.HttpTransportResponse;
 import java.io.BufferedReader;
 import java.io.PrintWriter;
 import javax.servlet.http.HttpServletRequest;
@@ -82,8 +83,18 @@ public class HttpProcessor extends Processor {
 
     // send the REST response back to Pelion
     protected void sendResponseToPelion(String content_type, HttpServletRequest request, HttpServletResponse response, String header, String body) {
+        this.sendResponseToPelion(content_type, request, response, header, body, 200);
+    }
+    
+    // send the REST response back to Pelion with the given status (set before the body is written)
+    protected void sendResponseToPelion(String content_type, HttpServletRequest request, HttpServletResponse response, String header, String body, int status) {
+        response.setStatus(status);
         response.setContentType(content_type);
         response.setHeader("Pragma", "no-cache");
+        if (status == 503) {
+            // ask for a redelivery shortly
+            response.setHeader("Retry-After", "1");
+        }
         try {    
             try (PrintWriter out = response.getWriter()) {
                 if (header != null && header.length() > 0) {
@@ -94,13 +105,11 @@ public class HttpProcessor extends Processor {
                 }
                 out.flush();
                 out.close();
-                response.setStatus(200);
             }
         }
         catch (Exception ex ) {
             this.errorLogger().info("Pelion Processor: Exceutpion during send response back to Pelion...(OK)");
         }
-        response.setStatus(200);
     }
     
     // get the API Token
@@ -108,11 +117,31 @@ public class HttpProcessor extends Processor {
         return this.m_api_token;
     }
     
-    // get the last response code
+    // get the default content type
+    protected String contentType() {
+        return this.m_content_type;
+    }
+    
+    // get the last response code (for the calling thread)
     public int getLastResponseCode() {
         return this.m_http.getLastResponseCode();
     }
 
+    // invoke an HTTPS request and return its (immutable) response... safe to call concurrently
+    protected HttpTransportResponse httpsRequest(String verb, String url, String data, String content_type, String api_key) {
+        HttpTransportResponse response = this.m_http.httpsRequest(verb, url, api_key, data, content_type, null);
+        this.errorLogger().info("httpsRequest(" + verb + "): response: " + response.code());
+        return response;
+    }
+    
+    // legacy result mapping for a response: body if successful, otherwise null
+    protected String resultOf(HttpTransportResponse response) {
+        if (response != null && response.code() < 400) {
+            return response.body();
+        }
+        return null;
+    }
+
     // invoke HTTP GET request (SSL)
     protected String httpsGet(String url) {
         return this.httpsGet(url,this.m_content_type,this.m_api_token);
@@ -114,8 +114,10 @@ public class LongPollProcessor extends Thread {
                     // send whatever we get back as if we have received it via the webhook...
                     this.m_pelion_processor.processDeviceServerMessage(response,null);
 
-                    // wait briefly... just to slow things down a little bit...
-                    Utils.waitForABit(this.errorLogger(),Utils.createRandomNumberWithinRange(LONG_POLL_SHORT_WAIT_MIN, LONG_POLL_SHORT_WAIT_MAX));
+                    // wait briefly... just to slow things down a little bit... (not needed if ingestion is asynchronous)
+                    if (this.m_pelion_processor.asyncIngestionEnabled() == false) {
+                        Utils.waitForABit(this.errorLogger(),Utils.createRandomNumberWithinRange(LONG_POLL_SHORT_WAIT_MIN, LONG_POLL_SHORT_WAIT_MAX));
+                    }
                 }
                 else {
                     // DEBUG
@@ -0,0 +1,163 @@
+/**
+ * @file NotificationEvent.java
+ * @brief Typed Pelion resource notification event
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.coordinator.processors.core;
+
+import com.arm.pelion.bridge.core.Utils;
+import com.fasterxml.jackson.core.JsonParser;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Pelion resource notification event. The CoAP payload is decoded lazily, once, and shared by all peers.
+ *
+ * @author Doug Anson
+ */
+public class NotificationEvent extends PelionEvent {
+    private String m_ep = null;
+    private String m_path = null;
+    private String m_ct = null;
+    private String m_payload = null;
+    private Object m_max_age = null;
+    private volatile String m_decoded_payload = null;
+
+    // read from a streaming parser positioned on START_OBJECT
+    NotificationEvent(JsonParser parser) throws IOException {
+        super(NOTIFICATIONS);
+        this.read(parser);
+    }
+
+    // create from a legacy (parsed) notification entry
+    public NotificationEvent(Map notification) {
+        super(NOTIFICATIONS);
+        this.load(notification);
+    }
+
+    // endpoint name
+    @Override
+    public String endpointName() {
+        return this.stringValue("id", "ep");
+    }
+
+    // endpoint type (if supplied with the notification)
+    public String endpointType() {
+        return this.stringValue("endpoint_type", "ept");
+    }
+
+    // resource path
+    public String path() {
+        return this.stringValue("path", "uri");
+    }
+
+    // content type
+    public String contentType() {
+        return this.m_ct;
+    }
+
+    // Base64 encoded CoAP payload
+    public String payload() {
+        return this.m_payload;
+    }
+
+    // max-age (as received)
+    public Object maxAge() {
+        return this.m_max_age;
+    }
+
+    // decoded CoAP payload (decoded on first use)
+    public String decodedPayload() {
+        String decoded = this.m_decoded_payload;
+        if (decoded == null) {
+            decoded = Utils.decodeCoAPPayload(this.m_payload);
+            this.m_decoded_payload = decoded;
+        }
+        return decoded;
+    }
+
+    @Override
+    protected Object field(String key) {
+        switch (key) {
+            case "ep":
+                return this.m_ep;
+            case "path":
+                return this.m_path;
+            case "ct":
+                return this.m_ct;
+            case "payload":
+                return this.m_payload;
+            case "max-age":
+                return this.m_max_age;
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    protected boolean setField(String key, Object value) {
+        if (value == null) {
+            // kept as an extra (preserves explicit nulls)
+            return false;
+        }
+        if ("max-age".equals(key)) {
+            this.m_max_age = value;
+            return true;
+        }
+        if ((value instanceof String) == false) {
+            return false;
+        }
+        switch (key) {
+            case "ep":
+                this.m_ep = (String) value;
+                return true;
+            case "path":
+                this.m_path = (String) value;
+                return true;
+            case "ct":
+                this.m_ct = (String) value;
+                return true;
+            case "payload":
+                this.m_payload = (String) value;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    protected void putFields(Map<String,Object> map) {
+        if (this.m_ep != null) {
+            map.put("ep", this.m_ep);
+        }
+        if (this.m_path != null) {
+            map.put("path", this.m_path);
+        }
+        if (this.m_ct != null) {
+            map.put("ct", this.m_ct);
+        }
+        if (this.m_payload != null) {
+            map.put("payload", this.m_payload);
+        }
+        if (this.m_max_age != null) {
+            map.put("max-age", this.m_max_age);
+        }
+    }
+}
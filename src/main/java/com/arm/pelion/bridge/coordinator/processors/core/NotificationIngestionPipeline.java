@@ -0,0 +1,348 @@
+/**
+ * @file NotificationIngestionPipeline.java
+ * @brief Bounded asynchronous ingestion pipeline for Pelion notification messages
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.coordinator.processors.core;
+
+import com.arm.pelion.bridge.coordinator.processors.arm.PelionProcessor;
+import com.arm.pelion.bridge.core.BaseClass;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Notification ingestion pipeline. Long poll, webhook and websocket receivers simply enqueue the raw Pelion
+ * payload into a bounded queue and return... a fixed pool of worker threads then parses each message in parallel
+ * and routes the parsed events to the peers in arrival order (so per-endpoint event ordering is preserved).
+ * When the queue is full, the overflow policy either blocks the webhook receiver for a bounded time
+ * (backpressure) or rejects the message so that Pelion redelivers it. Long poll and websocket deliveries
+ * cannot be redelivered, so they always wait for room. On halt, queued messages are drained.
+ *
+ * @author Doug Anson
+ */
+public class NotificationIngestionPipeline extends BaseClass {
+    // defaults
+    private static final int DEFAULT_QUEUE_SIZE = 10000;                // max queued messages
+    private static final int DEFAULT_NUM_WORKERS = 4;                   // worker threads
+    private static final int DEFAULT_BLOCK_TIMEOUT_MS = 5000;           // max backpressure wait when using the "block" policy
+    private static final int WORKER_POLL_MS = 1000;                     // worker wakeup interval (to check for halt)
+    private static final int DEFAULT_DRAIN_TIMEOUT_MS = 10000;          // max wait to drain queued messages on halt
+
+    // overflow policies
+    public static final String POLICY_BLOCK = "block";
+    public static final String POLICY_DROP = "drop";
+
+    private PelionProcessor m_processor = null;
+    private ArrayBlockingQueue<IngestedMessage> m_queue = null;
+    private Thread[] m_workers = null;
+    private volatile boolean m_running = false;
+    private volatile boolean m_accepting = true;
+    private int m_drain_timeout_ms = DEFAULT_DRAIN_TIMEOUT_MS;
+
+    // arrival order: messages are taken in sequence and their events routed in the same sequence
+    private final Object m_take_lock = new Object();
+    private final Object m_route_lock = new Object();
+    private long m_next_take_seq = 0;
+    private long m_next_route_seq = 0;
+    private int m_queue_size = DEFAULT_QUEUE_SIZE;
+    private int m_num_workers = DEFAULT_NUM_WORKERS;
+    private int m_block_timeout_ms = DEFAULT_BLOCK_TIMEOUT_MS;
+    private String m_overflow_policy = POLICY_BLOCK;
+
+    // statistics
+    private final AtomicLong m_num_enqueued = new AtomicLong(0);
+    private final AtomicLong m_num_dropped = new AtomicLong(0);
+    private final AtomicLong m_num_processed = new AtomicLong(0);
+    private final AtomicLong m_total_enqueue_latency_us = new AtomicLong(0);
+    private final AtomicLong m_max_enqueue_latency_us = new AtomicLong(0);
+
+    // queued message
+    private static class IngestedMessage {
+        public String json = null;
+        public boolean validated = false;
+
+        public IngestedMessage(String json,boolean validated) {
+            this.json = json;
+            this.validated = validated;
+        }
+    }
+
+    // default constructor
+    public NotificationIngestionPipeline(PelionProcessor processor) {
+        super(processor.errorLogger(), processor.preferences());
+        this.m_processor = processor;
+
+        // queue size
+        this.m_queue_size = this.prefIntValue("mds_ingest_queue_size");
+        if (this.m_queue_size <= 0) {
+            this.m_queue_size = DEFAULT_QUEUE_SIZE;
+        }
+
+        // number of workers
+        this.m_num_workers = this.prefIntValue("mds_ingest_worker_threads");
+        if (this.m_num_workers <= 0) {
+            this.m_num_workers = DEFAULT_NUM_WORKERS;
+        }
+
+        // overflow policy
+        this.m_overflow_policy = this.prefValue("mds_ingest_overflow_policy");
+        if (this.m_overflow_policy == null || this.m_overflow_policy.equalsIgnoreCase(POLICY_DROP) == false) {
+            this.m_overflow_policy = POLICY_BLOCK;
+        }
+        else {
+            this.m_overflow_policy = POLICY_DROP;
+        }
+
+        // backpressure timeout
+        this.m_block_timeout_ms = this.prefIntValue("mds_ingest_block_timeout_ms");
+        if (this.m_block_timeout_ms <= 0) {
+            this.m_block_timeout_ms = DEFAULT_BLOCK_TIMEOUT_MS;
+        }
+
+        // drain timeout on halt
+        this.m_drain_timeout_ms = this.prefIntValue("mds_ingest_drain_timeout_ms");
+        if (this.m_drain_timeout_ms <= 0) {
+            this.m_drain_timeout_ms = DEFAULT_DRAIN_TIMEOUT_MS;
+        }
+
+        // create the queue
+        this.m_queue = new ArrayBlockingQueue<>(this.m_queue_size);
+
+        // DEBUG
+        this.errorLogger().warning("NotificationIngestionPipeline: Queue size: " + this.m_queue_size + " Workers: " + this.m_num_workers + " Overflow policy: " + this.m_overflow_policy);
+    }
+
+    // start the workers
+    public void start() {
+        if (this.m_running == false) {
+            this.m_running = true;
+            this.m_workers = new Thread[this.m_num_workers];
+            for(int i=0;i<this.m_num_workers;++i) {
+                this.m_workers[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        NotificationIngestionPipeline.this.workerLoop();
+                    }
+                }, "pelion-ingest-" + (i+1));
+                this.m_workers[i].setDaemon(true);
+                this.m_workers[i].start();
+            }
+        }
+    }
+
+    // stop accepting messages, drain the queued ones and stop the workers
+    public void halt() {
+        Thread[] workers = this.m_workers;
+        this.m_accepting = false;
+        this.m_running = false;
+        if (workers != null) {
+            long deadline = System.currentTimeMillis() + this.m_drain_timeout_ms;
+            for(int i=0;i<workers.length;++i) {
+                try {
+                    workers[i].join(Math.max(1,deadline - System.currentTimeMillis()));
+                }
+                catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            
+            // DEBUG
+            int remaining = this.m_queue.size();
+            if (remaining > 0) {
+                this.errorLogger().warning("NotificationIngestionPipeline: Halted with " + remaining + " messages NOT drained");
+            }
+            else {
+                this.errorLogger().warning("NotificationIngestionPipeline: Halted. Queue drained");
+            }
+        }
+        this.m_workers = null;
+    }
+
+    /**
+     * enqueue a raw Pelion message for asynchronous processing
+     * @param json raw Pelion message
+     * @param validated result of the notification validation check (performed on the receiving thread)
+     * @param redeliverable true - the sender redelivers a rejected message (webhook), false - wait for room (long poll/websocket)
+     * @return true - enqueued, false - rejected (the sender must be told to retry)
+     */
+    public boolean enqueue(String json,boolean validated,boolean redeliverable) {
+        IngestedMessage message = new IngestedMessage(json,validated);
+        boolean enqueued = false;
+        long start = System.nanoTime();
+
+        try {
+            if (this.m_accepting == false) {
+                // halted
+                enqueued = false;
+            }
+            else if (redeliverable == false) {
+                // no redelivery possible... wait for room (while we are running)
+                while (enqueued == false && this.m_accepting == true) {
+                    enqueued = this.m_queue.offer(message,WORKER_POLL_MS,TimeUnit.MILLISECONDS);
+                }
+            }
+            else if (POLICY_DROP.equals(this.m_overflow_policy)) {
+                // reject immediately if full
+                enqueued = this.m_queue.offer(message);
+            }
+            else {
+                // backpressure: block the receiver (bounded)
+                enqueued = this.m_queue.offer(message,this.m_block_timeout_ms,TimeUnit.MILLISECONDS);
+            }
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        // record the enqueue latency
+        this.recordEnqueueLatency((System.nanoTime() - start) / 1000);
+
+        if (enqueued == true) {
+            this.m_num_enqueued.incrementAndGet();
+        }
+        else {
+            // note the drop
+            this.m_num_dropped.incrementAndGet();
+            this.errorLogger().warning("NotificationIngestionPipeline: Queue full (" + this.m_queue_size + ") or halted. Message REJECTED: " + json);
+        }
+        return enqueued;
+    }
+
+    // record the enqueue latency
+    private void recordEnqueueLatency(long latency_us) {
+        this.m_total_enqueue_latency_us.addAndGet(latency_us);
+        long max = this.m_max_enqueue_latency_us.get();
+        while (latency_us > max && this.m_max_enqueue_latency_us.compareAndSet(max,latency_us) == false) {
+            max = this.m_max_enqueue_latency_us.get();
+        }
+    }
+
+    // worker loop (exits once halted and drained)
+    private void workerLoop() {
+        while (true) {
+            // take the next message and its arrival sequence number
+            IngestedMessage message = null;
+            long seq = 0;
+            try {
+                synchronized (this.m_take_lock) {
+                    if (this.m_running == true) {
+                        message = this.m_queue.poll(WORKER_POLL_MS,TimeUnit.MILLISECONDS);
+                    }
+                    else {
+                        message = this.m_queue.poll();
+                    }
+                    if (message != null) {
+                        seq = this.m_next_take_seq++;
+                    }
+                }
+            }
+            catch (InterruptedException ex) {
+                // keep going until drained
+            }
+            if (message == null) {
+                if (this.m_running == false) {
+                    // halted and drained
+                    return;
+                }
+                continue;
+            }
+
+            // parse the message (in parallel with the other workers)
+            List<PelionEvent> events = null;
+            try {
+                events = this.m_processor.parseDeviceServerMessage(message.json,message.validated);
+            }
+            catch (Exception ex) {
+                // note but keep going...
+                this.errorLogger().warning("NotificationIngestionPipeline: Exception caught while parsing: " + ex.getMessage() + ". Continuing...",ex);
+            }
+
+            // route the events in arrival order
+            this.awaitRouteTurn(seq);
+            try {
+                if (events != null) {
+                    this.m_processor.routeEvents(events);
+                }
+                this.m_num_processed.incrementAndGet();
+            }
+            catch (Exception ex) {
+                // note but keep going...
+                this.errorLogger().warning("NotificationIngestionPipeline: Exception caught while routing: " + ex.getMessage() + ". Continuing...",ex);
+            }
+            finally {
+                this.endRouteTurn();
+            }
+        }
+    }
+
+    // wait until the messages taken before ours have been routed
+    private void awaitRouteTurn(long seq) {
+        boolean interrupted = false;
+        synchronized (this.m_route_lock) {
+            while (this.m_next_route_seq != seq) {
+                try {
+                    this.m_route_lock.wait();
+                }
+                catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted == true) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // let the next message route
+    private void endRouteTurn() {
+        synchronized (this.m_route_lock) {
+            ++this.m_next_route_seq;
+            this.m_route_lock.notifyAll();
+        }
+    }
+
+    // current queue depth
+    public int queueDepth() {
+        return this.m_queue.size();
+    }
+
+    // ingestion statistics (Health Stats)
+    public Map<String,Object> statistics() {
+        HashMap<String,Object> stats = new HashMap<>();
+        long enqueued = this.m_num_enqueued.get();
+        long dropped = this.m_num_dropped.get();
+        long attempts = enqueued + dropped;
+        stats.put("depth",this.m_queue.size());
+        stats.put("capacity",this.m_queue_size);
+        stats.put("workers",this.m_num_workers);
+        stats.put("policy",this.m_overflow_policy);
+        stats.put("enqueued",enqueued);
+        stats.put("processed",this.m_num_processed.get());
+        stats.put("dropped",dropped);
+        stats.put("avg_enqueue_latency_ms",attempts > 0 ? (float)this.m_total_enqueue_latency_us.get() / attempts / 1000.0f : 0.0f);
+        stats.put("max_enqueue_latency_ms",(float)this.m_max_enqueue_latency_us.get() / 1000.0f);
+        return stats;
+    }
+}
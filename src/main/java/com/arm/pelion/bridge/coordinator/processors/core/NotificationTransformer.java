@@ -0,0 +1,312 @@
+/**
+ * @file NotificationTransformer.java
+ * @brief Single-pass Pelion notification to peer JSON transformer
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.coordinator.processors.core;
+
+import com.arm.pelion.bridge.core.TypeDecoder;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Single-pass notification transformer: streams the peer JSON for a Pelion notification directly from the
+ * typed notification event and its decoded CoAP payload. The legacy path generates JSON from the Map, strips
+ * brackets, re-parses it to rename the unified-format keys and generates JSON again; here the key renames,
+ * dropped keys and payload re-typing are applied while writing so no intermediate Maps or Strings are built.
+ *
+ * @author Doug Anson
+ */
+public class NotificationTransformer {
+    // streaming factory (thread-safe, shared)
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    // legacy key -> unified format key
+    private static final String[][] UNIFIED_KEYS = {
+        {"ep", "deviceId"},
+        {"path", "resourceId"},
+        {"coap_verb", "method"}
+    };
+
+    // keys dropped in unified format
+    private static final String[] UNIFIED_DROPPED_KEYS = {"ct", "max-age"};
+
+    // the notification fields modelled by NotificationEvent (in output order)
+    private static final String[] EVENT_KEYS = {"ep", "path", "ct", "payload", "max-age"};
+
+    // the payload value key
+    private static final String VALUE_KEY = "value";
+
+    private TypeDecoder m_decoder = null;
+    private boolean m_unified_format_enabled = false;
+
+    // default constructor
+    public NotificationTransformer(TypeDecoder decoder, boolean unified_format_enabled) {
+        this.m_decoder = decoder;
+        this.m_unified_format_enabled = unified_format_enabled;
+    }
+
+    /**
+     * transform a notification into peer JSON
+     * @param notification typed Pelion notification
+     * @return peer JSON or null if the notification could not be transformed (use the legacy path)
+     */
+    public String transform(NotificationEvent notification) {
+        return this.transform(notification, null, this.m_unified_format_enabled, null);
+    }
+
+    /**
+     * transform a notification into peer JSON
+     * @param notification typed Pelion notification
+     * @param extra_fields additional fields written with (and overriding) the notification fields (may be null)
+     * @param unified true - write the unified format, false - write the legacy key names
+     * @param wrapper_key if non-null, the notification is written as the value of this key in an enclosing object
+     * @return peer JSON or null if the notification could not be transformed (use the legacy path)
+     */
+    public String transform(NotificationEvent notification, Map extra_fields, boolean unified, String wrapper_key) {
+        if (notification == null) {
+            return null;
+        }
+        StringWriter out = new StringWriter(256);
+        try (JsonGenerator gen = FACTORY.createGenerator(out)) {
+            if (wrapper_key != null) {
+                gen.writeStartObject();
+                gen.writeFieldName(wrapper_key);
+            }
+            gen.writeStartObject();
+            this.writeNotificationFields(gen, notification, extra_fields, unified);
+            gen.writeFieldName(VALUE_KEY);
+            this.writePayloadValue(gen, notification.decodedPayload());
+            gen.writeEndObject();
+            if (wrapper_key != null) {
+                gen.writeEndObject();
+            }
+        }
+        catch (IOException | RuntimeException ex) {
+            // malformed payload or unsupported content... caller falls back to the legacy path
+            return null;
+        }
+        return out.toString();
+    }
+
+    // write the notification fields (renamed/dropped as required... "value" is always (re)written last)
+    private void writeNotificationFields(JsonGenerator gen, NotificationEvent notification, Map extra_fields, boolean unified) throws IOException {
+        // modelled fields
+        for (int i = 0; i < EVENT_KEYS.length; ++i) {
+            Object value = notification.field(EVENT_KEYS[i]);
+            if (value != null && (extra_fields == null || extra_fields.containsKey(EVENT_KEYS[i]) == false)) {
+                this.writeField(gen, EVENT_KEYS[i], value, notification, extra_fields, unified);
+            }
+        }
+
+        // unmodelled fields
+        Iterator it = notification.extras().entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry entry = (Map.Entry) it.next();
+            if (extra_fields == null || extra_fields.containsKey(entry.getKey()) == false) {
+                this.writeField(gen, (String) entry.getKey(), entry.getValue(), notification, extra_fields, unified);
+            }
+        }
+
+        // additional fields
+        it = (extra_fields != null) ? extra_fields.entrySet().iterator() : null;
+        while (it != null && it.hasNext()) {
+            Map.Entry entry = (Map.Entry) it.next();
+            this.writeField(gen, (String) entry.getKey(), entry.getValue(), notification, extra_fields, unified);
+        }
+    }
+
+    // write a single notification field
+    private void writeField(JsonGenerator gen, String key, Object value, NotificationEvent notification, Map extra_fields, boolean unified) throws IOException {
+        if (key == null || VALUE_KEY.equals(key)) {
+            return;
+        }
+        if (unified == true) {
+            if (this.isDroppedKey(key) || this.isOverriddenKey(notification, extra_fields, key)) {
+                return;
+            }
+            if (value != null) {
+                key = this.unifiedKey(key);
+            }
+        }
+        gen.writeFieldName(key);
+        this.writeValue(gen, value);
+    }
+
+    // dropped in unified format
+    private boolean isDroppedKey(String key) {
+        for (int i = 0; i < UNIFIED_DROPPED_KEYS.length; ++i) {
+            if (UNIFIED_DROPPED_KEYS[i].equals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // a unified key already present is replaced by the renamed legacy key (if that key has a value)
+    private boolean isOverriddenKey(NotificationEvent notification, Map extra_fields, String key) {
+        for (int i = 0; i < UNIFIED_KEYS.length; ++i) {
+            if (UNIFIED_KEYS[i][1].equals(key)) {
+                String source = UNIFIED_KEYS[i][0];
+                if (extra_fields != null && extra_fields.containsKey(source)) {
+                    return extra_fields.get(source) != null;
+                }
+                return notification.get(source) != null;
+            }
+        }
+        return false;
+    }
+
+    // map a legacy key to its unified format key
+    private String unifiedKey(String key) {
+        for (int i = 0; i < UNIFIED_KEYS.length; ++i) {
+            if (UNIFIED_KEYS[i][0].equals(key)) {
+                return UNIFIED_KEYS[i][1];
+            }
+        }
+        return key;
+    }
+
+    // write the decoded payload: a JSON object payload is copied (re-typed) as-is, anything else is a fundamental type
+    private void writePayloadValue(JsonGenerator gen, String decoded_payload) throws IOException {
+        if (this.looksLikeJsonObject(decoded_payload) == true) {
+            try (JsonParser parser = FACTORY.createParser(decoded_payload)) {
+                parser.nextToken();
+                if (parser.nextToken() != JsonToken.END_OBJECT) {
+                    // non-empty object... copy it re-typing the string values
+                    gen.writeStartObject();
+                    this.copyFields(parser, gen);
+                    gen.writeEndObject();
+                    return;
+                }
+            }
+        }
+        this.writeValue(gen, this.m_decoder.getFundamentalValueFromString(decoded_payload));
+    }
+
+    // quick check for a JSON object payload
+    private boolean looksLikeJsonObject(String payload) {
+        for (int i = 0; payload != null && i < payload.length(); ++i) {
+            char c = payload.charAt(i);
+            if (Character.isWhitespace(c) == false) {
+                return c == '{';
+            }
+        }
+        return false;
+    }
+
+    // copy object fields (parser is positioned on the first field name)
+    private void copyFields(JsonParser parser, JsonGenerator gen) throws IOException {
+        for (JsonToken token = parser.getCurrentToken(); token != JsonToken.END_OBJECT; token = parser.nextToken()) {
+            if (token != JsonToken.FIELD_NAME) {
+                throw new EOFException("NotificationTransformer: truncated JSON payload");
+            }
+            gen.writeFieldName(parser.getCurrentName());
+            parser.nextToken();
+            this.copyValue(parser, gen);
+        }
+    }
+
+    // copy the current value re-typing strings (as Utils.retypeMap() does)
+    private void copyValue(JsonParser parser, JsonGenerator gen) throws IOException {
+        JsonToken token = parser.getCurrentToken();
+        if (token == null) {
+            throw new EOFException("NotificationTransformer: truncated JSON payload");
+        }
+        switch (token) {
+            case START_OBJECT:
+                gen.writeStartObject();
+                parser.nextToken();
+                this.copyFields(parser, gen);
+                gen.writeEndObject();
+                break;
+            case START_ARRAY:
+                gen.writeStartArray();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    this.copyValue(parser, gen);
+                }
+                gen.writeEndArray();
+                break;
+            case VALUE_STRING:
+                this.writeValue(gen, this.m_decoder.getFundamentalValueFromString(parser.getText()));
+                break;
+            default:
+                gen.copyCurrentEvent(parser);
+                break;
+        }
+    }
+
+    // write a notification value
+    private void writeValue(JsonGenerator gen, Object value) throws IOException {
+        if (value == null) {
+            gen.writeNull();
+        }
+        else if (value instanceof String) {
+            gen.writeString((String) value);
+        }
+        else if (value instanceof Integer) {
+            gen.writeNumber((Integer) value);
+        }
+        else if (value instanceof Long) {
+            gen.writeNumber((Long) value);
+        }
+        else if (value instanceof Double) {
+            gen.writeNumber((Double) value);
+        }
+        else if (value instanceof Float) {
+            gen.writeNumber((Float) value);
+        }
+        else if (value instanceof Boolean) {
+            gen.writeBoolean((Boolean) value);
+        }
+        else if (value instanceof Map) {
+            gen.writeStartObject();
+            Iterator it = ((Map) value).entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry entry = (Map.Entry) it.next();
+                gen.writeFieldName(String.valueOf(entry.getKey()));
+                this.writeValue(gen, entry.getValue());
+            }
+            gen.writeEndObject();
+        }
+        else if (value instanceof List) {
+            gen.writeStartArray();
+            List list = (List) value;
+            for (int i = 0; i < list.size(); ++i) {
+                this.writeValue(gen, list.get(i));
+            }
+            gen.writeEndArray();
+        }
+        else if (value instanceof Number) {
+            gen.writeNumber(value.toString());
+        }
+        else {
+            gen.writeString(value.toString());
+        }
+    }
+}
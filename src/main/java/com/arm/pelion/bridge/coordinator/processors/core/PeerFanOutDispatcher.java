@@ -0,0 +1,208 @@
+/**
+ * @file PeerFanOutDispatcher.java
+ * @brief Per-peer isolated event delivery for the Pelion bridge
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.coordinator.processors.core;
+
+import com.arm.pelion.bridge.coordinator.processors.interfaces.PeerProcessorInterface;
+import com.arm.pelion.bridge.core.BaseClass;
+import com.arm.pelion.bridge.core.ErrorLogger;
+import com.arm.pelion.bridge.preferences.PreferenceManager;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Peer fan-out dispatcher. Each peer processor gets its own set of bounded, endpoint-ordered lanes so that a
+ * slow or failing peer cannot delay event delivery to the other peers. When a lane is full the producer waits for room
+ * (backpressure)... notifications may optionally be dropped instead (peer_fanout_overflow_policy=drop).
+ *
+ * @author Doug Anson
+ */
+public class PeerFanOutDispatcher extends BaseClass {
+    // default per-lane queue size
+    private static final int DEFAULT_LANE_QUEUE_SIZE = 1000;
+
+    // internal event key for completing a new device registration
+    public static final String COMPLETE_REGISTRATION = "complete-registration";
+
+    private PeerProcessorInterface m_peer = null;
+    private String m_peer_name = null;
+    private EndpointLaneExecutor m_lanes = null;
+    private boolean m_drop_notifications = false;
+
+    // statistics
+    private final AtomicLong m_num_delivered = new AtomicLong(0);
+    private final AtomicLong m_num_dropped = new AtomicLong(0);
+    private final AtomicLong m_num_rejected = new AtomicLong(0);
+    private final AtomicLong m_num_failed = new AtomicLong(0);
+    private final AtomicLong m_total_lag_ms = new AtomicLong(0);
+    private final AtomicLong m_max_lag_ms = new AtomicLong(0);
+
+    // default constructor
+    public PeerFanOutDispatcher(ErrorLogger error_logger, PreferenceManager preference_manager, PeerProcessorInterface peer, String peer_name) {
+        super(error_logger, preference_manager);
+        this.m_peer = peer;
+        this.m_peer_name = peer_name;
+
+        // per-lane queue size
+        int lane_queue_size = this.prefIntValue("peer_fanout_lane_queue_size");
+        if (lane_queue_size <= 0) {
+            lane_queue_size = DEFAULT_LANE_QUEUE_SIZE;
+        }
+
+        // overflow policy for notifications (block - wait for room, drop - drop and count)
+        this.m_drop_notifications = NotificationIngestionPipeline.POLICY_DROP.equalsIgnoreCase(this.prefValue("peer_fanout_overflow_policy"));
+
+        // create our lanes
+        this.m_lanes = new EndpointLaneExecutor(error_logger, preference_manager, "peer-" + peer_name, this.prefIntValue("peer_fanout_lanes"), lane_queue_size);
+
+        // DEBUG
+        this.errorLogger().warning("PeerFanOutDispatcher(" + peer_name + "): Notification overflow policy: " + (this.m_drop_notifications ? NotificationIngestionPipeline.POLICY_DROP : NotificationIngestionPipeline.POLICY_BLOCK));
+    }
+
+    // our peer name
+    public String peerName() {
+        return this.m_peer_name;
+    }
+
+    /**
+     * dispatch an event to our peer (in order with the other events of its endpoint). If the lane is full we wait
+     * for room (notifications are dropped instead under the "drop" overflow policy)
+     * @param event typed Pelion event (or COMPLETE_REGISTRATION endpoint event)
+     * @return true - queued, false - dropped
+     */
+    public boolean dispatch(final PelionEvent event) {
+        final long enqueued_ms = System.currentTimeMillis();
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                PeerFanOutDispatcher.this.recordLag(System.currentTimeMillis() - enqueued_ms);
+                PeerFanOutDispatcher.this.deliver(event);
+            }
+        };
+        if (this.m_drop_notifications == true && PelionEvent.NOTIFICATIONS.equals(event.key()) == true) {
+            // telemetry (opted in): drop if our peer cannot keep up
+            boolean queued = this.m_lanes.execute(event.endpointName(), task);
+            if (queued == false) {
+                this.m_num_dropped.incrementAndGet();
+                this.errorLogger().warning("PeerFanOutDispatcher(" + this.m_peer_name + "): Queue full. Event " + event.key() + " DROPPED for endpoint: " + event.endpointName());
+            }
+            return queued;
+        }
+        
+        // never dropped... wait for room
+        boolean queued = this.m_lanes.executeBlocking(event.endpointName(), task);
+        if (queued == false) {
+            this.m_num_rejected.incrementAndGet();
+            this.delivered(event);
+            this.errorLogger().warning("PeerFanOutDispatcher(" + this.m_peer_name + "): Lanes stopped. Event " + event.key() + " NOT DELIVERED for endpoint: " + event.endpointName());
+        }
+        return queued;
+    }
+
+    // deliver an event to our peer (notifications and async-responses typed, the rest as its own copy of the legacy Map form)
+    private void deliver(PelionEvent event) {
+        String key = event.key();
+        try {
+            switch (key) {
+                case PelionEvent.NOTIFICATIONS:
+                    this.m_peer.processNotification((NotificationEvent) event);
+                    break;
+                case PelionEvent.REGISTRATIONS:
+                    this.m_peer.processNewRegistration(((EndpointEvent) event).copyMessage());
+                    break;
+                case PelionEvent.REG_UPDATES:
+                    this.m_peer.processReRegistration(((EndpointEvent) event).copyMessage());
+                    break;
+                case PelionEvent.DEVICE_DELETIONS:
+                    this.m_peer.processDeviceDeletions(((EndpointEvent) event).copyMessage());
+                    break;
+                case PelionEvent.DE_REGISTRATIONS:
+                    this.m_peer.processDeregistrations(((EndpointEvent) event).copyMessage());
+                    break;
+                case PelionEvent.REGISTRATIONS_EXPIRED:
+                    this.m_peer.processRegistrationsExpired(((EndpointEvent) event).copyMessage());
+                    break;
+                case PelionEvent.ASYNC_RESPONSES:
+                    this.m_peer.processAsyncResponse((AsyncResponseEvent) event);
+                    break;
+                case COMPLETE_REGISTRATION:
+                    this.m_peer.completeNewDeviceRegistration(((EndpointEvent) event).copyMessage());
+                    break;
+                default:
+                    this.errorLogger().warning("PeerFanOutDispatcher(" + this.m_peer_name + "): Unknown event type: " + key);
+                    return;
+            }
+            this.m_num_delivered.incrementAndGet();
+        }
+        catch (Exception ex) {
+            // note but keep going... (the other peers are unaffected)
+            this.m_num_failed.incrementAndGet();
+            this.errorLogger().warning("PeerFanOutDispatcher(" + this.m_peer_name + "): Exception caught while processing " + key + ": " + ex.getMessage(), ex);
+        }
+        finally {
+            this.delivered(event);
+        }
+    }
+    
+    // note that our peer is done with an event
+    private void delivered(PelionEvent event) {
+        if (event instanceof EndpointEvent) {
+            ((EndpointEvent) event).delivered();
+        }
+    }
+
+    // record the queueing lag
+    private void recordLag(long lag_ms) {
+        this.m_total_lag_ms.addAndGet(lag_ms);
+        long max = this.m_max_lag_ms.get();
+        while (lag_ms > max && this.m_max_lag_ms.compareAndSet(max,lag_ms) == false) {
+            max = this.m_max_lag_ms.get();
+        }
+    }
+
+    // current queue depth (all lanes)
+    public int queueDepth() {
+        return this.m_lanes.queueDepth();
+    }
+
+    // fan-out statistics (Health Stats)
+    public Map<String,Object> statistics() {
+        HashMap<String,Object> stats = new HashMap<>();
+        long delivered = this.m_num_delivered.get();
+        long failed = this.m_num_failed.get();
+        long processed = delivered + failed;
+        stats.put("depth",this.m_lanes.queueDepth());
+        stats.put("delivered",delivered);
+        stats.put("failed",failed);
+        stats.put("dropped",this.m_num_dropped.get());
+        stats.put("rejected",this.m_num_rejected.get());
+        stats.put("avg_lag_ms",processed > 0 ? (float)this.m_total_lag_ms.get() / processed : 0.0f);
+        stats.put("max_lag_ms",this.m_max_lag_ms.get());
+        return stats;
+    }
+
+    // shutdown
+    public void shutdown() {
+        this.m_lanes.shutdown();
+    }
+}
@@ -37,10 +37,10 @@ import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.codec.binary.Base64;
@@ -74,8 +74,8 @@ public class PeerProcessor extends Processor implements GenericSender, TopicPars
     // enable this if you want to have re-subscription even if the subscription already exists (i.e. wipe/reset)
     protected boolean m_re_subscribe = true;
     
-    // Visited List
-    private ArrayList<String> m_device_seen_list = null;
+    // Visited set (case-normalized device IDs)
+    private Set<String> m_device_seen_set = null;
     
     // keys used to differentiate between data from CoAP observations and responses from CoAP commands 
     protected String m_observation_key = "notify";                  
@@ -88,12 +88,15 @@ public class PeerProcessor extends Processor implements GenericSender, TopicPars
     // Unified formats enabled
     private boolean m_unified_format_enabled = DEFAULT_UNIFIED_FORMAT_ENABLED;
     
+    // single-pass notification transformer (null if this peer uses the legacy generate/re-parse path)
+    private NotificationTransformer m_notification_transformer = null;
+    
     // default constructor
     public PeerProcessor(Orchestrator orchestrator, String suffix) {
         super(orchestrator, suffix);
         
-        // initialize the seen list
-        this.m_device_seen_list = new ArrayList<>();
+        // initialize the seen set
+        this.m_device_seen_set = Utils.newDeviceIDSet();
                 
         // allocate our AsyncResponse orchestrator
         this.m_async_response_manager = new AsyncResponseManager(orchestrator);
@@ -138,6 +141,19 @@ public class PeerProcessor extends Processor implements GenericSender, TopicPars
         else {
             this.errorLogger().warning("PeerProcessor: Unified Formats DISABLED");
         }
+        
+        // Single-pass notification transform enablement (per-peer setting overrides the global one)
+        String single_pass = orchestrator.preferences().valueOf("single_pass_notifications_enabled",this.m_suffix);
+        if (single_pass == null) {
+            single_pass = orchestrator.preferences().valueOf("single_pass_notifications_enabled");
+        }
+        if (single_pass != null && single_pass.equalsIgnoreCase("true")) {
+            this.m_notification_transformer = new NotificationTransformer(this.m_type_decoder,this.m_unified_format_enabled);
+            this.errorLogger().warning("PeerProcessor: Single-pass notifications ENABLED");
+        }
+        else {
+            this.errorLogger().warning("PeerProcessor: Single-pass notifications DISABLED");
+        }
     }
     
     // are draft MQTT formats enabled?
@@ -198,6 +214,7 @@ public class PeerProcessor extends Processor implements GenericSender, TopicPars
     protected String[] processDeviceDeletionsBase(Map parsed) {
         String[] device_deletions = this.parseDeviceDeletionsBody(parsed);
         this.orchestrator().processDeviceDeletions(device_deletions);
+        this.purgeAsyncResponses(device_deletions);
         return device_deletions;
     }
     
@@ -214,6 +231,7 @@ public class PeerProcessor extends Processor implements GenericSender, TopicPars
     protected String[] processDeregistrationsBase(Map parsed) {
         String[] deregistrations = this.parseDeRegistrationBody(parsed);
         this.orchestrator().processDeregistrations(deregistrations);
+        this.purgeAsyncResponses(deregistrations);
         return deregistrations;
     }
     
@@ -230,9 +248,17 @@ public class PeerProcessor extends Processor implements GenericSender, TopicPars
     protected String[] processRegistrationsExpiredBase(Map parsed) {
         String[] regs_expired = this.parseRegistrationsExpiredBody(parsed);
         this.orchestrator().processRegistrationsExpired(regs_expired);
+        this.purgeAsyncResponses(regs_expired);
         return regs_expired;
     }
     
+    // purge any pending async-responses for departed endpoints (the requesters are notified)
+    protected void purgeAsyncResponses(String[] ep_names) {
+        for (int i = 0; this.asyncResponseManager() != null && ep_names != null && i < ep_names.length; ++i) {
+            this.asyncResponseManager().purgeEndpoint(ep_names[i]);
+        }
+    }
+    
     // process an observation
     public void processNotification(Map data) {
         // DEBUG
@@ -241,12 +267,32 @@ public class PeerProcessor extends Processor implements GenericSender, TopicPars
         // get the list of parsed notifications
         List notifications = (List) data.get("notifications");
         for (int i = 0; notifications != null && i < notifications.size(); ++i) {
-            try {
-                Map notification = (Map) notifications.get(i);
+            this.processNotification(new NotificationEvent((Map) notifications.get(i)));
+        }
+    }
+    
+    // process a single (typed) observation
+    public void processNotification(NotificationEvent notification) {
+        try {
+            // get the device ID and device Type
+            String ep_type = notification.endpointType();
+            String ep_name = notification.endpointName();
+            if (ep_type == null) {
+                ep_type = this.getEndpointTypeFromEndpointName(ep_name);
+            }
+
+            // get the resource URI
+            String uri = (String) notification.get("path");
 
-                // decode the Payload...
-                String b64_coap_payload = (String) notification.get("payload");
-                String decoded_coap_payload = Utils.decodeCoAPPayload(b64_coap_payload);
+            // send it as JSON over the observation sub topic
+            String topic = this.createObservationTopic(ep_type, ep_name, uri);
+
+            // single-pass transform into a coap/device packet (if enabled for this peer)
+            String coap_json = this.transformNotification(notification);
+            if (coap_json == null) {
+                // legacy path: work on a Map copy of the notification
+                Map notification_map = notification.toMap();
+                String decoded_coap_payload = notification.decodedPayload();
 
                 // DEBUG
                 //this.errorLogger().info("processIncomingDeviceServerMessage(Peer): Decoded Payload: " + decoded_coap_payload);
@@ -254,52 +300,39 @@ public class PeerProcessor extends Processor implements GenericSender, TopicPars
                 Map json_parsed = this.tryJSONParse(decoded_coap_payload);
                 if (json_parsed != null && json_parsed.isEmpty() == false) {
                     // add in a JSON object payload value directly...
-                    notification.put("value", Utils.retypeMap(json_parsed, this.fundamentalTypeDecoder()));             // its JSON (flat...)                                                   // its JSON 
+                    notification_map.put("value", Utils.retypeMap(json_parsed, this.fundamentalTypeDecoder()));             // its JSON (flat...)                                                   // its JSON 
                 }
                 else {
                     // add in a decoded payload value as a fundamental type...
-                    notification.put("value", this.fundamentalTypeDecoder().getFundamentalValueFromString(decoded_coap_payload)); // its a Float, Integer, or String
+                    notification_map.put("value", this.fundamentalTypeDecoder().getFundamentalValueFromString(decoded_coap_payload)); // its a Float, Integer, or String
                 }
 
                 // we will send the raw CoAP JSON... WatsonIoT can parse that... 
-                String coap_raw_json = this.jsonGenerator().generateJson(notification);
+                String coap_raw_json = this.jsonGenerator().generateJson(notification_map);
 
                 // strip off []...
                 String coap_json_stripped = this.stripArrayChars(coap_raw_json);
-                
-                // get the device ID and device Type
-                String ep_type = Utils.valueFromValidKey(notification, "endpoint_type", "ept");
-                String ep_name = Utils.valueFromValidKey(notification, "id", "ep");
-                if (ep_type == null) {
-                    ep_type = this.getEndpointTypeFromEndpointName(ep_name);
-                }
-     
-                // get the resource URI
-                String uri = (String) notification.get("path");
 
-                // send it as JSON over the observation sub topic
-                String topic = this.createObservationTopic(ep_type, ep_name, uri);
-                
                 // encapsulate into a coap/device packet...
-                String coap_json = this.convertToUnifiedFormat(coap_json_stripped);
-
-                // DEBUG
-                this.errorLogger().info("PeerProcessor: Active subscription for ep_name: " + ep_name + " ep_type: " + ep_type + " uri: " + uri);
-                this.errorLogger().info("PeerProcessor: Publishing notification: payload: " + coap_json + " topic: " + topic);
+                coap_json = this.convertToUnifiedFormat(coap_json_stripped);
+            }
 
-                // WARN if we have a null EPT... may have notification data processing loss...
-                if (ep_type == null || ep_type.length() == 0) {
-                    // optional warning
-                    this.errorLogger().info("PeerProcessor(processNotification): WARNING: EPT is NULL. TOPIC: " + topic + " MESSAGE: " + coap_json);
-                }
+            // DEBUG
+            this.errorLogger().info("PeerProcessor: Active subscription for ep_name: " + ep_name + " ep_type: " + ep_type + " uri: " + uri);
+            this.errorLogger().info("PeerProcessor: Publishing notification: payload: " + coap_json + " topic: " + topic);
 
-                // publish to Peer...
-                this.sendMessage(topic, coap_json);
-            }
-            catch (Exception ex) {
-                // caught exception in processing notifications...
-                this.errorLogger().warning("PeerProcessor: Exception while processing notifications: " + ex.getMessage(),ex);
+            // WARN if we have a null EPT... may have notification data processing loss...
+            if (ep_type == null || ep_type.length() == 0) {
+                // optional warning
+                this.errorLogger().info("PeerProcessor(processNotification): WARNING: EPT is NULL. TOPIC: " + topic + " MESSAGE: " + coap_json);
             }
+
+            // publish to Peer...
+            this.sendMessage(topic, coap_json);
+        }
+        catch (Exception ex) {
+            // caught exception in processing notifications...
+            this.errorLogger().warning("PeerProcessor: Exception while processing notifications: " + ex.getMessage(),ex);
         }
     }
     
@@ -993,6 +1026,22 @@ public class PeerProcessor extends Processor implements GenericSender, TopicPars
         return null;
     }
     
+    // single-pass transform of a notification into peer JSON (null if disabled or not transformable - use the legacy path)
+    protected String transformNotification(NotificationEvent notification) {
+        if (this.m_notification_transformer != null) {
+            return this.m_notification_transformer.transform(notification);
+        }
+        return null;
+    }
+    
+    // single-pass transform of a notification into peer JSON with additional fields and explicit format/wrapper options
+    protected String transformNotification(NotificationEvent notification, Map extra_fields, boolean unified, String wrapper_key) {
+        if (this.m_notification_transformer != null) {
+            return this.m_notification_transformer.transform(notification, extra_fields, unified, wrapper_key);
+        }
+        return null;
+    }
+    
     // convert to unified format
     protected String convertToUnifiedFormat(String json) {
         if (this.unifiedFormatEnabled() == true) {
@@ -1083,6 +1132,38 @@ public class PeerProcessor extends Processor implements GenericSender, TopicPars
         return coap_json;
     }
     
+    // create the reply sent to a requester whose async-response will never arrive (expired/evicted/deregistered)
+    public String createAsyncResponseTimeoutReply(AsyncResponseRecord record, String reason) {
+        Map reply = new HashMap<>();
+        String uri = record.uri();
+        if (uri != null && uri.length() > 0 && uri.charAt(0) == '/') {
+            uri = uri.substring(1);
+        }
+        
+        // same addressing as our replies... plus the status
+        if (this.unifiedFormatEnabled() == true) {
+            reply.put("resourceId", uri);
+            reply.put("deviceId", record.endpointName());
+            reply.put("method", record.verb());
+        }
+        else {
+            reply.put("path", uri);
+            reply.put("ep", record.endpointName());
+            reply.put("coap_verb", record.verb());
+        }
+        reply.put("async-response-id", record.id());
+        reply.put("status", 504);
+        reply.put("error", reason);
+        
+        // generate the JSON
+        String json = this.jsonGenerator().generateJson(reply);
+        
+        // DEBUG
+        this.errorLogger().info("PeerProcessor: AsyncResponse " + reason + " reply: " + json);
+        
+        return json;
+    }
+    
     // reformat response topic per draft MQTT format rules
     public String createDraftFormatReplyTopic(Map record) {
         // DEBUG
@@ -1402,6 +1483,13 @@ public class PeerProcessor extends Processor implements GenericSender, TopicPars
         }
     }
     
+    // process & route a single (typed) async response (defaulted implementation)
+    public void processAsyncResponse(AsyncResponseEvent response) {
+        if (this.asyncResponseManager() != null) {
+            this.asyncResponseManager().processAsyncResponse(response);
+        }
+    }
+    
     //
     // These methods are stubbed out by default... but need to be implemented in derived classes.
     // They are the "responders" to mDS events for devices and initialize/start and stop "listeners"
@@ -1494,33 +1582,24 @@ public class PeerProcessor extends Processor implements GenericSender, TopicPars
     }
     
     // add device to seen list
-    protected synchronized void addDeviceToSeenList(String id) {
+    protected void addDeviceToSeenList(String id) {
         if (id != null && id.length() > 0) {
-            this.m_device_seen_list.add(id);
+            this.m_device_seen_set.add(Utils.normalizeDeviceID(id));
         }
     }
     
     // is the device previously seen?
-    protected synchronized boolean deviceAlreadySeen(String id) {
+    protected boolean deviceAlreadySeen(String id) {
         if (id != null && id.length() > 0) {
-            for(int i=0;i<this.m_device_seen_list.size();++i) {
-                if (this.m_device_seen_list.get(i).equalsIgnoreCase(id)) {
-                    return true;
-                }
-            }
+            return this.m_device_seen_set.contains(Utils.normalizeDeviceID(id));
         }
         return false;
     }
     
     // remove the device from the seen list
-    protected synchronized void removeDeviceFromSeenList(String id) {
+    protected void removeDeviceFromSeenList(String id) {
         if (id != null && id.length() > 0) {
-            for(int i=0;i<this.m_device_seen_list.size();++i) {
-                if (this.m_device_seen_list.get(i).equalsIgnoreCase(id)) {
-                    this.m_device_seen_list.remove(i);
-                    return;
-                }
-            }
+            this.m_device_seen_set.remove(Utils.normalizeDeviceID(id));
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,203 @@
+/**
+ * @file PelionEvent.java
+ * @brief Typed Pelion event (base)
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.coordinator.processors.core;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Typed Pelion event: one entry of a Pelion message (notification, registration, de-registration, async-response...)
+ * read once from the Pelion JSON and shared (read-only) by all peers. Fields the event does not model are kept
+ * in an "extras" map so that the legacy Map form ({key:[entry]}) can still be produced on demand.
+ *
+ * @author Doug Anson
+ */
+public abstract class PelionEvent {
+    // Pelion message keys
+    public static final String NOTIFICATIONS = "notifications";
+    public static final String REGISTRATIONS = "registrations";
+    public static final String REG_UPDATES = "reg-updates";
+    public static final String DE_REGISTRATIONS = "de-registrations";
+    public static final String REGISTRATIONS_EXPIRED = "registrations-expired";
+    public static final String DEVICE_DELETIONS = "device-deletions";
+    public static final String ASYNC_RESPONSES = "async-responses";
+
+    private final String m_key;
+    private LinkedHashMap<String,Object> m_extras = null;
+    private volatile Map m_message = null;
+
+    // default constructor
+    protected PelionEvent(String key) {
+        this.m_key = key;
+    }
+
+    // create a typed event from a legacy (parsed) message entry
+    public static PelionEvent fromEntry(String key, Object entry) {
+        if (entry instanceof Map) {
+            if (NOTIFICATIONS.equals(key)) {
+                return new NotificationEvent((Map) entry);
+            }
+            if (ASYNC_RESPONSES.equals(key)) {
+                return new AsyncResponseEvent((Map) entry);
+            }
+        }
+        return new EndpointEvent(key, entry);
+    }
+
+    // the Pelion message key this event was received under
+    public String key() {
+        return this.m_key;
+    }
+
+    // the endpoint (or async-response ID) this event belongs to... used to keep per-endpoint ordering
+    public abstract String endpointName();
+
+    // get a field value (typed field or extra)
+    public Object get(String key) {
+        Object value = this.field(key);
+        if (value == null && this.m_extras != null) {
+            value = this.m_extras.get(key);
+        }
+        return value;
+    }
+
+    // get the first non-null String value of two keys (as Utils.valueFromValidKey() does)
+    public String stringValue(String key1, String key2) {
+        Object value = this.get(key1);
+        if (value == null) {
+            value = this.get(key2);
+        }
+        return (String) value;
+    }
+
+    // legacy Map form of this entry (a new Map each call... callers may modify it)
+    public Map toMap() {
+        LinkedHashMap<String,Object> map = new LinkedHashMap<>();
+        this.putFields(map);
+        if (this.m_extras != null) {
+            map.putAll(this.m_extras);
+        }
+        return map;
+    }
+
+    // legacy single-entry Pelion message ({key:[entry]}) for Map-based consumers (built once, then shared)
+    public Map toMessage() {
+        Map message = this.m_message;
+        if (message == null) {
+            HashMap<String,Object> map = new HashMap<>();
+            ArrayList<Object> entries = new ArrayList<>();
+            entries.add(this.legacyEntry());
+            map.put(this.m_key, entries);
+            message = map;
+            this.m_message = message;
+        }
+        return message;
+    }
+
+    // the entry placed in the legacy message
+    protected Object legacyEntry() {
+        return this.toMap();
+    }
+
+    // the unmodelled fields (read-only)
+    Map<String,Object> extras() {
+        if (this.m_extras == null) {
+            return Collections.emptyMap();
+        }
+        return Collections.unmodifiableMap(this.m_extras);
+    }
+
+    // typed field value (null if not a typed field or not set)
+    protected abstract Object field(String key);
+
+    // assign a typed field... false if the field is not typed (kept as an extra)
+    protected abstract boolean setField(String key, Object value);
+
+    // add the typed fields to the legacy Map form
+    protected abstract void putFields(Map<String,Object> map);
+
+    // load this event from a legacy (parsed) entry
+    protected final void load(Map entry) {
+        Iterator it = entry.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry pair = (Map.Entry) it.next();
+            this.assign((String) pair.getKey(), pair.getValue());
+        }
+    }
+
+    // read this event from a streaming parser positioned on START_OBJECT (leaves it on the matching END_OBJECT)
+    protected final void read(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        while (token == JsonToken.FIELD_NAME) {
+            String key = parser.getCurrentName();
+            parser.nextToken();
+            this.assign(key, readValue(parser));
+            token = parser.nextToken();
+        }
+        if (token != JsonToken.END_OBJECT) {
+            throw new EOFException("PelionEvent: truncated JSON entry");
+        }
+    }
+
+    // assign a field: typed if possible, otherwise kept as an extra
+    private void assign(String key, Object value) {
+        if (key != null && this.setField(key, value) == false) {
+            if (this.m_extras == null) {
+                this.m_extras = new LinkedHashMap<>();
+            }
+            this.m_extras.put(key, value);
+        }
+    }
+
+    // read the current value (scalars directly, structures via the parser's codec)
+    static Object readValue(JsonParser parser) throws IOException {
+        JsonToken token = parser.getCurrentToken();
+        if (token == null) {
+            throw new EOFException("PelionEvent: truncated JSON entry");
+        }
+        switch (token) {
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+                return parser.getNumberValue();
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDoubleValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_NULL:
+                return null;
+            default:
+                return parser.readValueAs(Object.class);
+        }
+    }
+}
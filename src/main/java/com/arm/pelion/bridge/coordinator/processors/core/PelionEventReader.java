@@ -0,0 +1,121 @@
+/**
+ * @file PelionEventReader.java
+ * @brief Streaming reader of Pelion messages into typed events
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.coordinator.processors.core;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a Pelion message (webhook, long-poll or websocket body) straight from the JSON stream into typed events.
+ * Notifications and async-responses are read field-by-field without an intermediate Map.
+ *
+ * @author Doug Anson
+ */
+public class PelionEventReader {
+    // event keys in the order they are routed to the peers
+    private static final String[] ROUTING_ORDER = {
+        PelionEvent.NOTIFICATIONS,
+        PelionEvent.REGISTRATIONS,
+        PelionEvent.REG_UPDATES,
+        PelionEvent.DE_REGISTRATIONS,
+        PelionEvent.REGISTRATIONS_EXPIRED,
+        PelionEvent.ASYNC_RESPONSES
+    };
+
+    // not instantiable
+    private PelionEventReader() {
+    }
+
+    /**
+     * read the events of a Pelion message
+     * @param parser streaming parser over the message (not yet advanced)
+     * @return events in routing order (all notifications first, ... async-responses last), null if not a JSON object
+     * @throws IOException on malformed JSON
+     */
+    public static List<PelionEvent> read(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return null;
+        }
+
+        // collect the events for each key
+        ArrayList<ArrayList<PelionEvent>> by_key = new ArrayList<>();
+        for (int i = 0; i < ROUTING_ORDER.length; ++i) {
+            by_key.add(null);
+        }
+        int count = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String key = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            int index = routingIndex(key);
+            if (index < 0 || token != JsonToken.START_ARRAY) {
+                // not an event list
+                parser.skipChildren();
+                continue;
+            }
+            ArrayList<PelionEvent> events = by_key.get(index);
+            if (events == null) {
+                events = new ArrayList<>();
+                by_key.set(index, events);
+            }
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                events.add(readEvent(key, parser));
+                ++count;
+            }
+        }
+
+        // flatten in routing order
+        ArrayList<PelionEvent> events = new ArrayList<>(count);
+        for (int i = 0; i < by_key.size(); ++i) {
+            if (by_key.get(i) != null) {
+                events.addAll(by_key.get(i));
+            }
+        }
+        return events;
+    }
+
+    // read a single event entry
+    private static PelionEvent readEvent(String key, JsonParser parser) throws IOException {
+        if (parser.getCurrentToken() == JsonToken.START_OBJECT) {
+            if (PelionEvent.NOTIFICATIONS.equals(key)) {
+                return new NotificationEvent(parser);
+            }
+            if (PelionEvent.ASYNC_RESPONSES.equals(key)) {
+                return new AsyncResponseEvent(parser);
+            }
+        }
+        return new EndpointEvent(key, PelionEvent.readValue(parser));
+    }
+
+    // routing position of a message key (-1 if not an event key)
+    private static int routingIndex(String key) {
+        for (int i = 0; i < ROUTING_ORDER.length; ++i) {
+            if (ROUTING_ORDER[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -23,79 +23,91 @@
 package com.arm.pelion.bridge.coordinator.processors.core;
 
 import com.arm.pelion.bridge.coordinator.processors.arm.PelionProcessor;
+import com.arm.pelion.bridge.coordinator.processors.interfaces.DeviceDiscoveryListenerInterface;
 import com.arm.pelion.bridge.core.BaseClass;
 import com.arm.pelion.bridge.core.Utils;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Threaded dispatching of creating a device's shadow
+ * Executor based dispatching of device shadow creation. Pages of registered devices are streamed from discovery
+ * (the next page is fetched while the current one is being created) and a fixed pool of workers keeps a constant
+ * number of shadow creations in flight. Devices unchanged since the last shadow state snapshot are restored directly
+ * (warm restart) and snapshotted devices no longer registered are retired. Progress, throughput and ETA are published
+ * for the health statistics.
  * @author Doug Anson
  */
 public class ShadowDeviceThreadDispatcher extends BaseClass implements Runnable {
-    // Throttling Tunables
-    private static final int WAIT_ON_DISPATCH_GROUP_MS=250;                 // 1/4 second (time between thread completion checks per dispatch group)
-    private static final int WAIT_DISPATCH_GROUP_LAUNCH_PAUSE_MS=100;       // 1/10 second (time between launching threads in a dispatch group)
+    // pages of devices fetched ahead of shadow creation
+    private static final int DISCOVERY_PREFETCH_PAGES = 2;
+    private static final int END_OF_DISCOVERY_WAIT_MS = 1000;
+    
+    // warm restores are paced so that the peer fan-out lanes are not overrun (we wait... restores are never dropped)
+    private static final int WARM_RESTORE_MAX_BACKLOG = 500;
+    private static final int WARM_RESTORE_WAIT_MS = 50;
+    private static final int WARM_RESTORE_LOG_INTERVAL_MS = 30000;
+    
+    // a shadow creation stays in flight until every peer has created its shadow (bounded)
+    private static final int PEER_COMPLETION_WAIT_MS = 60000;
+    
+    // end of discovery marker
+    private static final List END_OF_DISCOVERY = new ArrayList();
+    
+    // bootstrap states
+    public static final String STATE_IDLE = "idle";
+    public static final String STATE_DISCOVERING = "discovering";
+    public static final String STATE_CREATING = "creating";
+    public static final String STATE_COMPLETE = "complete";
     
     private PelionProcessor m_pelion_processor = null;
     private int m_mds_max_shadow_create_threads = 0;
-    private int m_wait_on_dispatch_group_ms = WAIT_ON_DISPATCH_GROUP_MS;
-    private int m_wait_dispatch_group_launch_pause_ms = WAIT_DISPATCH_GROUP_LAUNCH_PAUSE_MS;
+    
+    // progress
+    private volatile String m_state = STATE_IDLE;
+    private volatile int m_total_count = -1;
+    private volatile boolean m_discovery_complete = false;
+    private volatile boolean m_abandoned = false;
+    private final AtomicInteger m_num_discovered = new AtomicInteger(0);
+    private final AtomicInteger m_num_completed = new AtomicInteger(0);
+    private final AtomicInteger m_num_failed = new AtomicInteger(0);
+    private final AtomicInteger m_num_timed_out = new AtomicInteger(0);
+    private final AtomicInteger m_num_restored = new AtomicInteger(0);
+    private final AtomicInteger m_num_in_flight = new AtomicInteger(0);
+    private final AtomicLong m_start_ms = new AtomicLong(0);
+    private final AtomicLong m_end_ms = new AtomicLong(0);
     
     // constructor
     public ShadowDeviceThreadDispatcher(PelionProcessor pelion_processor,int max_shadow_create_threads) {
         super(pelion_processor.errorLogger(),pelion_processor.preferences());
         this.m_pelion_processor = pelion_processor;
-        this.m_mds_max_shadow_create_threads = max_shadow_create_threads;
+        this.m_mds_max_shadow_create_threads = Math.max(1,max_shadow_create_threads);
     }
     
-    // run the thread to dispatch the device shadow threads
+    // run the thread to dispatch the device shadow creations
     @Override
     public void run() {
         if (this.m_pelion_processor != null) {
             // DEBUG
             this.errorLogger().warning("ShadowDeviceThreadDispatcher: Quering Pelion for existing devices in your organization...");
-
-            // query mbed Cloud for the current list of Registered devices
-            List devices = this.m_pelion_processor.discoverRegisteredDevices();
+            this.m_state = STATE_DISCOVERING;
+            this.m_start_ms.set(System.currentTimeMillis());
+            
+            // stream the discovered pages into shadow creation
+            this.dispatchAll();
             
             // DEBUG
-            if (devices != null) {
-                this.errorLogger().warning("ShadowDeviceThreadDispatcher: Pelion indicates " + devices.size() + " devices in your organization.");
-            }
-            else {
-                this.errorLogger().warning("ShadowDeviceThreadDispatcher: Pelion indicates 0 devices in your organization.");
-            }
-        
-            // see what we got in response...
-            if (devices.size() > 0 && devices.size() < this.m_mds_max_shadow_create_threads) {
-                // DEBUG
-                this.errorLogger().warning("ShadowDeviceThreadDispatcher: Dispatching single group (" + devices.size() +  ") of threads for device shadow creation...");
-
-                // dispatch a single group
-                List<Thread> list = this.beginDispatchGroup(devices);
-                
-                // wait on the dispatch group to complete
-                this.waitOnDispatchGroup(list);
-            }
-            else if (devices.size() > 0) {
-                // Chop the list up into a list of lists
-                List<List<Map>> chopped_list = Utils.chopList(devices,this.m_mds_max_shadow_create_threads);
-                for(int i=0;chopped_list != null && i<chopped_list.size();++i) {
-                    // Get the ith list of devices...
-                    List device_list_i = chopped_list.get(i);
-
-                    // DEBUG
-                    this.errorLogger().warning("ShadowDeviceThreadDispatcher: Dispatching group (" + (i+1) + " of " + chopped_list.size() +  ") of threads for device shadow creation...");
-
-                    // now invoke the dispatch of the ith group of devices
-                    List<Thread> list = this.beginDispatchGroup(device_list_i);
-
-                    // wait on the dispatch group to complete
-                    this.waitOnDispatchGroup(list);
-                }
-            }
+            this.errorLogger().warning("ShadowDeviceThreadDispatcher: Pelion indicates " + this.m_num_discovered.get() + " devices in your organization.");
         }
         else {
             // ERROR - invalid params to constructor
@@ -103,64 +115,246 @@ public class ShadowDeviceThreadDispatcher extends BaseClass implements Runnable
         }
         
         // DEBUG
+        this.m_state = STATE_COMPLETE;
         this.errorLogger().warning("ShadowDeviceThreadDispatcher: Existing device discovery is COMPLETE");
     }
     
-    // dispatch of device shadow setup in a single group
-    private List<Thread> beginDispatchGroup(List devices) {
-        ArrayList<Thread> thread_list = new ArrayList<>();
-        // loop through each device, dispatch a device shadow setup for it
-        for(int i=0;devices != null && i<devices.size();++i) {
-            try {
-                // get the ith device
-                Map device = (Map)devices.get(i);
-                
-                // get the device ID and device Type
-                String device_type = Utils.valueFromValidKey(device, "endpoint_type", "ept");
-                if (device_type == null || device_type.length() == 0) {
-                    this.errorLogger().info("ShadowDeviceThreadDispatcher: Found empty EndpointType. Setting to: " + this.m_pelion_processor.DEFAULT_ENDPOINT_TYPE);
-                    device.put("ept",this.m_pelion_processor.DEFAULT_ENDPOINT_TYPE);
-                    device.put("endpoint_type",this.m_pelion_processor.DEFAULT_ENDPOINT_TYPE);
+    // discover (in the background) and dispatch all device shadow creations keeping at most m_mds_max_shadow_create_threads in flight
+    private void dispatchAll() {
+        final ArrayBlockingQueue<List> pages = new ArrayBlockingQueue<>(DISCOVERY_PREFETCH_PAGES);
+        ExecutorService executor = Executors.newFixedThreadPool(this.m_mds_max_shadow_create_threads,this.createThreadFactory());
+        Semaphore in_flight = new Semaphore(this.m_mds_max_shadow_create_threads);
+        
+        // fetch the pages in the background... each page is queued as soon as it arrives
+        Thread discovery = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ShadowDeviceThreadDispatcher.this.discoverPages(pages);
+            }
+        }, "shadow-discovery");
+        discovery.setDaemon(true);
+        discovery.start();
+        
+        try {
+            // create shadows for each page while the next page is fetched
+            List page = pages.take();
+            while (page != END_OF_DISCOVERY) {
+                this.m_state = STATE_CREATING;
+                for(int i=0;i<page.size();++i) {
+                    // warm restart the ith device if unchanged since our snapshot
+                    if (this.restore((Map)page.get(i)) == true) {
+                        continue;
+                    }
+                    
+                    // wait for an in-flight slot
+                    in_flight.acquire();
+                    
+                    // submit the ith device
+                    if (this.submit(executor,in_flight,(Map)page.get(i)) == false) {
+                        in_flight.release();
+                    }
                 }
-                String device_id = Utils.valueFromValidKey(device, "id", "ep");
-                
+                page = pages.take();
+            }
+            
+            // wait for the remaining creations to complete
+            in_flight.acquire(this.m_mds_max_shadow_create_threads);
+            
+            // retire snapshotted devices that are no longer registered (only if we saw the entire fleet)
+            if (this.m_total_count > 0 && this.m_num_discovered.get() >= this.m_total_count) {
+                this.m_pelion_processor.retireStaleDeviceShadows();
+            }
+        }
+        catch (InterruptedException ex) {
+            // interrupted... abandon the remaining devices
+            this.errorLogger().warning("ShadowDeviceThreadDispatcher: Interrupted. Remaining device shadows will be created on registration.");
+            this.m_abandoned = true;
+            discovery.interrupt();
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            executor.shutdown();
+            this.m_end_ms.set(System.currentTimeMillis());
+        }
+        
+        // DEBUG
+        this.errorLogger().warning("ShadowDeviceThreadDispatcher: Created " + this.m_num_completed.get() + " device shadows (" + this.m_num_failed.get() + " failed, " + this.m_num_timed_out.get() + " unconfirmed) and restored " + this.m_num_restored.get() + " from snapshot in " + (this.m_end_ms.get() - this.m_start_ms.get()) + "ms");
+    }
+    
+    // warm restart a single device from the shadow state snapshot (true - restored)
+    private boolean restore(Map device) throws InterruptedException {
+        // pace ourselves against the peer fan-out backlog (wait for the peers to catch up rather than overrun them)
+        long next_log_ms = System.currentTimeMillis() + WARM_RESTORE_LOG_INTERVAL_MS;
+        while (this.m_pelion_processor.orchestrator().peerFanOutBacklog() >= WARM_RESTORE_MAX_BACKLOG) {
+            Thread.sleep(WARM_RESTORE_WAIT_MS);
+            if (System.currentTimeMillis() >= next_log_ms) {
                 // DEBUG
-                this.errorLogger().warning("ShadowDeviceThreadDispatcher: Shadow Device task starting for deviceID: " + device_id + " Type: " + device_type);
-                
-                // create a thread and dispatch it to create the device shadow...
-                Thread dispatch = new Thread(new CreateShadowDeviceThread(this.m_pelion_processor,device));
-                dispatch.start();
-                thread_list.add(dispatch);
-                
-                // Throttle a bit
-                Utils.waitForABit(this.errorLogger(), this.m_wait_dispatch_group_launch_pause_ms);
+                this.errorLogger().warning("ShadowDeviceThreadDispatcher: Peer fan-out backlog above " + WARM_RESTORE_MAX_BACKLOG + ". Warm restore waiting for the peers to catch up...");
+                next_log_ms = System.currentTimeMillis() + WARM_RESTORE_LOG_INTERVAL_MS;
             }
-            catch (Exception ex) {
-                // ERROR
-                this.errorLogger().warning("ShadowDeviceThreadDispatcher: Exception during device shadow create dispatch: " + ex.getMessage());
+        }
+        
+        try {
+            if (this.m_pelion_processor.restoreDeviceShadow(device) == true) {
+                this.m_num_restored.incrementAndGet();
+                return true;
             }
         }
-        return thread_list;
+        catch (RuntimeException ex) {
+            // fall back to a full shadow creation
+            this.errorLogger().warning("ShadowDeviceThreadDispatcher: Exception during device shadow restore: " + ex.getMessage() + ". Creating in full...");
+        }
+        return false;
     }
     
-    // wait until all threads of a given dispatch group have completed
-    private void waitOnDispatchGroup(List<Thread> list) {
-        boolean finished = false;
-        if (list != null && list.size() > 0) {
-            while(!finished) {
-                int count = list.size();
-                for(int i=0;i<list.size() && !finished;++i) {
-                    if (list.get(i).getState() == Thread.State.TERMINATED) {
-                        --count;
+    // WORKER: discover the pages of registered devices and queue them (blocks if creation falls behind)
+    private void discoverPages(final ArrayBlockingQueue<List> pages) {
+        try {
+            this.m_pelion_processor.discoverRegisteredDevices(new DeviceDiscoveryListenerInterface() {
+                @Override
+                public boolean devicePageDiscovered(List devices, int total_count) {
+                    ShadowDeviceThreadDispatcher.this.m_num_discovered.addAndGet(devices.size());
+                    if (total_count > 0) {
+                        ShadowDeviceThreadDispatcher.this.m_total_count = total_count;
+                    }
+                    try {
+                        pages.put(devices);
+                        return true;
+                    }
+                    catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return false;
                     }
                 }
-                if (count <= 0) {
-                    finished = true;
+            });
+        }
+        catch (Exception ex) {
+            // ERROR
+            this.errorLogger().warning("ShadowDeviceThreadDispatcher: Exception during device discovery: " + ex.getMessage());
+        }
+        finally {
+            // always terminate the stream
+            this.m_discovery_complete = true;
+            boolean queued = false;
+            while (queued == false && this.m_abandoned == false) {
+                try {
+                    queued = pages.offer(END_OF_DISCOVERY,END_OF_DISCOVERY_WAIT_MS,TimeUnit.MILLISECONDS);
                 }
-                else {
-                    Utils.waitForABit(this.errorLogger(), this.m_wait_on_dispatch_group_ms); 
+                catch (InterruptedException ex) {
+                    // keep trying while the consumer is waiting on the end marker
                 }
             }
         }
     }
+    
+    // submit the shadow creation of a single device
+    private boolean submit(ExecutorService executor,final Semaphore in_flight,Map device) {
+        try {
+            // get the device ID and device Type
+            String device_type = Utils.valueFromValidKey(device, "endpoint_type", "ept");
+            if (device_type == null || device_type.length() == 0) {
+                this.errorLogger().info("ShadowDeviceThreadDispatcher: Found empty EndpointType. Setting to: " + this.m_pelion_processor.DEFAULT_ENDPOINT_TYPE);
+                device.put("ept",this.m_pelion_processor.DEFAULT_ENDPOINT_TYPE);
+                device.put("endpoint_type",this.m_pelion_processor.DEFAULT_ENDPOINT_TYPE);
+            }
+            String device_id = Utils.valueFromValidKey(device, "id", "ep");
+
+            // DEBUG
+            this.errorLogger().info("ShadowDeviceThreadDispatcher: Shadow Device task starting for deviceID: " + device_id + " Type: " + device_type);
+
+            // dispatch the device shadow creation
+            final String ep_name = device_id;
+            final CountDownLatch peers_done = new CountDownLatch(1);
+            final CreateShadowDeviceThread task = new CreateShadowDeviceThread(this.m_pelion_processor,device,peers_done);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    ShadowDeviceThreadDispatcher.this.m_num_in_flight.incrementAndGet();
+                    try {
+                        // Pelion side setup... the peers then create their shadows asynchronously
+                        task.run();
+                        
+                        // nothing to wait on if the setup will not complete the registration
+                        if (task.completionPending() == false) {
+                            ShadowDeviceThreadDispatcher.this.m_num_timed_out.incrementAndGet();
+                            ShadowDeviceThreadDispatcher.this.errorLogger().warning("ShadowDeviceThreadDispatcher: Registration completion not pending for deviceID: " + ep_name + "... not waiting on peers");
+                        }
+                        
+                        // stay in flight until our peers are done too
+                        else if (peers_done.await(PEER_COMPLETION_WAIT_MS,TimeUnit.MILLISECONDS) == true) {
+                            ShadowDeviceThreadDispatcher.this.m_num_completed.incrementAndGet();
+                        }
+                        else {
+                            ShadowDeviceThreadDispatcher.this.m_num_timed_out.incrementAndGet();
+                            ShadowDeviceThreadDispatcher.this.errorLogger().warning("ShadowDeviceThreadDispatcher: Peer shadow creation not confirmed within " + PEER_COMPLETION_WAIT_MS + "ms for deviceID: " + ep_name);
+                        }
+                    }
+                    catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    catch (RuntimeException ex) {
+                        ShadowDeviceThreadDispatcher.this.m_num_failed.incrementAndGet();
+                        ShadowDeviceThreadDispatcher.this.errorLogger().warning("ShadowDeviceThreadDispatcher: Exception during device shadow create: " + ex.getMessage());
+                    }
+                    finally {
+                        ShadowDeviceThreadDispatcher.this.m_pelion_processor.orchestrator().abandonRegistrationCompletion(peers_done);
+                        ShadowDeviceThreadDispatcher.this.m_num_in_flight.decrementAndGet();
+                        in_flight.release();
+                    }
+                }
+            });
+            return true;
+        }
+        catch (Exception ex) {
+            // ERROR
+            this.m_num_failed.incrementAndGet();
+            this.errorLogger().warning("ShadowDeviceThreadDispatcher: Exception during device shadow create dispatch: " + ex.getMessage());
+        }
+        return false;
+    }
+    
+    // create our worker thread factory
+    private ThreadFactory createThreadFactory() {
+        final AtomicInteger count = new AtomicInteger(0);
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "shadow-create-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+    
+    // bootstrap progress statistics (Health Stats)
+    public Map<String,Object> statistics() {
+        HashMap<String,Object> stats = new HashMap<>();
+        int discovered = this.m_num_discovered.get();
+        int total = (this.m_discovery_complete == true || this.m_total_count < discovered) ? discovered : this.m_total_count;
+        int completed = this.m_num_completed.get();
+        int failed = this.m_num_failed.get();
+        int timed_out = this.m_num_timed_out.get();
+        int restored = this.m_num_restored.get();
+        int remaining = Math.max(0,total - completed - failed - timed_out - restored);
+        long start = this.m_start_ms.get();
+        long end = this.m_end_ms.get();
+        long elapsed_ms = (start > 0) ? ((end > 0 ? end : System.currentTimeMillis()) - start) : 0;
+        float rate = (elapsed_ms > 0) ? ((completed + restored) * 1000.0f / elapsed_ms) : 0.0f;
+        
+        stats.put("state",this.m_state);
+        stats.put("total",total);
+        stats.put("discovered",discovered);
+        stats.put("discovery_complete",this.m_discovery_complete);
+        stats.put("created",completed);
+        stats.put("failed",failed);
+        stats.put("unconfirmed",timed_out);
+        stats.put("restored",restored);
+        stats.put("remaining",remaining);
+        stats.put("in_flight",this.m_num_in_flight.get());
+        stats.put("workers",this.m_mds_max_shadow_create_threads);
+        stats.put("elapsed_sec",elapsed_ms / 1000);
+        stats.put("created_per_sec",rate);
+        stats.put("eta_sec",(rate > 0.0f) ? (long)Math.ceil(remaining / rate) : (remaining > 0 ? -1 : 0));
+        return stats;
+    }
 }
\ No newline at end of file
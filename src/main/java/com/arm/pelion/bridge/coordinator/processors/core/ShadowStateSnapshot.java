@@ -0,0 +1,431 @@
+/**
+ * @file ShadowStateSnapshot.java
+ * @brief Local shadow-state snapshot used to warm restart the Pelion bridge
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.coordinator.processors.core;
+
+import com.arm.pelion.bridge.coordinator.processors.interfaces.ShadowStateContributorInterface;
+import com.arm.pelion.bridge.core.BaseClass;
+import com.arm.pelion.bridge.core.ErrorLogger;
+import com.arm.pelion.bridge.core.Utils;
+import com.arm.pelion.bridge.preferences.PreferenceManager;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Shadow state snapshot. Each completed device shadow (endpoint name, type, Pelion version, resources and metadata)
+ * is recorded along with the peer-side details (cloud identifiers, credential references, ETags) exported by the
+ * registered contributors. The snapshot is written behind to a local file so that, on restart, devices that are
+ * unchanged in Pelion can be restored without re-provisioning them in the peer clouds.
+ *
+ * @author Doug Anson
+ */
+public class ShadowStateSnapshot extends BaseClass implements Runnable {
+    // defaults
+    private static final String DEFAULT_SNAPSHOT_FILE = "shadow_snapshot.ser.gz";
+    private static final int DEFAULT_FLUSH_INTERVAL_MS = 5000;              // write-behind interval for recorded changes
+    private static final int DEFAULT_REFRESH_INTERVAL_MS = 60000;           // periodic rewrite to capture late peer-side details
+    private static final int SNAPSHOT_FORMAT = 1;
+
+    // entry keys
+    private static final String KEY_EPT = "ept";
+    private static final String KEY_VERSION = "version";
+    private static final String KEY_ENDPOINT = "endpoint";
+    private static final String KEY_PEERS = "peers";
+
+    // endpoint keys never snapshotted
+    private static final String[] TRANSIENT_KEYS = {"peer_processor","warm_restart"};
+
+    // endpoint key marking a device restored from the snapshot
+    public static final String WARM_RESTART_KEY = "warm_restart";
+
+    private boolean m_enabled = false;
+    private File m_file = null;
+    private int m_flush_interval_ms = DEFAULT_FLUSH_INTERVAL_MS;
+    private int m_refresh_interval_ms = DEFAULT_REFRESH_INTERVAL_MS;
+    private Thread m_flusher = null;
+    private volatile boolean m_running = false;
+    private volatile boolean m_dirty = false;
+    private volatile long m_last_flush_ms = 0;
+
+    // live device records and the records loaded at startup
+    private final ConcurrentHashMap<String,HashMap<String,Serializable>> m_devices = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String,HashMap<String,Serializable>> m_restored = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<ShadowStateContributorInterface> m_contributors = new CopyOnWriteArrayList<>();
+
+    // default constructor
+    public ShadowStateSnapshot(ErrorLogger error_logger, PreferenceManager preference_manager) {
+        super(error_logger, preference_manager);
+
+        // enabled/disabled
+        this.m_enabled = this.prefBoolValue("shadow_snapshot_enabled");
+
+        // snapshot file
+        this.m_file = new File(this.prefValueWithDefault("shadow_snapshot_file", DEFAULT_SNAPSHOT_FILE));
+
+        // write-behind interval
+        this.m_flush_interval_ms = this.prefIntValue("shadow_snapshot_flush_ms");
+        if (this.m_flush_interval_ms <= 0) {
+            this.m_flush_interval_ms = DEFAULT_FLUSH_INTERVAL_MS;
+        }
+
+        // refresh interval
+        this.m_refresh_interval_ms = this.prefIntValue("shadow_snapshot_refresh_ms");
+        if (this.m_refresh_interval_ms <= 0) {
+            this.m_refresh_interval_ms = DEFAULT_REFRESH_INTERVAL_MS;
+        }
+
+        if (this.m_enabled == true) {
+            // DEBUG
+            this.errorLogger().warning("ShadowStateSnapshot: File: " + this.m_file.getAbsolutePath() + " Flush interval (ms): " + this.m_flush_interval_ms + " Refresh interval (ms): " + this.m_refresh_interval_ms);
+
+            // load any previous snapshot and start writing behind
+            this.load();
+            this.start();
+        }
+        else {
+            // DEBUG
+            this.errorLogger().warning("ShadowStateSnapshot: Warm restart DISABLED");
+        }
+    }
+
+    // enabled?
+    public boolean enabled() {
+        return this.m_enabled;
+    }
+
+    // add a peer-side contributor
+    public void addContributor(ShadowStateContributorInterface contributor) {
+        if (contributor != null && this.m_contributors.contains(contributor) == false) {
+            this.m_contributors.add(contributor);
+        }
+    }
+
+    // the Pelion version of a device record (changes whenever the device record is updated)
+    public static String versionOf(Map device) {
+        if (device != null) {
+            return Utils.valueFromValidKey(device, "updated_at", "etag");
+        }
+        return null;
+    }
+
+    /**
+     * is the device unchanged since the snapshot was taken?
+     * @param ep_name
+     * @param ep_type sanitized endpoint type
+     * @param version Pelion version of the device record (see versionOf())
+     * @return true - unchanged (may be restored), false - new or changed
+     */
+    public boolean unchanged(String ep_name, String ep_type, String version) {
+        if (this.m_enabled == true && ep_name != null && version != null) {
+            HashMap<String,Serializable> entry = this.m_restored.get(ep_name);
+            if (entry != null) {
+                return version.equals(entry.get(KEY_VERSION)) && ep_type != null && ep_type.equals(entry.get(KEY_EPT));
+            }
+        }
+        return false;
+    }
+
+    /**
+     * restore a device from the snapshot: the peer-side details are handed back to the contributors
+     * @param ep_name
+     * @return the snapshotted endpoint record (marked as a warm restart), null if not present
+     */
+    public HashMap<String,Object> restore(String ep_name) {
+        HashMap<String,Serializable> entry = (ep_name != null) ? this.m_restored.remove(ep_name) : null;
+        if (entry != null) {
+            // hand the peer-side details back
+            HashMap<String,HashMap<String,Serializable>> peers = (HashMap<String,HashMap<String,Serializable>>)entry.get(KEY_PEERS);
+            for (int i = 0; peers != null && i < this.m_contributors.size(); ++i) {
+                ShadowStateContributorInterface contributor = this.m_contributors.get(i);
+                HashMap<String,Serializable> details = peers.get(contributor.shadowStateName());
+                if (details != null) {
+                    contributor.importShadowState(ep_name, details);
+                }
+            }
+
+            // the endpoint record
+            HashMap<String,Object> endpoint = new HashMap<>();
+            Map record = (Map)entry.get(KEY_ENDPOINT);
+            if (record != null) {
+                endpoint.putAll(record);
+            }
+            endpoint.put(WARM_RESTART_KEY, true);
+            return endpoint;
+        }
+        return null;
+    }
+
+    // a discovered device has changed since the snapshot was taken (it will be re-provisioned)
+    public void superseded(String ep_name) {
+        if (ep_name != null) {
+            this.m_restored.remove(ep_name);
+        }
+    }
+
+    // endpoints in the snapshot that were neither restored nor superseded (i.e. no longer registered in Pelion)
+    public List<String> unrestoredEndpoints() {
+        return new ArrayList<>(this.m_restored.keySet());
+    }
+
+    // discard the remaining startup snapshot entries
+    public void clearRestored() {
+        this.m_restored.clear();
+    }
+
+    // record a completed device registration
+    public void record(Map endpoint) {
+        String ep_name = (endpoint != null) ? Utils.valueFromValidKey(endpoint, "id", "ep") : null;
+        if (this.m_enabled == true && ep_name != null) {
+            // copy the serializable portions of the endpoint record (peers may later modify the original)
+            HashMap<String,Serializable> record = new HashMap<>();
+            for (Object o : endpoint.entrySet()) {
+                Map.Entry e = (Map.Entry)o;
+                if (e.getKey() instanceof String && e.getValue() instanceof Serializable && this.isTransient((String)e.getKey()) == false) {
+                    record.put((String)e.getKey(), (Serializable)e.getValue());
+                }
+            }
+
+            // create the snapshot entry
+            HashMap<String,Serializable> entry = new HashMap<>();
+            entry.put(KEY_EPT, Utils.valueFromValidKey(endpoint, "endpoint_type", "ept"));
+            entry.put(KEY_VERSION, versionOf(endpoint));
+            entry.put(KEY_ENDPOINT, record);
+            this.m_devices.put(ep_name, entry);
+            this.m_dirty = true;
+        }
+    }
+
+    // forget a device (deleted, de-registered or expired)
+    public void forget(String ep_name) {
+        if (this.m_enabled == true && ep_name != null) {
+            this.m_restored.remove(ep_name);
+            if (this.m_devices.remove(ep_name) != null) {
+                this.m_dirty = true;
+            }
+        }
+    }
+
+    // transient endpoint key?
+    private boolean isTransient(String key) {
+        for (int i = 0; i < TRANSIENT_KEYS.length; ++i) {
+            if (TRANSIENT_KEYS[i].equals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // start the write-behind thread
+    private void start() {
+        if (this.m_running == false) {
+            this.m_running = true;
+            this.m_last_flush_ms = System.currentTimeMillis();
+            this.m_flusher = new Thread(this, "shadow-snapshot");
+            this.m_flusher.setDaemon(true);
+            this.m_flusher.start();
+        }
+    }
+
+    // stop the write-behind thread and write any remaining changes
+    public void halt() {
+        this.m_running = false;
+        if (this.m_flusher != null) {
+            this.m_flusher.interrupt();
+            this.m_flusher = null;
+        }
+        if (this.m_enabled == true && this.m_dirty == true) {
+            this.flush();
+        }
+    }
+
+    // write-behind loop
+    @Override
+    public void run() {
+        while (this.m_running == true) {
+            try {
+                Thread.sleep(this.m_flush_interval_ms);
+                long now = System.currentTimeMillis();
+                if (this.m_dirty == true || (now - this.m_last_flush_ms) >= this.m_refresh_interval_ms) {
+                    this.flush();
+                }
+            }
+            catch (InterruptedException ex) {
+                // halted
+            }
+            catch (Exception ex) {
+                // note but keep going...
+                this.errorLogger().warning("ShadowStateSnapshot: Exception caught in write-behind: " + ex.getMessage() + ". Continuing...", ex);
+            }
+        }
+    }
+
+    // write the snapshot (atomically replacing the previous one)
+    public synchronized void flush() {
+        // clear first... changes made while we write will be picked up next time
+        this.m_dirty = false;
+        this.m_last_flush_ms = System.currentTimeMillis();
+
+        // assemble the snapshot: our device records plus the current peer-side details
+        HashMap<String,HashMap<String,Serializable>> devices = new HashMap<>();
+        for (Map.Entry<String,HashMap<String,Serializable>> e : this.m_devices.entrySet()) {
+            HashMap<String,Serializable> entry = new HashMap<>(e.getValue());
+            HashMap<String,HashMap<String,Serializable>> peers = new HashMap<>();
+            if (entry.get(KEY_PEERS) != null) {
+                // carried forward from the previous snapshot (not yet restored)
+                peers.putAll((HashMap<String,HashMap<String,Serializable>>)entry.get(KEY_PEERS));
+            }
+            for (int i = 0; i < this.m_contributors.size(); ++i) {
+                ShadowStateContributorInterface contributor = this.m_contributors.get(i);
+                HashMap<String,Serializable> details = contributor.exportShadowState(e.getKey());
+                if (details != null) {
+                    peers.put(contributor.shadowStateName(), details);
+                }
+            }
+            entry.put(KEY_PEERS, peers);
+            devices.put(e.getKey(), entry);
+        }
+        HashMap<String,Serializable> snapshot = new HashMap<>();
+        snapshot.put("format", SNAPSHOT_FORMAT);
+        snapshot.put("written", this.m_last_flush_ms);
+        snapshot.put("devices", devices);
+
+        // write to a temporary file (owner access only... peer-side details may reference credentials)
+        File tmp = new File(this.m_file.getAbsolutePath() + ".tmp");
+        try {
+            File dir = tmp.getAbsoluteFile().getParentFile();
+            if (dir != null && dir.exists() == false) {
+                dir.mkdirs();
+            }
+            try (FileOutputStream fos = new FileOutputStream(tmp)) {
+                tmp.setReadable(false, false);
+                tmp.setReadable(true, true);
+                tmp.setWritable(false, false);
+                tmp.setWritable(true, true);
+                ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(new BufferedOutputStream(fos)));
+                out.writeObject(snapshot);
+                out.close();
+            }
+
+            // then move it into place
+            try {
+                Files.move(tmp.toPath(), this.m_file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp.toPath(), this.m_file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            // DEBUG
+            this.errorLogger().info("ShadowStateSnapshot: Wrote " + devices.size() + " device shadows in " + (System.currentTimeMillis() - this.m_last_flush_ms) + "ms");
+        }
+        catch (IOException ex) {
+            // try again next time
+            this.m_dirty = true;
+            this.errorLogger().warning("ShadowStateSnapshot: Unable to write snapshot " + this.m_file.getAbsolutePath() + ": " + ex.getMessage());
+            tmp.delete();
+        }
+    }
+
+    // load the previous snapshot (if any)
+    private void load() {
+        if (this.m_file.exists() == false) {
+            // DEBUG
+            this.errorLogger().warning("ShadowStateSnapshot: No previous snapshot found (OK). Cold start");
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        try (SnapshotInputStream in = new SnapshotInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(this.m_file))))) {
+            Map snapshot = (Map)in.readObject();
+            Object format = snapshot.get("format");
+            Map devices = (Map)snapshot.get("devices");
+            if (format instanceof Integer && (Integer)format == SNAPSHOT_FORMAT && devices != null) {
+                for (Object o : devices.entrySet()) {
+                    Map.Entry e = (Map.Entry)o;
+                    HashMap<String,Serializable> entry = (HashMap<String,Serializable>)e.getValue();
+                    this.m_restored.put((String)e.getKey(), entry);
+
+                    // carry forward until restored, changed or removed
+                    this.m_devices.put((String)e.getKey(), entry);
+                }
+
+                // DEBUG
+                this.errorLogger().warning("ShadowStateSnapshot: Loaded " + this.m_restored.size() + " device shadows in " + (System.currentTimeMillis() - start) + "ms");
+            }
+            else {
+                // unknown format... ignore it
+                this.errorLogger().warning("ShadowStateSnapshot: Unsupported snapshot format: " + format + ". Cold start");
+            }
+        }
+        catch (IOException | ClassNotFoundException | ClassCastException ex) {
+            // unreadable... ignore it
+            this.m_restored.clear();
+            this.m_devices.clear();
+            this.errorLogger().warning("ShadowStateSnapshot: Unable to read snapshot " + this.m_file.getAbsolutePath() + ": " + ex.getMessage() + ". Cold start");
+        }
+    }
+
+    // snapshot statistics (Health Stats)
+    public Map<String,Object> statistics() {
+        HashMap<String,Object> stats = new HashMap<>();
+        stats.put("enabled", this.m_enabled);
+        stats.put("devices", this.m_devices.size());
+        stats.put("pending_restore", this.m_restored.size());
+        return stats;
+    }
+
+    // snapshot reader: only the JDK collection and value types we write are accepted
+    private static class SnapshotInputStream extends ObjectInputStream {
+        public SnapshotInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            String name = desc.getName();
+            if (name.startsWith("java.util.") || name.startsWith("java.lang.") || name.startsWith("java.math.")) {
+                return super.resolveClass(desc);
+            }
+            throw new InvalidClassException(name, "not permitted in a shadow state snapshot");
+        }
+    }
+}
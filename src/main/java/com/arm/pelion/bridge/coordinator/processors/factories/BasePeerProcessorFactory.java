@@ -24,6 +24,8 @@ package com.arm.pelion.bridge.coordinator.processors.factories;
 
 import com.arm.pelion.bridge.coordinator.Orchestrator;
 import com.arm.pelion.bridge.coordinator.processors.arm.GenericConnectablePeerProcessor;
+import com.arm.pelion.bridge.coordinator.processors.core.AsyncResponseEvent;
+import com.arm.pelion.bridge.coordinator.processors.core.NotificationEvent;
 import com.arm.pelion.bridge.coordinator.processors.core.PeerProcessor;
 import com.arm.pelion.bridge.coordinator.processors.interfaces.AsyncResponseProcessor;
 import com.arm.pelion.bridge.transport.HttpTransport;
@@ -162,6 +164,13 @@ public class BasePeerProcessorFactory extends PeerProcessor implements Transport
         }
     }
 
+    @Override
+    public void processAsyncResponse(AsyncResponseEvent response) {
+        for (int i = 0; i < this.m_peer_processor_list.size(); ++i) {
+            this.m_peer_processor_list.get(i).processAsyncResponse(response);
+        }
+    }
+
     @Override
     public void processNotification(Map message) {
         for (int i = 0; i < this.m_peer_processor_list.size(); ++i) {
@@ -169,6 +178,13 @@ public class BasePeerProcessorFactory extends PeerProcessor implements Transport
         }
     }
 
+    @Override
+    public void processNotification(NotificationEvent notification) {
+        for (int i = 0; i < this.m_peer_processor_list.size(); ++i) {
+            this.m_peer_processor_list.get(i).processNotification(notification);
+        }
+    }
+
     @Override
     public void recordAsyncResponse(String response, String uri, Map ep, AsyncResponseProcessor processor) {
         for (int i = 0; i < this.m_peer_processor_list.size(); ++i) {
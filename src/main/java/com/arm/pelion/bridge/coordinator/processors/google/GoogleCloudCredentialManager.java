@@ -0,0 +1,424 @@
+/**
+ * @file GoogleCloudCredentialManager.java
+ * @brief In-process key pair and certificate management for Google CloudIoT device shadows
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.coordinator.processors.google;
+
+import com.arm.pelion.bridge.coordinator.Orchestrator;
+import com.arm.pelion.bridge.core.BaseClass;
+import com.arm.pelion.bridge.core.Utils;
+import com.arm.pelion.bridge.data.DatabaseConnector;
+import com.arm.pelion.bridge.data.SerializableHashMap;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.security.auth.x500.X500Principal;
+import org.apache.commons.codec.binary.Base64;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.x509.X509V3CertificateGenerator;
+
+/**
+ * Google CloudIoT device shadow credentials: key pairs (RS256 or ES256) and self-signed certificates are created
+ * in-process and kept in the bridge's persistence layer. If no database is configured they are also kept as key
+ * files (private.pkcs8/cert.pem) in the keystore directory so that they survive a restart. Key pairs can be
+ * pre-generated by a background thread so that shadow creation does not wait on key generation.
+ *
+ * @author Doug Anson
+ */
+public class GoogleCloudCredentialManager extends BaseClass implements Runnable {
+    // supported JWT/key algorithms
+    public static final String RS256 = "RS256";
+    public static final String ES256 = "ES256";
+
+    // defaults
+    private static final int DEFAULT_RSA_KEY_LENGTH = 2048;
+    private static final int DEFAULT_CERT_DAYS = 100000;
+    private static final String EC_CURVE = "secp256r1";
+    private static final String CERT_SUBJECT = "CN=unused";
+    private static final String DEFAULT_KEYSTORE_DIR = "mqtt_keystores";
+
+    // key files
+    private static final String PRIVATE_KEY_FILE = "private.pkcs8";
+    private static final String CERTIFICATE_FILE = "cert.pem";
+
+    // credential record fields
+    private static final String ALGORITHM_KEY = "algorithm";
+    private static final String PRIVATE_KEY_KEY = "private_key";
+    private static final String CERTIFICATE_KEY = "certificate";
+
+    private Orchestrator m_orchestrator = null;
+    private String m_algorithm = RS256;
+    private int m_key_length = DEFAULT_RSA_KEY_LENGTH;
+    private int m_num_days = DEFAULT_CERT_DAYS;
+    private String m_legacy_keystore_rootdir = null;
+    private DatabaseConnector m_db = null;
+    private SerializableHashMap m_credentials = null;
+    private final ConcurrentHashMap<String,PrivateKey> m_private_keys = new ConcurrentHashMap<>();
+    private final SecureRandom m_random = new SecureRandom();
+
+    // pre-generated key pool
+    private ArrayBlockingQueue<KeyPair> m_key_pool = null;
+    private Thread m_key_pool_thread = null;
+    private volatile boolean m_running = false;
+
+    // default constructor
+    public GoogleCloudCredentialManager(Orchestrator orchestrator, String suffix) {
+        super(orchestrator.errorLogger(), orchestrator.preferences());
+        this.m_orchestrator = orchestrator;
+
+        // key algorithm
+        String algorithm = this.prefValueWithDefault("google_cloud_key_algorithm", suffix, RS256);
+        this.m_algorithm = ES256.equalsIgnoreCase(algorithm) ? ES256 : RS256;
+
+        // RSA key length and certificate validity
+        this.m_key_length = this.prefIntValue("google_cloud_key_length", suffix);
+        if (this.m_key_length <= 0) {
+            this.m_key_length = DEFAULT_RSA_KEY_LENGTH;
+        }
+        this.m_num_days = this.prefIntValue("google_cloud_cert_days_length", suffix);
+        if (this.m_num_days <= 0) {
+            this.m_num_days = DEFAULT_CERT_DAYS;
+        }
+
+        // credentials created by earlier (openssl based) bridges are imported from here (and kept here without a database)
+        this.m_legacy_keystore_rootdir = this.prefValueWithDefault("mqtt_keystore_basedir", suffix, DEFAULT_KEYSTORE_DIR);
+        this.m_db = orchestrator.getDatabaseConnector();
+
+        // our credential store
+        String d = orchestrator.getTablenameDelimiter();
+        this.m_credentials = new SerializableHashMap(orchestrator, "GOOGLE_CREDENTIALS" + (suffix != null ? d + suffix : ""));
+
+        // BC provider for certificate creation
+        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+
+        // optional pre-generated key pool
+        int pool_size = this.prefIntValue("google_cloud_key_pool_size", suffix);
+        if (pool_size > 0) {
+            this.m_key_pool = new ArrayBlockingQueue<>(pool_size);
+            this.m_running = true;
+            this.m_key_pool_thread = new Thread(this, "google-key-pool");
+            this.m_key_pool_thread.setDaemon(true);
+            this.m_key_pool_thread.setPriority(Thread.MIN_PRIORITY);
+            this.m_key_pool_thread.start();
+        }
+
+        // DEBUG
+        this.errorLogger().warning("GoogleCloudIOT: Device key algorithm: " + this.m_algorithm + " Key pool size: " + Math.max(0, pool_size) + " Credential store: " + (this.m_db != null ? "database" : "key files in " + this.m_legacy_keystore_rootdir));
+    }
+
+    // key pool refill thread
+    @Override
+    public void run() {
+        while (this.m_running == true) {
+            try {
+                // blocks while the pool is full
+                this.m_key_pool.put(this.generateKeyPair());
+            }
+            catch (InterruptedException ex) {
+                // halted
+                break;
+            }
+            catch (GeneralSecurityException ex) {
+                this.errorLogger().warning("GoogleCloudIOT: Key pool: unable to generate key pair: " + ex.getMessage());
+                break;
+            }
+        }
+    }
+
+    // stop the key pool thread
+    public void shutdown() {
+        this.m_running = false;
+        if (this.m_key_pool_thread != null) {
+            this.m_key_pool_thread.interrupt();
+        }
+    }
+
+    // generate a key pair for our algorithm
+    private KeyPair generateKeyPair() throws GeneralSecurityException {
+        if (ES256.equals(this.m_algorithm)) {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec(EC_CURVE), this.m_random);
+            return generator.generateKeyPair();
+        }
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(this.m_key_length, this.m_random);
+        return generator.generateKeyPair();
+    }
+
+    // take a pre-generated key pair (or generate one now)
+    private KeyPair nextKeyPair() throws GeneralSecurityException {
+        KeyPair keys = (this.m_key_pool != null) ? this.m_key_pool.poll() : null;
+        return (keys != null) ? keys : this.generateKeyPair();
+    }
+
+    // create a self-signed certificate for a key pair
+    private X509Certificate createCertificate(KeyPair keys) throws GeneralSecurityException {
+        long now = System.currentTimeMillis();
+        X500Principal subject = new X500Principal(CERT_SUBJECT);
+        X509V3CertificateGenerator generator = new X509V3CertificateGenerator();
+        generator.setSerialNumber(new BigInteger(64, this.m_random));
+        generator.setSubjectDN(subject);
+        generator.setIssuerDN(subject);
+        generator.setNotBefore(new Date(now));
+        generator.setNotAfter(new Date(now + (this.m_num_days * 24L * 60L * 60L * 1000L)));
+        generator.setPublicKey(keys.getPublic());
+        generator.setSignatureAlgorithm(ES256.equals(this.m_algorithm) ? "SHA256WithECDSA" : "SHA256WithRSAEncryption");
+        return generator.generate(keys.getPrivate(), BouncyCastleProvider.PROVIDER_NAME);
+    }
+
+    /**
+     * create (and store) new credentials for a device shadow, replacing any existing ones
+     * @param ep_name endpoint name
+     * @return true - created, false - failed
+     */
+    public boolean createCredentials(String ep_name) {
+        try {
+            KeyPair keys = this.nextKeyPair();
+            HashMap<String,String> record = new HashMap<>();
+            record.put(ALGORITHM_KEY, this.m_algorithm);
+            record.put(PRIVATE_KEY_KEY, Base64.encodeBase64String(keys.getPrivate().getEncoded()));
+            record.put(CERTIFICATE_KEY, Utils.convertX509ToPem(this.createCertificate(keys)));
+            if (this.saveCredentials(ep_name, record, keys.getPrivate()) == false) {
+                return false;
+            }
+
+            // DEBUG
+            this.errorLogger().info("GoogleCloudIOT: " + this.m_algorithm + " credentials created for: " + ep_name);
+            return true;
+        }
+        catch (GeneralSecurityException | IllegalArgumentException | IllegalStateException ex) {
+            this.errorLogger().warning("GoogleCloudIOT: Unable to create credentials for: " + ep_name + ": " + ex.getMessage(), ex);
+        }
+        return false;
+    }
+
+    // do we have credentials for this device shadow?
+    public boolean hasCredentials(String ep_name) {
+        return this.credentials(ep_name) != null;
+    }
+
+    // the key algorithm (RS256 or ES256) of the device shadow's credentials (null if none)
+    public String algorithm(String ep_name) {
+        Map<String,String> record = this.credentials(ep_name);
+        return (record != null) ? record.get(ALGORITHM_KEY) : null;
+    }
+
+    // the CloudIoT public key credential format of the device shadow's certificate (null if none)
+    public String credentialFormat(String ep_name) {
+        String algorithm = this.algorithm(ep_name);
+        if (algorithm != null) {
+            return ES256.equals(algorithm) ? "ES256_X509_PEM" : "RSA_X509_PEM";
+        }
+        return null;
+    }
+
+    // the device shadow's certificate (PEM) or null
+    public String certificate(String ep_name) {
+        Map<String,String> record = this.credentials(ep_name);
+        return (record != null) ? record.get(CERTIFICATE_KEY) : null;
+    }
+
+    // the device shadow's private key or null
+    public PrivateKey privateKey(String ep_name) {
+        PrivateKey key = this.m_private_keys.get(ep_name);
+        if (key == null) {
+            Map<String,String> record = this.credentials(ep_name);
+            if (record != null) {
+                try {
+                    KeyFactory factory = KeyFactory.getInstance(ES256.equals(record.get(ALGORITHM_KEY)) ? "EC" : "RSA");
+                    key = factory.generatePrivate(new PKCS8EncodedKeySpec(Base64.decodeBase64(record.get(PRIVATE_KEY_KEY))));
+                    this.m_private_keys.put(ep_name, key);
+                }
+                catch (GeneralSecurityException ex) {
+                    this.errorLogger().warning("GoogleCloudIOT: Unable to decode private key for: " + ep_name + ": " + ex.getMessage());
+                }
+            }
+        }
+        return key;
+    }
+
+    // remove the device shadow's credentials (and any legacy key files)
+    public synchronized void deleteCredentials(String ep_name) {
+        if (ep_name != null) {
+            this.m_private_keys.remove(ep_name);
+            this.m_credentials.remove(ep_name);
+            this.deleteLegacyCredentials(ep_name);
+        }
+    }
+
+    // get the stored credentials (imports legacy key files if present)
+    private synchronized Map<String,String> credentials(String ep_name) {
+        if (ep_name == null) {
+            return null;
+        }
+        Map<String,String> record = (Map<String,String>) this.m_credentials.get(ep_name);
+        if (record == null) {
+            record = this.importLegacyCredentials(ep_name);
+        }
+        return record;
+    }
+
+    // store credentials (as key files too if we have no database)
+    private synchronized boolean saveCredentials(String ep_name, HashMap<String,String> record, PrivateKey key) {
+        if (this.m_db == null && this.writeKeyFiles(ep_name, record) == false) {
+            // would be lost on restart... 
+            return false;
+        }
+        this.m_private_keys.put(ep_name, key);
+        this.m_credentials.put(ep_name, record);
+        return true;
+    }
+
+    // write the credentials as key files (private.pkcs8/cert.pem, owner access only)
+    private boolean writeKeyFiles(String ep_name, Map<String,String> record) {
+        File dir = this.legacyDirectory(ep_name);
+        try {
+            if (dir.isDirectory() == false && dir.mkdirs() == false) {
+                throw new IOException("unable to create directory " + dir.getAbsolutePath());
+            }
+            this.writeKeyFile(new File(dir, PRIVATE_KEY_FILE), Base64.decodeBase64(record.get(PRIVATE_KEY_KEY)));
+            this.writeKeyFile(new File(dir, CERTIFICATE_FILE), record.get(CERTIFICATE_KEY).getBytes());
+            return true;
+        }
+        catch (IOException ex) {
+            this.errorLogger().warning("GoogleCloudIOT: Unable to write key files for: " + ep_name + ": " + ex.getMessage());
+        }
+        return false;
+    }
+
+    // write a key file (owner only temp file then move... a crash never leaves a partial or readable key)
+    private void writeKeyFile(File file, byte[] contents) throws IOException {
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        
+        // a stale temp file may carry looser permissions... never reuse it
+        Files.deleteIfExists(tmp.toPath());
+        
+        // create the temp file with owner read/write only from the start
+        FileAttribute<Set<PosixFilePermission>> owner_only = PosixFilePermissions.asFileAttribute(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE));
+        try (SeekableByteChannel channel = Files.newByteChannel(tmp.toPath(), EnumSet.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), owner_only)) {
+            ByteBuffer buffer = ByteBuffer.wrap(contents);
+            while (buffer.hasRemaining() == true) {
+                channel.write(buffer);
+            }
+        }
+        catch (UnsupportedOperationException ex) {
+            throw new IOException("unable to restrict key file permissions to owner: " + ex.getMessage());
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException ex) {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // import the private.pkcs8/cert.pem files (created by the openssl based key generation, or by us without a database)
+    private HashMap<String,String> importLegacyCredentials(String ep_name) {
+        if (this.m_legacy_keystore_rootdir != null && new File(this.legacyDirectory(ep_name), PRIVATE_KEY_FILE).exists() == true) {
+            byte[] priv_key = Utils.readRSAKeyforDevice(this.errorLogger(), this.m_legacy_keystore_rootdir, ep_name, true);
+            byte[] cert = Utils.readRSAKeyforDevice(this.errorLogger(), this.m_legacy_keystore_rootdir, ep_name, false);
+            if (priv_key.length > 0 && cert.length > 0) {
+                HashMap<String,String> record = new HashMap<>();
+                record.put(ALGORITHM_KEY, this.algorithmOf(priv_key));
+                record.put(PRIVATE_KEY_KEY, Base64.encodeBase64String(priv_key));
+                record.put(CERTIFICATE_KEY, new String(cert));
+                this.m_credentials.put(ep_name, record);
+
+                // the key files may only go once the database has durably stored their contents
+                if (this.m_db != null && this.m_db.sync() == true) {
+                    this.deleteLegacyCredentials(ep_name);
+
+                    // DEBUG
+                    this.errorLogger().info("GoogleCloudIOT: imported legacy key files for: " + ep_name);
+                }
+                else {
+                    // DEBUG
+                    this.errorLogger().info("GoogleCloudIOT: loaded key files for: " + ep_name + " (kept)");
+                }
+                return record;
+            }
+        }
+        return null;
+    }
+
+    // key algorithm of a PKCS8 private key (RS256 unless it is an EC key)
+    private String algorithmOf(byte[] priv_key) {
+        try {
+            KeyFactory.getInstance("RSA").generatePrivate(new PKCS8EncodedKeySpec(priv_key));
+            return RS256;
+        }
+        catch (GeneralSecurityException ex) {
+            try {
+                KeyFactory.getInstance("EC").generatePrivate(new PKCS8EncodedKeySpec(priv_key));
+                return ES256;
+            }
+            catch (GeneralSecurityException ex2) {
+                // not decodable... privateKey() will report it
+                return RS256;
+            }
+        }
+    }
+
+    // remove any legacy key files
+    private void deleteLegacyCredentials(String ep_name) {
+        if (this.m_legacy_keystore_rootdir != null) {
+            File dir = this.legacyDirectory(ep_name);
+            String[] files = {PRIVATE_KEY_FILE, "private.pem", CERTIFICATE_FILE};
+            for (int i = 0; dir.isDirectory() && i < files.length; ++i) {
+                new File(dir, files[i]).delete();
+            }
+            dir.delete();
+        }
+    }
+
+    // legacy per-device key directory
+    private File legacyDirectory(String ep_name) {
+        return new File(this.m_legacy_keystore_rootdir + "/" + ep_name);
+    }
+}
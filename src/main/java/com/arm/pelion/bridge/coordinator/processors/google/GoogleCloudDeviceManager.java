@@ -42,7 +42,6 @@ import com.google.api.services.pubsub.Pubsub;
 import com.google.api.services.pubsub.model.Topic;
 import java.io.IOException;
 import java.io.Serializable;
-import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -69,11 +68,7 @@ public class GoogleCloudDeviceManager extends DeviceManager implements Runnable
     private String m_device_path_template = null;
     private String m_obs_key = null;
     private String m_cmd_key = null; 
-    private int m_google_cloud_key_length = 0;
-    private String m_google_cloud_key_create_cmd_template = null;
-    private String m_google_cloud_key_convert_cmd_template = null;
-    private String m_keystore_rootdir = null;
-    private int m_num_days = 0;
+    private GoogleCloudCredentialManager m_credentials = null;
     private DeviceManagerToPeerProcessorInterface m_processor = null;
     
     // constructor
@@ -93,7 +88,6 @@ public class GoogleCloudDeviceManager extends DeviceManager implements Runnable
         this.m_pub_sub = pub_sub;
         this.m_obs_key = obs_key;
         this.m_cmd_key = cmd_key;
-        this.m_google_cloud_key_length = this.orchestrator().preferences().intValueOf("google_cloud_key_length",this.m_suffix);
         this.m_topic_root = this.orchestrator().preferences().valueOf("google_cloud_topic_root",this.m_suffix);
         this.m_registry_name = this.orchestrator().preferences().valueOf("google_cloud_registry_name",this.m_suffix);
         this.m_project_path_template = this.orchestrator().preferences().valueOf("google_cloud_project_path_template",this.m_suffix);
@@ -101,10 +95,9 @@ public class GoogleCloudDeviceManager extends DeviceManager implements Runnable
         this.m_device_path_template = this.orchestrator().preferences().valueOf("google_cloud_client_id_template",this.m_suffix);
         this.m_project_path = this.buildProjectPath(this.m_project_id,this.m_region);
         this.m_registry_path = this.buildRegistryPath(this.m_project_id,this.m_region);
-        this.m_google_cloud_key_create_cmd_template = this.orchestrator().preferences().valueOf("google_cloud_key_create_cmd_template",this.m_suffix);
-        this.m_google_cloud_key_convert_cmd_template = this.orchestrator().preferences().valueOf("google_cloud_key_convert_cmd_template",this.m_suffix);
-        this.m_keystore_rootdir = this.orchestrator().preferences().valueOf("mqtt_keystore_basedir",this.m_suffix);
-        this.m_num_days = this.orchestrator().preferences().intValueOf("google_cloud_cert_days_length",this.m_suffix);
+        
+        // device shadow key pairs and certificates
+        this.m_credentials = new GoogleCloudCredentialManager(this.orchestrator(),this.m_suffix);
         
         // ensure that we have a device registry        
         if (this.initDeviceRegistry(this.m_registry_name,this.m_obs_key,this.m_cmd_key)) {
@@ -230,8 +223,12 @@ public class GoogleCloudDeviceManager extends DeviceManager implements Runnable
         // see if we already have a device...
         HashMap<String, Serializable> ep = this.getDeviceDetails(ep_name);
         if (ep != null) {
-            // next lets ensure that Google also has a record of this device...
-            if (this.googleDeviceExists(ep_name) == true) {
+            // next lets ensure that Google also has a record of this device (unless restored from our snapshot with its credentials intact)...
+            if (this.warmRestored(message, ep_name) == true && this.haveDeviceShadowCredentials(ep_name) == true) {
+                // we are good
+                status = true;
+            }
+            else if (this.googleDeviceExists(ep_name) == true) {
                 // DEBUG
                 this.errorLogger().info("GoogleCloudIOT: registerNewDevice: device details: " + ep);
 
@@ -397,31 +394,26 @@ public class GoogleCloudDeviceManager extends DeviceManager implements Runnable
     }
     
     // create the device credentials
-    private ArrayList<DeviceCredential> createDeviceCredentials(Map message) throws UnsupportedEncodingException {
+    private ArrayList<DeviceCredential> createDeviceCredentials(Map message) {
+        String ep_name = (String)message.get("ep");
         DeviceCredential cred = new DeviceCredential();
         PublicKeyCredential pkc = new PublicKeyCredential();
-        byte[] pubKey = Utils.readRSAKeyforDevice(this.errorLogger(),this.m_keystore_rootdir,(String)message.get("ep"),false); //public key
-        pkc.setKey(new String(pubKey,"UTF-8"));
-        pkc.setFormat("RSA_X509_PEM");
+        pkc.setKey(this.m_credentials.certificate(ep_name));
+        pkc.setFormat(this.m_credentials.credentialFormat(ep_name));
         cred.setPublicKey(pkc);
         ArrayList<DeviceCredential> credlist = new ArrayList<>();
         credlist.add(cred);
         return credlist;
     }
     
-    // check whether we have valid RSA creds in a keystore for a given device's shadow
+    // check whether we have valid creds for a given device's shadow
     private boolean haveDeviceShadowCredentials(String ep_name) {
-        boolean have_creds = false;
-        
-        // try to read the private key from the keystore file
-        byte[] pkey  = Utils.readRSAKeyforDevice(this.errorLogger(), this.m_keystore_rootdir, ep_name, true);
-        if (pkey != null && pkey.length > 10) {
-            // we have creds
-            have_creds = true;
-        }
-        
-        // return our status
-        return have_creds;
+        return this.m_credentials.privateKey(ep_name) != null;
+    }
+    
+    // our device shadow credentials
+    public GoogleCloudCredentialManager credentials() {
+        return this.m_credentials;
     }
 
     // create and register a new device
@@ -441,9 +433,8 @@ public class GoogleCloudDeviceManager extends DeviceManager implements Runnable
                 // map to endpoint name - we preface with the endpoint_type
                 device.setId(this.mbedDeviceIDToGoogleDeviceID(ep_name));
                 
-                // create the key file for this device
-                String keystore = Utils.createRSAKeysforDevice(this.errorLogger(),this.m_keystore_rootdir,this.m_num_days,this.m_google_cloud_key_create_cmd_template,this.m_google_cloud_key_convert_cmd_template,this.m_google_cloud_key_length,ep_name);
-                if (keystore != null) {                    
+                // create the key pair and certificate for this device
+                if (this.m_credentials.createCredentials(ep_name) == true) {
                     // set the device metadata
                     device.setMetadata(this.createDeviceMetadata(message));
 
@@ -459,7 +450,7 @@ public class GoogleCloudDeviceManager extends DeviceManager implements Runnable
                             this.errorLogger().info("GoogleCloudIOT: registerNewDevice: device created!  Now saving off device details...");
 
                             // save off device details... (empty result)
-                            this.saveAddDeviceDetails(ep_name, ep_type, keystore);
+                            this.saveAddDeviceDetails(ep_name, ep_type, this.m_credentials.algorithm(ep_name));
                             created = true;
                         }
                         else {
@@ -489,7 +480,7 @@ public class GoogleCloudDeviceManager extends DeviceManager implements Runnable
                 this.errorLogger().info("GoogleCloudIOT: registerNewDevice: device already exists with creds... (OK). Caching device details...");
 
                 // save off device details... (empty result)
-                this.saveAddDeviceDetails(ep_name, ep_type, null);
+                this.saveAddDeviceDetails(ep_name, ep_type, this.m_credentials.algorithm(ep_name));
                 created = true;
             }
             else {
@@ -507,22 +498,14 @@ public class GoogleCloudDeviceManager extends DeviceManager implements Runnable
         return created;
     }
     
-    // remove the device shadow's keystore
+    // remove the device shadow's credentials
     private void removeKeystoreForDeviceShadow(String ep_name) {
         if (ep_name != null && ep_name.length() > 0) {
-            // Get the endpoint device details
-            Map device = this.m_endpoint_details.get(ep_name);
-            if (device != null && device.isEmpty() == false) {
-                // get the keystore filename
-                String keystore = (String)device.get("keystore");
-                if (keystore != null) {
-                    // DEBUG
-                    this.errorLogger().info("GoogleCloudIoT: Deleting keystore: " + keystore + "...");
-                    
-                    // remove the keystore
-                    Utils.deleteKeystore(this.errorLogger(), keystore, ep_name);
-                }
-            }
+            // DEBUG
+            this.errorLogger().info("GoogleCloudIoT: Deleting credentials for: " + ep_name + "...");
+
+            // remove the credentials
+            this.m_credentials.deleteCredentials(ep_name);
         }
     }
 
@@ -566,7 +549,7 @@ public class GoogleCloudDeviceManager extends DeviceManager implements Runnable
     }
 
     // Parse the AddDevice result and capture key elements 
-    private void saveAddDeviceDetails(String ep_name, String ep_type,String keystore) {
+    private void saveAddDeviceDetails(String ep_name, String ep_type,String key_algorithm) {
         SerializableHashMap entry = null;
         
         // create our cache entry
@@ -579,7 +562,7 @@ public class GoogleCloudDeviceManager extends DeviceManager implements Runnable
         entry.put("project",this.m_project_id);
         entry.put("registry_path",this.m_registry_path);
         entry.put("registry_name",this.m_registry_name);
-        entry.put("keystore",keystore);
+        entry.put("key_algorithm",key_algorithm);
         
         // save off
         this.m_endpoint_details.put(ep_name,entry.map());
@@ -587,11 +570,8 @@ public class GoogleCloudDeviceManager extends DeviceManager implements Runnable
 
     // save device details
     public void saveDeviceDetails(String ep_name, HashMap<String, Serializable> entry) {
-        // don't overwrite an existing entry..
-        if (this.getDeviceDetails(ep_name) == null) {
-            // save off the endpoint details
-            this.m_endpoint_details.put(ep_name, entry);
-        }
+        // save off the endpoint details (don't overwrite an existing entry..)
+        this.m_endpoint_details.putIfAbsent(ep_name, entry);
     }
     
     // get the orchestrator
@@ -23,11 +23,11 @@
 package com.arm.pelion.bridge.coordinator.processors.google.http;
 
 import com.arm.pelion.bridge.coordinator.processors.google.GoogleCloudDeviceManager;
+import com.arm.pelion.bridge.coordinator.processors.google.GoogleCloudCredentialManager;
 import com.arm.pelion.bridge.transport.RetryHttpInitializerWrapper;
 import com.arm.pelion.bridge.coordinator.processors.arm.GenericConnectablePeerProcessor;
 import com.arm.pelion.bridge.coordinator.Orchestrator;
 import com.arm.pelion.bridge.coordinator.processors.core.HTTPDeviceListener;
-import com.arm.pelion.bridge.coordinator.processors.core.JwTRefresherThread;
 import com.arm.pelion.bridge.core.ApiResponse;
 import com.arm.pelion.bridge.coordinator.processors.interfaces.AsyncResponseProcessor;
 import com.arm.pelion.bridge.coordinator.processors.interfaces.DeviceManagerToPeerProcessorInterface;
@@ -50,10 +50,7 @@ import io.jsonwebtoken.SignatureAlgorithm;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.security.GeneralSecurityException;
-import java.security.KeyFactory;
-import java.security.NoSuchAlgorithmException;
-import java.security.spec.InvalidKeySpecException;
-import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.PrivateKey;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -72,7 +69,6 @@ public class GoogleCloudProcessor extends GenericConnectablePeerProcessor implem
     public static final String GOOGLE_AUTH_QUALIFIER = "Bearer";
                     
     // keystore root directory
-    private String m_keystore_rootdir = null;
 
     // GoogleCloud Device Manager
     private GoogleCloudDeviceManager m_device_manager = null;
@@ -117,9 +113,6 @@ public class GoogleCloudProcessor extends GenericConnectablePeerProcessor implem
     private int m_jwt_refresh_interval = (5 * 60 * 60);    // JwT refresh interval: 5 hours
     private long m_jwt_expiration_secs = (23 * 60 * 60);   // JwT token max expiration : 23 hours
     
-    // JwT refresher Thread
-    private HashMap<String,JwTRefresherThread> m_jwt_refesher_thread_list = null;
-    
     // HTTP listeners for our device shadows
     private HashMap<String,HTTPDeviceListener> m_device_listeners = null;
     
@@ -154,7 +147,6 @@ public class GoogleCloudProcessor extends GenericConnectablePeerProcessor implem
         this.errorLogger().warning("Google CloudIoT Processor ENABLED (HTTP)");
                         
         // keystore root directory
-        this.m_keystore_rootdir = this.orchestrator().preferences().valueOf("mqtt_keystore_basedir",this.m_suffix);
         
         // max number of retries...
         this.m_max_retries = this.preferences().intValueOf("mqtt_connect_retries", this.m_suffix);
@@ -215,9 +207,6 @@ public class GoogleCloudProcessor extends GenericConnectablePeerProcessor implem
 
             // initialize our MQTT transport list
             this.initMQTTTransportList();
-
-            // initialize the JwT refresher thread list
-            this.m_jwt_refesher_thread_list = new HashMap<>();
             
             // we are configured
             this.m_configured = true;
@@ -590,7 +579,7 @@ public class GoogleCloudProcessor extends GenericConnectablePeerProcessor implem
         this.removeDeviceListener(device);
         
         // stop the refresher thread
-        this.stopJwTRefresherThread(device);
+        this.cancelJwTRefresh(device);
 
         // stop the listener thread for this device
         this.stopListenerThread(device);
@@ -647,18 +636,18 @@ public class GoogleCloudProcessor extends GenericConnectablePeerProcessor implem
                     .setExpiration(expire_date)
                     .setAudience(this.m_google_cloud_project_id);
 
-            byte[] privKey = Utils.readRSAKeyforDevice(this.errorLogger(),this.m_keystore_rootdir, ep_name, true); // priv key read
-            if (privKey != null && privKey.length > 1) {
-                PKCS8EncodedKeySpec spec = new PKCS8EncodedKeySpec(privKey);
-                KeyFactory kf = KeyFactory.getInstance("RSA");
-                return jwtBuilder.signWith(SignatureAlgorithm.RS256, kf.generatePrivate(spec)).compact();
+            // device shadow private key (RS256 or ES256)
+            GoogleCloudCredentialManager credentials = (this.m_device_manager != null) ? this.m_device_manager.credentials() : null;
+            PrivateKey key = (credentials != null) ? credentials.privateKey(ep_name) : null;
+            if (key != null) {
+                return jwtBuilder.signWith(SignatureAlgorithm.forName(credentials.algorithm(ep_name)), key).compact();
             }
             else {
-                // invalid key read
-                this.errorLogger().warning("GoogleCloudIOT: WARNING: input key is null or has length 1");
+                // no key
+                this.errorLogger().warning("GoogleCloudIOT: WARNING: no device shadow private key for: " + ep_name);
             }
         }
-        catch (InvalidKeySpecException | NoSuchAlgorithmException ex) {
+        catch (IllegalArgumentException ex) {
             // error creating JWT
             this.errorLogger().critical("GoogleCloudIOT: Exception in creating JWT: " + ex.getMessage());
         }
@@ -687,37 +676,37 @@ public class GoogleCloudProcessor extends GenericConnectablePeerProcessor implem
         }
     }
     
-    // Start the JwT refresher thread
-    private void startJwTRefresherThread(String ep_name) {
-        // make sure we only have 1 refresher thread...
-        this.stopJwTRefresherThread(ep_name);
-        
-        // start a JwT refresher thread...
-        JwTRefresherThread jwt_refresher = new JwTRefresherThread(this,ep_name);
-        this.m_jwt_refesher_thread_list.put(ep_name,jwt_refresher);
-        jwt_refresher.start();
+    // schedule the periodic JwT refresh for an endpoint (replaces any existing one)
+    private void scheduleJwTRefresh(final String ep_name) {
+        this.orchestrator().getCredentialRefreshScheduler().schedule(this.jwtRefreshKey(ep_name), this.getJwTRefreshIntervalInSeconds() * 1000, new Runnable() {
+            @Override
+            public void run() {
+                // DEBUG
+                GoogleCloudProcessor.this.errorLogger().info("GoogleCloudIOT: Refreshing JwT for endpoint: " + ep_name);
+
+                // now refresh our token
+                GoogleCloudProcessor.this.refreshJwTForEndpoint(ep_name);
+            }
+        });
     }
     
-    // End the JwT refresher thread
-    public void stopJwTRefresherThread(String ep_name) {
-        JwTRefresherThread doomed = this.m_jwt_refesher_thread_list.get(ep_name);
-        if (doomed != null) {
+    // cancel the periodic JwT refresh for an endpoint
+    public void cancelJwTRefresh(String ep_name) {
+        if (this.orchestrator().getCredentialRefreshScheduler().isScheduled(this.jwtRefreshKey(ep_name))) {
             // DEBUG
             this.errorLogger().warning("GoogleCloudIOT: Stopping JwT Refresher for: " + ep_name);
             
-            // remove from ThreadList
-            this.m_jwt_refesher_thread_list.remove(ep_name);
-            
-            try {
-                // stop the event loop in the thread
-                doomed.haltThread();
-            }
-            catch (Exception ex) {
-                // silent
-            }
+            // remove from the scheduler
+            this.orchestrator().getCredentialRefreshScheduler().cancel(this.jwtRefreshKey(ep_name));
         }
     }
     
+    // our JwT refresh key for an endpoint (unique across peer processors)
+    private String jwtRefreshKey(String ep_name) {
+        return this.getClass().getName() + "." + this.m_suffix + ":" + ep_name;
+    }
+    
+    
     // AsyncResponse response processor
     @Override
     public synchronized boolean processAsyncResponse(Map endpoint) {
@@ -813,7 +802,7 @@ public class GoogleCloudProcessor extends GenericConnectablePeerProcessor implem
     
     // poll for and process device command messages
     @Override
-    public void pollAndProcessDeviceMessages(HttpTransport http,String ep_name) {
+    public boolean pollAndProcessDeviceMessages(HttpTransport http,String ep_name) {
         // Get the next message
         String message = this.getNextMessage(ep_name);
         if (message != null && message.length() > 0) {
@@ -822,11 +811,13 @@ public class GoogleCloudProcessor extends GenericConnectablePeerProcessor implem
             
             // parse and process the configuration change request message
             this.onMessageReceive(ep_name, message);
+            return true;
         }
         else {
             // No message to process... OK
             this.errorLogger().info("GoogleCloudIoT(HTTP): EP: " + ep_name + " No config change request to process. (OK)");
         }
+        return false;
     }
 
     // we have to override the creation of the authentication hash.. it has to be dependent on a given endpoint name
@@ -1012,7 +1003,7 @@ public class GoogleCloudProcessor extends GenericConnectablePeerProcessor implem
             endpoint_auth_data = new HashMap<>();
             
             // each endpoint has its own instance of HttpTransport...
-            endpoint_auth_data.put("http_transport", new HttpTransport(this.errorLogger(),this.preferences()));
+            endpoint_auth_data.put("http_transport", new HttpTransport(this.errorLogger(),this.preferences(),"google"));
             
             try {
                 // create our initial JwT Token
@@ -1020,6 +1011,9 @@ public class GoogleCloudProcessor extends GenericConnectablePeerProcessor implem
                 
                 // put the new entry into our list
                 this.m_endpoint_auth_data.put(ep_name,endpoint_auth_data);
+                
+                // keep the JwT refreshed
+                this.scheduleJwTRefresh(ep_name);
             }
             catch (IOException ex) {
                 // error creating JwT
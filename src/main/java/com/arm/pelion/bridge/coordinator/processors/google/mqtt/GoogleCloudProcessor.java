@@ -23,10 +23,11 @@
 package com.arm.pelion.bridge.coordinator.processors.google.mqtt;
 
 import com.arm.pelion.bridge.coordinator.processors.google.GoogleCloudDeviceManager;
+import com.arm.pelion.bridge.coordinator.processors.google.GoogleCloudCredentialManager;
 import com.arm.pelion.bridge.transport.RetryHttpInitializerWrapper;
 import com.arm.pelion.bridge.coordinator.processors.arm.GenericConnectablePeerProcessor;
+import com.arm.pelion.bridge.coordinator.processors.core.NotificationEvent;
 import com.arm.pelion.bridge.coordinator.Orchestrator;
-import com.arm.pelion.bridge.coordinator.processors.core.JwTRefresherThread;
 import com.arm.pelion.bridge.core.ApiResponse;
 import com.arm.pelion.bridge.coordinator.processors.interfaces.AsyncResponseProcessor;
 import com.arm.pelion.bridge.coordinator.processors.interfaces.ConnectionCreator;
@@ -53,10 +54,7 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.Serializable;
 import java.security.GeneralSecurityException;
-import java.security.KeyFactory;
-import java.security.NoSuchAlgorithmException;
-import java.security.spec.InvalidKeySpecException;
-import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.PrivateKey;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -94,7 +92,6 @@ public class GoogleCloudProcessor extends GenericConnectablePeerProcessor implem
     private String m_google_cloud_observe_notification_topic = null;
     
     // keystore root directory
-    private String m_keystore_rootdir = null;
 
     // GoogleCloud Device Manager
     private GoogleCloudDeviceManager m_device_manager = null;
@@ -147,9 +144,6 @@ public class GoogleCloudProcessor extends GenericConnectablePeerProcessor implem
     // default JWT expiration length (in seconds)
     private int m_jwt_refresh_interval = (5 * 60 * 60);    // JwT refresh interval: 5 hours
     private long m_jwt_expiration_secs = (23 * 60 * 60);   // JwT token max expiration : 23 hours
-    
-    // JwT refresher Thread
-    private HashMap<String,JwTRefresherThread> m_jwt_refesher_thread_list = null;
 
     // constructor (singleton)
     public GoogleCloudProcessor(Orchestrator manager, MQTTTransport mqtt, HttpTransport http) {
@@ -171,7 +165,6 @@ public class GoogleCloudProcessor extends GenericConnectablePeerProcessor implem
         this.errorLogger().warning("GoogleCloudIoT(MQTT): Google CloudIoT Max Shadows (OVERRIDE) Limit: " + this.getMaxNumberOfShadows() + " devices");
                 
         // keystore root directory
-        this.m_keystore_rootdir = this.orchestrator().preferences().valueOf("mqtt_keystore_basedir",this.m_suffix);
         
         // max number of retries...
         this.m_max_retries = this.preferences().intValueOf("mqtt_connect_retries", this.m_suffix);
@@ -242,9 +235,6 @@ public class GoogleCloudProcessor extends GenericConnectablePeerProcessor implem
 
             // initialize our MQTT transport list
             this.initMQTTTransportList();
-
-            // initialize the JwT refresher thread list
-            this.m_jwt_refesher_thread_list = new HashMap<>();
         }
         else {
             // unconfigured
@@ -413,19 +403,25 @@ public class GoogleCloudProcessor extends GenericConnectablePeerProcessor implem
     
     // OVERRIDE: process a notification/observation in GoogleCloud
     @Override
-    public void processNotification(Map data) {
+    public void processNotification(NotificationEvent notification) {
         // DEBUG
         //this.errorLogger().info("processIncomingDeviceServerMessage(GoogleCloud)...");
 
-        // get the list of parsed notifications
-        List notifications = (List) data.get("notifications");
-        for (int i = 0; notifications != null && i < notifications.size(); ++i) {
-            // we have to process the payload... this may be dependent on being a string core type... 
-            Map notification = (Map) notifications.get(i);
+        // get the path
+        String path = notification.path();
+
+        // get our endpoint name
+        String ep_name = notification.endpointName();
+
+        // get our endpoint type
+        String ep_type = this.getEndpointTypeFromEndpointName(ep_name);
 
-            // decode the Payload...
-            String b64_coap_payload = (String) notification.get("payload");
-            String decoded_coap_payload = Utils.decodeCoAPPayload(b64_coap_payload);
+        // single-pass transform into a coap/device packet (if enabled for this peer)
+        String google_cloud_gw_coap_json = this.transformNotification(notification);
+        if (google_cloud_gw_coap_json == null) {
+            // legacy path: work on a Map copy of the notification
+            Map notification_map = notification.toMap();
+            String decoded_coap_payload = notification.decodedPayload();
 
             // DEBUG
             //this.errorLogger().info("GoogleCloud: Decoded Payload: " + decoded_coap_payload);
@@ -433,58 +429,49 @@ public class GoogleCloudProcessor extends GenericConnectablePeerProcessor implem
             Map json_parsed = this.tryJSONParse(decoded_coap_payload);
             if (json_parsed != null && json_parsed.isEmpty() == false) {
                 // add in a JSON object payload value directly... 
-                notification.put("value", Utils.retypeMap(json_parsed, this.fundamentalTypeDecoder()));             // its JSON (flat...)                                                   // its JSON 
+                notification_map.put("value", Utils.retypeMap(json_parsed, this.fundamentalTypeDecoder()));             // its JSON (flat...)                                                   // its JSON 
             }
             else {
                 // add in a decoded payload value as a fundamental type...
-                notification.put("value", this.fundamentalTypeDecoder().getFundamentalValue(decoded_coap_payload)); // its a Float, Integer, or String
+                notification_map.put("value", this.fundamentalTypeDecoder().getFundamentalValue(decoded_coap_payload)); // its a Float, Integer, or String
             }
 
-            // get the path
-            String path = Utils.valueFromValidKey(notification, "path", "uri");
-
             // we will send the raw CoAP JSON... GoogleCloud can parse that... 
-            String coap_raw_json = this.jsonGenerator().generateJson(notification);
+            String coap_raw_json = this.jsonGenerator().generateJson(notification_map);
 
             // strip off []...
             String coap_json_stripped = this.stripArrayChars(coap_raw_json);
 
-            // get our endpoint name
-            String ep_name = Utils.valueFromValidKey(notification, "id", "ep");
-
-            // get our endpoint type
-            String ep_type = this.getEndpointTypeFromEndpointName(ep_name);
-
             // encapsulate into a coap/device packet...
-            String google_cloud_gw_coap_json = this.convertToUnifiedFormat(coap_json_stripped);
+            google_cloud_gw_coap_json = this.convertToUnifiedFormat(coap_json_stripped);
+        }
 
-            // DEBUG
-            this.errorLogger().info("GoogleCloudIOT(MQTT): CoAP notification (STR): " + google_cloud_gw_coap_json);
+        // DEBUG
+        this.errorLogger().info("GoogleCloudIOT(MQTT): CoAP notification (STR): " + google_cloud_gw_coap_json);
 
-            // send to GoogleCloud...
-            if (this.mqtt(ep_name) != null) {                
-                // do not use subdirectories for the topic... no "path" at the end...
-                String topic = this.customizeTopic(this.m_google_cloud_observe_notification_topic,ep_name);
-                
-                // DEBUG
-                this.errorLogger().info("GoogleCloudIOT(MQTT): CoAP notification: SENDING Topic: " + topic + " Message: " + google_cloud_gw_coap_json);
-                
-                // send the observation...
-                boolean status = this.mqtt(ep_name).sendMessage(topic, google_cloud_gw_coap_json, GoogleCloudProcessor.GOOGLE_QoS);
-                if (status == true) {
-                    // not connected
-                    this.errorLogger().info("GoogleCloudIOT(MQTT): CoAP notification sent. SUCCESS");
-                }
-                else {
-                    // send failed
-                    this.errorLogger().warning("GoogleCloudIOT(MQTT): CoAP notification not sent. SEND FAILED.");
-                }
+        // send to GoogleCloud...
+        if (this.mqtt(ep_name) != null) {                
+            // do not use subdirectories for the topic... no "path" at the end...
+            String topic = this.customizeTopic(this.m_google_cloud_observe_notification_topic,ep_name);
+            
+            // DEBUG
+            this.errorLogger().info("GoogleCloudIOT(MQTT): CoAP notification: SENDING Topic: " + topic + " Message: " + google_cloud_gw_coap_json);
+            
+            // send the observation...
+            boolean status = this.mqtt(ep_name).sendMessage(topic, google_cloud_gw_coap_json, GoogleCloudProcessor.GOOGLE_QoS);
+            if (status == true) {
+                // not connected
+                this.errorLogger().info("GoogleCloudIOT(MQTT): CoAP notification sent. SUCCESS");
             }
             else {
-                // not connected
-                this.errorLogger().info("GoogleCloudIOT(MQTT): CoAP notification not sent. NOT CONNECTED");
+                // send failed
+                this.errorLogger().warning("GoogleCloudIOT(MQTT): CoAP notification not sent. SEND FAILED.");
             }
         }
+        else {
+            // not connected
+            this.errorLogger().info("GoogleCloudIOT(MQTT): CoAP notification not sent. NOT CONNECTED");
+        }
     }
     
     // send the API Response back through the topic
@@ -679,7 +666,7 @@ public class GoogleCloudProcessor extends GenericConnectablePeerProcessor implem
         this.errorLogger().warning("GoogleCloudIOT(MQTT): Disconnecting MQTT for device: " + device + "...");
 
         // stop the refresher thread
-        this.stopJwTRefresherThread(device);
+        this.cancelJwTRefresh(device);
 
         // stop the listener thread for this device
         this.stopListenerThread(device);
@@ -733,18 +720,18 @@ public class GoogleCloudProcessor extends GenericConnectablePeerProcessor implem
                     .setExpiration(expire_date)
                     .setAudience(this.m_google_cloud_project_id);
 
-            byte[] privKey = Utils.readRSAKeyforDevice(this.errorLogger(),this.m_keystore_rootdir, ep_name, true); // priv key read
-            if (privKey != null && privKey.length > 1) {
-                PKCS8EncodedKeySpec spec = new PKCS8EncodedKeySpec(privKey);
-                KeyFactory kf = KeyFactory.getInstance("RSA");
-                return jwtBuilder.signWith(SignatureAlgorithm.RS256, kf.generatePrivate(spec)).compact();
+            // device shadow private key (RS256 or ES256)
+            GoogleCloudCredentialManager credentials = (this.m_device_manager != null) ? this.m_device_manager.credentials() : null;
+            PrivateKey key = (credentials != null) ? credentials.privateKey(ep_name) : null;
+            if (key != null) {
+                return jwtBuilder.signWith(SignatureAlgorithm.forName(credentials.algorithm(ep_name)), key).compact();
             }
             else {
-                // invalid key read
-                this.errorLogger().warning("GoogleCloudIOT(MQTT): WARNING: input key is null or has length 1");
+                // no key
+                this.errorLogger().warning("GoogleCloudIOT(MQTT): WARNING: no device shadow private key for: " + ep_name);
             }
         }
-        catch (InvalidKeySpecException | NoSuchAlgorithmException ex) {
+        catch (IllegalArgumentException ex) {
             // error creating JWT
             this.errorLogger().critical("GoogleCloudIOT(MQTT): Exception in creating JWT: " + ex.getMessage());
         }
@@ -919,37 +906,37 @@ public class GoogleCloudProcessor extends GenericConnectablePeerProcessor implem
         }
     }
     
-    // Start the JwT refresher thread
-    private void startJwTRefresherThread(String ep_name) {
-        // make sure we only have 1 refresher thread...
-        this.stopJwTRefresherThread(ep_name);
-        
-        // start a JwT refresher thread...
-        JwTRefresherThread jwt_refresher = new JwTRefresherThread(this,ep_name);
-        this.m_jwt_refesher_thread_list.put(ep_name,jwt_refresher);
-        jwt_refresher.start();
+    // schedule the periodic JwT refresh for an endpoint (replaces any existing one)
+    private void scheduleJwTRefresh(final String ep_name) {
+        this.orchestrator().getCredentialRefreshScheduler().schedule(this.jwtRefreshKey(ep_name), this.getJwTRefreshIntervalInSeconds() * 1000, new Runnable() {
+            @Override
+            public void run() {
+                // DEBUG
+                GoogleCloudProcessor.this.errorLogger().info("GoogleCloudIOT(MQTT): Refreshing JwT for endpoint: " + ep_name);
+
+                // now refresh our token
+                GoogleCloudProcessor.this.refreshJwTForEndpoint(ep_name);
+            }
+        });
     }
     
-    // End the JwT refresher thread
-    public void stopJwTRefresherThread(String ep_name) {
-        JwTRefresherThread doomed = this.m_jwt_refesher_thread_list.get(ep_name);
-        if (doomed != null) {
+    // cancel the periodic JwT refresh for an endpoint
+    public void cancelJwTRefresh(String ep_name) {
+        if (this.orchestrator().getCredentialRefreshScheduler().isScheduled(this.jwtRefreshKey(ep_name))) {
             // DEBUG
             this.errorLogger().warning("GoogleCloudIOT(MQTT): Stopping JwT Refresher for: " + ep_name);
             
-            // remove from ThreadList
-            this.m_jwt_refesher_thread_list.remove(ep_name);
-            
-            try {
-                // stop the event loop in the thread
-                doomed.haltThread();
-            }
-            catch (Exception ex) {
-                // silent
-            }
+            // remove from the scheduler
+            this.orchestrator().getCredentialRefreshScheduler().cancel(this.jwtRefreshKey(ep_name));
         }
     }
     
+    // our JwT refresh key for an endpoint (unique across peer processors)
+    private String jwtRefreshKey(String ep_name) {
+        return this.getClass().getName() + "." + this.m_suffix + ":" + ep_name;
+    }
+    
+    
     // create our specific Google Cloud ClientID
     private String createGoogleCloudMQTTclientID(String ep_name) {
         // create the Google Cloud MQTT connection client ID
@@ -1010,9 +997,9 @@ public class GoogleCloudProcessor extends GenericConnectablePeerProcessor implem
                                 this.errorLogger().info("GoogleCloudIOT(MQTT): Creating and registering listener Thread for endpoint: " + ep_name + " type: " + ep_type);
                                 this.startListenerThread(ep_name, mqtt);
 
-                                // start the JwT  refresher thread
-                                this.errorLogger().info("GoogleCloudIOT(MQTT): Starting JwT refresher thread");
-                                this.startJwTRefresherThread(ep_name);
+                                // schedule the JwT refresh
+                                this.errorLogger().info("GoogleCloudIOT(MQTT): Scheduling JwT refresh");
+                                this.scheduleJwTRefresh(ep_name);
 
                                 // if we have topics in our param list, lets go ahead and subscribe
                                 if (topics != null) {
@@ -1034,7 +1021,7 @@ public class GoogleCloudProcessor extends GenericConnectablePeerProcessor implem
                                 this.remove(ep_name);
 
                                 // Clear out any old JwT refreshers
-                                this.stopJwTRefresherThread(ep_name);
+                                this.cancelJwTRefresh(ep_name);
 
                                 // remove any listeners
                                 this.stopListenerThread(ep_name);
@@ -23,6 +23,7 @@
 package com.arm.pelion.bridge.coordinator.processors.ibm;
 
 import com.arm.pelion.bridge.coordinator.processors.arm.GenericConnectablePeerProcessor;
+import com.arm.pelion.bridge.coordinator.processors.core.NotificationEvent;
 import com.arm.pelion.bridge.coordinator.Orchestrator;
 import com.arm.pelion.bridge.core.ApiResponse;
 import com.arm.pelion.bridge.coordinator.processors.interfaces.AsyncResponseProcessor;
@@ -266,19 +267,34 @@ public class WatsonIoTMQTTProcessor extends GenericConnectablePeerProcessor impl
 
     // OVERRIDE: process a mDS notification for WatsonIoT
     @Override
-    public void processNotification(Map data) {
+    public void processNotification(NotificationEvent notification) {
         // DEBUG
         //this.errorLogger().info("processIncomingDeviceServerMessage(WatsonIoT)...");
 
-        // get the list of parsed notifications
-        List notifications = (List) data.get("notifications");
-        for (int i = 0; notifications != null && i < notifications.size(); ++i) {
-            // we have to process the payload... this may be dependent on being a string core type... 
-            Map notification = (Map) notifications.get(i);
+        // get the device ID
+        String ep_name = notification.endpointName();
+                
+        // get our endpoint name
+        String path = (String) notification.get("path");
 
-            // decode the Payload...
-            String b64_coap_payload = (String) notification.get("payload");
-            String decoded_coap_payload = Utils.decodeCoAPPayload(b64_coap_payload);
+        // add compatibility with the production version of IBM's Connector Bridge
+        HashMap<String,Object> compat_fields = new HashMap<>();
+        compat_fields.put("resourceId", path.substring(1));           // strip leading "/" off of the URI...
+        compat_fields.put("deviceId", ep_name);                       // device ID
+
+        // single-pass transform into a coap/device packet (if enabled for this peer)
+        String iotf_coap_json = null;
+        if (this.m_watson_iot_device_data_key != null && this.m_watson_iot_device_data_key.length() > 0) {
+            iotf_coap_json = this.transformNotification(notification, compat_fields, false, this.m_watson_iot_device_data_key);
+        }
+        else {
+            iotf_coap_json = this.transformNotification(notification, compat_fields, this.unifiedFormatEnabled(), null);
+        }
+        if (iotf_coap_json == null) {
+            // legacy path: work on a Map copy of the notification
+            Map notification_map = notification.toMap();
+            notification_map.putAll(compat_fields);
+            String decoded_coap_payload = notification.decodedPayload();
 
             // DEBUG
             //this.errorLogger().info("Watson IoT: Decoded Payload: " + decoded_coap_payload);
@@ -286,55 +302,45 @@ public class WatsonIoTMQTTProcessor extends GenericConnectablePeerProcessor impl
             Map json_parsed = this.tryJSONParse(decoded_coap_payload);
             if (json_parsed != null && json_parsed.isEmpty() == false) {
                 // add in a JSON object payload value directly... 
-                notification.put("value", Utils.retypeMap(json_parsed, this.fundamentalTypeDecoder()));             // its JSON (flat...)                                                   // its JSON 
+                notification_map.put("value", Utils.retypeMap(json_parsed, this.fundamentalTypeDecoder()));             // its JSON (flat...)                                                   // its JSON 
             }
             else {
                 // add in a decoded payload value as a fundamental type...
-                notification.put("value", this.fundamentalTypeDecoder().getFundamentalValue(decoded_coap_payload)); // its a Float, Integer, or String
+                notification_map.put("value", this.fundamentalTypeDecoder().getFundamentalValue(decoded_coap_payload)); // its a Float, Integer, or String
             }
 
-            // get the device ID
-            String ep_name = Utils.valueFromValidKey(notification, "id", "ep");
-                    
-            // get our endpoint name
-            String path = (String) notification.get("path");
-
-            // add compatibility with the production version of IBM's Connector Bridge
-            notification.put("resourceId", path.substring(1));           // strip leading "/" off of the URI...
-            notification.put("deviceId", ep_name);                       // device ID
-
             // we will send the raw CoAP JSON... WatsonIoT can parse that... 
-            String coap_raw_json = this.jsonGenerator().generateJson(notification);
+            String coap_raw_json = this.jsonGenerator().generateJson(notification_map);
 
             // strip off []...
             String coap_json_stripped = this.stripArrayChars(coap_raw_json);
 
             // encapsulate into a coap/device packet...
-            String iotf_coap_json = this.convertToUnifiedFormat(coap_json_stripped);
+            iotf_coap_json = this.convertToUnifiedFormat(coap_json_stripped);
             if (this.m_watson_iot_device_data_key != null && this.m_watson_iot_device_data_key.length() > 0) {
                 iotf_coap_json = "{ \"" + this.m_watson_iot_device_data_key + "\":" + coap_json_stripped + "}";
             }
+        }
 
-            // DEBUG
-            this.errorLogger().info("Watson IoT: CoAP notification: " + iotf_coap_json);
+        // DEBUG
+        this.errorLogger().info("Watson IoT: CoAP notification: " + iotf_coap_json);
 
-            // send to WatsonIoT...
-            if (this.mqtt() != null && this.mqtt().isConnected() == true) {
-                boolean status = this.mqtt().sendMessage(this.customizeTopic(this.m_watson_iot_observe_notification_topic, ep_name, this.m_device_manager.getDeviceType(ep_name)), iotf_coap_json, QoS.AT_MOST_ONCE);
-                if (status == true) {
-                    // not connected
-                    this.errorLogger().info("Watson IoT: CoAP notification sent. SUCCESS");
-                }
-                else {
-                    // send failed
-                    this.errorLogger().warning("Watson IoT: CoAP notification not sent. SEND FAILED");
-                }
+        // send to WatsonIoT...
+        if (this.mqtt() != null && this.mqtt().isConnected() == true) {
+            boolean status = this.mqtt().sendMessage(this.customizeTopic(this.m_watson_iot_observe_notification_topic, ep_name, this.m_device_manager.getDeviceType(ep_name)), iotf_coap_json, QoS.AT_MOST_ONCE);
+            if (status == true) {
+                // not connected
+                this.errorLogger().info("Watson IoT: CoAP notification sent. SUCCESS");
             }
             else {
-                // not connected
-                this.errorLogger().info("Watson IoT: CoAP notification not sent. NOT CONNECTED");
+                // send failed
+                this.errorLogger().warning("Watson IoT: CoAP notification not sent. SEND FAILED");
             }
         }
+        else {
+            // not connected
+            this.errorLogger().info("Watson IoT: CoAP notification not sent. NOT CONNECTED");
+        }
     }
 
     // get our defaulted reply topic
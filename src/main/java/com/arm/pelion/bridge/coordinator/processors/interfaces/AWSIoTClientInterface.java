@@ -0,0 +1,91 @@
+/**
+ * @file AWSIoTClientInterface.java
+ * @brief AWS IoT control-plane and iot-data client interface
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.coordinator.processors.interfaces;
+
+/**
+ * AWS IoT API client interface. Each call returns the JSON response (as the AWS CLI prints it), {"status":0} for
+ * a successful call without a response body, or null if the call failed.
+ *
+ * @author Doug Anson
+ */
+public interface AWSIoTClientInterface {
+    // client name
+    public String name();
+
+    // iot create-thing
+    public String createThing(String thing_name, String thing_type_name);
+
+    // iot describe-thing
+    public String describeThing(String thing_name);
+
+    // iot delete-thing
+    public String deleteThing(String thing_name);
+
+    // iot create-thing-type
+    public String createThingType(String thing_type_name);
+
+    // iot describe-thing-type
+    public String describeThingType(String thing_type_name);
+
+    // iot create-keys-and-certificate
+    public String createKeysAndCertificate(boolean set_as_active);
+
+    // iot update-certificate
+    public String updateCertificate(String certificate_id, String new_status);
+
+    // iot delete-certificate
+    public String deleteCertificate(String certificate_id);
+
+    // iot list-certificates
+    public String listCertificates();
+
+    // iot get-policy
+    public String getPolicy(String policy_name);
+
+    // iot create-policy
+    public String createPolicy(String policy_name, String policy_document);
+
+    // iot attach-principal-policy
+    public String attachPrincipalPolicy(String policy_name, String principal);
+
+    // iot detach-principal-policy
+    public String detachPrincipalPolicy(String policy_name, String principal);
+
+    // iot attach-thing-principal
+    public String attachThingPrincipal(String thing_name, String principal);
+
+    // iot detach-thing-principal
+    public String detachThingPrincipal(String thing_name, String principal);
+
+    // iot list-thing-principals
+    public String listThingPrincipals(String thing_name);
+
+    // iot describe-endpoint
+    public String describeEndpoint();
+
+    // iot-data publish
+    public String publish(String topic, String payload);
+
+    // iot-data get-thing-shadow
+    public String getThingShadow(String thing_name);
+}
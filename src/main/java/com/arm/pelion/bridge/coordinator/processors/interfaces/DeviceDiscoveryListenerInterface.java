@@ -0,0 +1,34 @@
+/**
+ * @file DeviceDiscoveryListenerInterface.java
+ * @brief Listener for streamed (paginated) Pelion device discovery
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.coordinator.processors.interfaces;
+
+import java.util.List;
+
+/**
+ * Device Discovery Listener Interface: receives each page of discovered devices as it arrives
+ * @author Doug Anson
+ */
+public interface DeviceDiscoveryListenerInterface {
+    // a page of discovered devices (total_count: fleet size reported by Pelion, -1 if unknown). Return false to stop discovery
+    public boolean devicePageDiscovered(List devices, int total_count);
+}
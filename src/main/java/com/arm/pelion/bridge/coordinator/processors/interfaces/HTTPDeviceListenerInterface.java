@@ -22,6 +22,7 @@
  */
 package com.arm.pelion.bridge.coordinator.processors.interfaces;
 
+import com.arm.pelion.bridge.coordinator.Orchestrator;
 import com.arm.pelion.bridge.core.ErrorLogger;
 import com.arm.pelion.bridge.preferences.PreferenceManager;
 import com.arm.pelion.bridge.transport.HttpTransport;
@@ -36,7 +37,10 @@ public interface HTTPDeviceListenerInterface {
     
     // get the Preferences Manager
     public PreferenceManager preferences();
+    
+    // get the orchestrator
+    public Orchestrator orchestrator();
    
-    // Poll for and process messages over HTTP
-    public void pollAndProcessDeviceMessages(HttpTransport http,String ep_name);
+    // Poll for and process messages over HTTP (true - a message was processed, false - nothing to process)
+    public boolean pollAndProcessDeviceMessages(HttpTransport http,String ep_name);
 }
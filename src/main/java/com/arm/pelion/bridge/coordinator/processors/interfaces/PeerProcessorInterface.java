@@ -21,7 +21,9 @@
  *
  */
 package com.arm.pelion.bridge.coordinator.processors.interfaces;
+import com.arm.pelion.bridge.coordinator.processors.core.AsyncResponseEvent;
 import com.arm.pelion.bridge.coordinator.processors.core.EndpointTypeManager;
+import com.arm.pelion.bridge.coordinator.processors.core.NotificationEvent;
 import java.util.Map;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -53,9 +55,15 @@ public interface PeerProcessorInterface {
     // process an endpoint async response result from Pelion
     public void processAsyncResponses(Map message);
 
+    // process a single (typed) async response from Pelion
+    public void processAsyncResponse(AsyncResponseEvent response);
+
     // process an endpoint resource notification message from Pelion
     public void processNotification(Map message);
     
+    // process a single (typed) endpoint resource notification from Pelion
+    public void processNotification(NotificationEvent notification);
+    
     // acquire the endpoint type manager from the peer
     public EndpointTypeManager getEndpointTypeManager();
     
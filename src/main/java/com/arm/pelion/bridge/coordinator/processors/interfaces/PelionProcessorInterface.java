@@ -71,4 +71,7 @@ public interface PelionProcessorInterface {
     
     // remove any reset notification channel
     public void resetNotificationChannel();
+    
+    // drain and stop any asynchronous notification ingestion
+    public void haltNotificationIngestion();
 }
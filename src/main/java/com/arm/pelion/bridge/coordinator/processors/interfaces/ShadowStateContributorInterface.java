@@ -0,0 +1,41 @@
+/**
+ * @file ShadowStateContributorInterface.java
+ * @brief Peer-side shadow state contributor for the local shadow-state snapshot
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.coordinator.processors.interfaces;
+
+import java.io.Serializable;
+import java.util.HashMap;
+
+/**
+ * Shadow State Contributor Interface: exports/imports the peer-side details of a device shadow
+ * @author Doug Anson
+ */
+public interface ShadowStateContributorInterface {
+    // unique name of this contributor (key within the snapshot)
+    public String shadowStateName();
+
+    // export the peer-side details for the given endpoint (null if none)
+    public HashMap<String,Serializable> exportShadowState(String ep_name);
+
+    // import previously exported peer-side details for the given endpoint
+    public void importShadowState(String ep_name, HashMap<String,Serializable> details);
+}
@@ -125,6 +125,12 @@ public class IoTHubDeviceManager extends DeviceManager {
         return iothub_ep_name;
     }
     
+    // our endpoint details are keyed by the prefixed device ID
+    @Override
+    protected String endpointDetailsKey(String ep_name) {
+        return this.addDeviceIDPrefix(ep_name);
+    }
+    
     // httpsGet the orchestrator
     private Orchestrator orchestrator() {
         return this.m_orchestrator;
@@ -139,8 +145,12 @@ public class IoTHubDeviceManager extends DeviceManager {
         String ep_name = Utils.valueFromValidKey(message, "id", "ep");
 
         // see if we already have a device...
-        HashMap<String, Serializable> ep = this.getDeviceDetails(ep_name);
-        if (ep != null) {
+        HashMap<String, Serializable> ep = null;
+        if (this.warmRestored(message, ep_name) == true) {
+            // restored from the shadow state snapshot and unchanged in Pelion... no need to query IoTHub
+            status = true;
+        }
+        else if ((ep = this.getDeviceDetails(ep_name)) != null) {
             // save off this device 
             this.saveDeviceDetails(ep_name, ep);
 
@@ -535,13 +545,10 @@ public class IoTHubDeviceManager extends DeviceManager {
         // IOTHUB DeviceID Prefix
         String iothub_ep_name = this.addDeviceIDPrefix(ep_name);
 
-        // don't overwrite an existing entry..
-        if (this.m_endpoint_details.get(iothub_ep_name) == null) {
+        // save off the endpoint details (don't overwrite an existing entry..)
+        if (this.m_endpoint_details.putIfAbsent(iothub_ep_name, entry) == null) {
             // DEBUG
-            this.errorLogger().info("IoTHub: saveDeviceDetails: saving " + iothub_ep_name + ": " + entry);
-
-            // save off the endpoint details
-            this.m_endpoint_details.put(iothub_ep_name, entry);
+            this.errorLogger().info("IoTHub: saveDeviceDetails: saved " + iothub_ep_name + ": " + entry);
         }
     }
     
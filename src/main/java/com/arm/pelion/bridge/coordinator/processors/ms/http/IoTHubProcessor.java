@@ -45,10 +45,10 @@ import java.util.Map;
  * 
  * @author Doug Anson
  */
-public class IoTHubProcessor extends GenericConnectablePeerProcessor implements Runnable, DeviceManagerToPeerProcessorInterface, HTTPDeviceListenerInterface, PeerProcessorInterface, GenericSender,Transport.ReceiveListener, AsyncResponseProcessor {    
+public class IoTHubProcessor extends GenericConnectablePeerProcessor implements DeviceManagerToPeerProcessorInterface, HTTPDeviceListenerInterface, PeerProcessorInterface, GenericSender,Transport.ReceiveListener, AsyncResponseProcessor {    
     private static final String IOTHUB_DEVICE_PREFIX_SEPARATOR = "-";                       // device prefix separator (if used...)... cannot be an "_"
-    private static final long SAS_TOKEN_VALID_TIME_MS = 365 * 24 * 60 * 60 * 1000;          // SAS Token created for 1 year expiration
-    private static final long SAS_TOKEN_RECREATE_INTERVAL_MS = 360 * 24 * 60 * 60 * 1000;   // number of days to wait before re-creating the SAS Token
+    private static final long SAS_TOKEN_VALID_TIME_MS = 365 * 24 * 60 * 60 * 1000L;         // SAS Token created for 1 year expiration
+    private static final long SAS_TOKEN_RECREATE_INTERVAL_MS = 360 * 24 * 60 * 60 * 1000L;  // number of days to wait before re-creating the SAS Token
     private static final String IOTHUB_AUTH_QUALIFIER = "SharedAccessSignature";            // IoTHub SAS Token qualifier
     
     private int m_num_coap_topics = 1;                                  // # of MQTT Topics for CoAP verbs in IoTHub implementation
@@ -63,14 +63,16 @@ public class IoTHubProcessor extends GenericConnectablePeerProcessor implements
     private boolean m_iot_event_hub_enable_device_id_prefix = false;
     private String m_iot_event_hub_device_id_prefix = null;
     private String m_iot_hub_api_version = null;
-    private Thread m_iot_hub_sas_token_refresh_thread = null;
-    private boolean m_sas_token_run_refresh_thread = true;
     private long m_iot_hub_sas_token_validity_time_ms = SAS_TOKEN_VALID_TIME_MS;
     private long m_iot_hub_sas_token_recreate_interval_ms= SAS_TOKEN_RECREATE_INTERVAL_MS;
     private boolean m_configured = false;
     
     // HTTP listeners for our device shadows
     private HashMap<String,HTTPDeviceListener> m_device_listeners = null;
+    private HttpTransport m_device_listener_http = null;
+    
+    // device-to-cloud telemetry batcher (null if batching is disabled)
+    private IoTHubTelemetryBatcher m_telemetry_batcher = null;
     
     // URL templates for IoTHub/HTTP
     private String m_iot_event_hub_observe_notification_message_url_template = null;
@@ -103,14 +105,15 @@ public class IoTHubProcessor extends GenericConnectablePeerProcessor implements
         this.m_iot_event_hub_device_cmd_message_url_template = this.orchestrator().preferences().valueOf("iot_event_hub_device_cmd_message_url",this.m_suffix);
         this.m_iot_event_hub_device_cmd_ack_url_template = this.orchestrator().preferences().valueOf("iot_event_hub_device_cmd_ack_url",this.m_suffix);
                 
-        // create the HTTP-based device listeners
+        // create the HTTP-based device listeners (sharing one HttpTransport... it is thread-safe)
         this.m_device_listeners = new HashMap<>();
+        this.m_device_listener_http = new HttpTransport(this.errorLogger(),this.preferences(),"iothub");
         
         // HTTP Auth Qualifier
         this.m_http_auth_qualifier = IOTHUB_AUTH_QUALIFIER;
         
         // initialize the SAS Token and its refresher...
-        this.initSASToken(false);
+        this.initSASToken(true);
         
         // continue only if configured
         if (this.m_iot_hub_connect_string != null && this.m_iot_hub_connect_string.contains("Goes_Here") == false) {
@@ -146,6 +149,12 @@ public class IoTHubProcessor extends GenericConnectablePeerProcessor implements
                     this.m_iot_event_hub_device_id_prefix += IOTHUB_DEVICE_PREFIX_SEPARATOR;
                 }
             }
+            
+            // optional device-to-cloud telemetry batching (0 - disabled... each message is POSTed by itself)
+            int batch_window_ms = this.prefIntValue("iot_event_hub_batch_window_ms", this.m_suffix);
+            if (batch_window_ms > 0) {
+                this.m_telemetry_batcher = new IoTHubTelemetryBatcher(this.errorLogger(), this.preferences(), this, this.m_suffix, batch_window_ms);
+            }
         }
         else {
             // unconfigured
@@ -186,18 +195,14 @@ public class IoTHubProcessor extends GenericConnectablePeerProcessor implements
             this.m_iot_hub_name = this.getIoTHubNameFromConnectionString(this.m_iot_hub_connect_string);
             this.m_iot_hub_sas_token_initialized = true;
             
-            // start a refresh thread
+            // schedule the SAS Token refresh
             if (enable_refresher) {
-                if (this.m_iot_hub_sas_token_refresh_thread == null) {
-                    try {
-                        this.m_iot_hub_sas_token_refresh_thread = new Thread(this);
-                        this.m_iot_hub_sas_token_refresh_thread.start();
+                this.orchestrator().getCredentialRefreshScheduler().schedule(this.getClass().getName() + "." + this.m_suffix + ":sas_token", this.m_iot_hub_sas_token_recreate_interval_ms, new Runnable() {
+                    @Override
+                    public void run() {
+                        IoTHubProcessor.this.refreshSASToken();
                     }
-                    catch (Exception ex) {
-                        this.errorLogger().warning("IoTHub(HTTP): Exception caught while starting SAS Token refresher: " + ex.getMessage());
-                        this.m_iot_hub_sas_token_refresh_thread = null;
-                    }
-                }
+                });
             }
         }
         else {
@@ -215,8 +220,12 @@ public class IoTHubProcessor extends GenericConnectablePeerProcessor implements
             
             // XXX disconnect
             
-            // create the new SAS token
-            this.m_iot_hub_sas_token = this.createSASToken(this.m_iot_hub_connect_string,this.m_iot_hub_sas_token_validity_time_ms);
+            // create the new SAS token (used for new connections and HTTP requests)
+            String sas_token = this.createSASToken(this.m_iot_hub_connect_string,this.m_iot_hub_sas_token_validity_time_ms);
+            if (sas_token != null) {
+                this.m_iot_hub_sas_token = sas_token;
+                this.m_http_auth_token = sas_token.replace(this.m_http_auth_qualifier + " ", "").trim();
+            }
             
             // XXX reconnect
         }
@@ -332,19 +341,14 @@ public class IoTHubProcessor extends GenericConnectablePeerProcessor implements
                 // DEBUG
                 this.errorLogger().info("IoTHub(sendMessage): URL: " + url + " MESSAGE: " + message);
 
-                // post the message to IoTHub
-                this.httpsPost(url, message);
-                int http_code = this.m_http.getLastResponseCode();
-
-                // DEBUG
-                if (Utils.httpResponseCodeOK(http_code)) {
-                    // SUCCESS
-                    this.errorLogger().info("IoTHub(sendMessage): message: " + message + " sent to device: " + ep_name + " SUCCESSFULLY. Code: " + http_code);
+                if (this.m_telemetry_batcher != null) {
+                    // batch the message for the device (sent asynchronously)
+                    this.m_telemetry_batcher.add(ep_name, url, message);
                     ok = true;
                 }
-                else if (http_code != 404) {
-                    // FAILURE
-                    this.errorLogger().warning("IoTHub(sendMessage): message: " + message + " send to device: " + ep_name + " FAILED. Code: " + http_code);
+                else {
+                    // post the message to IoTHub
+                    ok = this.postDeviceMessages(ep_name, url, message, null, 1);
                 }
             }
             catch (Exception ex) {
@@ -358,6 +362,43 @@ public class IoTHubProcessor extends GenericConnectablePeerProcessor implements
         return ok;
     }
     
+    // post device-to-cloud message(s) to IoTHub (content_type: null - single message, otherwise a batch of count messages)
+    boolean postDeviceMessages(String ep_name, String url, String payload, String content_type, int count) {
+        boolean ok = false;
+        
+        // post the message(s) to IoTHub
+        if (content_type == null) {
+            this.httpsPost(url, payload);
+        }
+        else {
+            this.m_http.setAuthorizationQualifier(this.m_http_auth_qualifier);
+            this.m_http.httpsPostApiTokenAuth(url, this.m_http_auth_token, payload, content_type);
+        }
+        int http_code = this.m_http.getLastResponseCode();
+        
+        // DEBUG
+        String what = (count == 1 && content_type == null) ? "message: " + payload : count + " batched messages";
+        if (Utils.httpResponseCodeOK(http_code)) {
+            // SUCCESS
+            this.errorLogger().info("IoTHub(sendMessage): " + what + " sent to device: " + ep_name + " SUCCESSFULLY. Code: " + http_code);
+            ok = true;
+        }
+        else if (http_code != 404) {
+            // FAILURE
+            this.errorLogger().warning("IoTHub(sendMessage): " + what + " send to device: " + ep_name + " FAILED. Code: " + http_code);
+        }
+        return ok;
+    }
+    
+    // telemetry batching statistics (Health Stats... null if batching is disabled)
+    @Override
+    public Map<String,Object> telemetryBatchStatistics() {
+        if (this.m_telemetry_batcher != null) {
+            return this.m_telemetry_batcher.statistics();
+        }
+        return null;
+    }
+    
     // process a device deletion
     @Override
     public String[] processDeviceDeletions(Map parsed) {
@@ -551,7 +592,7 @@ public class IoTHubProcessor extends GenericConnectablePeerProcessor implements
     
     // poll for and process device command messages
     @Override
-    public void pollAndProcessDeviceMessages(HttpTransport http,String ep_name) {
+    public boolean pollAndProcessDeviceMessages(HttpTransport http,String ep_name) {
         // Get the next message
         String message = this.getNextMessage(http,ep_name);
         if (message != null && message.length() > 0) {
@@ -560,11 +601,13 @@ public class IoTHubProcessor extends GenericConnectablePeerProcessor implements
 
             // parse and process the message
             this.onMessageReceive(ep_name, message);
+            return true;
         }
         else {
             // No message to process... OK
             this.errorLogger().info("IoTHub(HTTP): DEVICE: " + ep_name + " No message to process. (OK)");
         }
+        return false;
     }
     
     // send the API Response back through the topic
@@ -659,7 +702,7 @@ public class IoTHubProcessor extends GenericConnectablePeerProcessor implements
     private void createDeviceListener(String ep_name) {
         if (ep_name != null && ep_name.length() > 0) {
             if (this.m_device_listeners.get(ep_name) == null) {
-                this.m_device_listeners.put(ep_name, new HTTPDeviceListener(this,new HttpTransport(this.errorLogger(),this.preferences()),ep_name));
+                this.m_device_listeners.put(ep_name, new HTTPDeviceListener(this,this.m_device_listener_http,ep_name));
             }
         }
     }
@@ -711,18 +754,6 @@ public class IoTHubProcessor extends GenericConnectablePeerProcessor implements
         return this.getEndpointTypeFromEndpointName(ep);
     }
     
-    // Run the refresh thread to refresh the SAS Token periodically
-    @Override
-    public void run() {
-        while(this.m_sas_token_run_refresh_thread == true) {
-            Utils.waitForABit(this.errorLogger(), this.m_iot_hub_sas_token_recreate_interval_ms);
-            this.refreshSASToken();
-        }
-        
-        // WARN - refresh thread has halted
-        this.errorLogger().warning("IoTHuB: WARNING: SAS Token refresh thread has halted. SAS Token may expire within the year...");
-    }
-
     // Create the authentication hash for the webhook auth header
     @Override
     public String createAuthenticationHash() {
@@ -739,6 +770,9 @@ public class IoTHubProcessor extends GenericConnectablePeerProcessor implements
     // stop any IoTHub listeners
     @Override
     public void stopListener() {
-        // not used in HTTP based integration
+        // flush any batched telemetry and stop batching
+        if (this.m_telemetry_batcher != null) {
+            this.m_telemetry_batcher.shutdown();
+        }
     }
 }
@@ -0,0 +1,400 @@
+/**
+ * @file IoTHubTelemetryBatcher.java
+ * @brief Batched device-to-cloud telemetry for the IoTHub HTTP processor
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.coordinator.processors.ms.http;
+
+import com.arm.pelion.bridge.coordinator.processors.core.EndpointLaneExecutor;
+import com.arm.pelion.bridge.core.BaseClass;
+import com.arm.pelion.bridge.core.ErrorLogger;
+import com.arm.pelion.bridge.preferences.PreferenceManager;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * IoTHub device-to-cloud telemetry batcher. Messages are accumulated per device and POSTed in IoTHub's batched
+ * message format (one request for many messages). A device's batch is flushed when it reaches the message or byte
+ * cap, when its window expires (by our flusher) or when the processor stops its listeners. All of a device's POSTs
+ * go through the same flush lane so that its batches are never in flight concurrently (and arrive in order).
+ *
+ * @author Doug Anson
+ */
+public class IoTHubTelemetryBatcher extends BaseClass implements Runnable {
+    // IoTHub batched message content type
+    public static final String BATCH_CONTENT_TYPE = "application/vnd.microsoft.iothub.json";
+
+    // defaults
+    private static final int DEFAULT_MAX_MESSAGES = 50;
+    private static final int DEFAULT_MAX_BYTES = 240 * 1024;        // IoTHub limit is 256KB per request
+    private static final int MAX_BYTES_LIMIT = 255 * 1024;
+    private static final int DEFAULT_FLUSH_WORKERS = 4;
+    private static final int FLUSH_LANE_QUEUE_SIZE = 32;            // closed batches queued per lane before senders wait
+    private static final int MIN_SWEEP_MS = 5;
+
+    // per-entry JSON overhead: {"body":"","base64Encoded":true},
+    private static final int ENTRY_OVERHEAD_BYTES = 34;
+
+    // batch size histogram bucket upper bounds (the last bucket is open-ended)
+    private static final int[] BUCKET_BOUNDS = {1, 2, 4, 8, 16, 32, 64};
+
+    private IoTHubProcessor m_processor = null;
+    private ConcurrentHashMap<String,Batch> m_batches = null;
+    private EndpointLaneExecutor m_flush_lanes = null;
+    private Thread m_flusher = null;
+    private volatile boolean m_running = false;
+    private int m_window_ms = 0;
+    private int m_max_messages = DEFAULT_MAX_MESSAGES;
+    private int m_max_bytes = DEFAULT_MAX_BYTES;
+    private int m_sweep_ms = MIN_SWEEP_MS;
+
+    // statistics
+    private final AtomicLong m_num_pending = new AtomicLong(0);
+    private final AtomicLong m_num_messages = new AtomicLong(0);
+    private final AtomicLong m_num_batches = new AtomicLong(0);
+    private final AtomicLong m_num_failed = new AtomicLong(0);
+    private final AtomicLong m_max_batch_size = new AtomicLong(0);
+    private final AtomicLong m_num_size_flushes = new AtomicLong(0);
+    private final AtomicLong m_num_time_flushes = new AtomicLong(0);
+    private final AtomicLongArray m_histogram = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+
+    // a device's pending messages
+    private static class Batch {
+        private final String m_ep_name;
+        private final String m_url;
+        private final long m_created_ms;
+        private final ArrayList<String> m_messages;
+        private int m_bytes;
+        private boolean m_closed;
+
+        Batch(String ep_name, String url) {
+            this.m_ep_name = ep_name;
+            this.m_url = url;
+            this.m_created_ms = System.currentTimeMillis();
+            this.m_messages = new ArrayList<>();
+            this.m_bytes = 2;       // []
+            this.m_closed = false;
+        }
+    }
+
+    // default constructor
+    public IoTHubTelemetryBatcher(ErrorLogger error_logger, PreferenceManager preference_manager, IoTHubProcessor processor, String suffix, int window_ms) {
+        super(error_logger, preference_manager);
+        this.m_processor = processor;
+        this.m_batches = new ConcurrentHashMap<>();
+        this.m_window_ms = window_ms;
+
+        // batch caps
+        int max_messages = this.prefIntValue("iot_event_hub_batch_max_messages", suffix);
+        if (max_messages > 0) {
+            this.m_max_messages = max_messages;
+        }
+        int max_bytes = this.prefIntValue("iot_event_hub_batch_max_bytes", suffix);
+        if (max_bytes > 0) {
+            this.m_max_bytes = Math.min(max_bytes, MAX_BYTES_LIMIT);
+        }
+
+        // batches are POSTed by a small set of per-device ordered lanes so that one slow POST does not hold up the rest
+        int workers = this.prefIntValue("iot_event_hub_batch_flush_workers", suffix);
+        if (workers <= 0) {
+            workers = DEFAULT_FLUSH_WORKERS;
+        }
+        this.m_flush_lanes = new EndpointLaneExecutor(error_logger, preference_manager, "iothub-batch-flush", workers, FLUSH_LANE_QUEUE_SIZE);
+
+        // sweep at a quarter of the window
+        this.m_sweep_ms = Math.max(MIN_SWEEP_MS, this.m_window_ms / 4);
+
+        // start our flusher
+        this.m_running = true;
+        this.m_flusher = new Thread(this, "iothub-batch-flusher");
+        this.m_flusher.setDaemon(true);
+        this.m_flusher.start();
+
+        // announce
+        this.errorLogger().warning("IoTHubTelemetryBatcher: Batching ENABLED. Window: " + this.m_window_ms + "ms Max messages: " + this.m_max_messages + " Max bytes: " + this.m_max_bytes + " Flush workers: " + workers);
+    }
+
+    /**
+     * add a device-to-cloud message to its device's batch (flushes the batch if it is full)
+     * @param ep_name IoTHub device id
+     * @param url device event URL
+     * @param message message to send
+     */
+    public void add(String ep_name, String url, String message) {
+        int size = this.entrySize(message);
+        if (size + 2 > this.m_max_bytes || this.m_running == false) {
+            // too large to batch (or we are shut down)... send the device's open batch first, then this message by itself
+            Batch open = this.m_batches.get(ep_name);
+            Batch earlier = (open != null) ? this.closeIfOpen(open) : null;
+            if (earlier != null) {
+                this.dispatch(earlier, null);
+            }
+            Batch single = new Batch(ep_name, url);
+            single.m_messages.add(message);
+            this.m_num_pending.incrementAndGet();
+            this.dispatch(single, null);
+            return;
+        }
+
+        while (true) {
+            Batch batch = this.m_batches.get(ep_name);
+            if (batch == null) {
+                Batch created = new Batch(ep_name, url);
+                batch = this.m_batches.putIfAbsent(ep_name, created);
+                if (batch == null) {
+                    batch = created;
+                }
+            }
+
+            Batch full = null;
+            boolean added = false;
+            synchronized (batch) {
+                if (batch.m_closed == true) {
+                    // flushed underneath us... retry with a new batch
+                    continue;
+                }
+                if (batch.m_bytes + size > this.m_max_bytes) {
+                    // will not fit... flush what we have and start the next batch
+                    full = this.close(batch);
+                }
+                else {
+                    batch.m_messages.add(message);
+                    batch.m_bytes += size;
+                    this.m_num_pending.incrementAndGet();
+                    added = true;
+                    if (batch.m_messages.size() >= this.m_max_messages) {
+                        full = this.close(batch);
+                    }
+                }
+            }
+
+            // flush-on-size (the sending thread waits if the device's lane is backed up)
+            if (full != null) {
+                this.m_num_size_flushes.incrementAndGet();
+                this.dispatch(full, null);
+            }
+            if (added == true) {
+                return;
+            }
+        }
+    }
+
+    // close a batch and take it out of circulation (caller holds the batch lock)
+    private Batch close(Batch batch) {
+        batch.m_closed = true;
+        this.m_batches.remove(batch.m_ep_name, batch);
+        return batch;
+    }
+
+    // close a batch that has not already been closed
+    private Batch closeIfOpen(Batch batch) {
+        synchronized (batch) {
+            if (batch.m_closed == true) {
+                return null;
+            }
+            return this.close(batch);
+        }
+    }
+
+    // base64 body plus the entry JSON
+    private int entrySize(String message) {
+        int length = message.getBytes(StandardCharsets.UTF_8).length;
+        return (4 * ((length + 2) / 3)) + ENTRY_OVERHEAD_BYTES;
+    }
+
+    // POST a closed batch (a single message is sent as-is)
+    private void send(Batch batch) {
+        int count = batch.m_messages.size();
+        if (count == 0) {
+            return;
+        }
+        this.m_num_pending.addAndGet(-count);
+        boolean ok = false;
+        try {
+            if (count == 1) {
+                ok = this.m_processor.postDeviceMessages(batch.m_ep_name, batch.m_url, batch.m_messages.get(0), null, 1);
+            }
+            else {
+                ok = this.m_processor.postDeviceMessages(batch.m_ep_name, batch.m_url, this.createBatchPayload(batch), BATCH_CONTENT_TYPE, count);
+            }
+        }
+        catch (Exception ex) {
+            this.errorLogger().warning("IoTHubTelemetryBatcher: Exception caught while sending " + count + " messages for device: " + batch.m_ep_name + ": " + ex.getMessage(), ex);
+        }
+        if (ok == false) {
+            this.errorLogger().warning("IoTHubTelemetryBatcher: FAILED to send " + count + " messages for device: " + batch.m_ep_name);
+        }
+        this.recordBatch(count, ok);
+    }
+    
+    // POST a closed batch on its device's lane (counting down the latch, if any, once sent)
+    private void dispatch(final Batch batch, final CountDownLatch sent) {
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    IoTHubTelemetryBatcher.this.send(batch);
+                }
+                finally {
+                    if (sent != null) {
+                        sent.countDown();
+                    }
+                }
+            }
+        };
+        if (this.m_flush_lanes.executeBlocking(batch.m_ep_name, task) == false) {
+            // lanes are stopping... send it ourselves
+            task.run();
+        }
+    }
+
+    // create the IoTHub batched message payload: [{"body":"<base64>","base64Encoded":true},...]
+    private String createBatchPayload(Batch batch) {
+        StringBuilder buf = new StringBuilder(batch.m_bytes);
+        buf.append('[');
+        for (int i = 0; i < batch.m_messages.size(); ++i) {
+            if (i > 0) {
+                buf.append(',');
+            }
+            buf.append("{\"body\":\"");
+            buf.append(Base64.encodeBase64String(batch.m_messages.get(i).getBytes(StandardCharsets.UTF_8)));
+            buf.append("\",\"base64Encoded\":true}");
+        }
+        buf.append(']');
+        return buf.toString();
+    }
+
+    // record a sent batch
+    private void recordBatch(int count, boolean ok) {
+        this.m_num_batches.incrementAndGet();
+        this.m_num_messages.addAndGet(count);
+        if (ok == false) {
+            this.m_num_failed.incrementAndGet();
+        }
+        long max = this.m_max_batch_size.get();
+        while (count > max && this.m_max_batch_size.compareAndSet(max, count) == false) {
+            max = this.m_max_batch_size.get();
+        }
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS.length && count > BUCKET_BOUNDS[bucket]) {
+            ++bucket;
+        }
+        this.m_histogram.incrementAndGet(bucket);
+    }
+
+    // flush-on-time: hand window-expired batches to our flush workers
+    private void flushExpired() {
+        long now = System.currentTimeMillis();
+        for (Batch batch : this.m_batches.values()) {
+            if ((now - batch.m_created_ms) >= this.m_window_ms) {
+                Batch expired = this.closeIfOpen(batch);
+                if (expired != null) {
+                    this.m_num_time_flushes.incrementAndGet();
+                    this.dispatch(expired, null);
+                }
+            }
+        }
+    }
+
+    /**
+     * flush all pending batches (returns once they have been sent)
+     */
+    public void flush() {
+        List<Batch> pending = new ArrayList<>();
+        for (Batch batch : this.m_batches.values()) {
+            Batch closed = this.closeIfOpen(batch);
+            if (closed != null) {
+                pending.add(closed);
+            }
+        }
+        CountDownLatch sent = new CountDownLatch(pending.size());
+        for (int i = 0; i < pending.size(); ++i) {
+            this.dispatch(pending.get(i), sent);
+        }
+        try {
+            sent.await();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // batching statistics (Health Stats)
+    public Map<String,Object> statistics() {
+        HashMap<String,Object> stats = new HashMap<>();
+        long batches = this.m_num_batches.get();
+        long messages = this.m_num_messages.get();
+        stats.put("pending", this.m_num_pending.get());
+        stats.put("messages", messages);
+        stats.put("batches", batches);
+        stats.put("failed", this.m_num_failed.get());
+        stats.put("size_flushes", this.m_num_size_flushes.get());
+        stats.put("time_flushes", this.m_num_time_flushes.get());
+        stats.put("avg_batch_size", batches > 0 ? (float) messages / batches : 0.0f);
+        stats.put("max_batch_size", this.m_max_batch_size.get());
+
+        // batch size distribution
+        LinkedHashMap<String,Long> histogram = new LinkedHashMap<>();
+        int lower = 1;
+        for (int i = 0; i < BUCKET_BOUNDS.length; ++i) {
+            histogram.put(lower == BUCKET_BOUNDS[i] ? "" + lower : lower + "-" + BUCKET_BOUNDS[i], this.m_histogram.get(i));
+            lower = BUCKET_BOUNDS[i] + 1;
+        }
+        histogram.put(lower + "+", this.m_histogram.get(BUCKET_BOUNDS.length));
+        stats.put("batch_sizes", histogram);
+        return stats;
+    }
+
+    // shutdown (flushes everything pending... later messages are sent unbatched)
+    public void shutdown() {
+        this.m_running = false;
+        if (this.m_flusher != null) {
+            this.m_flusher.interrupt();
+        }
+        this.flush();
+        this.m_flush_lanes.shutdown();
+    }
+
+    // flusher loop
+    @Override
+    public void run() {
+        while (this.m_running == true) {
+            try {
+                Thread.sleep(this.m_sweep_ms);
+                this.flushExpired();
+            }
+            catch (InterruptedException ex) {
+                // stopping
+            }
+            catch (Exception ex) {
+                this.errorLogger().warning("IoTHubTelemetryBatcher: Exception caught in flusher: " + ex.getMessage(), ex);
+            }
+        }
+    }
+}
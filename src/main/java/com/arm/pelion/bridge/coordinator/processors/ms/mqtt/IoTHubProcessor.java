@@ -23,6 +23,7 @@
 package com.arm.pelion.bridge.coordinator.processors.ms.mqtt;
 
 import com.arm.pelion.bridge.coordinator.processors.arm.GenericConnectablePeerProcessor;
+import com.arm.pelion.bridge.coordinator.processors.core.NotificationEvent;
 import com.arm.pelion.bridge.coordinator.Orchestrator;
 import com.arm.pelion.bridge.core.ApiResponse;
 import com.arm.pelion.bridge.coordinator.processors.interfaces.AsyncResponseProcessor;
@@ -48,7 +49,7 @@ import org.fusesource.mqtt.client.Topic;
  *
  * @author Doug Anson
  */
-public class IoTHubProcessor extends GenericConnectablePeerProcessor implements Runnable, DeviceManagerToPeerProcessorInterface, ReconnectionInterface, ConnectionCreator, Transport.ReceiveListener, PeerProcessorInterface, AsyncResponseProcessor {    
+public class IoTHubProcessor extends GenericConnectablePeerProcessor implements DeviceManagerToPeerProcessorInterface, ReconnectionInterface, ConnectionCreator, Transport.ReceiveListener, PeerProcessorInterface, AsyncResponseProcessor {    
     // Digital Twin Notification Topic
     private static final String DT_NOTIFICATION_TOPIC = "$iothub/twin/res/#";
     
@@ -56,8 +57,8 @@ public class IoTHubProcessor extends GenericConnectablePeerProcessor implements
     private static final int MAX_IOTHUB_DEVICE_SHADOWS = 25000;                             // limitation: # ephemeral ports
     
     private static final String IOTHUB_DEVICE_PREFIX_SEPARATOR = "-";                       // device prefix separator (if used...)... cannot be an "_"
-    private static final long SAS_TOKEN_VALID_TIME_MS = 365 * 24 * 60 * 60 * 1000;          // SAS Token created for 1 year expiration
-    private static final long SAS_TOKEN_RECREATE_INTERVAL_MS = 360 * 24 * 60 * 60 * 1000;   // number of days to wait before re-creating the SAS Token
+    private static final long SAS_TOKEN_VALID_TIME_MS = 365 * 24 * 60 * 60 * 1000L;         // SAS Token created for 1 year expiration
+    private static final long SAS_TOKEN_RECREATE_INTERVAL_MS = 360 * 24 * 60 * 60 * 1000L;  // number of days to wait before re-creating the SAS Token
     private static final String IOTHUB_AUTH_QUALIFIER = "SharedAccessSignature";            // IoTHub SAS Token qualifier
     
     private int m_num_coap_topics = 2;                                                      // # of MQTT Topics for CoAP verbs in IoTHub implementation
@@ -72,8 +73,6 @@ public class IoTHubProcessor extends GenericConnectablePeerProcessor implements
     private boolean m_iot_event_hub_enable_device_id_prefix = false;
     private String m_iot_event_hub_device_id_prefix = null;
     private String m_iot_hub_version_tag = null;
-    private Thread m_iot_hub_sas_token_refresh_thread = null;
-    private boolean m_sas_token_run_refresh_thread = true;
     private long m_iot_hub_sas_token_validity_time_ms = SAS_TOKEN_VALID_TIME_MS;
     private long m_iot_hub_sas_token_recreate_interval_ms= SAS_TOKEN_RECREATE_INTERVAL_MS;
     
@@ -106,7 +105,7 @@ public class IoTHubProcessor extends GenericConnectablePeerProcessor implements
         this.m_http_auth_qualifier = IOTHUB_AUTH_QUALIFIER;
         
         // initialize the SAS Token and its refresher...
-        this.initSASToken(false);
+        this.initSASToken(true);
         
         // initialize our MQTT transport list
         this.initMQTTTransportList();
@@ -184,18 +183,14 @@ public class IoTHubProcessor extends GenericConnectablePeerProcessor implements
             this.m_iot_hub_name = this.getIoTHubNameFromConnectionString(this.m_iot_hub_connect_string);
             this.m_iot_hub_sas_token_initialized = true;
             
-            // start a refresh thread
+            // schedule the SAS Token refresh
             if (enable_refresher) {
-                if (this.m_iot_hub_sas_token_refresh_thread == null) {
-                    try {
-                        this.m_iot_hub_sas_token_refresh_thread = new Thread(this);
-                        this.m_iot_hub_sas_token_refresh_thread.start();
+                this.orchestrator().getCredentialRefreshScheduler().schedule(this.getClass().getName() + "." + this.m_suffix + ":sas_token", this.m_iot_hub_sas_token_recreate_interval_ms, new Runnable() {
+                    @Override
+                    public void run() {
+                        IoTHubProcessor.this.refreshSASToken();
                     }
-                    catch (Exception ex) {
-                        this.errorLogger().warning("IoTHub(MQTT): Exception caught while starting SAS Token refresher: " + ex.getMessage());
-                        this.m_iot_hub_sas_token_refresh_thread = null;
-                    }
-                }
+                });
             }
         }
         else {
@@ -213,8 +208,12 @@ public class IoTHubProcessor extends GenericConnectablePeerProcessor implements
             
             // XXX disconnect
             
-            // create the new SAS token
-            this.m_iot_hub_sas_token = this.createSASToken(this.m_iot_hub_connect_string,this.m_iot_hub_sas_token_validity_time_ms);
+            // create the new SAS token (used for new connections and HTTP requests)
+            String sas_token = this.createSASToken(this.m_iot_hub_connect_string,this.m_iot_hub_sas_token_validity_time_ms);
+            if (sas_token != null) {
+                this.m_iot_hub_sas_token = sas_token;
+                this.m_http_auth_token = sas_token.replace(this.m_http_auth_qualifier + " ", "").trim();
+            }
             
             // XXX reconnect
         }
@@ -422,19 +421,22 @@ public class IoTHubProcessor extends GenericConnectablePeerProcessor implements
     
     // OVERRIDE: process a mDS notification for IoTHub
     @Override
-    public void processNotification(Map data) {
+    public void processNotification(NotificationEvent notification) {
         // DEBUG
         //this.errorLogger().info("processIncomingDeviceServerMessage(IoTHub)...");
 
-        // get the list of parsed notifications
-        List notifications = (List) data.get("notifications");
-        for (int i = 0; notifications != null && i < notifications.size(); ++i) {
-            // we have to process the payload... this may be dependent on being a string core type... 
-            Map notification = (Map) notifications.get(i);
+        // get our Pelion endpoint name
+        String ep_name = notification.endpointName();
+
+        // IOTHUB Prefix
+        String iothub_ep_name = this.addDeviceIDPrefix(ep_name);
 
-            // decode the Payload...
-            String b64_coap_payload = (String) notification.get("payload");
-            String decoded_coap_payload = Utils.decodeCoAPPayload(b64_coap_payload);
+        // single-pass transform into a coap/device packet (if enabled for this peer)
+        String iot_event_hub_coap_json = this.transformNotification(notification);
+        if (iot_event_hub_coap_json == null) {
+            // legacy path: work on a Map copy of the notification
+            Map notification_map = notification.toMap();
+            String decoded_coap_payload = notification.decodedPayload();
 
             // DEBUG
             //this.errorLogger().info("IoTHub(MQTT): Decoded Payload: " + decoded_coap_payload);
@@ -442,48 +444,42 @@ public class IoTHubProcessor extends GenericConnectablePeerProcessor implements
             Map json_parsed = this.tryJSONParse(decoded_coap_payload);
             if (json_parsed != null && json_parsed.isEmpty() == false) {
                 // add in a JSON object payload value directly... 
-                notification.put("value", Utils.retypeMap(json_parsed, this.fundamentalTypeDecoder()));             // its JSON (flat...)                                                   // its JSON 
+                notification_map.put("value", Utils.retypeMap(json_parsed, this.fundamentalTypeDecoder()));             // its JSON (flat...)                                                   // its JSON 
             }
             else {
                 // add in a decoded payload value as a fundamental type...
-                notification.put("value", this.fundamentalTypeDecoder().getFundamentalValue(decoded_coap_payload)); // its a Float, Integer, or String
+                notification_map.put("value", this.fundamentalTypeDecoder().getFundamentalValue(decoded_coap_payload)); // its a Float, Integer, or String
             }
 
-            // get our Pelion endpoint name
-            String ep_name = Utils.valueFromValidKey(notification, "id", "ep");
-
-            // IOTHUB Prefix
-            String iothub_ep_name = this.addDeviceIDPrefix(ep_name);
-
             // we will send the raw CoAP JSON... IoTHub can parse that... 
-            String coap_raw_json = this.jsonGenerator().generateJson(notification);
+            String coap_raw_json = this.jsonGenerator().generateJson(notification_map);
 
             // strip off []...
             String coap_json_stripped = this.stripArrayChars(coap_raw_json);
 
             // encapsulate into a coap/device packet...
-            String iot_event_hub_coap_json = this.convertToUnifiedFormat(coap_json_stripped);
+            iot_event_hub_coap_json = this.convertToUnifiedFormat(coap_json_stripped);
+        }
 
-            // DEBUG
-            this.errorLogger().info("IoTHub(MQTT): CoAP notification (STR): " + iot_event_hub_coap_json);
+        // DEBUG
+        this.errorLogger().info("IoTHub(MQTT): CoAP notification (STR): " + iot_event_hub_coap_json);
 
-            // send to IoTHub...
-            if (this.mqtt(iothub_ep_name) != null) {
-                boolean status = this.mqtt(iothub_ep_name).sendMessage(this.customizeTopic(this.m_iot_hub_observe_notification_topic, iothub_ep_name), iot_event_hub_coap_json, QoS.AT_MOST_ONCE);
-                if (status == true) {
-                    // not connected
-                    this.errorLogger().info("IoTHub(MQTT): CoAP notification sent. SUCCESS");
-                }
-                else {
-                    // send failed
-                    this.errorLogger().warning("IoTHub(MQTT): CoAP notification not sent. SEND FAILED");
-                }
+        // send to IoTHub...
+        if (this.mqtt(iothub_ep_name) != null) {
+            boolean status = this.mqtt(iothub_ep_name).sendMessage(this.customizeTopic(this.m_iot_hub_observe_notification_topic, iothub_ep_name), iot_event_hub_coap_json, QoS.AT_MOST_ONCE);
+            if (status == true) {
+                // not connected
+                this.errorLogger().info("IoTHub(MQTT): CoAP notification sent. SUCCESS");
             }
             else {
-                // not connected
-                this.errorLogger().info("IoTHub(MQTT): CoAP notification not sent. NOT CONNECTED");
+                // send failed
+                this.errorLogger().warning("IoTHub(MQTT): CoAP notification not sent. SEND FAILED");
             }
         }
+        else {
+            // not connected
+            this.errorLogger().info("IoTHub(MQTT): CoAP notification not sent. NOT CONNECTED");
+        }
     }
 
     // IoTHub Specific: subscribe to the IoTHub MQTT topics
@@ -544,7 +540,6 @@ public class IoTHubProcessor extends GenericConnectablePeerProcessor implements
             try {
                 if (topic_data != null) {
                     // get,put,post,delete enablement
-                    this.m_endpoints.remove(iothub_ep_name);
                     this.m_endpoints.put(iothub_ep_name, topic_data);
                     this.setEndpointTypeFromEndpointName(ep_name, ep_type);
                     this.subscribeToTopics(iothub_ep_name, (Topic[]) topic_data.get("topic_list"));
@@ -1252,16 +1247,4 @@ public class IoTHubProcessor extends GenericConnectablePeerProcessor implements
     public void stopListener() {
         // unused
     }
-
-    // Run the refresh thread to refresh the SAS Token periodically
-    @Override
-    public void run() {
-        while(this.m_sas_token_run_refresh_thread == true) {
-            Utils.waitForABit(this.errorLogger(), this.m_iot_hub_sas_token_recreate_interval_ms);
-            this.refreshSASToken();
-        }
-        
-        // WARN - refresh thread has halted
-        this.errorLogger().warning("IoTHuB: WARNING: SAS Token refresh thread has halted. SAS Token may expire within the year...");
-    }
 }
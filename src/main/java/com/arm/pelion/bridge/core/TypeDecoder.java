@@ -1,6 +1,6 @@
 /**
  * @file TypeDecoder.java
- * @brief Class that aids in the parsing of an input String into its fundamental type (Float, Integer, String)
+ * @brief Class that aids in the parsing of an input String into its fundamental type (Double, Integer, Boolean, String)
  * @author Doug Anson
  * @version 1.0
  * @see
@@ -25,196 +25,181 @@ package com.arm.pelion.bridge.core;
 import com.arm.pelion.bridge.preferences.PreferenceManager;
 
 /**
- * TypeDecoder class
+ * TypeDecoder class: stateless (safe to share across threads). Strings are classified with a single scan
+ * so that the common (numeric and plain string) cases never throw or log.
  *
  * @author Doug Anson
  */
 public class TypeDecoder extends BaseClass {
+    // digits in Integer.MAX_VALUE
+    private static final int MAX_INTEGER_DIGITS = 10;
 
-    private Double m_d = 0.0;
-    private Float m_f = (float)0.0;
-    private Boolean m_b = false;
-    private Long m_l = (long)0;
-    private Integer m_i = (int)0;
-    private String m_s = null;
+    // scan results
+    private static final int SCAN_STRING = 0;
+    private static final int SCAN_INTEGER = 1;
+    private static final int SCAN_DECIMAL = 2;
+
+    private boolean m_decode_booleans = false;
 
     // Default Constructor
     public TypeDecoder(ErrorLogger logger, PreferenceManager preferences) {
         super(logger, preferences);
-    }
 
-    // Is a Double Type?
-    private boolean isDouble(Object data) {
-        try {
-            if (data != null && data instanceof String) {
-                if (((String) data).contains(".") == true) {
-                    this.m_d = Double.parseDouble(((String) data));
-                    return true;
-                }
-            }
-        }
-        catch (NumberFormatException ex) {
-            this.errorLogger().info("isDouble: Exception in Double parse: " + ex.getMessage());
+        // optionally decode "true"/"false" payloads as Booleans (default is to leave them as Strings)
+        this.m_decode_booleans = this.prefBoolValue("decode_boolean_payloads");
+        if (this.m_decode_booleans == true) {
+            this.errorLogger().warning("TypeDecoder: Boolean payload decoding ENABLED");
         }
-        return false;
     }
-    
-    // Is a Double Type?
-    private boolean isFloat(Object data) {
-        try {
-            if (data != null && data instanceof String) {
-                if (((String) data).contains(".") == true) {
-                    this.m_f = Float.parseFloat(((String) data));
-                    return true;
-                }
-            }
-        }
-        catch (NumberFormatException ex) {
-            this.errorLogger().info("isDouble: Exception in Double parse: " + ex.getMessage());
+
+    // Get the fundamenal value
+    public Object getFundamentalValue(Object data) {
+        if (data instanceof String) {
+            // return its value processed as a String
+            return this.getFundamentalValueFromString((String)data);
         }
-        return false;
+
+        // Double, Float, Integer, Boolean (and anything else) are returned as-is
+        return data;
     }
 
-    // Is an Long Type?
-    private boolean isLong(Object data) {
-        try {
-            if (data != null && data instanceof String) {
-                if (((String) data).length() > 0) {
-                    this.m_l = Long.parseLong(((String) data));
-                    return true;
-                }
+    // get the fundamental object instance from the String representation
+    public Object getFundamentalValueFromString(String data) {
+        if (data == null) {
+            return null;
+        }
+        switch (TypeDecoder.scan(data)) {
+            case SCAN_DECIMAL:
+                // validated by the scan... will not throw
+                return Double.parseDouble(data);
+            case SCAN_INTEGER:
+                return TypeDecoder.parseInteger(data);
+            default:
+                break;
+        }
+        if (data.indexOf('.') >= 0 && TypeDecoder.isHexFloat(data)) {
+            // rare: hexadecimal floating point (Double.parseDouble() accepts these)
+            try {
+                return Double.parseDouble(data);
             }
-        }
-        catch (NumberFormatException ex) {
-            this.errorLogger().info("isInteger: Exception in Integer parse: " + ex.getMessage());
-        }
-        return false;
-    }
-    
-    // Is an Integer Type?
-    private boolean isInteger(Object data) {
-        try {
-            if (data != null && data instanceof String) {
-                if (((String) data).length() > 0) {
-                    this.m_i = Integer.parseInt(((String) data));
-                    return true;
-                }
+            catch (NumberFormatException ex) {
+                // not a Double... fall through
             }
         }
-        catch (NumberFormatException ex) {
-            this.errorLogger().info("isInteger: Exception in Integer parse: " + ex.getMessage());
-        }
-        return false;
-    }
-
-    // Is an String Type?
-    private boolean isString(Object data) {
-        try {
-            if (data != null && data instanceof String) {
-                this.m_s = (String) data;
-                return true;
+        if (this.m_decode_booleans == true) {
+            if ("true".equalsIgnoreCase(data)) {
+                return Boolean.TRUE;
+            }
+            if ("false".equalsIgnoreCase(data)) {
+                return Boolean.FALSE;
             }
         }
-        catch (Exception ex) {
-            this.errorLogger().info("isString: Exception in String parse: " + ex.getMessage());
-        }
-        return false;
+        return data;
     }
 
-    // Get the fundamenal value
-    public Object getFundamentalValue(Object data) {
-        if (data != null) {
-            // direct comparisons first...
-            if (data instanceof Double) {
-                // DEBUG
-                this.errorLogger().info("getFundamentalValue: Type is Double");
-
-                this.m_d = (Double)data;
-                return this.m_d;
+    // single scan classification: SCAN_DECIMAL for [ws][+-]digits.digits[(e|E)[+-]digits][fFdD][ws] (at least one
+    // mantissa digit, "." required), SCAN_INTEGER for [+-]digits within the Integer range, otherwise SCAN_STRING
+    private static int scan(String data) {
+        int length = data.length();
+
+        // leading/trailing whitespace is ignored by Double.parseDouble() but not by Integer.parseInt()
+        int start = 0;
+        while (start < length && data.charAt(start) <= ' ') {
+            ++start;
+        }
+        int end = length;
+        while (end > start && data.charAt(end - 1) <= ' ') {
+            --end;
+        }
+        boolean trimmed = (start > 0 || end < length);
+
+        int i = start;
+        if (i < end && (data.charAt(i) == '-' || data.charAt(i) == '+')) {
+            ++i;
+        }
+
+        // mantissa
+        int num_digits = 0;
+        int num_significant_digits = 0;
+        boolean decimal_point = false;
+        for (; i < end; ++i) {
+            char c = data.charAt(i);
+            if (c >= '0' && c <= '9') {
+                ++num_digits;
+                if (decimal_point == false && (num_significant_digits > 0 || c != '0')) {
+                    ++num_significant_digits;
+                }
             }
-            else if (data instanceof Float) {
-                // DEBUG
-                this.errorLogger().info("getFundamentalValue: Type is Float");
-
-                this.m_f = (Float)data;
-                return this.m_f;
+            else if (c == '.' && decimal_point == false) {
+                decimal_point = true;
             }
-            /*
-            else if (data instanceof Long) {
-                // DEBUG
-                this.errorLogger().info("getFundamentalValue: Type is Long");
-
-                this.m_l = (Long)data;
-                return this.m_l;
+            else {
+                break;
             }
-            */
-            else if (data instanceof Integer) {
-                // DEBUG
-                this.errorLogger().info("getFundamentalValue: Type is Integer");
+        }
+        if (num_digits == 0) {
+            return SCAN_STRING;
+        }
 
-                this.m_i = (Integer)data;
-                return this.m_i;
+        if (decimal_point == false) {
+            // integer: no whitespace or trailing characters and must fit in an Integer
+            if (i != end || trimmed == true || num_significant_digits > MAX_INTEGER_DIGITS) {
+                return SCAN_STRING;
             }
-            else if (data instanceof Boolean) {
-                // DEBUG
-                this.errorLogger().info("getFundamentalValue: Type is Boolean");
+            return (num_significant_digits < MAX_INTEGER_DIGITS) ? SCAN_INTEGER : TypeDecoder.checkIntegerRange(data);
+        }
 
-                this.m_b = (Boolean)data;
-                return this.m_b;
+        // optional exponent
+        if (i < end && (data.charAt(i) == 'e' || data.charAt(i) == 'E')) {
+            ++i;
+            if (i < end && (data.charAt(i) == '-' || data.charAt(i) == '+')) {
+                ++i;
+            }
+            int num_exponent_digits = 0;
+            while (i < end && data.charAt(i) >= '0' && data.charAt(i) <= '9') {
+                ++num_exponent_digits;
+                ++i;
             }
-            else if (data instanceof String) {
-                // return its value processed as a String
-                return this.getFundamentalValueFromString((String)data);
+            if (num_exponent_digits == 0) {
+                return SCAN_STRING;
             }
         }
-        return data;
-    }
-    
-    // get the fundamental object instance from the String representation
-    public Object getFundamentalValueFromString(String data) {
-        if (this.isDouble(data)) {
-            // DEBUG
-            this.errorLogger().info("getFundamentalValue: Type is Double");
 
-            // return a Double
-            return this.m_d;
+        // optional type suffix
+        if (i < end && "fFdD".indexOf(data.charAt(i)) >= 0) {
+            ++i;
         }
-        else if (this.isFloat(data)) {
-            // DEBUG
-            this.errorLogger().info("getFundamentalValue: Type is Float");
+        return (i == end) ? SCAN_DECIMAL : SCAN_STRING;
+    }
 
-            // return an Float
-            return this.m_f;
-        }
-        /*
-        else if (this.isLong(data)) {
-            // DEBUG
-            this.errorLogger().info("getFundamentalValue: Type is Long");
+    // 10 significant digits: compare against the Integer range
+    private static int checkIntegerRange(String data) {
+        long value = TypeDecoder.parseLong(data);
+        return (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) ? SCAN_INTEGER : SCAN_STRING;
+    }
 
-            // return an Integer
-            return this.m_i;
-        }
-        */
-        else if (this.isInteger(data)) {
-            // DEBUG
-            this.errorLogger().info("getFundamentalValue: Type is Integer");
+    // parse a scanned integer (no exceptions... the scan has validated it)
+    private static Integer parseInteger(String data) {
+        return (int)TypeDecoder.parseLong(data);
+    }
 
-            // return an Integer
-            return this.m_i;
+    // accumulate [+-]digits (at most 10 significant digits... fits in a long)
+    private static long parseLong(String data) {
+        int i = 0;
+        boolean negative = false;
+        if (data.charAt(0) == '-' || data.charAt(0) == '+') {
+            negative = (data.charAt(0) == '-');
+            ++i;
         }
-        else if (this.isString(data)) {
-            // DEBUG
-            this.errorLogger().info("getFundamentalValue: Type is String");
-
-            // return an Integer
-            return this.m_s;
+        long value = 0;
+        for (; i < data.length(); ++i) {
+            value = (value * 10) + (data.charAt(i) - '0');
         }
-        else {
-            // DEBUG
-            this.errorLogger().info("getFundamentalValue: Type is Object");
+        return negative ? -value : value;
+    }
 
-            // return itself... not a Double, Integer, or String 
-            return data;
-        }
+    // hexadecimal floating point candidate (e.g. "0x1.8p1")
+    private static boolean isHexFloat(String data) {
+        return (data.indexOf('x') >= 0 || data.indexOf('X') >= 0) && (data.indexOf('p') >= 0 || data.indexOf('P') >= 0);
     }
-}
\ No newline at end of file
+}
@@ -68,14 +68,18 @@ import java.text.SimpleDateFormat;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.TimeZone;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 import javax.servlet.ServletContext;
@@ -168,6 +172,16 @@ public class Utils {
         }
         return bval;
     }
+    
+    // case-normalize a device ID (keys of case-insensitive device sets)
+    public static String normalizeDeviceID(String id) {
+        return (id != null) ? id.toLowerCase(Locale.ROOT) : null;
+    }
+    
+    // create a concurrent set of device IDs (O(1) membership... keys must be normalized via normalizeDeviceID())
+    public static Set<String> newDeviceIDSet() {
+        return Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+    }
 
     // START DATE FUNCTIONS
     // get the current date and time
@@ -957,7 +971,7 @@ public class Utils {
         return false;
     }
 
-    // re-type a JSON Map
+    // re-type a JSON Map (the input Map and its embedded Maps/Lists are not modified... safe for concurrent use)
     public static Map retypeMap(Map json, TypeDecoder decoder) {
         HashMap<String, Object> remap = new HashMap<>();
 
@@ -965,31 +979,31 @@ public class Utils {
         Iterator it = json.entrySet().iterator();
         while (it.hasNext()) {
             Map.Entry pair = (Map.Entry) it.next();
-            Object value = decoder.getFundamentalValue(pair.getValue());
-            if (value instanceof Double || value instanceof Integer || value instanceof String) {
-                // fundamental types get mapped directly
-                remap.put((String) pair.getKey(), value);
-            }
-            else {
-                // this is a complex embedded type...
-                if (value instanceof Map) {
-                    // embedded JSON - directly recurse.
-                    remap.put((String) pair.getKey(), Utils.retypeMap((Map) value, decoder));
-                }
-                if (value instanceof List) {
-                    // list of embedded JSON - loop and recurse each Map(i)... 
-                    List list = (List) value;
-                    for (int i = 0; i < list.size(); ++i) {
-                        list.set(i, Utils.retypeMap((Map) (Map) list.get(i), decoder));
-                    }
-                    // replace list with new one...
-                    remap.put((String) pair.getKey(), list);
-                }
-            }
+            remap.put((String) pair.getKey(), Utils.retypeValue(pair.getValue(), decoder));
         }
 
         return remap;
     }
+
+    // re-type a JSON value
+    private static Object retypeValue(Object value, TypeDecoder decoder) {
+        if (value instanceof Map) {
+            // embedded JSON - directly recurse.
+            return Utils.retypeMap((Map) value, decoder);
+        }
+        if (value instanceof List) {
+            // list of embedded values - re-type each into a new list
+            List list = (List) value;
+            ArrayList<Object> relist = new ArrayList<>(list.size());
+            for (int i = 0; i < list.size(); ++i) {
+                relist.add(Utils.retypeValue(list.get(i), decoder));
+            }
+            return relist;
+        }
+
+        // fundamental types get mapped directly
+        return decoder.getFundamentalValue(value);
+    }
     
     // simple ugly replacement of oddball characters
     public static String replaceAllCharOccurances(String my_string,char out_char,char in_char) {
@@ -1348,15 +1362,6 @@ public class Utils {
         return b64_pub_key;
     }
     
-    // scale back GC() operations
-    public static boolean doGC() {
-        long val = (long)Math.random();
-        if (val%111 == 0) {
-            return true;
-        }
-        return false;
-    }
-    
     // make a string URL safe
     public static String makeURLSafe(ErrorLogger logger,String str) {
         if (str != null && str.length() > 0) {
@@ -0,0 +1,241 @@
+/**
+ * @file ConcurrentSerializableHashMap.java
+ * @brief Concurrent, lock-striped SerializableHashMap for shared bridge state
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.data;
+
+import com.arm.pelion.bridge.coordinator.Orchestrator;
+import com.arm.pelion.bridge.core.ErrorLogger;
+import com.arm.pelion.bridge.data.interfaces.Distributable;
+import com.arm.pelion.bridge.data.interfaces.ValueComputer;
+import com.arm.pelion.bridge.preferences.PreferenceManager;
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * ConcurrentSerializableHashMap: reads are lock-free. Changes are serialized per key (lock stripes) so that
+ * putIfAbsent/computeIfAbsent/compute are atomic and persisted changes are queued in the order they were made.
+ * Values may not be null (putting null removes the key).
+ * @author Doug Anson
+ */
+public class ConcurrentSerializableHashMap implements Distributable {
+    private InMemoryTemplatedConcurrentHashMap<Serializable> m_im_hashmap = null;
+    private DatabaseTemplatedConcurrentHashMap<Serializable> m_db_hashmap = null;
+    private ConcurrentHashMap<String,Serializable> m_map = null;
+    private final LockStripes m_stripes = new LockStripes();
+    private ErrorLogger m_error_logger = null;
+    private PreferenceManager m_preferences = null;
+    private String m_tablename = null;
+    
+    // constructor (Orchestrator)
+    public ConcurrentSerializableHashMap(Orchestrator orchestrator,String tablename) {
+        this(orchestrator.getDatabaseConnector(),orchestrator.errorLogger(),orchestrator.preferences(),tablename);
+    }
+    
+    // constructor (pre-Orchestrator)
+    public ConcurrentSerializableHashMap(DatabaseConnector db,ErrorLogger error_logger,PreferenceManager preferences,String tablename) {
+        this.m_tablename = tablename;
+        this.m_error_logger = error_logger;
+        this.m_preferences = preferences;
+        if (db != null) {
+            this.m_db_hashmap = new DatabaseTemplatedConcurrentHashMap(this,db,this.m_tablename);
+            this.m_map = this.m_db_hashmap;
+        }
+        else {
+            this.m_im_hashmap = new InMemoryTemplatedConcurrentHashMap(this);
+            this.m_map = this.m_im_hashmap;
+        }
+    }
+    
+    // inner map method (read-only use... changes must go through this container)
+    public ConcurrentMap<String,Serializable> map() {
+        return this.m_map;
+    }
+    
+    // get() method
+    public Serializable get(String key) {
+        return (key != null) ? this.m_map.get(key) : null;
+    }
+    
+    // containsKey() method
+    public boolean containsKey(String key) {
+        return (key != null) ? this.m_map.containsKey(key) : false;
+    }
+    
+    // size() method
+    public int size() {
+        return this.m_map.size();
+    }
+    
+    // put() method
+    public void put(String key,Serializable value) {
+        if (key != null) {
+            synchronized (this.m_stripes.lockFor(key)) {
+                if (value != null) {
+                    this.m_map.put(key,value);
+                }
+                else {
+                    this.m_map.remove(key);
+                }
+            }
+        }
+    }
+    
+    // remove() method
+    public void remove(String key) {
+        if (key != null) {
+            synchronized (this.m_stripes.lockFor(key)) {
+                this.m_map.remove(key);
+            }
+        }
+    }
+    
+    /**
+     * put the value only if the key is absent
+     * @param key
+     * @param value
+     * @return the existing value (null if the value was put)
+     */
+    public Serializable putIfAbsent(String key,Serializable value) {
+        if (key != null && value != null) {
+            synchronized (this.m_stripes.lockFor(key)) {
+                Serializable current = this.m_map.get(key);
+                if (current == null) {
+                    this.m_map.put(key,value);
+                }
+                return current;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * get the value for the key... computing and putting it atomically if absent
+     * @param key
+     * @param computer (called at most once, with a null current value)
+     * @return the existing or computed value (null if none was computed)
+     */
+    public Serializable computeIfAbsent(String key,ValueComputer computer) {
+        if (key != null) {
+            Serializable current = this.m_map.get(key);
+            if (current != null) {
+                return current;
+            }
+            synchronized (this.m_stripes.lockFor(key)) {
+                current = this.m_map.get(key);
+                if (current == null) {
+                    current = computer.compute(key,null);
+                    if (current != null) {
+                        this.m_map.put(key,current);
+                    }
+                }
+                return current;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * atomically replace the value for the key with one computed from its current value
+     * @param key
+     * @param computer (called exactly once... returning null removes the key)
+     * @return the new value (null if removed/absent)
+     */
+    public Serializable compute(String key,ValueComputer computer) {
+        if (key != null) {
+            synchronized (this.m_stripes.lockFor(key)) {
+                Serializable current = this.m_map.get(key);
+                Serializable updated = computer.compute(key,current);
+                if (updated != null) {
+                    this.m_map.put(key,updated);
+                }
+                else if (current != null) {
+                    this.m_map.remove(key);
+                }
+                return updated;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * remove the key only if it still maps to the given value
+     * @param key
+     * @param value
+     * @return true if removed
+     */
+    public boolean remove(String key,Serializable value) {
+        if (key != null && value != null) {
+            synchronized (this.m_stripes.lockFor(key)) {
+                if (value.equals(this.m_map.get(key)) == true) {
+                    this.m_map.remove(key);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // upsert
+    @Override
+    public void upsert(String key,Serializable value) {
+        if (this.m_im_hashmap != null) {
+            this.m_im_hashmap.upsert(key,value);
+        }
+        if (this.m_db_hashmap != null) {
+            this.m_db_hashmap.upsert(key,value);
+        }
+    }
+    
+    // delete
+    @Override
+    public void delete(String key) {
+        if (this.m_im_hashmap != null) {
+            this.m_im_hashmap.delete(key);
+        }
+        if (this.m_db_hashmap != null) {
+            this.m_db_hashmap.delete(key);
+        }
+    }
+    
+    // ErrorLogger
+    private ErrorLogger errorLogger() {
+        return this.m_error_logger;
+    }
+    
+    // Preferences
+    private PreferenceManager preferences() {
+        return this.m_preferences;
+    }
+
+    // not used
+    @Override
+    public void upsert(Serializable value) {
+        // not used
+    }
+
+    // not used
+    @Override
+    public void delete(int index) {
+        // not used
+    }
+}
@@ -0,0 +1,235 @@
+/**
+ * @file ConcurrentSerializableHashMapOfHashMaps.java
+ * @brief Concurrent, lock-striped SerializableHashMapOfHashMaps for shared bridge state
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.data;
+
+import com.arm.pelion.bridge.coordinator.Orchestrator;
+import com.arm.pelion.bridge.core.ErrorLogger;
+import com.arm.pelion.bridge.data.interfaces.Distributable;
+import com.arm.pelion.bridge.preferences.PreferenceManager;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ConcurrentSerializableHashMapOfHashMaps: reads are lock-free. Changes are serialized per key (lock stripes)
+ * so that putIfAbsent is atomic and an inner map and its persisted table are created/dropped together.
+ * Inner HashMaps are the decorated maps returned by SerializableHashMap.map()
+ * @author Doug Anson
+ */
+public class ConcurrentSerializableHashMapOfHashMaps implements Distributable {
+    private Orchestrator m_orchestrator = null;
+    private InMemoryTemplatedConcurrentHashMap<InMemoryTemplatedHashMap<Serializable>> m_im_hashmap = null;
+    private ConcurrentHashMap<String,DatabaseTemplatedHashMap<Serializable>> m_db_hashmap = null;
+    private final LockStripes m_stripes = new LockStripes();
+    private String m_tablename = null;
+    private DatabaseConnector m_db = null;
+    private ConcurrentSerializableHashMap m_outer_map = null;
+    
+    // constructor
+    public ConcurrentSerializableHashMapOfHashMaps(Orchestrator orchestrator,String tablename) {
+        this.m_orchestrator = orchestrator;
+        this.m_tablename = tablename;
+        this.m_db = orchestrator.getDatabaseConnector();
+        if (this.m_db != null) {
+            // inner maps are persisted in their own tables... our table holds the inner tablenames
+            this.m_db_hashmap = new ConcurrentHashMap<>();
+            
+            // create the outer map
+            this.m_outer_map = new ConcurrentSerializableHashMap(this.m_orchestrator,this.m_tablename);
+            
+            // reload any persisted inner maps
+            for (Map.Entry<String,Serializable> entry : this.m_outer_map.map().entrySet()) {
+                if (entry.getValue() instanceof String) {
+                    this.m_db_hashmap.put(entry.getKey(),new DatabaseTemplatedHashMap<Serializable>(this,this.m_db,(String)entry.getValue()));
+                }
+            }
+        }
+        else {
+            this.m_im_hashmap = new InMemoryTemplatedConcurrentHashMap(this);
+        }
+    }
+    
+    // get() method
+    public HashMap<String,Serializable> get(String key) {
+        if (key == null) {
+            return null;
+        }
+        if (this.m_im_hashmap != null) {
+            return this.m_im_hashmap.get(key);
+        }
+        if (this.m_db_hashmap != null) {
+            return this.m_db_hashmap.get(key);
+        }
+        return null;
+    }
+    
+    // containsKey() method
+    public boolean containsKey(String key) {
+        return this.get(key) != null;
+    }
+    
+    // size() method
+    public int size() {
+        if (this.m_im_hashmap != null) {
+            return this.m_im_hashmap.size();
+        }
+        if (this.m_db_hashmap != null) {
+            return this.m_db_hashmap.size();
+        }
+        return 0;
+    }
+    
+    // put() method
+    public void put(String key,HashMap<String,Serializable> value) {
+        if (key != null) {
+            synchronized (this.m_stripes.lockFor(key)) {
+                this.store(key,value);
+            }
+        }
+    }
+    
+    /**
+     * put the inner map only if the key is absent
+     * @param key
+     * @param value
+     * @return the existing inner map (null if the value was put)
+     */
+    public HashMap<String,Serializable> putIfAbsent(String key,HashMap<String,Serializable> value) {
+        if (key != null) {
+            synchronized (this.m_stripes.lockFor(key)) {
+                HashMap<String,Serializable> current = this.get(key);
+                if (current == null) {
+                    this.store(key,value);
+                }
+                return current;
+            }
+        }
+        return null;
+    }
+    
+    // remove() method
+    public void remove(String key) {
+        if (key != null) {
+            synchronized (this.m_stripes.lockFor(key)) {
+                if (this.m_im_hashmap != null) {
+                    this.m_im_hashmap.remove(key);
+                }
+                if (this.m_db_hashmap != null) {
+                    // remove from the HashMap
+                    DatabaseTemplatedHashMap<Serializable> v = this.m_db_hashmap.remove(key);
+
+                    // remove the Inner Table
+                    if (v != null) {
+                        // inner deletion of the entire table 
+                        v.delete();
+                    }
+
+                    // remove the row (inner table name) from our table
+                    this.delete(key);
+                }
+            }
+        }
+    }
+    
+    // store the inner map (caller holds the key's stripe)
+    private void store(String key,HashMap<String,Serializable> value) {
+        if (this.m_im_hashmap != null) {
+            try {
+                // upcast into InMemory templated hashmap
+                InMemoryTemplatedHashMap<Serializable> v = (InMemoryTemplatedHashMap<Serializable>)value;
+                this.m_im_hashmap.put(key,v);
+            }
+            catch (Exception ex) {
+                if (value != null) {
+                    this.errorLogger().warning("ConcurrentSerializableHashMapOfHashMaps<InMemory>: upcasting failed for value type: " + value.getClass().getName() + " exception: " + ex.getMessage());
+                }
+                else {
+                    this.errorLogger().warning("ConcurrentSerializableHashMapOfHashMaps<InMemory>: upcasting failed: NULL parameter. exception: " + ex.getMessage());
+                }
+            }
+        }
+        if (this.m_db_hashmap != null) {
+            try {
+                // upcast the Inner HashMap to our specific decorated HashMap
+                DatabaseTemplatedHashMap<Serializable> v = (DatabaseTemplatedHashMap<Serializable>)value;
+
+                // create the Inner tablename for the Inner HashMap (any previous inner map for this key is dropped)
+                String inner_tablename = this.m_tablename + this.m_orchestrator.getTablenameDelimiter() + key;
+                DatabaseTemplatedHashMap<Serializable> previous = this.m_db_hashmap.get(key);
+                if (previous != null && previous != v) {
+                    previous.delete();
+                }
+                v.setTablename(inner_tablename);
+
+                // Add the HashMap to our HashMap
+                this.m_db_hashmap.put(key,v);
+
+                // update/insert the inner tablename into our table
+                this.upsert(key,inner_tablename);
+            }
+            catch (Exception ex) {
+                if (value != null) {
+                    this.errorLogger().warning("ConcurrentSerializableHashMapOfHashMaps<DB>: upcasting failed for value type: " + value.getClass().getName() + " exception: " + ex.getMessage());
+                }
+                else {
+                    this.errorLogger().warning("ConcurrentSerializableHashMapOfHashMaps<DB>: upcasting failed: NULL parameter. exception: " + ex.getMessage());
+                }
+            }
+        }
+    }
+    
+    // upsert our outer table
+    @Override
+    public void upsert(String key,Serializable value) {
+        this.m_outer_map.put(key, value);
+    }
+    
+    // delete our outer table row
+    @Override
+    public void delete(String key) {
+        this.m_outer_map.remove(key);
+    }
+    
+    // ErrorLogger
+    private ErrorLogger errorLogger() {
+        return this.m_orchestrator.errorLogger();
+    }
+    
+    // Preferences
+    private PreferenceManager preferences() {
+        return this.m_orchestrator.preferences();
+    }
+    
+    // not used
+    @Override
+    public void upsert(Serializable value) {
+        // not used
+    }
+
+    // not used
+    @Override
+    public void delete(int index) {
+        //not used
+    }
+}
@@ -1,6 +1,6 @@
 /**
  * @file DatabaseConnector.java
- * @brief Distributed Database Connector
+ * @brief Database Connector (embedded local store with write-behind batching)
  * @author Doug Anson
  * @version 1.0
  * @see
@@ -25,120 +25,539 @@ package com.arm.pelion.bridge.data;
 import com.arm.pelion.bridge.coordinator.Orchestrator;
 import com.arm.pelion.bridge.core.ErrorLogger;
 import com.arm.pelion.bridge.preferences.PreferenceManager;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import com.arm.pelion.bridge.data.interfaces.Database;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * DatabaseConnector
+ * DatabaseConnector: tables of serialized rows kept in an embedded on-disk store. Upserts and deletes are
+ * queued and coalesced (last write per row wins) and written behind in batches by a single writer thread.
  * @author Doug Anson
  */
-public class DatabaseConnector implements Database {
+public class DatabaseConnector implements Database, Runnable {
+    // defaults
+    private static final String DEFAULT_DIRECTORY = "local_db";
+    private static final int DEFAULT_FLUSH_INTERVAL_MS = 1000;          // max time a change stays queued
+    private static final int DEFAULT_BATCH_SIZE = 500;                  // queued changes that trigger an early flush
+    private static final int DEFAULT_MAX_PENDING = 10000;               // queued changes before callers flush inline (backpressure)
+
+    // row id separators (table/key and table-drop markers)
+    private static final char ROW_SEPARATOR = '\u0000';
+    private static final char DROP_SEPARATOR = '\u0001';
+
     private Orchestrator m_orchestrator = null;
     private boolean m_connected = false;
     private String m_tablename = null;
+    private String m_directory = null;
+    private LocalKeyValueStore m_store = null;
+
+    // write-behind
+    private final LinkedHashMap<String,LocalKeyValueStore.Operation> m_pending = new LinkedHashMap<>();
+    private final Object m_flush_lock = new Object();
     
-    // default connector
+    // tracked row counts of tables appended to by value (recounted after any other change to the table)
+    private final HashMap<String,Integer> m_row_counts = new HashMap<>();
+    private Thread m_writer = null;
+    private volatile boolean m_running = false;
+    private volatile boolean m_healthy = true;
+    private int m_flush_interval_ms = DEFAULT_FLUSH_INTERVAL_MS;
+    private int m_batch_size = DEFAULT_BATCH_SIZE;
+    private int m_max_pending = DEFAULT_MAX_PENDING;
+    private boolean m_fsync = true;
+
+    // statistics
+    private final AtomicLong m_num_upserts = new AtomicLong(0);
+    private final AtomicLong m_num_deletes = new AtomicLong(0);
+    private final AtomicLong m_num_coalesced = new AtomicLong(0);
+    private final AtomicLong m_num_rejected = new AtomicLong(0);
+    private final AtomicLong m_num_batches = new AtomicLong(0);
+    private final AtomicLong m_num_written = new AtomicLong(0);
+    private final AtomicLong m_num_failed = new AtomicLong(0);
+    private final AtomicLong m_total_flush_us = new AtomicLong(0);
+    private final AtomicLong m_max_flush_us = new AtomicLong(0);
+
+    // legacy connector (a remote database is not supported... the embedded store is used instead)
     public DatabaseConnector(Orchestrator orchestrator,String ip_address,int port,String username,String pw) {
+        this(orchestrator,null);
+
+        // Announce
+        this.errorLogger().warning("DatabaseConnector: Distributed database at " + ip_address + ":" + port + " is not supported. Using the embedded local store");
+    }
+
+    // default connector (embedded local store in the given directory)
+    public DatabaseConnector(Orchestrator orchestrator,String directory) {
         super();
         this.m_orchestrator = orchestrator;
         this.m_connected = false;
-        
+
+        // store directory
+        this.m_directory = directory;
+        if (this.m_directory == null || this.m_directory.length() == 0) {
+            this.m_directory = this.preferences().valueOf("local_db_directory");
+        }
+        if (this.m_directory == null || this.m_directory.length() == 0) {
+            this.m_directory = DEFAULT_DIRECTORY;
+        }
+
+        // write-behind configuration
+        this.m_flush_interval_ms = this.preferences().intValueOf("local_db_flush_ms");
+        if (this.m_flush_interval_ms <= 0) {
+            this.m_flush_interval_ms = DEFAULT_FLUSH_INTERVAL_MS;
+        }
+        this.m_batch_size = this.preferences().intValueOf("local_db_batch_size");
+        if (this.m_batch_size <= 0) {
+            this.m_batch_size = DEFAULT_BATCH_SIZE;
+        }
+        this.m_max_pending = this.preferences().intValueOf("local_db_max_pending");
+        if (this.m_max_pending < this.m_batch_size) {
+            this.m_max_pending = Math.max(DEFAULT_MAX_PENDING, this.m_batch_size);
+        }
+        String fsync = this.preferences().valueOf("local_db_fsync");
+        this.m_fsync = (fsync == null || fsync.equalsIgnoreCase("false") == false);
+
         // Announce
-        this.errorLogger().info("Distributed Database Connector: IP: " + ip_address + " Port: " + port + " User: " + username + " PW: " + pw);
+        this.errorLogger().warning("DatabaseConnector: Local store: " + new File(this.m_directory).getAbsolutePath() + " Flush interval (ms): " + this.m_flush_interval_ms + " Batch size: " + this.m_batch_size + " Max pending: " + this.m_max_pending + " fsync: " + this.m_fsync);
+
+        // connect
+        this.connect();
     }
-    
-    // close down the DB connection
+
+    // close down the DB connection (remaining changes are written first)
     @Override
     public void close() {
         if (this.m_connected == true) {
-            // XXX close down the database connection
-            
+            // stop the writer (not interrupted... that would close the journal mid-write)
+            this.m_running = false;
+            synchronized (this.m_pending) {
+                this.m_pending.notifyAll();
+            }
+            if (this.m_writer != null) {
+                try {
+                    this.m_writer.join(this.m_flush_interval_ms);
+                }
+                catch (InterruptedException ex) {
+                    // continue closing
+                }
+                this.m_writer = null;
+            }
+
+            // write out what remains and close the store
+            this.flush();
+            this.m_store.close();
         }
-        
+
         // we are no longer connected
         this.m_connected = false;
     }
-   
-    // initialize the table and prep for sync
+
+    // initialize the table and prep for sync (tables are created on first write)
     @Override
     public void initialize(String tablename) {
-        if (this.connect() == true) {
-            // initialize our DB connection if needed... 
-            
-            // create our table if it does not exist
-            
-        }
+        this.m_tablename = tablename;
+        this.connect();
     }
 
-    // load from the table into the storage
+    // load from the table into the storage (current table... contents are returned via load(tablename))
     @Override
     public void load() {
-        if (this.connect() == true) {
-            // load the table into the HashMap
+        this.load(this.m_tablename);
+    }
+
+    /**
+     * load the rows of a table (including any changes still queued)
+     * @param tablename
+     * @return rows (empty if none or unreadable)
+     */
+    public HashMap<String,Serializable> load(String tablename) {
+        HashMap<String,Serializable> rows = new HashMap<>();
+        if (tablename != null && this.connect() == true) {
+            // stored rows overlaid with the queued changes (the flush lock keeps an in-flight batch visible)
+            Map<String,byte[]> stored = null;
+            synchronized (this.m_flush_lock) {
+                stored = this.m_store.table(tablename);
+                synchronized (this.m_pending) {
+                    for (LocalKeyValueStore.Operation op : this.m_pending.values()) {
+                        if (tablename.equals(op.table) == true) {
+                            switch (op.op) {
+                                case LocalKeyValueStore.OP_PUT:
+                                    stored.put(op.key, op.value);
+                                    break;
+                                case LocalKeyValueStore.OP_DELETE:
+                                    stored.remove(op.key);
+                                    break;
+                                case LocalKeyValueStore.OP_DROP_TABLE:
+                                    stored.clear();
+                                    break;
+                                default:
+                                    break;
+                            }
+                        }
+                    }
+                }
+            }
+
+            // decode the rows
+            for (Map.Entry<String,byte[]> row : stored.entrySet()) {
+                Serializable value = this.deserialize(row.getValue());
+                if (value != null) {
+                    rows.put(row.getKey(), value);
+                }
+                else {
+                    this.errorLogger().warning("DatabaseConnector: Unable to decode row " + row.getKey() + " in table " + tablename + ". Ignoring");
+                }
+            }
         }
+        return rows;
     }
 
-    // upsert (key/value pair)
+    // upsert (key/value pair) in the current table
     @Override
     public void upsert(String key,Serializable value) {
-        if (this.connect() == true) {
-            // check if the row is in the table
-            
-            // if the row is in the table, update its value
-            
-            // if the row is NOT in the table, add it
-        }
+        this.upsert(this.m_tablename,key,value);
     }
-    
-    // upsert value only (simply insert value into the table)
+
+    // upsert value only (appended as the next row of the current table)
     @Override
     public void upsert(Serializable value) {
-        if (this.connect() == true) {
-            // simply add the value to the table...
+        if (this.m_tablename != null && this.connect() == true) {
+            synchronized (this.m_row_counts) {
+                Integer count = this.m_row_counts.get(this.m_tablename);
+                if (count == null) {
+                    count = this.rowCount(this.m_tablename);
+                }
+                this.put(this.m_tablename,"" + count,value);
+                this.m_row_counts.put(this.m_tablename,count + 1);
+            }
+        }
+    }
+    
+    // number of rows in a table including any queued changes (no rows are decoded)
+    private int rowCount(String tablename) {
+        synchronized (this.m_flush_lock) {
+            Set<String> keys = this.m_store.keys(tablename);
+            synchronized (this.m_pending) {
+                for (LocalKeyValueStore.Operation op : this.m_pending.values()) {
+                    if (tablename.equals(op.table) == true) {
+                        switch (op.op) {
+                            case LocalKeyValueStore.OP_PUT:
+                                keys.add(op.key);
+                                break;
+                            case LocalKeyValueStore.OP_DELETE:
+                                keys.remove(op.key);
+                                break;
+                            case LocalKeyValueStore.OP_DROP_TABLE:
+                                keys.clear();
+                                break;
+                            default:
+                                break;
+                        }
+                    }
+                }
+            }
+            return keys.size();
         }
     }
     
-    // delete row (by key/value pair)
+    // forget the tracked row count of a table (changed other than by appending)
+    private void invalidateRowCount(String tablename) {
+        synchronized (this.m_row_counts) {
+            this.m_row_counts.remove(tablename);
+        }
+    }
+
+    /**
+     * upsert a row (written behind)
+     * @param tablename
+     * @param key
+     * @param value
+     */
+    public void upsert(String tablename,String key,Serializable value) {
+        if (tablename != null && key != null && this.connect() == true) {
+            this.invalidateRowCount(tablename);
+            this.put(tablename,key,value);
+        }
+    }
+    
+    // queue a row write
+    private void put(String tablename,String key,Serializable value) {
+        // serialize now... the caller may keep modifying the value
+        byte[] bytes = this.serialize(value);
+        if (bytes != null) {
+            this.m_num_upserts.incrementAndGet();
+            this.enqueue(tablename + ROW_SEPARATOR + key, LocalKeyValueStore.Operation.put(tablename, key, bytes));
+        }
+        else {
+            // not persistable... stays in memory only
+            this.m_num_rejected.incrementAndGet();
+            this.errorLogger().info("DatabaseConnector: Value for " + key + " in table " + tablename + " is not serializable. Not persisted");
+        }
+    }
+
+    // delete row (by key) in the current table
     @Override
     public void delete(String key) {
-        if (this.connect() == true) {
-            // delete the row in the table specified by key
+        this.delete(this.m_tablename,key);
+    }
+
+    /**
+     * delete a row (written behind)
+     * @param tablename
+     * @param key
+     */
+    public void delete(String tablename,String key) {
+        if (tablename != null && key != null && this.connect() == true) {
+            this.invalidateRowCount(tablename);
+            this.m_num_deletes.incrementAndGet();
+            this.enqueue(tablename + ROW_SEPARATOR + key, LocalKeyValueStore.Operation.delete(tablename, key));
         }
     }
 
-    // delete row (by row index)
+    // delete row (by row index) in the current table
     @Override
     public void delete(int index) {
-        if (this.connect() == true) {
-            // delete the row in the table specified by index
-        }
+        this.delete(this.m_tablename,"" + index);
     }
-    
+
     // delete (table)
     public void deleteTable(String tablename) {
-        if (this.connect() == true) {
-            // delete the table 
+        if (tablename != null && this.connect() == true) {
+            this.invalidateRowCount(tablename);
+            synchronized (this.m_pending) {
+                // queued changes to the table are moot
+                String prefix = tablename + ROW_SEPARATOR;
+                Iterator<String> it = this.m_pending.keySet().iterator();
+                while (it.hasNext()) {
+                    if (it.next().startsWith(prefix) == true) {
+                        it.remove();
+                        this.m_num_coalesced.incrementAndGet();
+                    }
+                }
+            }
+            this.enqueue(tablename + DROP_SEPARATOR, LocalKeyValueStore.Operation.dropTable(tablename));
         }
     }
-    
+
+    // queue a change (coalescing with any queued change to the same row)
+    private void enqueue(String id,LocalKeyValueStore.Operation op) {
+        boolean flush_now = false;
+        synchronized (this.m_pending) {
+            if (this.m_pending.remove(id) != null) {
+                this.m_num_coalesced.incrementAndGet();
+            }
+            this.m_pending.put(id, op);
+            if (this.m_pending.size() >= this.m_max_pending) {
+                // backpressure: the writer has fallen behind... write inline
+                flush_now = true;
+            }
+            else if (this.m_pending.size() >= this.m_batch_size) {
+                // wake the writer early
+                this.m_pending.notifyAll();
+            }
+        }
+        if (flush_now == true) {
+            this.flush();
+        }
+    }
+
+    // write all queued changes as one batch
+    public void flush() {
+        if (this.m_store == null) {
+            return;
+        }
+        synchronized (this.m_flush_lock) {
+            // take the batch
+            List<LocalKeyValueStore.Operation> batch = null;
+            LinkedHashMap<String,LocalKeyValueStore.Operation> taken = null;
+            synchronized (this.m_pending) {
+                if (this.m_pending.isEmpty() == true) {
+                    return;
+                }
+                taken = new LinkedHashMap<>(this.m_pending);
+                batch = new ArrayList<>(taken.values());
+                this.m_pending.clear();
+            }
+
+            // write it
+            long start = System.nanoTime();
+            try {
+                this.m_store.apply(batch);
+                this.m_healthy = true;
+                this.m_num_batches.incrementAndGet();
+                this.m_num_written.addAndGet(batch.size());
+                this.recordFlushTime((System.nanoTime() - start) / 1000);
+            }
+            catch (IOException ex) {
+                // put the batch back (ahead of any newer changes) and retry next time
+                this.m_healthy = false;
+                this.m_num_failed.incrementAndGet();
+                this.errorLogger().warning("DatabaseConnector: Unable to write " + batch.size() + " changes: " + ex.getMessage() + ". Will retry");
+                this.requeue(taken);
+            }
+        }
+    }
+
+    /**
+     * write all queued changes now and confirm they are on disk
+     * @return true - everything queued so far is durably stored, false - not written (will be retried)
+     */
+    public boolean sync() {
+        if (this.m_store == null) {
+            return false;
+        }
+        this.flush();
+        return this.m_healthy;
+    }
+
+    // requeue a failed batch ahead of the changes queued since (newer changes win)
+    private void requeue(LinkedHashMap<String,LocalKeyValueStore.Operation> failed) {
+        synchronized (this.m_pending) {
+            LinkedHashMap<String,LocalKeyValueStore.Operation> merged = new LinkedHashMap<>();
+            for (Map.Entry<String,LocalKeyValueStore.Operation> e : failed.entrySet()) {
+                String table = e.getValue().table;
+                if (this.m_pending.containsKey(e.getKey()) == false && this.m_pending.containsKey(table + DROP_SEPARATOR) == false) {
+                    merged.put(e.getKey(), e.getValue());
+                }
+            }
+            merged.putAll(this.m_pending);
+            this.m_pending.clear();
+            this.m_pending.putAll(merged);
+        }
+    }
+
+    // record the flush time
+    private void recordFlushTime(long flush_us) {
+        this.m_total_flush_us.addAndGet(flush_us);
+        long max = this.m_max_flush_us.get();
+        while (flush_us > max && this.m_max_flush_us.compareAndSet(max,flush_us) == false) {
+            max = this.m_max_flush_us.get();
+        }
+    }
+
+    // write-behind loop
+    @Override
+    public void run() {
+        while (this.m_running == true) {
+            try {
+                synchronized (this.m_pending) {
+                    if (this.m_pending.size() < this.m_batch_size) {
+                        this.m_pending.wait(this.m_flush_interval_ms);
+                    }
+                }
+                this.flush();
+            }
+            catch (InterruptedException ex) {
+                // stopping
+                this.m_running = false;
+            }
+            catch (Exception ex) {
+                // note but keep going...
+                this.errorLogger().warning("DatabaseConnector: Exception caught in write-behind: " + ex.getMessage() + ". Continuing...", ex);
+            }
+        }
+    }
+
     // connect if needed
-    private boolean connect() {
+    private synchronized boolean connect() {
         // Connect if not connected
-        if (this.m_connected == false) {
-            // connect and set our connected state
-            
-            // XXX
+        if (this.m_connected == false && this.m_store == null) {
+            try {
+                // open the store and start the writer
+                this.m_store = new LocalKeyValueStore(this.errorLogger(), new File(this.m_directory), this.m_fsync);
+                this.m_running = true;
+                this.m_writer = new Thread(this, "db-write-behind");
+                this.m_writer.setDaemon(true);
+                this.m_writer.start();
+                this.m_connected = true;
+            }
+            catch (IOException ex) {
+                // unable to open... state remains in memory only
+                this.m_store = null;
+                this.m_healthy = false;
+                this.errorLogger().critical("DatabaseConnector: Unable to open local store " + new File(this.m_directory).getAbsolutePath() + ": " + ex.getMessage() + ". State will NOT be persisted");
+            }
         }
-        
+
         // return the connection status
         return this.m_connected;
     }
-    
+
+    // connected and writing successfully?
+    public boolean isHealthy() {
+        return this.m_connected == true && this.m_healthy == true;
+    }
+
+    // serialize a value
+    private byte[] serialize(Serializable value) {
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(buffer);
+            out.writeObject(value);
+            out.close();
+            return buffer.toByteArray();
+        }
+        catch (IOException ex) {
+            // not serializable
+            return null;
+        }
+    }
+
+    // deserialize a value
+    private Serializable deserialize(byte[] bytes) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (Serializable)in.readObject();
+        }
+        catch (IOException | ClassNotFoundException | ClassCastException ex) {
+            return null;
+        }
+    }
+
+    // write-behind statistics (Health Stats)
+    public Map<String,Object> statistics() {
+        HashMap<String,Object> stats = new HashMap<>();
+        long batches = this.m_num_batches.get();
+        int pending = 0;
+        synchronized (this.m_pending) {
+            pending = this.m_pending.size();
+        }
+        stats.put("connected",this.m_connected);
+        stats.put("healthy",this.isHealthy());
+        stats.put("pending",pending);
+        stats.put("upserts",this.m_num_upserts.get());
+        stats.put("deletes",this.m_num_deletes.get());
+        stats.put("coalesced",this.m_num_coalesced.get());
+        stats.put("not_persistable",this.m_num_rejected.get());
+        stats.put("batches",batches);
+        stats.put("written",this.m_num_written.get());
+        stats.put("failed_batches",this.m_num_failed.get());
+        stats.put("avg_batch_size",batches > 0 ? (float)this.m_num_written.get() / batches : 0.0f);
+        stats.put("avg_flush_ms",batches > 0 ? (float)this.m_total_flush_us.get() / batches / 1000.0f : 0.0f);
+        stats.put("max_flush_ms",(float)this.m_max_flush_us.get() / 1000.0f);
+        if (this.m_store != null) {
+            stats.put("tables",this.m_store.tableCount());
+            stats.put("journal_bytes",this.m_store.journalBytes());
+            stats.put("live_bytes",this.m_store.liveBytes());
+        }
+        return stats;
+    }
+
     // ErrorLogger
     private ErrorLogger errorLogger() {
         return this.m_orchestrator.errorLogger();
     }
-    
+
     // Preferences
     private PreferenceManager preferences() {
         return this.m_orchestrator.preferences();
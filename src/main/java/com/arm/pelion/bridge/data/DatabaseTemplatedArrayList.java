@@ -25,6 +25,7 @@ package com.arm.pelion.bridge.data;
 import com.arm.pelion.bridge.data.interfaces.Distributable;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
 
 /**
  * DatabaseTemplatedArrayList
@@ -32,9 +33,12 @@ import java.util.ArrayList;
  * @param <T> - template parameter for the HashMap value type
  */
 public class DatabaseTemplatedArrayList<T> extends ArrayList<T> implements Distributable {
-    private DatabaseConnector m_db = null;
-    private String m_tablename = null;
-    private Object m_container = null;
+    // the list is persisted as a single row (row indices shift on removal)
+    private static final String LIST_ROW_KEY = "__list__";
+    
+    private transient DatabaseConnector m_db = null;
+    private transient String m_tablename = null;
+    private transient Object m_container = null;
     
     // default constructor
     public DatabaseTemplatedArrayList(Object container,DatabaseConnector db,String tablename) {
@@ -49,10 +53,20 @@ public class DatabaseTemplatedArrayList<T> extends ArrayList<T> implements Distr
         return this.m_container;
     }
     
-    // set the table name
+    // set the table name (current entries are moved to the new table)
     public void setTablename(String tablename) {
+        String previous = this.m_tablename;
         this.m_tablename = tablename;
+        boolean renamed = (previous != null && previous.equals(tablename) == false);
+        if (renamed == true) {
+            // drop the previous table
+            this.m_db.deleteTable(previous);
+        }
         this.initialize();
+        if (renamed == true) {
+            // rewrite our current entries into the new table
+            this.persist();
+        }
     }
     
     // get the tablename
@@ -76,38 +90,37 @@ public class DatabaseTemplatedArrayList<T> extends ArrayList<T> implements Distr
         return doomed;
     }
 
-    // upsert the DB with the latest HashMap entry...
+    // upsert the DB with the latest ArrayList entry...
     @Override
     public void upsert(Serializable value) {
-        // See if this key already exists
-        
-        // Key Exists: upsert the value
-        
-        // Key does not Exist: add to the table
-        
-        // Commit
+        // the list row is rewritten (coalesces with any queued rewrite)
+        this.persist();
     }
 
     // delete from the DB the deleted ArrayList entry
     @Override
     public void delete(int index) {
-        // Delete the row cooresponding to the row index
-        
-        // Commit
+        // the list row is rewritten (coalesces with any queued rewrite)
+        this.persist();
     }
     
     // delete the table associated with the HashMap
     public void delete() {        
         // Delete the TABLE and all its contents
-        
-        // Commit
+        this.m_db.deleteTable(this.m_tablename);
+    }
+    
+    // persist the list as a single row
+    private void persist() {
+        this.m_db.upsert(this.m_tablename,LIST_ROW_KEY,new ArrayList<>(this));
     }
     
-    // initialize the DB and connect to it...
+    // initialize from the DB (persisted entries precede any current entries)
     private void initialize() {
-        this.m_db.close();
-        this.m_db.initialize(this.m_tablename);
-        this.m_db.load();
+        Serializable row = this.m_db.load(this.m_tablename).get(LIST_ROW_KEY);
+        if (row instanceof Collection) {
+            super.addAll(0,(Collection<T>)row);
+        }
     }
 
     // not used
@@ -121,4 +134,4 @@ public class DatabaseTemplatedArrayList<T> extends ArrayList<T> implements Distr
     public void delete(String key) {
         // not used
     }
-}
\ No newline at end of file
+}
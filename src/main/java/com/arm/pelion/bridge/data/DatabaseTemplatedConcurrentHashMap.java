@@ -0,0 +1,116 @@
+/**
+ * @file DatabaseTemplatedConcurrentHashMap.java
+ * @brief Database backed ConcurrentHashMap implementation with distributable decoration
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.data;
+
+import com.arm.pelion.bridge.data.interfaces.Distributable;
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * DatabaseTemplatedConcurrentHashMap: changes to a key must be serialized by the caller (see the containers' lock stripes)
+ * so that the order of the queued DB writes matches the order of the in-memory changes
+ * @author Doug Anson
+ * @param <T> - template parameter for the HashMap value type
+ */
+public class DatabaseTemplatedConcurrentHashMap<T> extends ConcurrentHashMap<String,T> implements Distributable {
+    private transient DatabaseConnector m_db = null;
+    private transient String m_tablename = null;
+    private transient Object m_container = null;
+    
+    // default constructor
+    public DatabaseTemplatedConcurrentHashMap(Object container,DatabaseConnector db,String tablename) {
+        super();
+        this.m_container = container;
+        this.m_db = db;
+        this.m_tablename = tablename;
+        this.initialize();
+    }
+    
+    // get the container class
+    public Object container() {
+        return this.m_container;
+    }
+    
+    // get the tablename
+    public String getTablename() {
+        return this.m_tablename;
+    }
+    
+    // Override the ConcurrentHashMap::put() 
+    @Override
+    public T put(String key,T value) {
+        T previous = super.put(key,value);
+        this.upsert(key,(Serializable)value);
+        return previous;
+    }
+    
+    // Override the ConcurrentHashMap::remove() 
+    @Override
+    public T remove(Object key) {
+        T doomed = super.remove(key);
+        if (doomed != null) {
+            this.delete((String)key);
+        }
+        return doomed;
+    }
+
+    // upsert the DB with the latest HashMap entry...
+    @Override
+    public void upsert(String key, Serializable value) {
+        // queued for write-behind (coalesces with any queued change to the same key)
+        this.m_db.upsert(this.m_tablename,key,value);
+    }
+
+    // delete from the DB the deleted HashMap entry
+    @Override
+    public void delete(String key) {
+        // queued for write-behind
+        this.m_db.delete(this.m_tablename,key);
+    }
+    
+    // delete the table associated with the HashMap
+    public void delete() {        
+        // Delete the TABLE and all its contents
+        this.m_db.deleteTable(this.m_tablename);
+    }
+    
+    // initialize from the DB
+    private void initialize() {
+        for (Map.Entry<String,Serializable> row : this.m_db.load(this.m_tablename).entrySet()) {
+            super.putIfAbsent(row.getKey(),(T)row.getValue());
+        }
+    }
+
+    // not used
+    @Override
+    public void upsert(Serializable value) {
+        // not used
+    }
+
+    // not used
+    @Override
+    public void delete(int index) {
+        // not used
+    }
+}
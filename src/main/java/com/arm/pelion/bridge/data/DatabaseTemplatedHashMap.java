@@ -25,6 +25,7 @@ package com.arm.pelion.bridge.data;
 import java.util.HashMap;
 import com.arm.pelion.bridge.data.interfaces.Distributable;
 import java.io.Serializable;
+import java.util.Map;
 
 /**
  * DatabaseTemplatedHashMap
@@ -32,9 +33,9 @@ import java.io.Serializable;
  * @param <T> - template parameter for the HashMap value type
  */
 public class DatabaseTemplatedHashMap<T> extends HashMap<String,T> implements Distributable {
-    private DatabaseConnector m_db = null;
-    private String m_tablename = null;
-    private Object m_container = null;
+    private transient DatabaseConnector m_db = null;
+    private transient String m_tablename = null;
+    private transient Object m_container = null;
     
     // default constructor
     public DatabaseTemplatedHashMap(Object container,DatabaseConnector db,String tablename) {
@@ -49,10 +50,22 @@ public class DatabaseTemplatedHashMap<T> extends HashMap<String,T> implements Di
         return this.m_container;
     }
     
-    // set the table name
+    // set the table name (current entries are moved to the new table)
     public void setTablename(String tablename) {
+        String previous = this.m_tablename;
         this.m_tablename = tablename;
+        boolean renamed = (previous != null && previous.equals(tablename) == false);
+        if (renamed == true) {
+            // drop the previous table
+            this.m_db.deleteTable(previous);
+        }
         this.initialize();
+        if (renamed == true) {
+            // rewrite our current entries into the new table
+            for (Map.Entry<String,T> entry : this.entrySet()) {
+                this.upsert(entry.getKey(),(Serializable)entry.getValue());
+            }
+        }
     }
     
     // get the tablename
@@ -69,43 +82,47 @@ public class DatabaseTemplatedHashMap<T> extends HashMap<String,T> implements Di
     }
     
     // Override the HashMap::remove() 
+    @Override
+    public T remove(Object key) {
+        T doomed = super.remove(key);
+        if (key instanceof String) {
+            this.delete((String)key);
+        }
+        return doomed;
+    }
+    
+    // remove() by key
     public void remove(String key) {
-        super.remove(key);
-        this.delete(key);
+        this.remove((Object)key);
     }
 
     // upsert the DB with the latest HashMap entry...
     @Override
     public void upsert(String key, Serializable value) {
-        // See if this key already exists
-        
-        // Key Exists: upsert the value
-        
-        // Key does not Exist: add to the table
-        
-        // Commit
+        // queued for write-behind (coalesces with any queued change to the same key)
+        this.m_db.upsert(this.m_tablename,key,value);
     }
 
     // delete from the DB the deleted HashMap entry
     @Override
     public void delete(String key) {
-        // Delete the row cooresponding to the requestd Key
-        
-        // Commit
+        // queued for write-behind
+        this.m_db.delete(this.m_tablename,key);
     }
     
     // delete the table associated with the HashMap
     public void delete() {        
         // Delete the TABLE and all its contents
-        
-        // Commit
+        this.m_db.deleteTable(this.m_tablename);
     }
     
-    // initialize the DB and connect to it...
+    // initialize from the DB (current entries take precedence over persisted rows)
     private void initialize() {
-        this.m_db.close();
-        this.m_db.initialize(this.m_tablename);
-        this.m_db.load();
+        for (Map.Entry<String,Serializable> row : this.m_db.load(this.m_tablename).entrySet()) {
+            if (super.containsKey(row.getKey()) == false) {
+                super.put(row.getKey(),(T)row.getValue());
+            }
+        }
     }
 
     // not used
@@ -120,4 +137,3 @@ public class DatabaseTemplatedHashMap<T> extends HashMap<String,T> implements Di
         // not used
     }
 }
-
@@ -0,0 +1,475 @@
+/**
+ * @file LocalKeyValueStore.java
+ * @brief Embedded, append-only on-disk key/value store backing the DatabaseConnector
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.data;
+
+import com.arm.pelion.bridge.core.ErrorLogger;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Local key/value store. Tables of (key, serialized value) rows are held in memory and every change is appended
+ * to a checksummed journal on disk. The journal is replayed on open (a torn tail from a crash is truncated) and is
+ * compacted once it grows well beyond the live data. Changes are applied in batches, one fsync per batch.
+ *
+ * @author Doug Anson
+ */
+public class LocalKeyValueStore {
+    // operations
+    public static final byte OP_PUT = 1;
+    public static final byte OP_DELETE = 2;
+    public static final byte OP_DROP_TABLE = 3;
+
+    // files
+    private static final String JOURNAL_FILE = "store.log";
+    private static final String COMPACT_FILE = "store.log.compact";
+    private static final String LOCK_FILE = "store.lock";
+
+    // compaction thresholds
+    private static final long MIN_COMPACT_BYTES = 1024 * 1024;             // never compact below 1MB
+    private static final int COMPACT_RATIO = 2;                             // compact when the journal is 2x the live data
+    private static final int RECORD_OVERHEAD = 16;                          // approx. per-record framing bytes
+
+    /**
+     * A single store operation
+     */
+    public static class Operation {
+        public final byte op;
+        public final String table;
+        public final String key;
+        public final byte[] value;
+
+        private Operation(byte op, String table, String key, byte[] value) {
+            this.op = op;
+            this.table = table;
+            this.key = key;
+            this.value = value;
+        }
+
+        public static Operation put(String table, String key, byte[] value) {
+            return new Operation(OP_PUT, table, key, value);
+        }
+
+        public static Operation delete(String table, String key) {
+            return new Operation(OP_DELETE, table, key, null);
+        }
+
+        public static Operation dropTable(String table) {
+            return new Operation(OP_DROP_TABLE, table, "", null);
+        }
+    }
+
+    private ErrorLogger m_error_logger = null;
+    private File m_dir = null;
+    private File m_journal = null;
+    private boolean m_fsync = true;
+    private RandomAccessFile m_file = null;
+    private RandomAccessFile m_lock_file = null;
+    private FileLock m_lock = null;
+    private long m_journal_bytes = 0;
+    private long m_live_bytes = 0;
+    private final ConcurrentHashMap<String,ConcurrentHashMap<String,byte[]>> m_tables = new ConcurrentHashMap<>();
+
+    // default constructor
+    public LocalKeyValueStore(ErrorLogger error_logger, File dir, boolean fsync) throws IOException {
+        this.m_error_logger = error_logger;
+        this.m_dir = dir;
+        this.m_fsync = fsync;
+        this.m_journal = new File(dir, JOURNAL_FILE);
+        this.open();
+    }
+
+    // open the store: lock it, replay the journal and position for appending
+    private void open() throws IOException {
+        if (this.m_dir.exists() == false && this.m_dir.mkdirs() == false) {
+            throw new IOException("unable to create store directory: " + this.m_dir.getAbsolutePath());
+        }
+
+        // only one bridge instance may use the store
+        this.m_lock_file = new RandomAccessFile(new File(this.m_dir, LOCK_FILE), "rw");
+        this.m_lock = this.m_lock_file.getChannel().tryLock();
+        if (this.m_lock == null) {
+            this.m_lock_file.close();
+            throw new IOException("store is in use by another process: " + this.m_dir.getAbsolutePath());
+        }
+
+        // a compaction may have been interrupted... the journal is still authoritative
+        new File(this.m_dir, COMPACT_FILE).delete();
+
+        // replay
+        long start = System.currentTimeMillis();
+        long valid_bytes = this.replay();
+
+        // open for appending (dropping any torn tail)
+        this.m_file = new RandomAccessFile(this.m_journal, "rw");
+        this.restrict(this.m_journal);
+        if (this.m_file.length() > valid_bytes) {
+            this.errorLogger().warning("LocalKeyValueStore: Truncating " + (this.m_file.length() - valid_bytes) + " bytes of incomplete journal");
+            this.m_file.setLength(valid_bytes);
+        }
+        this.m_file.seek(valid_bytes);
+        this.m_journal_bytes = valid_bytes;
+
+        // DEBUG
+        this.errorLogger().warning("LocalKeyValueStore: Opened " + this.m_journal.getAbsolutePath() + " Tables: " + this.m_tables.size() + " Journal: " + valid_bytes + " bytes in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    // replay the journal into memory... returns the length of the valid prefix
+    private long replay() throws IOException {
+        long valid_bytes = 0;
+        if (this.m_journal.exists() == false) {
+            return valid_bytes;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(this.m_journal)))) {
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length = 0;
+                int checksum = 0;
+                byte[] payload = null;
+                try {
+                    length = in.readInt();
+                    checksum = in.readInt();
+                    if (length <= 0 || length > (this.m_journal.length() - valid_bytes)) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                }
+                catch (EOFException ex) {
+                    // end of journal (or torn record)
+                    break;
+                }
+                crc.reset();
+                crc.update(payload, 0, payload.length);
+                if ((int)crc.getValue() != checksum) {
+                    // corrupt record... stop here
+                    this.errorLogger().warning("LocalKeyValueStore: Checksum mismatch at offset " + valid_bytes + ". Ignoring the remainder of the journal");
+                    break;
+                }
+                this.applyInMemory(this.decode(payload));
+                valid_bytes += 8 + length;
+            }
+        }
+        return valid_bytes;
+    }
+
+    // apply a batch of operations: append them to the journal (one write, one fsync) then update memory
+    public synchronized void apply(List<Operation> ops) throws IOException {
+        if (ops == null || ops.isEmpty()) {
+            return;
+        }
+        if (this.m_file == null) {
+            throw new IOException("store is closed");
+        }
+
+        // encode the batch
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        for (Operation op : ops) {
+            this.writeRecord(out, op);
+        }
+        out.flush();
+
+        // append and sync
+        byte[] batch = buffer.toByteArray();
+        try {
+            this.m_file.write(batch);
+            if (this.m_fsync == true) {
+                this.m_file.getChannel().force(false);
+            }
+        }
+        catch (IOException ex) {
+            // partial or unsynced write (or the writing thread was interrupted)... drop back to the last complete batch so the caller can retry
+            this.rollback();
+            throw ex;
+        }
+        this.m_journal_bytes += batch.length;
+
+        // update memory
+        for (Operation op : ops) {
+            this.applyInMemory(op);
+        }
+
+        // compact if the journal has grown well beyond the live data
+        if (this.m_journal_bytes > MIN_COMPACT_BYTES && this.m_journal_bytes > COMPACT_RATIO * this.m_live_bytes) {
+            this.compact();
+        }
+    }
+
+    // drop anything written after the last complete batch (reopening the journal if its channel was closed)
+    private void rollback() {
+        try {
+            if (this.m_file.getChannel().isOpen() == true) {
+                this.m_file.setLength(this.m_journal_bytes);
+                this.m_file.seek(this.m_journal_bytes);
+                return;
+            }
+        }
+        catch (IOException ex) {
+            // fall back to reopening
+        }
+        try {
+            this.reopen();
+        }
+        catch (IOException ex) {
+            // the next apply() will fail again and retry the rollback
+            this.errorLogger().warning("LocalKeyValueStore: Unable to roll back the journal to " + this.m_journal_bytes + " bytes: " + ex.getMessage());
+        }
+    }
+
+    // reopen the journal, dropping anything written after the last complete batch
+    private void reopen() throws IOException {
+        try {
+            this.m_file.close();
+        }
+        catch (IOException ex) {
+            // already closed
+        }
+        this.m_file = new RandomAccessFile(this.m_journal, "rw");
+        this.m_file.setLength(this.m_journal_bytes);
+        this.m_file.seek(this.m_journal_bytes);
+    }
+
+    // rows of a table (copy)
+    public Map<String,byte[]> table(String table) {
+        HashMap<String,byte[]> rows = new HashMap<>();
+        Map<String,byte[]> current = (table != null) ? this.m_tables.get(table) : null;
+        if (current != null) {
+            rows.putAll(current);
+        }
+        return rows;
+    }
+
+    // keys of a table (copy)
+    public Set<String> keys(String table) {
+        HashSet<String> keys = new HashSet<>();
+        Map<String,byte[]> current = (table != null) ? this.m_tables.get(table) : null;
+        if (current != null) {
+            keys.addAll(current.keySet());
+        }
+        return keys;
+    }
+
+    // number of tables
+    public int tableCount() {
+        return this.m_tables.size();
+    }
+
+    // journal size in bytes
+    public synchronized long journalBytes() {
+        return this.m_journal_bytes;
+    }
+
+    // approximate live data size in bytes
+    public synchronized long liveBytes() {
+        return this.m_live_bytes;
+    }
+
+    // open?
+    public synchronized boolean isOpen() {
+        return this.m_file != null;
+    }
+
+    // close the store
+    public synchronized void close() {
+        try {
+            if (this.m_file != null) {
+                this.m_file.getChannel().force(true);
+                this.m_file.close();
+            }
+            if (this.m_lock != null) {
+                this.m_lock.release();
+            }
+            if (this.m_lock_file != null) {
+                this.m_lock_file.close();
+            }
+        }
+        catch (IOException ex) {
+            this.errorLogger().warning("LocalKeyValueStore: Exception while closing: " + ex.getMessage());
+        }
+        this.m_file = null;
+        this.m_lock = null;
+        this.m_lock_file = null;
+    }
+
+    // rewrite the journal with only the live rows
+    private void compact() throws IOException {
+        long start = System.currentTimeMillis();
+        long before = this.m_journal_bytes;
+        File compacted = new File(this.m_dir, COMPACT_FILE);
+
+        // write the live rows
+        long written = 0;
+        try (RandomAccessFile out_file = new RandomAccessFile(compacted, "rw")) {
+            this.restrict(compacted);
+            out_file.setLength(0);
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(buffer);
+            for (Map.Entry<String,ConcurrentHashMap<String,byte[]>> table : this.m_tables.entrySet()) {
+                for (Map.Entry<String,byte[]> row : table.getValue().entrySet()) {
+                    this.writeRecord(out, Operation.put(table.getKey(), row.getKey(), row.getValue()));
+                    if (buffer.size() > 64 * 1024) {
+                        out.flush();
+                        out_file.write(buffer.toByteArray());
+                        written += buffer.size();
+                        buffer.reset();
+                    }
+                }
+            }
+            out.flush();
+            out_file.write(buffer.toByteArray());
+            written += buffer.size();
+            out_file.getChannel().force(true);
+        }
+
+        // swap it in
+        this.m_file.close();
+        try {
+            Files.move(compacted.toPath(), this.m_journal.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException ex) {
+            Files.move(compacted.toPath(), this.m_journal.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        this.m_file = new RandomAccessFile(this.m_journal, "rw");
+        this.m_file.seek(written);
+        this.m_journal_bytes = written;
+
+        // DEBUG
+        this.errorLogger().info("LocalKeyValueStore: Compacted journal " + before + " -> " + written + " bytes in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    // owner access only (the store may hold credentials)
+    private void restrict(File file) {
+        file.setReadable(false, false);
+        file.setReadable(true, true);
+        file.setWritable(false, false);
+        file.setWritable(true, true);
+    }
+
+    // write a framed record: length, CRC32, payload
+    private void writeRecord(DataOutputStream out, Operation op) throws IOException {
+        byte[] payload = this.encode(op);
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        out.writeInt(payload.length);
+        out.writeInt((int)crc.getValue());
+        out.write(payload);
+    }
+
+    // encode an operation
+    private byte[] encode(Operation op) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 + (op.value != null ? op.value.length : 0));
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeByte(op.op);
+        out.writeUTF(op.table);
+        out.writeUTF(op.key);
+        if (op.op == OP_PUT) {
+            out.writeInt(op.value.length);
+            out.write(op.value);
+        }
+        out.flush();
+        return buffer.toByteArray();
+    }
+
+    // decode an operation
+    private Operation decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte op = in.readByte();
+        String table = in.readUTF();
+        String key = in.readUTF();
+        byte[] value = null;
+        if (op == OP_PUT) {
+            value = new byte[in.readInt()];
+            in.readFully(value);
+        }
+        return new Operation(op, table, key, value);
+    }
+
+    // apply an operation to our in-memory tables
+    private void applyInMemory(Operation op) {
+        ConcurrentHashMap<String,byte[]> rows = this.m_tables.get(op.table);
+        switch (op.op) {
+            case OP_PUT:
+                if (rows == null) {
+                    rows = new ConcurrentHashMap<>();
+                    this.m_tables.put(op.table, rows);
+                }
+                byte[] previous = rows.put(op.key, op.value);
+                if (previous != null) {
+                    this.m_live_bytes -= this.rowBytes(op.table, op.key, previous);
+                }
+                this.m_live_bytes += this.rowBytes(op.table, op.key, op.value);
+                break;
+            case OP_DELETE:
+                if (rows != null) {
+                    byte[] removed = rows.remove(op.key);
+                    if (removed != null) {
+                        this.m_live_bytes -= this.rowBytes(op.table, op.key, removed);
+                    }
+                    if (rows.isEmpty()) {
+                        this.m_tables.remove(op.table);
+                    }
+                }
+                break;
+            case OP_DROP_TABLE:
+                if (rows != null) {
+                    for (Map.Entry<String,byte[]> row : rows.entrySet()) {
+                        this.m_live_bytes -= this.rowBytes(op.table, row.getKey(), row.getValue());
+                    }
+                    this.m_tables.remove(op.table);
+                }
+                break;
+            default:
+                this.errorLogger().warning("LocalKeyValueStore: Unknown operation: " + op.op);
+                break;
+        }
+    }
+
+    // approximate on-disk size of a row
+    private long rowBytes(String table, String key, byte[] value) {
+        return RECORD_OVERHEAD + table.length() + key.length() + value.length;
+    }
+
+    // ErrorLogger
+    private ErrorLogger errorLogger() {
+        return this.m_error_logger;
+    }
+}
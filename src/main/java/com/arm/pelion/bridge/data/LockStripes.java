@@ -0,0 +1,61 @@
+/**
+ * @file LockStripes.java
+ * @brief Fixed set of per-key locks for the concurrent containers
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.data;
+
+/**
+ * LockStripes: maps each key onto one of a fixed set of locks so that changes to the same key are serialized
+ * while changes to different keys rarely contend
+ * @author Doug Anson
+ */
+class LockStripes {
+    // default number of stripes (power of 2)
+    public static final int DEFAULT_NUM_STRIPES = 64;
+    
+    private final Object[] m_locks;
+    private final int m_mask;
+    
+    // default constructor
+    LockStripes() {
+        this(DEFAULT_NUM_STRIPES);
+    }
+    
+    // constructor (rounded up to a power of 2)
+    LockStripes(int num_stripes) {
+        int size = 1;
+        while (size < num_stripes) {
+            size <<= 1;
+        }
+        this.m_locks = new Object[size];
+        for (int i = 0; i < size; ++i) {
+            this.m_locks[i] = new Object();
+        }
+        this.m_mask = size - 1;
+    }
+    
+    // lock for the given key
+    Object lockFor(String key) {
+        int h = (key != null) ? key.hashCode() : 0;
+        h ^= (h >>> 16);
+        return this.m_locks[h & this.m_mask];
+    }
+}
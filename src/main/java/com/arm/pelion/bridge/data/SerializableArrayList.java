@@ -30,7 +30,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 
 /**
- * SerializableArrayList
+ * SerializableArrayList (accessors are synchronized)
  * @author Doug Anson
  */
 public class SerializableArrayList implements Distributable {
@@ -64,7 +64,7 @@ public class SerializableArrayList implements Distributable {
     }
     
     // size() method
-    public int size() {
+    public synchronized int size() {
         if (this.m_im_arraylist != null) {
             return this.m_im_arraylist.size();
         }
@@ -75,7 +75,7 @@ public class SerializableArrayList implements Distributable {
     }
     
     // get() method
-    public Serializable get(int index) {
+    public synchronized Serializable get(int index) {
         if (this.m_im_arraylist != null) {
             return this.m_im_arraylist.get(index);
         }
@@ -86,7 +86,7 @@ public class SerializableArrayList implements Distributable {
     }
     
     // add() method
-    public void add(Serializable value) {
+    public synchronized void add(Serializable value) {
         if (this.m_im_arraylist != null) {
             this.m_im_arraylist.add(value);
         }
@@ -96,7 +96,7 @@ public class SerializableArrayList implements Distributable {
     }
     
     // remove() method
-    public void remove(int index) {
+    public synchronized void remove(int index) {
         if (this.m_im_arraylist != null) {
             this.m_im_arraylist.remove(index);
         }
@@ -107,7 +107,7 @@ public class SerializableArrayList implements Distributable {
 
     // upsert
     @Override
-    public void upsert(Serializable value) {
+    public synchronized void upsert(Serializable value) {
         if (this.m_im_arraylist != null) {
             this.m_im_arraylist.upsert(value);
         }
@@ -118,7 +118,7 @@ public class SerializableArrayList implements Distributable {
     
     // delete
     @Override
-    public void delete(int index) {
+    public synchronized void delete(int index) {
         if (this.m_im_arraylist != null) {
             this.m_im_arraylist.delete(index);
         }
@@ -27,16 +27,18 @@ import com.arm.pelion.bridge.core.ErrorLogger;
 import com.arm.pelion.bridge.data.interfaces.Distributable;
 import com.arm.pelion.bridge.preferences.PreferenceManager;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.UUID;
 
 /**
- * SerializableArrayListOfHashMaps
+ * SerializableArrayListOfHashMaps (accessors are synchronized)
  * @author Doug Anson
  */
 public class SerializableArrayListOfHashMaps implements Distributable {
     private Orchestrator m_orchestrator = null;
     private InMemoryTemplatedArrayList<InMemoryTemplatedHashMap<Serializable>> m_im_arraylist = null;
-    private DatabaseTemplatedArrayList<DatabaseTemplatedHashMap<Serializable>> m_db_arraylist = null;
+    private ArrayList<DatabaseTemplatedHashMap<Serializable>> m_db_arraylist = null;
     private String m_tablename = null;
     private DatabaseConnector m_db = null;
     private SerializableArrayList m_outer_list = null;
@@ -47,10 +49,18 @@ public class SerializableArrayListOfHashMaps implements Distributable {
         this.m_tablename = tablename;
         this.m_db = orchestrator.getDatabaseConnector();
         if (this.m_db != null) {
-            this.m_db_arraylist = new DatabaseTemplatedArrayList(this,this.m_db,this.m_tablename);
+            // inner maps are persisted in their own tables... our table holds the inner tablenames
+            this.m_db_arraylist = new ArrayList<>();
             
             // create the outer map
             this.m_outer_list = new SerializableArrayList(this.m_orchestrator,this.m_tablename);
+            
+            // reload any persisted inner maps
+            for (Serializable inner_tablename : this.m_outer_list.list()) {
+                if (inner_tablename instanceof String) {
+                    this.m_db_arraylist.add(new DatabaseTemplatedHashMap<Serializable>(this,this.m_db,(String)inner_tablename));
+                }
+            }
         }
         else {
             this.m_im_arraylist = new InMemoryTemplatedArrayList(this);
@@ -58,7 +68,7 @@ public class SerializableArrayListOfHashMaps implements Distributable {
     }
     
     // size() method
-    public int size() {
+    public synchronized int size() {
         if (this.m_im_arraylist != null) {
             return this.m_im_arraylist.size();
         }
@@ -69,7 +79,7 @@ public class SerializableArrayListOfHashMaps implements Distributable {
     }
     
     // get() method
-    public HashMap<String,Serializable> get(int index) {
+    public synchronized HashMap<String,Serializable> get(int index) {
         if (this.m_im_arraylist != null) {
             return this.m_im_arraylist.get(index);
         }
@@ -80,7 +90,7 @@ public class SerializableArrayListOfHashMaps implements Distributable {
     }
     
     // paddut() method
-    public void add(HashMap<String,Serializable> value) {
+    public synchronized void add(HashMap<String,Serializable> value) {
         if (this.m_im_arraylist != null) {
             try {
                 // upcast into InMemory hashmap
@@ -102,7 +112,7 @@ public class SerializableArrayListOfHashMaps implements Distributable {
                 DatabaseTemplatedHashMap<Serializable> v = (DatabaseTemplatedHashMap<Serializable>)value;
 
                 // create the Inner tablename for the Inner HashMap
-                String inner_tablename = this.m_tablename + this.m_orchestrator.getTablenameDelimiter() + this.createInnerID(v);
+                String inner_tablename = this.m_tablename + this.m_orchestrator.getTablenameDelimiter() + this.createInnerID();
                 v.setTablename(inner_tablename);
 
                 // Add the HashMap to our HashMap
@@ -123,16 +133,15 @@ public class SerializableArrayListOfHashMaps implements Distributable {
     }
     
     // remove() method
-    public void remove(int index) {
+    public synchronized void remove(int index) {
         if (this.m_im_arraylist != null) {
             this.m_im_arraylist.remove(index);
         }
         if (this.m_db_arraylist != null) {
             // remove from the HashMap
-            this.m_db_arraylist.remove(index);
+            DatabaseTemplatedHashMap<Serializable> v = this.m_db_arraylist.remove(index);
             
             // remove the Inner Table
-            DatabaseTemplatedHashMap<Serializable> v = (DatabaseTemplatedHashMap<Serializable>)this.m_db_arraylist.get(index);
             if (v != null) {
                 // inner deletion of the entire table 
                 v.delete();
@@ -145,23 +154,19 @@ public class SerializableArrayListOfHashMaps implements Distributable {
     
     // outer table insert
     @Override
-    public void upsert(Serializable value) {
-        this.m_outer_list.upsert(value);
+    public synchronized void upsert(Serializable value) {
+        this.m_outer_list.add(value);
     }
 
     // outer table delete
     @Override
-    public void delete(int index) {
-        this.m_outer_list.delete(index);
+    public synchronized void delete(int index) {
+        this.m_outer_list.remove(index);
     }
     
-    // create the inner object ID
-    private String createInnerID(Object o) {
-        if (o != null) {
-            // return the HashCode of the object
-            return "" +  o.hashCode();
-        }
-        return null;
+    // create the inner object ID (unique across restarts)
+    private String createInnerID() {
+        return UUID.randomUUID().toString();
     }
     
     // ErrorLogger
@@ -28,6 +28,7 @@ import com.arm.pelion.bridge.data.interfaces.Distributable;
 import com.arm.pelion.bridge.preferences.PreferenceManager;
 import java.io.Serializable;
 import java.util.HashMap;
+import java.util.Map;
 
 /**
  * SerializableHashMapOfHashMaps
@@ -36,7 +37,7 @@ import java.util.HashMap;
 public class SerializableHashMapOfHashMaps implements Distributable {
     private Orchestrator m_orchestrator = null;
     private InMemoryTemplatedHashMap<InMemoryTemplatedHashMap<Serializable>> m_im_hashmap = null;
-    private DatabaseTemplatedHashMap<DatabaseTemplatedHashMap<Serializable>> m_db_hashmap = null;
+    private HashMap<String,DatabaseTemplatedHashMap<Serializable>> m_db_hashmap = null;
     private String m_tablename = null;
     private DatabaseConnector m_db = null;
     private SerializableHashMap m_outer_map = null;
@@ -47,10 +48,18 @@ public class SerializableHashMapOfHashMaps implements Distributable {
         this.m_tablename = tablename;
         this.m_db = orchestrator.getDatabaseConnector();
         if (this.m_db != null) {
-            this.m_db_hashmap = new DatabaseTemplatedHashMap(this,this.m_db,this.m_tablename);
+            // inner maps are persisted in their own tables... our table holds the inner tablenames
+            this.m_db_hashmap = new HashMap<>();
             
             // create the outer map
             this.m_outer_map = new SerializableHashMap(this.m_orchestrator,this.m_tablename);
+            
+            // reload any persisted inner maps
+            for (Map.Entry<String,Serializable> entry : this.m_outer_map.map().entrySet()) {
+                if (entry.getValue() instanceof String) {
+                    this.m_db_hashmap.put(entry.getKey(),new DatabaseTemplatedHashMap<Serializable>(this,this.m_db,(String)entry.getValue()));
+                }
+            }
         }
         else {
             this.m_im_hashmap = new InMemoryTemplatedHashMap(this);
@@ -90,8 +99,12 @@ public class SerializableHashMapOfHashMaps implements Distributable {
                 // upcast the Inner HashMap to our specific decorated HashMap
                 DatabaseTemplatedHashMap<Serializable> v = (DatabaseTemplatedHashMap<Serializable>)value;
 
-                // create the Inner tablename for the Inner HashMap
-                String inner_tablename = this.m_tablename + this.m_orchestrator.getTablenameDelimiter() + this.createInnerID(v);
+                // create the Inner tablename for the Inner HashMap (any previous inner map for this key is dropped)
+                String inner_tablename = this.m_tablename + this.m_orchestrator.getTablenameDelimiter() + this.createInnerID(key);
+                DatabaseTemplatedHashMap<Serializable> previous = this.m_db_hashmap.get(key);
+                if (previous != null && previous != v) {
+                    previous.delete();
+                }
                 v.setTablename(inner_tablename);
 
                 // Add the HashMap to our HashMap
@@ -118,10 +131,9 @@ public class SerializableHashMapOfHashMaps implements Distributable {
         }
         if (this.m_db_hashmap != null) {
             // remove from the HashMap
-            this.m_db_hashmap.remove(key);
+            DatabaseTemplatedHashMap<Serializable> v = this.m_db_hashmap.remove(key);
             
             // remove the Inner Table
-            DatabaseTemplatedHashMap<Serializable> v = (DatabaseTemplatedHashMap<Serializable>)this.m_db_hashmap.get(key);
             if (v != null) {
                 // inner deletion of the entire table 
                 v.delete();
@@ -132,13 +144,9 @@ public class SerializableHashMapOfHashMaps implements Distributable {
         }
     }
     
-    // create the inner object ID
-    private String createInnerID(Object o) {
-        if (o != null) {
-            // return the HashCode of the object
-            return "" +  o.hashCode();
-        }
-        return null;
+    // create the inner object ID (stable across restarts)
+    private String createInnerID(String key) {
+        return key;
     }
     
     // upsert our outer table
@@ -150,7 +158,7 @@ public class SerializableHashMapOfHashMaps implements Distributable {
     // delete our outer table row
     @Override
     public void delete(String key) {
-        this.m_outer_map.delete(key);
+        this.m_outer_map.remove(key);
     }
     
     // ErrorLogger
@@ -0,0 +1,34 @@
+/**
+ * @file ValueComputer.java
+ * @brief Interface specifying an atomic value computation for the concurrent containers
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.data.interfaces;
+
+import java.io.Serializable;
+
+/**
+ * ValueComputer interface
+ * @author Doug Anson
+ */
+public interface ValueComputer {
+    // compute the new value for a key from its current value (null if absent)... return null to remove the key
+    public Serializable compute(String key, Serializable current);
+}
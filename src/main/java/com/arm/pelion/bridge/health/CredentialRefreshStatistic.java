@@ -0,0 +1,49 @@
+/**
+ * @file CredentialRefreshStatistic.java
+ * @brief Pelion bridge device credential refresh backlog statistic
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2018. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.health;
+
+import com.arm.pelion.bridge.health.interfaces.HealthCheckServiceInterface;
+import java.util.HashMap;
+
+/**
+ * This class periodically reports the upcoming device credential refresh backlog
+ *
+ * @author Doug Anson
+ */
+public class CredentialRefreshStatistic extends BaseValidatorClass implements Runnable {
+    // default constructor
+    public CredentialRefreshStatistic(HealthCheckServiceInterface provider) {
+        super(provider,"credential_refresh");
+        this.m_value = new HashMap<String,Object>();      // Map value for this validator
+    }
+
+    // validate
+    @Override
+    protected void validate() {
+        this.m_value = this.m_provider.getOrchestrator().credentialRefreshStatistics();
+        this.updateStatisticAndNotify();
+
+        // DEBUG
+        this.errorLogger().info("CredentialRefreshStatistic: Updated credential refresh statistics: " + this.m_value);
+    }
+}
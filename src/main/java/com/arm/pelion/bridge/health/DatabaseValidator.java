@@ -22,6 +22,7 @@
  */
 package com.arm.pelion.bridge.health;
 
+import com.arm.pelion.bridge.data.DatabaseConnector;
 import com.arm.pelion.bridge.health.interfaces.HealthCheckServiceInterface;
 
 /**
@@ -60,6 +61,8 @@ public class DatabaseValidator extends BaseValidatorClass implements Runnable {
 
     // WORKER: validate the Database Connections
     private boolean validateDatabaseConnection() {
-        return true;
+        // no database configured is OK... otherwise it must be open and writing
+        DatabaseConnector db = this.m_provider.getOrchestrator().getDatabaseConnector();
+        return (db == null || db.isHealthy() == true);
     }
 }
\ No newline at end of file
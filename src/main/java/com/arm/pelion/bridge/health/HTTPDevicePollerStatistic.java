@@ -0,0 +1,49 @@
+/**
+ * @file HTTPDevicePollerStatistic.java
+ * @brief Pelion bridge HTTP device polling rate and hit ratio statistic
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2018. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.health;
+
+import com.arm.pelion.bridge.health.interfaces.HealthCheckServiceInterface;
+import java.util.HashMap;
+
+/**
+ * This class periodically reports the HTTP device polling rate and hit ratio
+ *
+ * @author Doug Anson
+ */
+public class HTTPDevicePollerStatistic extends BaseValidatorClass implements Runnable {
+    // default constructor
+    public HTTPDevicePollerStatistic(HealthCheckServiceInterface provider) {
+        super(provider,"http_device_poller");
+        this.m_value = new HashMap<String,Object>();      // Map value for this validator
+    }
+
+    // validate
+    @Override
+    protected void validate() {
+        this.m_value = this.m_provider.getOrchestrator().httpDevicePollerStatistics();
+        this.updateStatisticAndNotify();
+
+        // DEBUG
+        this.errorLogger().info("HTTPDevicePollerStatistic: Updated HTTP device poller statistics: " + this.m_value);
+    }
+}
@@ -104,17 +104,51 @@ public class HealthCheckServiceProvider extends BaseClass implements HealthCheck
         for(int i=0;list != null && i<list.size();++i) {
             BasePeerProcessorFactory bpf = (BasePeerProcessorFactory)list.get(i);
             this.m_validator_list.add(new PeerConnectionValidator(this,bpf.genericPeerProcessor()));
+            if (bpf.genericPeerProcessor() != null && bpf.genericPeerProcessor().mqttInUse() == true) {
+                this.m_validator_list.add(new MQTTReceiveRateStatistic(this,bpf.genericPeerProcessor()));
+            }
+            if (bpf.genericPeerProcessor() != null && bpf.genericPeerProcessor().telemetryBatchStatistics() != null) {
+                this.m_validator_list.add(new TelemetryBatchStatistic(this,bpf.genericPeerProcessor()));
+            }
+        }
+        
+        // Notification ingestion queue statistic (if enabled)
+        if (p.asyncIngestionEnabled() == true) {
+            this.m_validator_list.add(new IngestionQueueStatistic(this));
         }
         
         // Database validator
         this.m_validator_list.add(new DatabaseValidator(this));
         
+        // Local database write-behind Statistic (if enabled)
+        if (this.getOrchestrator().getDatabaseConnector() != null) {
+            this.m_validator_list.add(new LocalDatabaseStatistic(this));
+        }
+        
         // Shadow Count Statistic
         this.m_validator_list.add(new ShadowCountStatistic(this));
         
+        // Shadow bootstrap progress Statistic
+        this.m_validator_list.add(new ShadowBootstrapStatistic(this));
+        
         // Thread Count Statistic
         this.m_validator_list.add(new ThreadCountStatistic(this));
         
+        // Endpoint event lane depth Statistic
+        this.m_validator_list.add(new EndpointLaneStatistic(this));
+        
+        // Peer fan-out depth and lag Statistic
+        this.m_validator_list.add(new PeerFanOutStatistic(this));
+        
+        // Credential refresh backlog Statistic
+        this.m_validator_list.add(new CredentialRefreshStatistic(this));
+        
+        // HTTP device polling rate and hit ratio Statistic
+        this.m_validator_list.add(new HTTPDevicePollerStatistic(this));
+        
+        // HTTP transport traffic, allocation and GC impact Statistic
+        this.m_validator_list.add(new HttpTransportStatistic(this));
+        
         // JVM Statistics
         this.m_validator_list.add(new MemoryStatistic(this,"total","MB"));
         this.m_validator_list.add(new MemoryStatistic(this,"free","MB"));
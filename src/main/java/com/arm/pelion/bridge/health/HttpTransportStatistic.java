@@ -0,0 +1,125 @@
+/**
+ * @file HttpTransportStatistic.java
+ * @brief Pelion bridge HTTP transport traffic, allocation and GC impact statistic
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.health;
+
+import com.arm.pelion.bridge.health.interfaces.HealthCheckServiceInterface;
+import com.arm.pelion.bridge.transport.HttpTransport;
+import com.arm.pelion.bridge.transport.HttpTransportStatistics;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class periodically computes, for each HTTP transport, the request rate, bytes read/written, the allocation
+ * rate of its callers and an estimate of the GC time attributable to that allocation (JVM GC time for the sample
+ * period, apportioned by each transport's share of the JVM allocation) along with the per-host rate limiter state
+ *
+ * @author Doug Anson
+ */
+public class HttpTransportStatistic extends BaseValidatorClass implements Runnable {
+    private HashMap<String,long[]> m_last_counts = null;
+    private long m_last_sample_ms = 0;
+    private long m_last_jvm_allocated = 0;
+    private long m_last_gc_count = 0;
+    private long m_last_gc_time_ms = 0;
+
+    // default constructor
+    public HttpTransportStatistic(HealthCheckServiceInterface provider) {
+        super(provider,"http_transport");
+        this.m_last_counts = new HashMap<>();
+        this.m_last_sample_ms = System.currentTimeMillis();
+        this.m_last_jvm_allocated = HttpTransportStatistics.jvmAllocatedBytes();
+        this.m_last_gc_count = HttpTransportStatistics.gcCount();
+        this.m_last_gc_time_ms = HttpTransportStatistics.gcTimeMs();
+        this.m_value = new HashMap<String,Object>();      // Map value for this validator
+    }
+
+    // validate
+    @Override
+    protected void validate() {
+        this.m_value = this.computeTransportStatistics();
+        this.updateStatisticAndNotify();
+
+        // DEBUG
+        this.errorLogger().info("HttpTransportStatistic: Updated HTTP transport statistics: " + this.m_value);
+    }
+
+    // WORKER: compute the per-transport rates since our last sample
+    private Map<String,Object> computeTransportStatistics() {
+        HashMap<String,Object> stats = new HashMap<>();
+        long now = System.currentTimeMillis();
+        long elapsed_ms = Math.max(1,now - this.m_last_sample_ms);
+        float elapsed_sec = (float)elapsed_ms / 1000.0f;
+
+        // JVM-wide GC and allocation for this sample period
+        long jvm_allocated = HttpTransportStatistics.jvmAllocatedBytes();
+        long gc_count = HttpTransportStatistics.gcCount();
+        long gc_time_ms = HttpTransportStatistics.gcTimeMs();
+        long jvm_delta = Math.max(0,jvm_allocated - this.m_last_jvm_allocated);
+        long gc_time_delta = Math.max(0,gc_time_ms - this.m_last_gc_time_ms);
+
+        HashMap<String,Object> jvm = new HashMap<>();
+        jvm.put("gc_count",gc_count - this.m_last_gc_count);
+        jvm.put("gc_time_ms",gc_time_delta);
+        jvm.put("gc_time_pct",100.0f * gc_time_delta / elapsed_ms);
+        jvm.put("alloc_mb_per_sec",jvm_allocated >= 0 ? (float)jvm_delta / elapsed_sec / (1024.0f * 1024.0f) : -1.0f);
+        stats.put("jvm",jvm);
+        
+        // per-host rate limiter state
+        stats.put("rate_limits",HttpTransport.rateLimiterStatistics());
+
+        // each transport
+        for (Map.Entry<String,HttpTransportStatistics> entry : HttpTransportStatistics.all().entrySet()) {
+            HttpTransportStatistics t = entry.getValue();
+            long[] current = new long[] { t.requests(), t.bytesRead(), t.bytesWritten(), t.bytesAllocated() };
+            long[] last = this.m_last_counts.get(entry.getKey());
+            if (last == null) {
+                last = new long[current.length];
+            }
+            long requests = current[0] - last[0];
+            long allocated = current[3] - last[3];
+
+            HashMap<String,Object> transport = new HashMap<>();
+            transport.put("requests",t.requests());
+            transport.put("failures",t.failures());
+            transport.put("bytes_read",t.bytesRead());
+            transport.put("bytes_written",t.bytesWritten());
+            transport.put("requests_per_sec",requests / elapsed_sec);
+            transport.put("read_kb_per_sec",(current[1] - last[1]) / elapsed_sec / 1024.0f);
+            transport.put("written_kb_per_sec",(current[2] - last[2]) / elapsed_sec / 1024.0f);
+            transport.put("alloc_mb_per_sec",allocated / elapsed_sec / (1024.0f * 1024.0f));
+            transport.put("alloc_kb_per_request",requests > 0 ? (float)allocated / requests / 1024.0f : 0.0f);
+            transport.put("est_gc_time_ms",jvm_delta > 0 ? (float)gc_time_delta * Math.min(1.0f,(float)allocated / jvm_delta) : 0.0f);
+            stats.put(entry.getKey(),transport);
+
+            // save for the next sample
+            this.m_last_counts.put(entry.getKey(),current);
+        }
+
+        // save for the next sample
+        this.m_last_sample_ms = now;
+        this.m_last_jvm_allocated = jvm_allocated;
+        this.m_last_gc_count = gc_count;
+        this.m_last_gc_time_ms = gc_time_ms;
+        return stats;
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * @file IngestionQueueStatistic.java
+ * @brief Pelion bridge notification ingestion queue statistic
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2018. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.health;
+
+import com.arm.pelion.bridge.coordinator.processors.arm.PelionProcessor;
+import com.arm.pelion.bridge.health.interfaces.HealthCheckServiceInterface;
+import java.util.HashMap;
+
+/**
+ * This class periodically reports the depth, enqueue latency and drop count of the notification ingestion queue
+ *
+ * @author Doug Anson
+ */
+public class IngestionQueueStatistic extends BaseValidatorClass implements Runnable {
+    // default constructor
+    public IngestionQueueStatistic(HealthCheckServiceInterface provider) {
+        super(provider,"ingestion_queue");
+        this.m_value = new HashMap<String,Object>();      // Map value for this validator
+    }
+
+    // validate
+    @Override
+    protected void validate() {
+        PelionProcessor p = (PelionProcessor)this.m_provider.getPelionProcessor();
+        this.m_value = p.ingestionStatistics();
+        this.updateStatisticAndNotify();
+
+        // DEBUG
+        this.errorLogger().info("IngestionQueueStatistic: Updated ingestion queue statistics: " + this.m_value);
+    }
+}
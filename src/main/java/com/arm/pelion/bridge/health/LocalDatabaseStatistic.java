@@ -0,0 +1,53 @@
+/**
+ * @file LocalDatabaseStatistic.java
+ * @brief Embedded local database write-behind statistic
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.health;
+
+import com.arm.pelion.bridge.data.DatabaseConnector;
+import com.arm.pelion.bridge.health.interfaces.HealthCheckServiceInterface;
+import java.util.HashMap;
+
+/**
+ * This class periodically reports the write-behind backlog, batching and flush times of the local database
+ *
+ * @author Doug Anson
+ */
+public class LocalDatabaseStatistic extends BaseValidatorClass implements Runnable {
+    // default constructor
+    public LocalDatabaseStatistic(HealthCheckServiceInterface provider) {
+        super(provider,"local_db");
+        this.m_value = new HashMap<String,Object>();      // Map value for this validator
+    }
+
+    // validate
+    @Override
+    protected void validate() {
+        DatabaseConnector db = this.m_provider.getOrchestrator().getDatabaseConnector();
+        if (db != null) {
+            this.m_value = db.statistics();
+            this.updateStatisticAndNotify();
+
+            // DEBUG
+            this.errorLogger().info("LocalDatabaseStatistic: Updated local database statistics: " + this.m_value);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * @file MQTTReceiveRateStatistic.java
+ * @brief Pelion bridge MQTT receive rate statistic
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2018. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.health;
+
+import com.arm.pelion.bridge.coordinator.processors.arm.GenericConnectablePeerProcessor;
+import com.arm.pelion.bridge.health.interfaces.HealthCheckServiceInterface;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class periodically computes the inbound MQTT messages/sec for each peer MQTT connection
+ *
+ * @author Doug Anson
+ */
+public class MQTTReceiveRateStatistic extends BaseValidatorClass implements Runnable {
+    private GenericConnectablePeerProcessor m_peer = null;
+    private HashMap<String,Long> m_last_counts = null;
+    private long m_last_sample_ms = 0;
+
+    // default constructor
+    public MQTTReceiveRateStatistic(HealthCheckServiceInterface provider,GenericConnectablePeerProcessor peer) {
+        super(provider,"mqtt_receive_rate",peer.hsQualifier());
+        this.m_peer = peer;
+        this.m_last_counts = new HashMap<>();
+        this.m_last_sample_ms = System.currentTimeMillis();
+        this.m_value = new HashMap<String,Object>();      // Map value for this validator
+    }
+
+    // validate
+    @Override
+    protected void validate() {
+        this.m_value = this.computeReceiveRates();
+        this.updateStatisticAndNotify();
+
+        // DEBUG
+        this.errorLogger().info("MQTTReceiveRateStatistic: Updated MQTT receive rates: " + this.m_value);
+    }
+
+    // WORKER: compute messages/sec for each connection since our last sample (only active connections are listed)
+    private Map<String,Object> computeReceiveRates() {
+        HashMap<String,Object> rates = new HashMap<>();
+        long now = System.currentTimeMillis();
+        float elapsed_sec = (float)Math.max(1,now - this.m_last_sample_ms) / 1000.0f;
+        float total = 0.0f;
+
+        Map<String,Long> counts = this.m_peer.mqttMessagesReceived();
+        for (Map.Entry<String,Long> entry : counts.entrySet()) {
+            Long last = this.m_last_counts.get(entry.getKey());
+            long delta = entry.getValue() - (last != null ? last : 0L);
+            if (delta > 0) {
+                float rate = delta / elapsed_sec;
+                rates.put(entry.getKey(),rate);
+                total += rate;
+            }
+        }
+        rates.put("total",total);
+
+        // save for the next sample
+        this.m_last_counts = new HashMap<>(counts);
+        this.m_last_sample_ms = now;
+        return rates;
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * @file ShadowBootstrapStatistic.java
+ * @brief Pelion bridge device shadow bootstrap progress statistic
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2018. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.health;
+
+import com.arm.pelion.bridge.coordinator.processors.arm.PelionProcessor;
+import com.arm.pelion.bridge.health.interfaces.HealthCheckServiceInterface;
+import java.util.HashMap;
+
+/**
+ * This class periodically reports the device shadow bootstrap progress: devices created/sec, remaining count and ETA
+ *
+ * @author Doug Anson
+ */
+public class ShadowBootstrapStatistic extends BaseValidatorClass implements Runnable {
+    // default constructor
+    public ShadowBootstrapStatistic(HealthCheckServiceInterface provider) {
+        super(provider,"shadow_bootstrap");
+        this.m_value = new HashMap<String,Object>();      // Map value for this validator
+    }
+
+    // validate
+    @Override
+    protected void validate() {
+        PelionProcessor p = (PelionProcessor)this.m_provider.getPelionProcessor();
+        this.m_value = p.shadowBootstrapStatistics();
+        this.updateStatisticAndNotify();
+
+        // DEBUG
+        this.errorLogger().info("ShadowBootstrapStatistic: Updated shadow bootstrap progress: " + this.m_value);
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * @file TelemetryBatchStatistic.java
+ * @brief Peer device-to-cloud telemetry batching statistic
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.health;
+
+import com.arm.pelion.bridge.coordinator.processors.arm.GenericConnectablePeerProcessor;
+import com.arm.pelion.bridge.health.interfaces.HealthCheckServiceInterface;
+import java.util.HashMap;
+
+/**
+ * This class periodically reports the device-to-cloud telemetry batching statistics (incl. batch size distribution) for a peer
+ *
+ * @author Doug Anson
+ */
+public class TelemetryBatchStatistic extends BaseValidatorClass implements Runnable {
+    private GenericConnectablePeerProcessor m_peer = null;
+
+    // default constructor
+    public TelemetryBatchStatistic(HealthCheckServiceInterface provider,GenericConnectablePeerProcessor peer) {
+        super(provider,"telemetry_batch",peer.hsQualifier());
+        this.m_peer = peer;
+        this.m_value = new HashMap<String,Object>();      // Map value for this validator
+    }
+
+    // validate
+    @Override
+    protected void validate() {
+        this.m_value = this.m_peer.telemetryBatchStatistics();
+        this.updateStatisticAndNotify();
+
+        // DEBUG
+        this.errorLogger().info("TelemetryBatchStatistic: Updated telemetry batching statistics: " + this.m_value);
+    }
+}
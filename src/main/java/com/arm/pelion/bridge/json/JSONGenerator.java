@@ -23,12 +23,13 @@
 package com.arm.pelion.bridge.json;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
 
 /**
- * JSON Generator wrapper class
+ * JSON Generator wrapper class (thread-safe: uses the shared JSONMapper writer)
  * @author Doug Anson
  */
 public class JSONGenerator {
@@ -40,7 +41,7 @@ public class JSONGenerator {
     // create JSON (Map)
     public String generateJson(Map json) {
         try {
-            return new ObjectMapper().writeValueAsString(json);
+            return JSONMapper.WRITER.writeValueAsString(json);
         }
         catch (JsonProcessingException ex) {
             // silent
@@ -51,11 +52,34 @@ public class JSONGenerator {
     // create JSON (List)
     public String generateJson(List json) {
         try {
-            return new ObjectMapper().writeValueAsString(json);
+            return JSONMapper.WRITER.writeValueAsString(json);
         }
         catch (JsonProcessingException ex) {
             // silent
         }
         return null;
     }
-}
+    
+    // create JSON as UTF-8 bytes (Map)
+    public byte[] generateJsonBytes(Map json) {
+        try {
+            return JSONMapper.WRITER.writeValueAsBytes(json);
+        }
+        catch (JsonProcessingException ex) {
+            // silent
+        }
+        return null;
+    }
+    
+    // write JSON to a stream (Map)
+    public boolean writeJson(Map json, OutputStream out) {
+        try {
+            JSONMapper.WRITER.writeValue(out, json);
+            return true;
+        }
+        catch (IOException ex) {
+            // silent
+        }
+        return false;
+    }
+}
\ No newline at end of file
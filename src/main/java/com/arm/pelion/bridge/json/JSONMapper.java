@@ -0,0 +1,56 @@
+/**
+ * @file JSONMapper.java
+ * @brief Shared JSON mapper (readers/writer)
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shared Jackson mapper: one configured ObjectMapper and its (immutable, thread-safe) readers and writer so
+ * that serializer/deserializer caches are built once rather than per parse/generate call
+ * @author Doug Anson
+ */
+final class JSONMapper {
+    // the shared mapper (configure only here - before any reader/writer is created)
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // readers for the shapes we parse
+    static final ObjectReader MAP_READER = MAPPER.readerFor(new TypeReference<Map<String,Object>>(){});
+    static final ObjectReader MAP_LIST_READER = MAPPER.readerFor(new TypeReference<List<Map<String,Object>>>(){});
+    static final ObjectReader STRING_LIST_READER = MAPPER.readerFor(new TypeReference<List<String>>(){});
+
+    // writer
+    static final ObjectWriter WRITER = MAPPER.writer();
+
+    // streaming factory (its parsers can read values via the shared mapper)
+    static final JsonFactory FACTORY = MAPPER.getFactory();
+
+    // not instantiable
+    private JSONMapper() {
+    }
+}
@@ -22,13 +22,14 @@
  */
 package com.arm.pelion.bridge.json;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonParser;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
 
 /**
- * JSON Parser wrapper class
+ * JSON Parser wrapper class (thread-safe: uses the shared JSONMapper readers)
  * @author Doug Anson
  */
 public class JSONParser {
@@ -40,8 +41,31 @@ public class JSONParser {
     // parse JSON into Map 
     public Map parseJson(String json) {
         try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            Map<String, Object> jsonMap = objectMapper.readValue(json,new TypeReference<Map<String,Object>>(){});
+            Map<String, Object> jsonMap = JSONMapper.MAP_READER.readValue(json);
+            return jsonMap;
+        }
+        catch(Exception ex) {
+            // silent
+        }
+        return null;
+    }
+    
+    // parse JSON (UTF-8 bytes) into Map 
+    public Map parseJson(byte[] json) {
+        try {
+            Map<String, Object> jsonMap = JSONMapper.MAP_READER.readValue(json);
+            return jsonMap;
+        }
+        catch(Exception ex) {
+            // silent
+        }
+        return null;
+    }
+    
+    // parse JSON (stream) into Map 
+    public Map parseJson(InputStream json) {
+        try {
+            Map<String, Object> jsonMap = JSONMapper.MAP_READER.readValue(json);
             return jsonMap;
         }
         catch(Exception ex) {
@@ -53,8 +77,19 @@ public class JSONParser {
     // parse JSON into Array (List) 
     public List parseJsonToArray(String json) {
         try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            List<Map<String, Object>> jsonMap = objectMapper.readValue(json,new TypeReference<List<Map<String, Object>>>(){});
+            List<Map<String, Object>> jsonMap = JSONMapper.MAP_LIST_READER.readValue(json);
+            return jsonMap;
+        }
+        catch(Exception ex) {
+            // silent
+        }
+        return null;
+    }
+    
+    // parse JSON (UTF-8 bytes) into Array (List) 
+    public List parseJsonToArray(byte[] json) {
+        try {
+            List<Map<String, Object>> jsonMap = JSONMapper.MAP_LIST_READER.readValue(json);
             return jsonMap;
         }
         catch(Exception ex) {
@@ -66,8 +101,7 @@ public class JSONParser {
     // parse JSON into Array (String List) 
     public List parseJsonToStringArray(String json) {
         try {
-            ObjectMapper objectMapper = new ObjectMapper();
-            List<String> jsonMap = objectMapper.readValue(json,new TypeReference<List<String>>(){});
+            List<String> jsonMap = JSONMapper.STRING_LIST_READER.readValue(json);
             return jsonMap;
         }
         catch(Exception ex) {
@@ -75,4 +109,9 @@ public class JSONParser {
         }
         return null;
     }
-}
\ No newline at end of file
+    
+    // create a streaming parser over JSON (the caller must close it)
+    public JsonParser createStreamingParser(String json) throws IOException {
+        return JSONMapper.FACTORY.createParser(json);
+    }
+}
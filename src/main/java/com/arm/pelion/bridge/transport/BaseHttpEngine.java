@@ -0,0 +1,107 @@
+/**
+ * @file BaseHttpEngine.java
+ * @brief Base class for pooled HTTP engines
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.transport;
+
+import com.arm.pelion.bridge.core.BaseClass;
+import com.arm.pelion.bridge.core.ErrorLogger;
+import com.arm.pelion.bridge.core.KeyValuePair;
+import com.arm.pelion.bridge.preferences.PreferenceManager;
+import com.arm.pelion.bridge.transport.interfaces.HttpEngineInterface;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Base HTTP engine: bounds the number of concurrent connections per host
+ *
+ * @author Doug Anson
+ */
+public abstract class BaseHttpEngine extends BaseClass implements HttpEngineInterface {
+    // default max connections per host
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+
+    // default idle connection keep-alive time
+    public static final int DEFAULT_KEEP_ALIVE_MS = 300000;     // 5 minutes
+
+    protected int m_max_connections_per_host = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+    protected int m_keep_alive_ms = DEFAULT_KEEP_ALIVE_MS;
+    private final ConcurrentHashMap<String,Semaphore> m_host_permits = new ConcurrentHashMap<>();
+
+    // default constructor
+    public BaseHttpEngine(ErrorLogger error_logger, PreferenceManager preference_manager) {
+        super(error_logger, preference_manager);
+
+        // max connections per host
+        this.m_max_connections_per_host = this.prefIntValue("http_max_connections_per_host");
+        if (this.m_max_connections_per_host <= 0) {
+            this.m_max_connections_per_host = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+        }
+
+        // idle connection keep-alive time
+        this.m_keep_alive_ms = this.prefIntValue("http_keep_alive_ms");
+        if (this.m_keep_alive_ms <= 0) {
+            this.m_keep_alive_ms = DEFAULT_KEEP_ALIVE_MS;
+        }
+    }
+
+    // execute the request within the per-host connection limit
+    @Override
+    public HttpTransportResponse execute(String verb, String url, List<KeyValuePair> headers, String data, int timeout_ms) throws IOException {
+        Semaphore permits = this.permitsForHost(url);
+        try {
+            permits.acquire();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("HTTP: interrupted waiting for a connection to: " + url);
+        }
+        try {
+            return this.dispatch(verb, url, headers, data, timeout_ms);
+        }
+        finally {
+            permits.release();
+        }
+    }
+
+    // get the permits for a given host
+    private Semaphore permitsForHost(String url) throws MalformedURLException {
+        URL u = new URL(url);
+        String host = u.getHost() + ":" + u.getPort();
+        Semaphore permits = this.m_host_permits.get(host);
+        if (permits == null) {
+            Semaphore created = new Semaphore(this.m_max_connections_per_host, true);
+            permits = this.m_host_permits.putIfAbsent(host, created);
+            if (permits == null) {
+                permits = created;
+            }
+        }
+        return permits;
+    }
+
+    // perform the request I/O
+    protected abstract HttpTransportResponse dispatch(String verb, String url, List<KeyValuePair> headers, String data, int timeout_ms) throws IOException;
+}
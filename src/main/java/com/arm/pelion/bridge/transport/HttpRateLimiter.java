@@ -0,0 +1,272 @@
+/**
+ * @file HttpRateLimiter.java
+ * @brief Per-host token bucket rate limiter for HTTP requests
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.transport;
+
+import com.arm.pelion.bridge.core.BaseClass;
+import com.arm.pelion.bridge.core.ErrorLogger;
+import com.arm.pelion.bridge.preferences.PreferenceManager;
+import java.net.URI;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * HTTP rate limiter: a token bucket per API host (Pelion API, IoT Hub, CloudIoT, etc.) shared by every transport.
+ * Only explicitly configured hosts are paced: requests proceed immediately while tokens are available (burst) and
+ * are then paced at the sustained rate. Every other host is unlimited. For all hosts, a 429 response (or a
+ * Retry-After header) pauses requests to that host until the server says to resume.
+ *
+ * @author Doug Anson
+ */
+public class HttpRateLimiter extends BaseClass {
+    // defaults
+    public static final int DEFAULT_BACKOFF_MS = 1000;              // backoff after a 429 with no Retry-After
+    public static final int MAX_BACKOFF_MS = 300000;                // cap on any server requested backoff (5 minutes)
+
+    private int m_backoff_ms = DEFAULT_BACKOFF_MS;
+    private HashMap<String,int[]> m_host_limits = null;
+    private final ConcurrentHashMap<String,TokenBucket> m_buckets = new ConcurrentHashMap<>();
+
+    // token bucket for a single host
+    private static class TokenBucket {
+        private final double m_rate_per_ms;
+        private final double m_burst;
+        private double m_tokens;
+        private long m_last_refill_ms;
+        private long m_blocked_until_ms = 0;
+        private long m_num_throttled = 0;
+        private long m_num_backoffs = 0;
+        private long m_total_wait_ms = 0;
+
+        public TokenBucket(int rate_per_sec, int burst) {
+            this.m_rate_per_ms = (double)rate_per_sec / 1000.0;
+            this.m_burst = Math.max(1,burst);
+            this.m_tokens = this.m_burst;
+            this.m_last_refill_ms = System.currentTimeMillis();
+        }
+
+        // ms remaining in a server requested backoff (0 if none)
+        public synchronized long blockedFor(long now) {
+            return Math.max(0,this.m_blocked_until_ms - now);
+        }
+
+        // take a token: returns the ms the caller must wait before sending (0 - send now)
+        public synchronized long reserve(long now) {
+            if (this.m_rate_per_ms <= 0) {
+                // unlimited
+                return 0;
+            }
+            this.m_tokens = Math.min(this.m_burst, this.m_tokens + (now - this.m_last_refill_ms) * this.m_rate_per_ms);
+            this.m_last_refill_ms = now;
+            this.m_tokens -= 1.0;
+            if (this.m_tokens >= 0) {
+                return 0;
+            }
+            ++this.m_num_throttled;
+            return (long)Math.ceil(-this.m_tokens / this.m_rate_per_ms);
+        }
+
+        // pause the host until the given time
+        public synchronized void blockUntil(long until_ms) {
+            ++this.m_num_backoffs;
+            if (until_ms > this.m_blocked_until_ms) {
+                this.m_blocked_until_ms = until_ms;
+            }
+        }
+
+        // record time spent waiting
+        public synchronized void recordWait(long wait_ms) {
+            this.m_total_wait_ms += wait_ms;
+        }
+
+        // bucket statistics
+        public synchronized Map<String,Object> statistics(long now) {
+            HashMap<String,Object> stats = new HashMap<>();
+            stats.put("rate_per_sec",(float)(this.m_rate_per_ms * 1000.0));
+            stats.put("burst",(int)this.m_burst);
+            stats.put("tokens",(float)Math.max(0.0,this.m_tokens));
+            stats.put("throttled",this.m_num_throttled);
+            stats.put("backoffs",this.m_num_backoffs);
+            stats.put("total_wait_ms",this.m_total_wait_ms);
+            stats.put("blocked_ms",Math.max(0,this.m_blocked_until_ms - now));
+            return stats;
+        }
+    }
+
+    // default constructor
+    public HttpRateLimiter(ErrorLogger error_logger, PreferenceManager preference_manager) {
+        super(error_logger, preference_manager);
+
+        // backoff after a 429 with no Retry-After header
+        this.m_backoff_ms = this.prefIntValue("http_rate_limit_backoff_ms");
+        if (this.m_backoff_ms <= 0) {
+            this.m_backoff_ms = DEFAULT_BACKOFF_MS;
+        }
+
+        // rate limited hosts: "host:rate:burst;host:rate:burst" (all other hosts are unlimited)
+        this.m_host_limits = this.parseHostLimits(this.prefValue("http_rate_limit_hosts"));
+
+        // DEBUG
+        this.errorLogger().warning("HttpRateLimiter: Rate limited hosts: " + this.m_host_limits.keySet() + " (all other hosts unlimited) 429 Backoff: " + this.m_backoff_ms + "ms");
+    }
+
+    // parse the per-host limits
+    private HashMap<String,int[]> parseHostLimits(String config) {
+        HashMap<String,int[]> limits = new HashMap<>();
+        if (config != null && config.trim().length() > 0) {
+            String[] entries = config.split(";");
+            for(int i=0;i<entries.length;++i) {
+                String[] elements = entries[i].trim().split(":");
+                try {
+                    if (elements.length == 3) {
+                        limits.put(elements[0].trim().toLowerCase(), new int[] { Integer.parseInt(elements[1].trim()), Integer.parseInt(elements[2].trim()) });
+                    }
+                    else if (entries[i].trim().length() > 0) {
+                        this.errorLogger().warning("HttpRateLimiter: Ignoring invalid host limit (expecting host:rate:burst): " + entries[i]);
+                    }
+                }
+                catch (NumberFormatException ex) {
+                    this.errorLogger().warning("HttpRateLimiter: Ignoring invalid host limit (expecting host:rate:burst): " + entries[i]);
+                }
+            }
+        }
+        return limits;
+    }
+
+    // extract the host from a URL (lower case)
+    public static String hostOf(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            if (host != null) {
+                return host.toLowerCase();
+            }
+        }
+        catch (IllegalArgumentException ex) {
+            // fall through
+        }
+        return "unknown";
+    }
+
+    // get the bucket for a host
+    private TokenBucket bucketFor(String host) {
+        TokenBucket bucket = this.m_buckets.get(host);
+        if (bucket == null) {
+            int[] limit = this.m_host_limits.get(host);
+            TokenBucket created = (limit != null) ? new TokenBucket(limit[0],limit[1]) : new TokenBucket(0,0);
+            bucket = this.m_buckets.putIfAbsent(host, created);
+            if (bucket == null) {
+                bucket = created;
+            }
+        }
+        return bucket;
+    }
+
+    /**
+     * wait until a request to the given host is permitted
+     * @param host
+     * @return true - permitted, false - interrupted while waiting
+     */
+    public boolean acquire(String host) {
+        TokenBucket bucket = this.bucketFor(host);
+        long waited = 0;
+        try {
+            // honor any server requested backoff first
+            long blocked = bucket.blockedFor(System.currentTimeMillis());
+            while (blocked > 0) {
+                Thread.sleep(blocked);
+                waited += blocked;
+                blocked = bucket.blockedFor(System.currentTimeMillis());
+            }
+
+            // then take our token (pacing at the sustained rate once the burst is used)
+            long wait = bucket.reserve(System.currentTimeMillis());
+            if (wait > 0) {
+                Thread.sleep(wait);
+                waited += wait;
+            }
+            return true;
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        finally {
+            if (waited > 0) {
+                bucket.recordWait(waited);
+            }
+        }
+    }
+
+    /**
+     * note a response from a given host. A 429 (or 503 with Retry-After) pauses requests to that host.
+     * @param host
+     * @param response
+     * @return backoff applied in ms (0 - none)
+     */
+    public long noteResponse(String host, HttpTransportResponse response) {
+        if (response != null && (response.code() == 429 || (response.code() == 503 && response.header("Retry-After") != null))) {
+            long backoff_ms = this.retryAfterMs(response.header("Retry-After"));
+            if (backoff_ms <= 0) {
+                backoff_ms = this.m_backoff_ms;
+            }
+            backoff_ms = Math.min(backoff_ms, MAX_BACKOFF_MS);
+            this.bucketFor(host).blockUntil(System.currentTimeMillis() + backoff_ms);
+
+            // DEBUG
+            this.errorLogger().warning("HttpRateLimiter: Host: " + host + " responded " + response.code() + ". Backing off " + backoff_ms + "ms");
+            return backoff_ms;
+        }
+        return 0;
+    }
+
+    // parse a Retry-After header (delta seconds or HTTP date) into ms (0 if absent/invalid)
+    private long retryAfterMs(String retry_after) {
+        if (retry_after != null && retry_after.trim().length() > 0) {
+            try {
+                return Long.parseLong(retry_after.trim()) * 1000;
+            }
+            catch (NumberFormatException ex) {
+                try {
+                    ZonedDateTime when = ZonedDateTime.parse(retry_after.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                    return when.toInstant().toEpochMilli() - System.currentTimeMillis();
+                }
+                catch (Exception ex2) {
+                    this.errorLogger().info("HttpRateLimiter: Unable to parse Retry-After: " + retry_after);
+                }
+            }
+        }
+        return 0;
+    }
+
+    // per-host limiter statistics (Health Stats)
+    public Map<String,Object> statistics() {
+        HashMap<String,Object> stats = new HashMap<>();
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String,TokenBucket> entry : this.m_buckets.entrySet()) {
+            stats.put(entry.getKey(),entry.getValue().statistics(now));
+        }
+        return stats;
+    }
+}
@@ -25,22 +25,19 @@ package com.arm.pelion.bridge.transport;
 import com.arm.pelion.bridge.core.BaseClass;
 import com.arm.pelion.bridge.core.ErrorLogger;
 import com.arm.pelion.bridge.core.KeyValuePair;
-import com.arm.pelion.bridge.core.Utils;
 import com.arm.pelion.bridge.preferences.PreferenceManager;
-import java.io.BufferedReader;
+import com.arm.pelion.bridge.transport.interfaces.HttpEngineInterface;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLConnection;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
 import org.apache.commons.codec.binary.Base64;
@@ -52,32 +49,52 @@ import org.apache.commons.codec.binary.Base64;
  */
 public class HttpTransport extends BaseClass {
     private static final int REQUEST_TIMEOUT_MS = 120000;       // 2 minutes on read/connect timeout..
-    private static final int PELION_API_BACKOFF_MS = 250;       // 1/4 second for backoff
+    private static final int DEFAULT_MAX_THROTTLE_RETRIES = 3;  // max retries of a throttled (429) request
+    private static final String DEFAULT_STATISTICS_NAME = "http"; // default name for traffic statistics
     
-    private int m_last_response_code = 0;
-    private String m_last_etag_value = null;
     private String m_auth_qualifier_default = "Bearer";
-    private String m_auth_qualifier = this.m_auth_qualifier_default;
     private String m_basic_auth_qualifier = "Basic";
-    private String m_etag_value = "";
-    private String m_if_match_header_value = null;
     private String m_pelion_api_hostname = null;
-    private int m_pelion_backoff_ms = PELION_API_BACKOFF_MS;
+    private int m_max_throttle_retries = DEFAULT_MAX_THROTTLE_RETRIES;
     private PelionHostnameVerifier m_verifier = null;
     private PelionTrustManagerListFactory m_trust_managers = null;
-    private ArrayList<KeyValuePair> m_additional_headers = null;
+    private CopyOnWriteArrayList<KeyValuePair> m_additional_headers = null;
     private SSLContext m_sc = null;
-    private int m_request_timeout_ms = REQUEST_TIMEOUT_MS;
+    private HttpTransportStatistics m_stats = null;
+    private volatile int m_request_timeout_ms = REQUEST_TIMEOUT_MS;
+    
+    // legacy per-call modifiers and last response: kept per calling thread so one transport can be shared safely
+    private final ThreadLocal<String> m_auth_qualifier = new ThreadLocal<>();
+    private final ThreadLocal<String> m_etag_value = new ThreadLocal<>();
+    private final ThreadLocal<String> m_if_match_header_value = new ThreadLocal<>();
+    private final ThreadLocal<HttpTransportResponse> m_last_response = new ThreadLocal<>();
     private boolean m_debug_rest_calls = false;
     
+    // our HTTP engine (shared, with its connection pool, by all transports with the same SSL configuration)
+    private HttpEngineInterface m_engine = null;
+    
+    // shared HTTP engines keyed by SSL configuration
+    private static final HashMap<String,HttpEngineInterface> s_engines = new HashMap<>();
+    
+    // shared per-host rate limiter (created with the engine)
+    private static HttpRateLimiter s_limiter = null;
+    
     /**
      * Constructor
      * @param error_logger
      * @param preference_manager
      */
     public HttpTransport(ErrorLogger error_logger, PreferenceManager preference_manager) {
+        this(error_logger, preference_manager, DEFAULT_STATISTICS_NAME);
+    }
+    
+    // constructor with the name our traffic statistics are reported under
+    public HttpTransport(ErrorLogger error_logger, PreferenceManager preference_manager, String name) {
         super(error_logger, preference_manager);
         
+        // our traffic statistics
+        this.m_stats = HttpTransportStatistics.forName(name);
+        
         // DEBUG REST calls
         this.m_debug_rest_calls = preference_manager.booleanValueOf("debug_rest_calls");
         if (this.m_debug_rest_calls == true) {
@@ -93,10 +110,10 @@ public class HttpTransport extends BaseClass {
         // set the hostname verifier
         this.m_verifier = new PelionHostnameVerifier(this.m_pelion_api_hostname);
         
-        // get the backoff value
-        this.m_pelion_backoff_ms = preference_manager.intValueOf("pelion_api_backoff_ms");
-        if (this.m_pelion_backoff_ms <= 0) {
-            this.m_pelion_backoff_ms = PELION_API_BACKOFF_MS;
+        // max retries of a throttled (429) request
+        this.m_max_throttle_retries = preference_manager.intValueOf("http_rate_limit_max_retries");
+        if (this.m_max_throttle_retries < 0) {
+            this.m_max_throttle_retries = DEFAULT_MAX_THROTTLE_RETRIES;
         }
         
         // override for the timeout value
@@ -112,12 +129,11 @@ public class HttpTransport extends BaseClass {
         String auth_qualifier = this.prefValue("http_auth_qualifier");
         if (auth_qualifier != null && auth_qualifier.length() > 0) {
             this.m_auth_qualifier_default = auth_qualifier;
-            this.m_auth_qualifier = this.m_auth_qualifier_default;
         }
-        this.errorLogger().info("HTTP: Authorization Qualifier set to: " + this.m_auth_qualifier);
+        this.errorLogger().info("HTTP: Authorization Qualifier set to: " + this.m_auth_qualifier_default);
         
         // initialize the additional header support
-        this.m_additional_headers = new ArrayList<>();
+        this.m_additional_headers = new CopyOnWriteArrayList<>();
         
         // initialize the SSL Context
         try {
@@ -129,6 +145,48 @@ public class HttpTransport extends BaseClass {
         catch (KeyManagementException | NoSuchAlgorithmException ex) {
             this.errorLogger().critical("HTTP: ERROR! Exception during SSL Context creation: " + ex.getMessage());
         }
+        
+        // get the shared HTTP engine for our SSL configuration
+        if (this.m_sc != null) {
+            this.m_engine = HttpTransport.engineFor(error_logger, preference_manager, this.m_sc, this.m_trust_managers, this.m_verifier);
+        }
+    }
+    
+    // get (creating if needed) the shared HTTP engine for an SSL configuration and the shared rate limiter
+    private static synchronized HttpEngineInterface engineFor(ErrorLogger error_logger, PreferenceManager preference_manager, SSLContext sc, PelionTrustManagerListFactory trust_manager, PelionHostnameVerifier verifier) {
+        if (HttpTransport.s_limiter == null) {
+            HttpTransport.s_limiter = new HttpRateLimiter(error_logger, preference_manager);
+        }
+        
+        // the SSL configuration: engine type, TLS protocol and the host our verifier additionally accepts
+        // (trust always comes from the JVM default trust store, so it never differs between transports)
+        String engine_type = preference_manager.valueOf("http_engine");
+        boolean use_urlconnection = (engine_type != null && engine_type.equalsIgnoreCase("urlconnection") == true);
+        String key = (use_urlconnection ? "urlconnection" : "okhttp") + "|" + sc.getProtocol() + "|" + verifier.hostname();
+        
+        HttpEngineInterface engine = HttpTransport.s_engines.get(key);
+        if (engine == null) {
+            if (use_urlconnection == true) {
+                engine = new UrlConnectionHttpEngine(error_logger, preference_manager, sc.getSocketFactory(), verifier);
+            }
+            else {
+                engine = new OkHttpEngine(error_logger, preference_manager, sc.getSocketFactory(), trust_manager, verifier);
+            }
+            HttpTransport.s_engines.put(key, engine);
+            
+            // DEBUG
+            error_logger.warning("HTTP: Engine: " + engine.name() + " (" + key + ") Max connections per host: " + preference_manager.intValueOf("http_max_connections_per_host"));
+        }
+        return engine;
+    }
+    
+    // per-host rate limiter statistics (Health Stats)
+    public static Map<String,Object> rateLimiterStatistics() {
+        HttpRateLimiter limiter = HttpTransport.s_limiter;
+        if (limiter != null) {
+            return limiter.statistics();
+        }
+        return new HashMap<>();
     }
     
     // manually set a specific timeout in ms
@@ -136,8 +194,8 @@ public class HttpTransport extends BaseClass {
         this.m_request_timeout_ms = timeout_ms;
     }
     
-    // add an additional header option
-    public void addHeader(String key,String value) {
+    // add an additional header option (applied to every call)
+    public synchronized void addHeader(String key,String value) {
         if (this.hasHeader(key,value) == false) {
             KeyValuePair kvp = new KeyValuePair(key,value);
             this.m_additional_headers.add(kvp);
@@ -163,36 +221,69 @@ public class HttpTransport extends BaseClass {
         return has_header;
     }
 
-    // set the authorization qualifier
+    // set the authorization qualifier (next call from this thread only)
     public void setAuthorizationQualifier(String qualifier) {
         if (qualifier != null && qualifier.length() > 0) {
-            this.m_auth_qualifier = qualifier;
+            this.m_auth_qualifier.set(qualifier);
         }
     }
 
-    // reset the authorization qualifier
-    private void resetAuthorizationQualifier() {
-        this.m_auth_qualifier = this.m_auth_qualifier_default;
+    // get and reset the authorization qualifier
+    private String takeAuthorizationQualifier() {
+        String qualifier = this.m_auth_qualifier.get();
+        this.m_auth_qualifier.remove();
+        return (qualifier != null) ? qualifier : this.m_auth_qualifier_default;
     }
 
-    // set the ETag value
+    // set the ETag value (next call from this thread only)
     public void setETagValue(String etag) {
-        this.m_etag_value = etag;
-    }
-
-    // reset the ETag value
-    private void resetETagValue() {
-        this.m_etag_value = null;
+        this.m_etag_value.set(etag);
     }
 
-    // set the If-Match value
+    // set the If-Match value (next call from this thread only)
     public void setIfMatchValue(String ifMatch) {
-        this.m_if_match_header_value = ifMatch;
+        this.m_if_match_header_value.set(ifMatch);
     }
-
-    // reset the If-Match value
-    private void resetIfMatchValue() {
-        this.m_if_match_header_value = null;
+    
+    // GET requests never send a body
+    private boolean sendsData(String verb) {
+        return ("GET".equalsIgnoreCase(verb) == false);
+    }
+    
+    // get and reset a per-call header value
+    private String takeValue(ThreadLocal<String> value) {
+        String v = value.get();
+        value.remove();
+        return v;
+    }
+    
+    /**
+     * execute a request using API token authorization
+     * @param verb
+     * @param url_str
+     * @param api_token
+     * @param data
+     * @param content_type
+     * @param headers per-call headers (may be null)
+     * @return immutable response
+     */
+    public HttpTransportResponse httpsRequest(String verb, String url_str, String api_token, String data, String content_type, List<KeyValuePair> headers) {
+        return this.dispatch(verb, url_str, null, null, data, content_type, this.sendsData(verb), true, api_token, false, headers);
+    }
+    
+    /**
+     * execute a request using basic authorization
+     * @param verb
+     * @param url_str
+     * @param username
+     * @param password
+     * @param data
+     * @param content_type
+     * @param headers per-call headers (may be null)
+     * @return immutable response
+     */
+    public HttpTransportResponse httpsRequestBasicAuth(String verb, String url_str, String username, String password, String data, String content_type, List<KeyValuePair> headers) {
+        return this.dispatch(verb, url_str, username, password, data, content_type, this.sendsData(verb), false, null, false, headers);
     }
 
     // execute GET over https
@@ -443,25 +534,16 @@ public class HttpTransport extends BaseClass {
         return value;
     }
 
-    private synchronized void saveResponseCode(int response_code) {
-        this.m_last_response_code = response_code;
-    }
-
+    // last response code for calls made by the current thread (prefer the response returned by httpsRequest())
     public int getLastResponseCode() {
-        return this.m_last_response_code;
-    }
-    
-    private void saveETagValue(Map<String,List<String>> fields) {
-        if (fields != null) {
-            List<String> etag_list = fields.get("ETag");
-            if (etag_list != null && etag_list.size() > 0) {
-                this.m_last_etag_value = etag_list.get(0).replace("\"","");
-            }
-        }
+        HttpTransportResponse response = this.m_last_response.get();
+        return (response != null) ? response.code() : 0;
     }
     
+    // last ETag value for calls made by the current thread (prefer the response returned by httpsRequest())
     public String getLastETagValue() {
-        return this.m_last_etag_value;
+        HttpTransportResponse response = this.m_last_response.get();
+        return (response != null) ? response.etag() : null;
     }
 
     // perform the HTTPS dispatch
@@ -470,280 +552,187 @@ public class HttpTransport extends BaseClass {
         return this.dispatchHTTPS(verb, url_str, username, password, data, content_type, doInput, doOutput, doSSL, use_api_token, api_token, false);
     }
 
-    // perform the HTTPS dispatch
+    // perform the HTTPS dispatch (legacy String result API)
     private String dispatchHTTPS(String verb, String url_str, String username, String password, String data, String content_type, boolean doInput, boolean doOutput, boolean doSSL, boolean use_api_token, String api_token, boolean persistent) {
-        String result = "";
-        String line = "";
-        URLConnection connection = null;
+        String result = null;
+        
+        // dispatch and remember the response for this thread
+        HttpTransportResponse response = this.dispatch(verb, url_str, username, password, data, content_type, doOutput, use_api_token, api_token, persistent, null);
+        this.m_last_response.set(response);
         
-        // Pelion API throttle
-        Utils.waitForABit(this.errorLogger(), this.m_pelion_backoff_ms); 
+        // map the response to our result
+        if (response.body() == null) {
+            // no response (already noted)
+            result = null;
+        }
+        else if (response.code() < 400) {
+            result = response.body();
+        }
+        else if (response.code() == 404 || response.code() == 410) {
+            this.errorLogger().info("HttpTransport(" + verb + ") empty response (OK).");
+            result = "";
+        }
+        else {
+            this.errorLogger().warning("HttpTransport(" + verb + "): Error response in doHTTP(" + verb + "): URL: " + url_str + " CODE: " + response.code());
+            result = null;
+        }
+        
+        // DEBUG
+        if (this.m_debug_rest_calls == true) {
+            this.errorLogger().warning("HTTP(" + verb + "): URL: " + url_str +  " CODE: " + response.code() + " INPUT: " + data + " RESPONSE: " + result);
+        }
 
-        try {
-            // check if we have TLS setup/configured thus far...
-            if (this.m_sc != null) {
-                // create our URL
-                URL url = new URL(url_str);
-                
-                // open the SSL connction
-                connection = (HttpsURLConnection) (url.openConnection());
-                if (verb != null && verb.equalsIgnoreCase("patch") == true) {
-                    //
-                    // we have to fudge PATCH over a POST verb due to this
-                    // https://stackoverflow.com/questions/25163131/httpurlconnection-invalid-http-method-patch
-                    //
-                    ((HttpsURLConnection) connection).setRequestProperty("X-HTTP-Method-Override","PATCH");
-                    ((HttpsURLConnection) connection).setRequestMethod("POST");
-                }
-                else {
-                    // just use the verb directly...
-                    ((HttpsURLConnection) connection).setRequestMethod(verb);
-                }
-                ((HttpsURLConnection) connection).setSSLSocketFactory(this.m_sc.getSocketFactory());
-                ((HttpsURLConnection) connection).setHostnameVerifier(this.m_verifier); 
-                
-                // set the connection timeout if set to a value
-                if (this.m_request_timeout_ms > 0) {
-                    // set both connect and read timeouts to this (in ms...)
-                    connection.setConnectTimeout(this.m_request_timeout_ms);
-                    connection.setReadTimeout(this.m_request_timeout_ms);
-                }
+        // return the result
+        return result;
+    }
 
-                // Input configuration
-                connection.setDoInput(doInput);
-                if (doOutput && data != null && data.length() > 0) {
-                    connection.setDoOutput(doOutput);
-                }
-                else {
-                    connection.setDoOutput(false);
-                }
+    // perform the HTTPS dispatch and return the (immutable) response
+    private HttpTransportResponse dispatch(String verb, String url_str, String username, String password, String data, String content_type, boolean doOutput, boolean use_api_token, String api_token, boolean persistent, List<KeyValuePair> call_headers) {
+        HttpTransportResponse response = null;
+        ArrayList<KeyValuePair> headers = new ArrayList<>();
+        
+        // consume any per-call modifiers set by this thread
+        String auth_qualifier = this.takeAuthorizationQualifier();
+        String etag_value = this.takeValue(this.m_etag_value);
+        String if_match_value = this.takeValue(this.m_if_match_header_value);
+
+        // check if we have TLS setup/configured thus far...
+        if (this.m_sc != null && this.m_engine != null) {
+            if (verb != null && verb.equalsIgnoreCase("patch") == true) {
+                //
+                // we have to fudge PATCH over a POST verb due to this
+                // https://stackoverflow.com/questions/25163131/httpurlconnection-invalid-http-method-patch
+                //
+                headers.add(new KeyValuePair("X-HTTP-Method-Override","PATCH"));
+                verb = "POST";
+            }
 
-                // make sure at least one type of authorization is used
-                boolean auth_set = false;
-                
-                // enable Basic auth if requested
-                if (use_api_token == false && username != null && username.length() > 0 && password != null && password.length() > 0) {
-                    // Base64 encode the username:password value...
-                    String encoded_user_pass = Base64.encodeBase64String((username + ":" + password).getBytes());
-                    
-                    // Basic Authorization
-                    connection.setRequestProperty("Authorization", this.m_basic_auth_qualifier + " " + encoded_user_pass);
-                    
-                    // DEBUG
-                    this.errorLogger().info("HttpTransport(" + verb + "): Auth Header:  Authorization: Basic " + encoded_user_pass + "  ENCODED: " + username + ":" + password);
-                    
-                    // set
-                    auth_set = true;
-                }
+            // make sure at least one type of authorization is used
+            boolean auth_set = false;
 
-                // enable Token auth if requested
-                if (use_api_token == true && api_token != null && api_token.length() > 0) {
-                    // Bearer Authorization
-                    connection.setRequestProperty("Authorization", this.m_auth_qualifier + " " + api_token);
-                    
-                    // DEBUG
-                    this.errorLogger().info("HttpTransport(" + verb + "): Auth Header:  Authorization: " + this.m_auth_qualifier + " " + api_token);
-
-                    // Always reset the qualifier to the established default -it can be changed as needed
-                    this.resetAuthorizationQualifier();
-                    
-                    // set
-                    auth_set = true;
-                }
-                
-                // complain if no auth has been set
-                if (auth_set == false) {
-                    this.errorLogger().info("HttpTransport(" + verb + "): WARNING - no authorization type/value has been set. HTTP command will likely FAIL");
-                }
+            // enable Basic auth if requested
+            if (use_api_token == false && username != null && username.length() > 0 && password != null && password.length() > 0) {
+                // Base64 encode the username:password value...
+                String encoded_user_pass = Base64.encodeBase64String((username + ":" + password).getBytes());
 
-                // ETag support if requested
-                if (this.m_etag_value != null && this.m_etag_value.length() > 0) {
-                    // set the ETag header value
-                    connection.setRequestProperty("ETag", this.m_etag_value);
-                    
-                    // DEBUG
-                    this.errorLogger().info("HttpTransport(" + verb + "): ETag Value: " + this.m_etag_value);
+                // Basic Authorization
+                headers.add(new KeyValuePair("Authorization", this.m_basic_auth_qualifier + " " + encoded_user_pass));
 
-                    // Always reset to the established default
-                    this.resetETagValue();
-                }
+                // DEBUG
+                this.errorLogger().info("HttpTransport(" + verb + "): Auth Header:  Authorization: Basic " + encoded_user_pass + "  ENCODED: " + username + ":" + password);
 
-                // If-Match support if requested
-                if (this.m_if_match_header_value != null && this.m_if_match_header_value.length() > 0) {
-                    // set the If-Match header value
-                    connection.setRequestProperty("If-Match", this.m_if_match_header_value);
-                    
-                    // DEBUG
-                    this.errorLogger().info("HttpTransport(" + verb + "): If-Match Value: " + this.m_if_match_header_value);
+                // set
+                auth_set = true;
+            }
 
-                    // Always reset to the established default
-                    this.resetIfMatchValue();
-                }
+            // enable Token auth if requested
+            if (use_api_token == true && api_token != null && api_token.length() > 0) {
+                // Bearer Authorization
+                headers.add(new KeyValuePair("Authorization", auth_qualifier + " " + api_token));
 
-                // specify content type if requested
-                if (content_type != null && content_type.length() > 0) {
-                    connection.setRequestProperty("Content-Type", content_type);
-                    connection.setRequestProperty("Accept", "*/*");
+                // DEBUG
+                this.errorLogger().info("HttpTransport(" + verb + "): Auth Header:  Authorization: " + auth_qualifier + " " + api_token);
 
-                    // DEBUG
-                    this.errorLogger().info("HttpTransport(" + verb + "): Content-Type: " + content_type);
-                }
+                // set
+                auth_set = true;
+            }
 
-                // special headers for HTTPS DELETE
-                if (verb != null && verb.equalsIgnoreCase("delete")) {
-                    connection.setRequestProperty("Access-Control-Allow-Methods", "OPTIONS, DELETE");
-                }
+            // complain if no auth has been set
+            if (auth_set == false) {
+                this.errorLogger().info("HttpTransport(" + verb + "): WARNING - no authorization type/value has been set. HTTP command will likely FAIL");
+            }
 
-                // specify a persistent connection or not
-                if (persistent == true) {
-                    connection.setRequestProperty("Connection","keep-alive");
-                    
-                    // DEBUG
-                    this.errorLogger().info("HttpTransport(" + verb + "): Connection: keep-alive");
-                }
+            // ETag support if requested
+            if (etag_value != null && etag_value.length() > 0) {
+                // set the ETag header value
+                headers.add(new KeyValuePair("ETag", etag_value));
 
-                // add any additional headers
-                if (this.m_additional_headers != null && this.m_additional_headers.size() > 0) {
-                    for(int i=0;i<this.m_additional_headers.size();++i) {
-                        KeyValuePair kvp = this.m_additional_headers.get(i);
-                        connection.setRequestProperty(kvp.key(), kvp.value());
-                    }
-                }
+                // DEBUG
+                this.errorLogger().info("HttpTransport(" + verb + "): ETag Value: " + etag_value);
+            }
 
-                // DEBUG -  dump the headers
-                this.errorLogger().info("HttpTransport(" + verb + "): Headers: " + connection.getRequestProperties()); 
-                
-                // DEBUG - dump the URL, input and output
-                this.errorLogger().info("HttpTransport(" + verb + "): URL: " + url + " DATA: " + data);
-
-                // specify data if requested - assumes it properly escaped if necessary
-                if (doOutput && data != null && data.length() > 0) {
-                    try (OutputStreamWriter out = new OutputStreamWriter(connection.getOutputStream(),"UTF-8")) {
-                        this.errorLogger().info("HttpTransport(" + verb + "): DATA: " + data + " CONTENT_TYPE: " + content_type);
-                        out.write(data);
-                        out.flush();
-                        out.close();
-                    }
-                }
+            // If-Match support if requested
+            if (if_match_value != null && if_match_value.length() > 0) {
+                // set the If-Match header value
+                headers.add(new KeyValuePair("If-Match", if_match_value));
 
-                // setup the output if requested
-                if (doInput) {
-                    try {
-                        try (InputStream content = (InputStream) connection.getInputStream(); BufferedReader in = new BufferedReader(new InputStreamReader(content))) {
-                            StringBuilder buf = new StringBuilder();
-                            while ((line = in.readLine()) != null) {
-                                buf.append(line);
-                            }
-                            result = buf.toString();
-                            content.close();
-                        }
-                    }
-                    catch (java.io.FileNotFoundException ex) {
-                        this.errorLogger().info("HttpTransport(" + verb + ") empty response (OK).");
-                        result = "";
-                    }
-                }
-                else {
-                    // no result expected.. but try anyway...
-                    try {
-                        try (InputStream content = (InputStream) connection.getInputStream(); BufferedReader in = new BufferedReader(new InputStreamReader(content))) {
-                            StringBuilder buf = new StringBuilder();
-                            while ((line = in.readLine()) != null) {
-                                buf.append(line);
-                            }
-                            result = buf.toString();
-                            content.close();
-                        }
-                    }
-                    catch (java.io.FileNotFoundException ex) {
-                        this.errorLogger().info("HttpTransport(" + verb + ") empty response (OK).");
-                        result = "";
-                    }
-                }
+                // DEBUG
+                this.errorLogger().info("HttpTransport(" + verb + "): If-Match Value: " + if_match_value);
+            }
+
+            // specify content type if requested
+            if (content_type != null && content_type.length() > 0) {
+                headers.add(new KeyValuePair("Content-Type", content_type));
+                headers.add(new KeyValuePair("Accept", "*/*"));
 
-                // save off the HTTP response code & ETag if we have one...
-                this.saveResponseCode(((HttpsURLConnection) connection).getResponseCode());
-                this.saveETagValue(((HttpsURLConnection) connection).getHeaderFields());
-                
                 // DEBUG
-                //this.errorLogger().info("HttpTransport(" + verb +"):  URL: " + url_str + " CODE: " + this.getLastResponseCode() + " DATA: " + data + " RESULT: " + result);
+                this.errorLogger().info("HttpTransport(" + verb + "): Content-Type: " + content_type);
             }
-            else {
-                // non-SSL not supported
-                this.errorLogger().critical("HttpTransport(" + verb + "): ERROR! HTTP UNSUPPORTED in HttpTransport: URL: " + url_str);
-                this.saveResponseCode(598);
+
+            // special headers for HTTPS DELETE
+            if (verb != null && verb.equalsIgnoreCase("delete")) {
+                headers.add(new KeyValuePair("Access-Control-Allow-Methods", "OPTIONS, DELETE"));
+            }
+
+            // specify a persistent connection or not
+            if (persistent == true) {
+                headers.add(new KeyValuePair("Connection","keep-alive"));
+
+                // DEBUG
+                this.errorLogger().info("HttpTransport(" + verb + "): Connection: keep-alive");
+            }
+
+            // add any additional headers
+            if (this.m_additional_headers != null && this.m_additional_headers.size() > 0) {
+                headers.addAll(this.m_additional_headers);
+            }
+            
+            // add any per-call headers
+            if (call_headers != null && call_headers.size() > 0) {
+                headers.addAll(call_headers);
+            }
+
+            // DEBUG - dump the URL, headers and data
+            this.errorLogger().info("HttpTransport(" + verb + "): URL: " + url_str + " HEADERS: " + headers.size() + " DATA: " + data);
+
+            String data_sent = (doOutput == true) ? data : null;
+            String host = HttpRateLimiter.hostOf(url_str);
+            for(int attempt=0;response == null;++attempt) {
+                // wait for our turn with this host
+                if (HttpTransport.s_limiter.acquire(host) == false) {
+                    this.errorLogger().warning("HttpTransport(" + verb + "): Interrupted while rate limited: URL: " + url_str + ". Code 599");
+                    response = new HttpTransportResponse(599, null, null);
+                    break;
+                }
                 
-                // close
+                long start_allocated = this.m_stats.start();
                 try {
-                    if (connection != null) {
-                        ((HttpsURLConnection)connection).disconnect();
-                    }
+                    // dispatch via our engine (data is only sent if output is requested)
+                    response = this.m_engine.execute(verb, url_str, headers, data_sent, this.m_request_timeout_ms);
                 }
-                catch (Exception ex) {
-                    // silent
+                catch (IOException ex) {
+                    // exception note (DEBUG)
+                    this.errorLogger().warning("HttpTransport(" + verb + "): Exception in doHTTP(" + verb + "): URL: " + url_str +  " ERROR: " + ex.getMessage() + ". Code 599",ex);
+                    response = new HttpTransportResponse(599, null, null);
                 }
 
-                try {
-                    // GC
-                    if (Utils.doGC()) {
-                        System.gc();
-                    }
-                }
-                catch (Exception ex3) {
-                    // silent
-                }
+                // record our traffic and allocation statistics
+                this.m_stats.record(start_allocated, data_sent, response);
                 
-                return null;
-            }
-        }    
-        catch (IOException ex) {
-            // exception note (DEBUG)
-            this.errorLogger().warning("HttpTransport(" + verb + "): Exception in doHTTP(" + verb + "): URL: " + url_str +  " ERROR: " + ex.getMessage(),ex);
-            result = null;
-
-            try {
-                // check for non-null connection
-                if (connection != null) {
-                    // save off the HTTPs response code...
-                    this.saveResponseCode(((HttpsURLConnection) connection).getResponseCode());
-                }
-                else {
-                    this.errorLogger().warning("HttpTransport(" + verb + "): ERROR in doHTTP(" + verb + "): Connection is NULL. Code 597");
-                    this.saveResponseCode(597);
+                // if throttled, the host is now backed off... retry (bounded)
+                if (HttpTransport.s_limiter.noteResponse(host, response) > 0 && attempt < this.m_max_throttle_retries) {
+                    this.errorLogger().info("HttpTransport(" + verb + "): Throttled (" + response.code() + "). Retrying: URL: " + url_str);
+                    response = null;
                 }
             }
-            catch (IOException ex2) {
-                this.errorLogger().critical("HttpTransport(" + verb + "): Exception in doHTTP(" + verb + "): Unable to save last response code: " + ex2.getMessage() + ". Code 599");
-                this.saveResponseCode(599);        
-            }
-        }
-        
-        // close
-        try {
-            if (connection != null) {
-                ((HttpsURLConnection)connection).disconnect();
-            }
         }
-        catch (Exception ex) {
-            // silent
-        }
-        
-        try {
-            // GC
-            if (Utils.doGC()) {
-                System.gc();
-            }
-        }
-        catch (Exception ex3) {
-            // silent
+        else {
+            // non-SSL not supported
+            this.errorLogger().critical("HttpTransport(" + verb + "): ERROR! HTTP UNSUPPORTED in HttpTransport: URL: " + url_str);
+            response = new HttpTransportResponse(598, null, null);
         }
         
-        // DEBUG
-        if (this.m_debug_rest_calls == true) {
-            this.errorLogger().warning("HTTP(" + verb + "): URL: " + url_str +  " CODE: " + this.getLastResponseCode() + " INPUT: " + data + " RESPONSE: " + result);
-        }
-
-        // return the result
-        return result;
+        // return the response
+        return response;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,93 @@
+/**
+ * @file HttpTransportResponse.java
+ * @brief Immutable HTTP response
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.transport;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable HTTP response: status code, headers and body of a single HTTP call
+ *
+ * @author Doug Anson
+ */
+public final class HttpTransportResponse {
+    private final int m_code;
+    private final Map<String,List<String>> m_headers;
+    private final String m_body;
+
+    // default constructor
+    public HttpTransportResponse(int code, Map<String,List<String>> headers, String body) {
+        this.m_code = code;
+        this.m_body = body;
+
+        // normalize header names to lower case (null status-line keys are dropped)
+        HashMap<String,List<String>> normalized = new HashMap<>();
+        if (headers != null) {
+            for (Map.Entry<String,List<String>> entry : headers.entrySet()) {
+                if (entry.getKey() != null && entry.getValue() != null) {
+                    normalized.put(entry.getKey().toLowerCase(), Collections.unmodifiableList(entry.getValue()));
+                }
+            }
+        }
+        this.m_headers = Collections.unmodifiableMap(normalized);
+    }
+
+    // HTTP status code
+    public int code() {
+        return this.m_code;
+    }
+
+    // true if the request completed with a 2xx status
+    public boolean ok() {
+        return (this.m_code >= 200 && this.m_code < 300);
+    }
+
+    // ETag value (unquoted) or null
+    public String etag() {
+        String etag = this.header("ETag");
+        return (etag != null) ? etag.replace("\"","") : null;
+    }
+
+    // response body (may be empty, null if no response was received)
+    public String body() {
+        return this.m_body;
+    }
+
+    // all response headers (lower case names)
+    public Map<String,List<String>> headers() {
+        return this.m_headers;
+    }
+
+    // first value of the given header (case insensitive) or null
+    public String header(String name) {
+        if (name != null) {
+            List<String> values = this.m_headers.get(name.toLowerCase());
+            if (values != null && values.size() > 0) {
+                return values.get(0);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ * @file HttpTransportStatistics.java
+ * @brief Per-transport HTTP traffic and allocation counters
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.transport;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HTTP transport statistics: request counts, bytes read/written and the bytes allocated by the calling thread
+ * while a request is in flight. Transports sharing a name (e.g. per-device transports of a peer) share counters.
+ *
+ * @author Doug Anson
+ */
+public class HttpTransportStatistics {
+    // registry of statistics by transport name
+    private static final ConcurrentHashMap<String,HttpTransportStatistics> s_statistics = new ConcurrentHashMap<>();
+    
+    // thread allocation accounting (HotSpot extension - may be unavailable)
+    private static final com.sun.management.ThreadMXBean s_thread_bean = HttpTransportStatistics.initThreadBean();
+    
+    private String m_name = null;
+    
+    // cumulative counters
+    private final AtomicLong m_num_requests = new AtomicLong(0);
+    private final AtomicLong m_num_failures = new AtomicLong(0);
+    private final AtomicLong m_bytes_written = new AtomicLong(0);
+    private final AtomicLong m_bytes_read = new AtomicLong(0);
+    private final AtomicLong m_bytes_allocated = new AtomicLong(0);
+    
+    // default constructor
+    private HttpTransportStatistics(String name) {
+        this.m_name = name;
+    }
+    
+    // get (or create) the statistics for a named transport
+    public static HttpTransportStatistics forName(String name) {
+        HttpTransportStatistics stats = s_statistics.get(name);
+        if (stats == null) {
+            HttpTransportStatistics created = new HttpTransportStatistics(name);
+            stats = s_statistics.putIfAbsent(name, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+        return stats;
+    }
+    
+    // all transport statistics by name
+    public static Map<String,HttpTransportStatistics> all() {
+        return new HashMap<String,HttpTransportStatistics>(s_statistics);
+    }
+    
+    // our transport name
+    public String name() {
+        return this.m_name;
+    }
+    
+    // mark the start of a request (allocation watermark for the calling thread, -1 if unavailable)
+    public long start() {
+        return HttpTransportStatistics.threadAllocatedBytes();
+    }
+    
+    // record a completed request
+    public void record(long start_allocated, String data_sent, HttpTransportResponse response) {
+        this.m_num_requests.incrementAndGet();
+        if (response == null || response.body() == null) {
+            this.m_num_failures.incrementAndGet();
+        }
+        this.m_bytes_written.addAndGet(HttpTransportStatistics.utf8Length(data_sent));
+        if (response != null) {
+            this.m_bytes_read.addAndGet(HttpTransportStatistics.utf8Length(response.body()));
+        }
+        if (start_allocated >= 0) {
+            long end_allocated = HttpTransportStatistics.threadAllocatedBytes();
+            if (end_allocated >= start_allocated) {
+                this.m_bytes_allocated.addAndGet(end_allocated - start_allocated);
+            }
+        }
+    }
+    
+    // cumulative requests
+    public long requests() {
+        return this.m_num_requests.get();
+    }
+    
+    // cumulative failed requests (no response received)
+    public long failures() {
+        return this.m_num_failures.get();
+    }
+    
+    // cumulative bytes written (request bodies)
+    public long bytesWritten() {
+        return this.m_bytes_written.get();
+    }
+    
+    // cumulative bytes read (response bodies)
+    public long bytesRead() {
+        return this.m_bytes_read.get();
+    }
+    
+    // cumulative bytes allocated by callers while requests were in flight (0 if unsupported by the JVM)
+    public long bytesAllocated() {
+        return this.m_bytes_allocated.get();
+    }
+    
+    // bytes allocated by all live threads in the JVM (-1 if unsupported)
+    public static long jvmAllocatedBytes() {
+        if (s_thread_bean != null) {
+            long total = 0;
+            long[] allocated = s_thread_bean.getThreadAllocatedBytes(s_thread_bean.getAllThreadIds());
+            for(int i=0;allocated != null && i<allocated.length;++i) {
+                if (allocated[i] > 0) {
+                    total += allocated[i];
+                }
+            }
+            return total;
+        }
+        return -1;
+    }
+    
+    // cumulative GC collections in the JVM
+    public static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0,gc.getCollectionCount());
+        }
+        return count;
+    }
+    
+    // cumulative GC time (ms) in the JVM
+    public static long gcTimeMs() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0,gc.getCollectionTime());
+        }
+        return time;
+    }
+    
+    // bytes allocated so far by the calling thread (-1 if unsupported)
+    private static long threadAllocatedBytes() {
+        if (s_thread_bean != null) {
+            return s_thread_bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+    
+    // UTF-8 encoded length of a string (without encoding it)
+    private static long utf8Length(String str) {
+        long length = 0;
+        for(int i=0;str != null && i<str.length();++i) {
+            char c = str.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            }
+            else if (c < 0x800) {
+                length += 2;
+            }
+            else if (Character.isHighSurrogate(c) && (i+1) < str.length() && Character.isLowSurrogate(str.charAt(i+1))) {
+                length += 4;
+                ++i;
+            }
+            else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+    
+    // initialize thread allocation accounting
+    private static com.sun.management.ThreadMXBean initThreadBean() {
+        try {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean sun_bean = (com.sun.management.ThreadMXBean)bean;
+                if (sun_bean.isThreadAllocatedMemorySupported() == true) {
+                    if (sun_bean.isThreadAllocatedMemoryEnabled() == false) {
+                        sun_bean.setThreadAllocatedMemoryEnabled(true);
+                    }
+                    return sun_bean;
+                }
+            }
+        }
+        catch (Exception ex) {
+            // not available in this JVM
+        }
+        return null;
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * @file MQTTReceiveDispatcher.java
+ * @brief Shared dispatch pool for event-driven MQTT receive processing
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2015. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.transport;
+
+import com.arm.pelion.bridge.core.BaseClass;
+import com.arm.pelion.bridge.core.ErrorLogger;
+import com.arm.pelion.bridge.preferences.PreferenceManager;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared MQTT receive dispatcher. Event-driven MQTT transports share the (small, fixed) hawtdispatch NIO
+ * selector threads for socket I/O and hand each inbound message to this fixed worker pool for listener
+ * processing... so we no longer need one parked TransportReceiveThread per device shadow.
+ *
+ * @author Doug Anson
+ */
+public class MQTTReceiveDispatcher extends BaseClass {
+    // default number of dispatch threads
+    private static final int DEFAULT_NUM_DISPATCH_THREADS = 8;
+
+    // Access our instance
+    private static volatile MQTTReceiveDispatcher m_self = null;
+
+    private ExecutorService m_executor = null;
+    private int m_num_threads = DEFAULT_NUM_DISPATCH_THREADS;
+
+    /**
+     * Instance Factory
+     *
+     * @param error_logger
+     * @param preference_manager
+     * @return
+     */
+    public static MQTTReceiveDispatcher getInstance(ErrorLogger error_logger, PreferenceManager preference_manager) {
+        if (MQTTReceiveDispatcher.m_self == null) {
+            synchronized (MQTTReceiveDispatcher.class) {
+                if (MQTTReceiveDispatcher.m_self == null) {
+                    MQTTReceiveDispatcher.m_self = new MQTTReceiveDispatcher(error_logger, preference_manager);
+                }
+            }
+        }
+        return MQTTReceiveDispatcher.m_self;
+    }
+
+    // constructor
+    private MQTTReceiveDispatcher(ErrorLogger error_logger, PreferenceManager preference_manager) {
+        super(error_logger, preference_manager);
+
+        // get our pool size
+        this.m_num_threads = this.prefIntValue("mqtt_async_dispatch_threads");
+        if (this.m_num_threads <= 0) {
+            this.m_num_threads = DEFAULT_NUM_DISPATCH_THREADS;
+        }
+
+        // create the shared worker pool
+        final AtomicInteger count = new AtomicInteger(0);
+        this.m_executor = Executors.newFixedThreadPool(this.m_num_threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "mqtt-dispatch-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        // DEBUG
+        this.errorLogger().warning("MQTTReceiveDispatcher: event-driven MQTT receive enabled. Dispatch threads: " + this.m_num_threads);
+    }
+
+    /**
+     * dispatch a receive task onto the shared pool
+     * @param task
+     * @return true - dispatched, false - rejected
+     */
+    public boolean dispatch(Runnable task) {
+        try {
+            this.m_executor.execute(task);
+            return true;
+        }
+        catch (RejectedExecutionException ex) {
+            this.errorLogger().warning("MQTTReceiveDispatcher: dispatch rejected: " + ex.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * number of dispatch threads
+     * @return
+     */
+    public int numThreads() {
+        return this.m_num_threads;
+    }
+}
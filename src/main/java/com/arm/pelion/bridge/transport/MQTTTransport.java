@@ -50,6 +50,9 @@ import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.Date;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
@@ -64,7 +67,10 @@ import org.bouncycastle.asn1.x509.X509Name;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.x509.X509V3CertificateGenerator;
 import org.fusesource.mqtt.client.BlockingConnection;
+import org.fusesource.mqtt.client.Callback;
+import org.fusesource.mqtt.client.FutureConnection;
 import org.fusesource.mqtt.client.MQTT;
+import org.fusesource.mqtt.client.Message;
 import org.fusesource.mqtt.client.QoS;
 import org.fusesource.mqtt.client.Topic;
 
@@ -90,6 +96,9 @@ public class MQTTTransport extends Transport implements GenericSender {
     // initial backoff in ms
     private int m_backoff_ms = DEFAULT_BACKOFF_MS;       
     
+    // DEFAULT receive timeout (drain mode)
+    private static final int DEFAULT_RECEIVE_TIMEOUT_MS = 5000; // 5 seconds
+    
     // Access our instance 
     private static volatile MQTTTransport m_self = null;
     
@@ -153,6 +162,19 @@ public class MQTTTransport extends Transport implements GenericSender {
     
     // initial connection indicator
     private boolean m_has_connected = false;
+    
+    // event-driven receive support (shared NIO threads + shared dispatch pool vs. one receive thread per connection)
+    private boolean m_async_io = false;
+    private FutureConnection m_future_connection = null;
+    private volatile boolean m_async_receive_active = false;
+    private final AtomicBoolean m_async_receive_armed = new AtomicBoolean(false);
+    
+    // drain-until-empty receive support (block with timeout vs. one blocking receive per receive loop tick)
+    private boolean m_receive_drain = false;
+    private int m_receive_timeout_ms = DEFAULT_RECEIVE_TIMEOUT_MS;
+    
+    // receive statistics
+    private final AtomicLong m_num_messages_received = new AtomicLong(0);
 
     /**
      * Instance Factory
@@ -199,6 +221,12 @@ public class MQTTTransport extends Transport implements GenericSender {
         this.setUsername(this.prefValue("mqtt_username", this.m_suffix));
         this.setPassword(this.prefValue("mqtt_password", this.m_suffix));
         this.m_sleep_time = ((this.preferences().intValueOf("mqtt_receive_loop_sleep", this.m_suffix)) * 1000);
+        this.m_async_io = this.prefBoolValue("mqtt_async_io", this.m_suffix);
+        this.m_receive_drain = this.prefBoolValue("mqtt_receive_drain", this.m_suffix);
+        this.m_receive_timeout_ms = this.prefIntValue("mqtt_receive_timeout_ms", this.m_suffix);
+        if (this.m_receive_timeout_ms <= 0) {
+            this.m_receive_timeout_ms = DEFAULT_RECEIVE_TIMEOUT_MS;
+        }
         this.m_keystore_pw = this.preferences().valueOf("mqtt_keystore_pw", this.m_suffix);
         this.m_base_dir = this.preferences().valueOf("mqtt_keystore_basedir", this.m_suffix);
         this.m_keystore_basename = this.preferences().valueOf("mqtt_keystore_basename", this.m_suffix);
@@ -248,6 +276,12 @@ public class MQTTTransport extends Transport implements GenericSender {
         this.setUsername(this.prefValue("mqtt_username", this.m_suffix));
         this.setPassword(this.prefValue("mqtt_password", this.m_suffix));
         this.m_sleep_time = ((this.preferences().intValueOf("mqtt_receive_loop_sleep", this.m_suffix)) * 1000);
+        this.m_async_io = this.prefBoolValue("mqtt_async_io", this.m_suffix);
+        this.m_receive_drain = this.prefBoolValue("mqtt_receive_drain", this.m_suffix);
+        this.m_receive_timeout_ms = this.prefIntValue("mqtt_receive_timeout_ms", this.m_suffix);
+        if (this.m_receive_timeout_ms <= 0) {
+            this.m_receive_timeout_ms = DEFAULT_RECEIVE_TIMEOUT_MS;
+        }
         this.m_keystore_pw = this.preferences().valueOf("mqtt_keystore_pw", this.m_suffix);
         this.m_base_dir = this.preferences().valueOf("mqtt_keystore_basedir", this.m_suffix);
         this.m_keystore_basename = this.preferences().valueOf("mqtt_keystore_basename", this.m_suffix);
@@ -786,7 +820,7 @@ public class MQTTTransport extends Transport implements GenericSender {
                         this.m_connected = false;
                         this.m_endpoint = endpoint;
                         this.errorLogger().info("MQTTTransport: acquiring blocking connection handle...");
-                        this.m_connection = endpoint.blockingConnection();                        
+                        this.m_connection = this.createConnection(endpoint);
                         if (this.m_connection != null) {
                             this.errorLogger().info("MQTTTransport: connection handle acquired!  Connecting...");
                             if (this.attemptConnection() == true) {
@@ -805,6 +839,9 @@ public class MQTTTransport extends Transport implements GenericSender {
                                 this.m_connect_clean_session = clean_session;
                                 this.m_connect_id = id;
                                 this.m_backoff_ms = DEFAULT_BACKOFF_MS;
+                                
+                                // resume event-driven receive if enabled
+                                this.armAsyncReceive();
                             }
                             else {
                                 // connection failure
@@ -857,6 +894,146 @@ public class MQTTTransport extends Transport implements GenericSender {
         return this.m_connected;
     }
     
+    // create the connection handle
+    private BlockingConnection createConnection(MQTT endpoint) {
+        if (this.m_async_io == true) {
+            // event-driven: keep the future handle so that receives complete via callback on the shared hawtdispatch threads
+            this.m_future_connection = endpoint.futureConnection();
+            return new BlockingConnection(this.m_future_connection);
+        }
+        
+        // blocking: receives are polled by a TransportReceiveThread
+        this.m_future_connection = null;
+        return endpoint.blockingConnection();
+    }
+    
+    /**
+     * Are we event-driven (no receive thread required)?
+     *
+     * @return
+     */
+    @Override
+    public boolean asyncReceiveEnabled() {
+        return this.m_async_io;
+    }
+    
+    /**
+     * Begin event-driven delivery of inbound messages to our listener
+     *
+     * @return
+     */
+    @Override
+    public boolean startAsyncReceive() {
+        if (this.m_async_io == true) {
+            this.m_async_receive_active = true;
+            this.armAsyncReceive();
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Halt event-driven delivery of inbound messages
+     */
+    @Override
+    public void stopAsyncReceive() {
+        this.m_async_receive_active = false;
+    }
+    
+    /**
+     * Preference suffix we were configured with
+     *
+     * @return
+     */
+    @Override
+    public String prefSuffix() {
+        return this.m_suffix;
+    }
+    
+    // post a single outstanding receive... it completes on a hawtdispatch thread and is processed on the shared dispatch pool
+    private void armAsyncReceive() {
+        final FutureConnection connection = this.m_future_connection;
+        if (this.m_async_receive_active == true && connection != null && connection.isConnected() == true && this.m_async_receive_armed.compareAndSet(false, true) == true) {
+            final MQTTReceiveDispatcher dispatcher = MQTTReceiveDispatcher.getInstance(this.errorLogger(), this.preferences());
+            connection.receive().then(new Callback<Message>() {
+                @Override
+                public void onSuccess(final Message message) {
+                    Runnable task = new Runnable() {
+                        @Override
+                        public void run() {
+                            processAsyncMessage(connection, message);
+                        }
+                    };
+                    if (dispatcher.dispatch(task) == false) {
+                        // handoff rejected... process it here (this also re-arms the receive) rather than lose it
+                        task.run();
+                    }
+                }
+
+                @Override
+                public void onFailure(final Throwable ex) {
+                    Runnable task = new Runnable() {
+                        @Override
+                        public void run() {
+                            processAsyncFailure(connection, ex);
+                        }
+                    };
+                    if (dispatcher.dispatch(task) == false) {
+                        // handoff rejected... handle it here so the connection is still reset
+                        task.run();
+                    }
+                }
+            });
+        }
+    }
+    
+    // process a message received via the event-driven path (one message in flight per connection preserves ordering)
+    private void processAsyncMessage(FutureConnection connection, Message mqtt_message) {
+        try {
+            MQTTMessage message = new MQTTMessage(mqtt_message);
+            message.ack();
+            this.m_num_messages_received.incrementAndGet();
+            if (this.m_listener != null) {
+                // call the registered listener to process the received message
+                this.errorLogger().info("processAsyncMessage(MQTT): processing new message: Topic:  " + message.getTopic() + " Mesage: " + message.getMessage());
+                this.m_listener.onMessageReceive(message.getTopic(), message.getMessage());
+            }
+            else {
+                // no listener
+                this.errorLogger().warning("processAsyncMessage(MQTT): Not processing new message: Topic:  " + message.getTopic() + " Mesage: " + message.getMessage() + ". Listener is NULL");
+            }
+        }
+        catch (Exception ex) {
+            // listener failure... note and continue receiving
+            this.errorLogger().warning("processAsyncMessage(MQTT): Exception caught while processing message: " + ex.getMessage(), ex);
+        }
+        
+        // re-arm the next receive if this connection is still current
+        this.m_async_receive_armed.set(false);
+        if (connection == this.m_future_connection) {
+            this.armAsyncReceive();
+        }
+    }
+    
+    // process a receive failure via the event-driven path
+    private void processAsyncFailure(FutureConnection connection, Throwable ex) {
+        this.m_async_receive_armed.set(false);
+        if (this.m_async_receive_active == true && connection == this.m_future_connection) {
+            // unable to receive - reset the connection
+            this.errorLogger().warning("processAsyncFailure(MQTT): receive failed while connected: " + ex.getMessage());
+            this.resetConnection();
+        }
+    }
+    
+    /**
+     * Number of MQTT messages received on this connection
+     *
+     * @return
+     */
+    public long numMessagesReceived() {
+        return this.m_num_messages_received.get();
+    }
+    
     // debug connection info
     private void showConnectionInfo(String url, boolean clean_session) {
         // DEBUG
@@ -891,7 +1068,14 @@ public class MQTTTransport extends Transport implements GenericSender {
             try {
                 // receive the MQTT message and process it...
                 this.errorLogger().info("receiveAndProcess(MQTT). Calling receiveAndProcessMessage()...");
-                this.receiveAndProcessMessage();
+                if (this.m_receive_drain == true) {
+                    // drain: keep processing until the receive times out with nothing pending
+                    while (this.isConnected() == true && this.receiveAndProcessMessage() != null);
+                }
+                else {
+                    // single blocking receive
+                    this.receiveAndProcessMessage();
+                }
             }
             catch (Exception ex) {
                 // caught exception while connected... something is wrong.
@@ -921,15 +1105,9 @@ public class MQTTTransport extends Transport implements GenericSender {
                 // DEBUG
                 this.errorLogger().info("MQTT: attemptConnection(): Trying to connect()...");
 
-                // attempt connection
+                // attempt connection (blocks until the CONNACK or failure)
                 this.m_connection.connect();
 
-                // DEBUG
-                this.errorLogger().info("MQTT: attemptConnection(): waiting a bit...()...");
-
-                // wait a bit...
-                Utils.waitForABit(this.errorLogger(), this.m_sleep_time);
-
                 // DEBUG
                 this.errorLogger().info("MQTT: attemptConnection(): Getting Connection status...");
 
@@ -1203,11 +1381,22 @@ public class MQTTTransport extends Transport implements GenericSender {
     // get the next MQTT message
     private MQTTMessage getNextMessage() throws Exception {
         if (this.m_connection != null && this.m_connection.isConnected() == true) {
-            MQTTMessage message = new MQTTMessage(this.m_connection.receive());
-            if (message != null) {
+            Message mqtt_message = null;
+            if (this.m_receive_drain == true) {
+                // block with a timeout... NULL if nothing arrives
+                mqtt_message = this.m_connection.receive(this.m_receive_timeout_ms, TimeUnit.MILLISECONDS);
+            }
+            else {
+                // block until the next message arrives
+                mqtt_message = this.m_connection.receive();
+            }
+            if (mqtt_message != null) {
+                MQTTMessage message = new MQTTMessage(mqtt_message);
                 message.ack();
+                this.m_num_messages_received.incrementAndGet();
+                return message;
             }
-            return message;
+            return null;
         }
         else if (this.m_connection != null) {
             // attempt reset (guarded by initial_connect vs. subsquent connect)
@@ -1287,6 +1476,7 @@ public class MQTTTransport extends Transport implements GenericSender {
             // clean up...
             super.disconnect();
             this.m_connection = null;
+            this.m_future_connection = null;
             this.m_has_connected = false;
 
             // clear the cached values 
@@ -0,0 +1,124 @@
+/**
+ * @file OkHttpEngine.java
+ * @brief OkHttp HTTP engine with a shared connection pool and HTTP/2 support
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.transport;
+
+import com.arm.pelion.bridge.core.ErrorLogger;
+import com.arm.pelion.bridge.core.KeyValuePair;
+import com.arm.pelion.bridge.preferences.PreferenceManager;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.X509TrustManager;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.internal.tls.OkHostnameVerifier;
+
+/**
+ * OkHttp HTTP engine. All requests share a single connection pool; HTTP/2 is negotiated (via ALPN) where the
+ * server and JVM support it, so concurrent requests to the same host are multiplexed over one connection.
+ *
+ * @author Doug Anson
+ */
+public class OkHttpEngine extends BaseHttpEngine {
+    private static final byte[] EMPTY_BODY = new byte[0];
+
+    private OkHttpClient m_client = null;
+    private final ConcurrentHashMap<Integer,OkHttpClient> m_timeout_clients = new ConcurrentHashMap<>();
+
+    // default constructor
+    public OkHttpEngine(ErrorLogger error_logger, PreferenceManager preference_manager, SSLSocketFactory socket_factory, X509TrustManager trust_manager, HostnameVerifier verifier) {
+        super(error_logger, preference_manager);
+
+        // create our client and its shared pool
+        this.m_client = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(this.m_max_connections_per_host, this.m_keep_alive_ms, TimeUnit.MILLISECONDS))
+                .sslSocketFactory(socket_factory, trust_manager)
+                .hostnameVerifier(this.withStandardVerification(verifier))
+                .retryOnConnectionFailure(true)
+                .build();
+    }
+
+    // as with HttpsURLConnection, our verifier is only consulted when the standard certificate hostname check fails
+    private HostnameVerifier withStandardVerification(final HostnameVerifier verifier) {
+        return new HostnameVerifier() {
+            @Override
+            public boolean verify(String hostname, SSLSession session) {
+                return OkHostnameVerifier.INSTANCE.verify(hostname, session) || (verifier != null && verifier.verify(hostname, session));
+            }
+        };
+    }
+
+    // engine name
+    @Override
+    public String name() {
+        return "okhttp";
+    }
+
+    // get a client with the requested timeouts (all share the same pool)
+    private OkHttpClient clientForTimeout(int timeout_ms) {
+        OkHttpClient client = this.m_timeout_clients.get(timeout_ms);
+        if (client == null) {
+            client = this.m_client.newBuilder()
+                    .connectTimeout(timeout_ms, TimeUnit.MILLISECONDS)
+                    .readTimeout(timeout_ms, TimeUnit.MILLISECONDS)
+                    .writeTimeout(timeout_ms, TimeUnit.MILLISECONDS)
+                    .build();
+            OkHttpClient existing = this.m_timeout_clients.putIfAbsent(timeout_ms, client);
+            if (existing != null) {
+                client = existing;
+            }
+        }
+        return client;
+    }
+
+    // perform the request I/O
+    @Override
+    protected HttpTransportResponse dispatch(String verb, String url, List<KeyValuePair> headers, String data, int timeout_ms) throws IOException {
+        // request body (content type is supplied via the headers)
+        RequestBody body = null;
+        if (data != null && data.length() > 0) {
+            body = RequestBody.create(null, data.getBytes("UTF-8"));
+        }
+        else if (verb.equalsIgnoreCase("POST") || verb.equalsIgnoreCase("PUT") || verb.equalsIgnoreCase("PATCH")) {
+            body = RequestBody.create(null, EMPTY_BODY);
+        }
+
+        // build the request
+        Request.Builder builder = new Request.Builder().url(url).method(verb, body);
+        for(int i=0;headers != null && i<headers.size();++i) {
+            builder.header(headers.get(i).key(), headers.get(i).value());
+        }
+
+        // execute
+        try (Response response = this.clientForTimeout(timeout_ms).newCall(builder.build()).execute()) {
+            return new HttpTransportResponse(response.code(), response.headers().toMultimap(), response.body() != null ? response.body().string() : "");
+        }
+    }
+}
@@ -37,6 +37,11 @@ public class PelionHostnameVerifier implements HostnameVerifier {
         this.m_pelion = pelion;
     }
     
+    // the Pelion hostname we accept
+    public String hostname() {
+        return this.m_pelion;
+    }
+    
     // we confirm that the hostname matches our configuration expectations...
     @Override
     public boolean verify(String hostname, SSLSession ssl) {
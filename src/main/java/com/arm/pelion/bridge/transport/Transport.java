@@ -80,6 +80,37 @@ public abstract class Transport extends BaseClass {
      */
     public abstract boolean receiveAndProcess();
 
+    /**
+     * event-driven receive support (default: none... a TransportReceiveThread must poll receiveAndProcess())
+     * @return true - transport delivers inbound messages to its listener without a dedicated thread
+     */
+    public boolean asyncReceiveEnabled() {
+        return false;
+    }
+
+    /**
+     * begin event-driven delivery of inbound messages to the receive listener
+     * @return true - started, false - not supported by this transport
+     */
+    public boolean startAsyncReceive() {
+        return false;
+    }
+
+    /**
+     * halt event-driven delivery of inbound messages
+     */
+    public void stopAsyncReceive() {
+        // not supported in base class
+    }
+
+    /**
+     * preference suffix this transport was configured with
+     * @return suffix (null - unsuffixed preferences)
+     */
+    public String prefSuffix() {
+        return null;
+    }
+
     /**
      * connect transport
      *
@@ -36,6 +36,7 @@ public class TransportReceiveThread extends Thread implements Transport.ReceiveL
     private boolean m_running = false;
     private Transport m_transport = null;
     private int m_sleep_time_ms = 0;
+    private boolean m_drain = false;
     private ErrorLogger m_error_logger = null;
     private Transport.ReceiveListener m_listener = null;
     
@@ -54,7 +55,11 @@ public class TransportReceiveThread extends Thread implements Transport.ReceiveL
         this.setTransport(transport);
         this.m_running = false;
         this.m_listener = null;
-        this.m_sleep_time_ms = this.m_transport.preferences().intValueOf("mqtt_receive_loop_sleep") * 1000;
+        
+        // read the same (suffixed) preferences as our transport
+        String suffix = this.m_transport.prefSuffix();
+        this.m_sleep_time_ms = this.m_transport.preferences().intValueOf("mqtt_receive_loop_sleep", suffix) * 1000;
+        this.m_drain = this.m_transport.preferences().booleanValueOf("mqtt_receive_drain", suffix);
     }
     
     /**
@@ -121,6 +126,26 @@ public class TransportReceiveThread extends Thread implements Transport.ReceiveL
      */
     public void halt() {
         this.m_running = false;
+        if (this.m_transport != null) {
+            this.m_transport.stopAsyncReceive();
+        }
+    }
+    
+    /**
+     * start the receive thread. If the transport is event-driven, no thread is created... the 
+     * transport delivers inbound messages to us from its shared dispatch pool instead.
+     */
+    @Override
+    public synchronized void start() {
+        if (this.m_transport != null && this.m_transport.asyncReceiveEnabled() == true) {
+            if (!this.m_running) {
+                // DEBUG
+                this.errorLogger().info("TransportReceiveThread: transport is event-driven. Not starting listener thread (OK)");
+                this.m_running = this.m_transport.startAsyncReceive();
+            }
+            return;
+        }
+        super.start();
     }
 
     /**
@@ -148,6 +173,8 @@ public class TransportReceiveThread extends Thread implements Transport.ReceiveL
         
         // primary listener loop
         while (this.m_running == true) {
+            boolean connected = false;
+            
             // RESET Test (Option)
             if (ENABLE_RESET_TEST == true) {
                 --countdown;
@@ -174,6 +201,7 @@ public class TransportReceiveThread extends Thread implements Transport.ReceiveL
                     // receive and process...
                     this.errorLogger().info("TransportReceiveThread: calling Transport::receiveAndProcess()...");
                     this.m_transport.receiveAndProcess();
+                    connected = true;
                 }
                 else {
                     // not connected
@@ -185,8 +213,10 @@ public class TransportReceiveThread extends Thread implements Transport.ReceiveL
                 this.errorLogger().info("TransportReceiveThread: NULL TRANSPORT...");
             }
 
-            // sleep for a bit...
-            Utils.waitForABit(null,this.m_sleep_time_ms);
+            // sleep for a bit... (drain mode: the receive already blocks, so only back off while the connection is down)
+            if (this.m_drain == false || connected == false) {
+                Utils.waitForABit(null,this.m_sleep_time_ms);
+            }
         }
         
         // exited event loop
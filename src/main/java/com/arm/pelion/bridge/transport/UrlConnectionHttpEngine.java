@@ -0,0 +1,125 @@
+/**
+ * @file UrlConnectionHttpEngine.java
+ * @brief HttpsURLConnection HTTP engine with keep-alive connection reuse
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.transport;
+
+import com.arm.pelion.bridge.core.ErrorLogger;
+import com.arm.pelion.bridge.core.KeyValuePair;
+import com.arm.pelion.bridge.preferences.PreferenceManager;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.List;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * HttpsURLConnection HTTP engine. Connections are returned to the JVM keep-alive cache (rather than disconnected)
+ * by fully reading and closing each response. The cache is keyed on the SSLSocketFactory instance, so we always
+ * use the same one.
+ *
+ * @author Doug Anson
+ */
+public class UrlConnectionHttpEngine extends BaseHttpEngine {
+    private SSLSocketFactory m_socket_factory = null;
+    private HostnameVerifier m_verifier = null;
+
+    // default constructor
+    public UrlConnectionHttpEngine(ErrorLogger error_logger, PreferenceManager preference_manager, SSLSocketFactory socket_factory, HostnameVerifier verifier) {
+        super(error_logger, preference_manager);
+        this.m_socket_factory = socket_factory;
+        this.m_verifier = verifier;
+
+        // size the JVM keep-alive cache (idle connections per host)
+        if (System.getProperty("http.maxConnections") == null) {
+            System.setProperty("http.maxConnections", "" + this.m_max_connections_per_host);
+        }
+    }
+
+    // engine name
+    @Override
+    public String name() {
+        return "urlconnection";
+    }
+
+    // perform the request I/O
+    @Override
+    protected HttpTransportResponse dispatch(String verb, String url, List<KeyValuePair> headers, String data, int timeout_ms) throws IOException {
+        HttpsURLConnection connection = (HttpsURLConnection)new URL(url).openConnection();
+        try {
+            connection.setRequestMethod(verb);
+            connection.setSSLSocketFactory(this.m_socket_factory);
+            connection.setHostnameVerifier(this.m_verifier);
+            if (timeout_ms > 0) {
+                connection.setConnectTimeout(timeout_ms);
+                connection.setReadTimeout(timeout_ms);
+            }
+
+            // request headers
+            for(int i=0;headers != null && i<headers.size();++i) {
+                connection.setRequestProperty(headers.get(i).key(), headers.get(i).value());
+            }
+
+            // request body
+            connection.setDoInput(true);
+            if (data != null && data.length() > 0) {
+                connection.setDoOutput(true);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(data.getBytes("UTF-8"));
+                    out.flush();
+                }
+            }
+
+            // response (error bodies are read from the error stream so the connection stays reusable)
+            int code = connection.getResponseCode();
+            String body = this.readFully(code >= 400 ? connection.getErrorStream() : connection.getInputStream());
+            return new HttpTransportResponse(code, connection.getHeaderFields(), body);
+        }
+        catch (IOException ex) {
+            // the connection state is unknown... do not return it to the cache
+            connection.disconnect();
+            throw ex;
+        }
+    }
+
+    // read and close a response stream
+    private String readFully(InputStream in) throws IOException {
+        if (in == null) {
+            return "";
+        }
+        try {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            byte[] chunk = new byte[8192];
+            int n = 0;
+            while ((n = in.read(chunk)) > 0) {
+                buf.write(chunk, 0, n);
+            }
+            return buf.toString("UTF-8");
+        }
+        finally {
+            in.close();
+        }
+    }
+}
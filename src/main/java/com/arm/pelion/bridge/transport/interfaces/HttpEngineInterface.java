@@ -0,0 +1,40 @@
+/**
+ * @file HttpEngineInterface.java
+ * @brief HTTP engine interface
+ * @author Doug Anson
+ * @version 1.0
+ * @see
+ *
+ * Copyright 2019. ARM Ltd. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.arm.pelion.bridge.transport.interfaces;
+
+import com.arm.pelion.bridge.core.KeyValuePair;
+import com.arm.pelion.bridge.transport.HttpTransportResponse;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * HTTP engine interface. Engines perform the actual request I/O for HttpTransport and manage their own connection reuse
+ * @author Doug Anson
+ */
+public interface HttpEngineInterface {
+    // engine name
+    public String name();
+    
+    // execute a request (data may be null for no request body)
+    public HttpTransportResponse execute(String verb, String url, List<KeyValuePair> headers, String data, int timeout_ms) throws IOException;
+}